@@ -27,11 +27,13 @@ package org.datadog.jenkins.plugins.datadog;
 
 import com.timgroup.statsd.ServiceCheck;
 import org.datadog.jenkins.plugins.datadog.logs.LogWriteStrategy;
+import org.datadog.jenkins.plugins.datadog.logs.RemoteLogTarget;
 import org.datadog.jenkins.plugins.datadog.metrics.MetricsClient;
 import org.datadog.jenkins.plugins.datadog.traces.write.TraceWriteStrategy;
 
 import java.util.Map;
 import java.util.Set;
+import javax.annotation.Nullable;
 
 public interface DatadogClient {
 
@@ -79,6 +81,17 @@ public interface DatadogClient {
 
     LogWriteStrategy createLogWriteStrategy();
 
+    /**
+     * Creates the destination for the logs that are shipped directly from Jenkins agents.
+     *
+     * @param host the host name of the Datadog Agent, as reachable from the Jenkins agents
+     * @return {@code null} if the client does not support shipping logs from the agents
+     */
+    @Nullable
+    default RemoteLogTarget createRemoteLogTarget(String host, int queueCapacity, int batchSizeLimit) {
+        return null;
+    }
+
     TraceWriteStrategy createTraceWriteStrategy();
 
 }
@@ -67,6 +67,7 @@ import org.datadog.jenkins.plugins.datadog.clients.ClientHolder;
 import org.datadog.jenkins.plugins.datadog.configuration.DatadogAgentConfiguration;
 import org.datadog.jenkins.plugins.datadog.configuration.DatadogApiConfiguration;
 import org.datadog.jenkins.plugins.datadog.configuration.DatadogClientConfiguration;
+import org.datadog.jenkins.plugins.datadog.configuration.DatadogSpanRule;
 import org.datadog.jenkins.plugins.datadog.configuration.api.intake.DatadogIntake;
 import org.datadog.jenkins.plugins.datadog.configuration.api.intake.DatadogIntakeUrls;
 import org.datadog.jenkins.plugins.datadog.configuration.api.key.DatadogApiKey;
@@ -158,6 +159,7 @@ public class DatadogGlobalConfiguration extends GlobalConfiguration {
     private String globalTagFile = null;
     private String globalTags = null;
     private String globalJobTags = null;
+    private List<DatadogSpanRule> spanRules = null;
     private String includeEvents = null;
     private String excludeEvents = null;
     private boolean emitSecurityEvents = DEFAULT_EMIT_SECURITY_EVENTS_VALUE;
@@ -501,6 +503,7 @@ public class DatadogGlobalConfiguration extends GlobalConfiguration {
             setGlobalTagFile(formData.getString("globalTagFile"));
             setGlobalTags(formData.getString("globalTags"));
             setGlobalJobTags(formData.getString("globalJobTags"));
+            setSpanRules(req.bindJSONToList(DatadogSpanRule.class, formData.opt("spanRules")));
             setRefreshDogstatsdClient(formData.getBoolean("refreshDogstatsdClient"));
             setCacheBuildRuns(formData.getBoolean("cacheBuildRuns"));
             setUseAwsInstanceHostname(formData.getBoolean("useAwsInstanceHostname"));
@@ -717,6 +720,25 @@ public class DatadogGlobalConfiguration extends GlobalConfiguration {
         this.globalJobTags = globalJobTags;
     }
 
+    /**
+     * Getter function for the spanRules global configuration, containing
+     * the rules that drop, sample, or collapse the spans of pipeline steps.
+     *
+     * @return the list of rules, in the order they are evaluated.
+     */
+    public List<DatadogSpanRule> getSpanRules() {
+        return spanRules != null ? spanRules : Collections.emptyList();
+    }
+
+    /**
+     * Setter function for the spanRules global configuration.
+     *
+     * @param spanRules - the rules that drop, sample, or collapse the spans of pipeline steps.
+     */
+    public void setSpanRules(List<DatadogSpanRule> spanRules) {
+        this.spanRules = spanRules != null ? new ArrayList<>(spanRules) : null;
+    }
+
     /**
      * @deprecated This method is here to ensure backward compatibility
      */
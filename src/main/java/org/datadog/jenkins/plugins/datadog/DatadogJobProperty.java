@@ -47,6 +47,10 @@ public class DatadogJobProperty<T extends Job<?, ?>> extends JobProperty<T> {
     private boolean enableProperty = false;
     private String tagProperties = null;
     private boolean emitSCMEvents = true;
+    private boolean enableLogRateLimit = false;
+    private Integer logRateLimitLinesPerSecond = null;
+    private Integer logRateLimitBurst = null;
+    private Integer logRateLimitSampleEvery = null;
 
     /**
      * Runs when the {@link DatadogJobProperty} class is created.
@@ -145,6 +149,64 @@ public class DatadogJobProperty<T extends Job<?, ?>> extends JobProperty<T> {
         this.emitSCMEvents = emitSCMEvents;
     }
 
+    /**
+     * Gets the enableLogRateLimit set in the job configuration.
+     *
+     * @return a boolean representing the enableLogRateLimit checkbox
+     */
+    public boolean isEnableLogRateLimit() {
+        return enableLogRateLimit;
+    }
+
+    /**
+     * Sets the enableLogRateLimit set in the job configuration.
+     *
+     * @param enableLogRateLimit - a boolean representing the enableLogRateLimit checkbox
+     */
+    @DataBoundSetter
+    public void setEnableLogRateLimit(boolean enableLogRateLimit) {
+        this.enableLogRateLimit = enableLogRateLimit;
+    }
+
+    /**
+     * @return - The sustained number of log lines per second that a build of this job can submit,
+     * or null if the global default should be used. Zero or a negative value disables rate limiting for the job.
+     */
+    public Integer getLogRateLimitLinesPerSecond() {
+        return isEnableLogRateLimit() ? logRateLimitLinesPerSecond : null;
+    }
+
+    @DataBoundSetter
+    public void setLogRateLimitLinesPerSecond(Integer logRateLimitLinesPerSecond) {
+        this.logRateLimitLinesPerSecond = logRateLimitLinesPerSecond;
+    }
+
+    /**
+     * @return - The number of log lines that a build of this job can submit in a burst above the sustained rate,
+     * or null if the global default should be used.
+     */
+    public Integer getLogRateLimitBurst() {
+        return isEnableLogRateLimit() ? logRateLimitBurst : null;
+    }
+
+    @DataBoundSetter
+    public void setLogRateLimitBurst(Integer logRateLimitBurst) {
+        this.logRateLimitBurst = logRateLimitBurst;
+    }
+
+    /**
+     * @return - Every N-th line suppressed by the rate limiter is submitted anyway (0 disables sampling),
+     * or null if the global default should be used.
+     */
+    public Integer getLogRateLimitSampleEvery() {
+        return isEnableLogRateLimit() ? logRateLimitSampleEvery : null;
+    }
+
+    @DataBoundSetter
+    public void setLogRateLimitSampleEvery(Integer logRateLimitSampleEvery) {
+        this.logRateLimitSampleEvery = logRateLimitSampleEvery;
+    }
+
     /**
      * Method to read the contents of the specified file in the {@link DatadogJobProperty}
      *
@@ -10,6 +10,9 @@ import jenkins.model.Jenkins;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.datadog.jenkins.plugins.datadog.clients.AgentCapabilities;
+import org.datadog.jenkins.plugins.datadog.clients.ClientHolder;
+import org.datadog.jenkins.plugins.datadog.clients.DatadogAgentClient;
 import org.datadog.jenkins.plugins.datadog.flare.FlareContributor;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
@@ -46,6 +49,15 @@ public class DatadogPluginManagement extends ManagementLink {
         return contributors;
     }
 
+    /**
+     * @return capabilities negotiated with the Datadog Agent, or {@code null} if the plugin is not configured to report to an Agent
+     */
+    @CheckForNull
+    public AgentCapabilities getAgentCapabilities() {
+        DatadogClient client = ClientHolder.getClient();
+        return client instanceof DatadogAgentClient ? ((DatadogAgentClient) client).getCapabilities() : null;
+    }
+
     @CheckForNull
     @Override
     public String getIconFileName() {
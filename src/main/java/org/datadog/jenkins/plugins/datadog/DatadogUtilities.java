@@ -55,6 +55,7 @@ import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.datadog.jenkins.plugins.datadog.apm.ShellCommandCallable;
 import org.datadog.jenkins.plugins.datadog.clients.HttpClient;
+import org.datadog.jenkins.plugins.datadog.clients.HttpStream;
 import org.datadog.jenkins.plugins.datadog.model.DatadogPluginAction;
 import org.datadog.jenkins.plugins.datadog.steps.DatadogPipelineAction;
 import org.datadog.jenkins.plugins.datadog.traces.CITags;
@@ -474,7 +475,7 @@ public class DatadogUtilities {
         HttpClient client = null;
         // Make request
         try {
-            client = new HttpClient(60_000);
+            client = new HttpClient(HttpStream.METRICS, 60_000);
             String instanceId = client.get(metadataUrl, Collections.emptyMap(), Function.identity());
             logger.fine("Instance ID detected: " + instanceId);
             return instanceId;
@@ -1,5 +1,6 @@
 package org.datadog.jenkins.plugins.datadog.apm;
 
+import com.codahale.metrics.Timer;
 import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.model.AbstractBuild;
@@ -14,8 +15,20 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.Nonnull;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.datadog.jenkins.plugins.datadog.DatadogGlobalConfiguration;
@@ -24,10 +37,32 @@ import org.datadog.jenkins.plugins.datadog.configuration.DatadogClientConfigurat
 import org.datadog.jenkins.plugins.datadog.model.DatadogPluginAction;
 import org.datadog.jenkins.plugins.datadog.steps.DatadogPipelineAction;
 import org.datadog.jenkins.plugins.datadog.steps.TestOptimization;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 
 public class DatadogTracerConfigurator {
 
+    private static final String CONFIGURATOR_THREADS_ENV_VAR = "DD_JENKINS_TRACER_CONFIGURATOR_THREADS";
+    private static final int DEFAULT_CONFIGURATOR_THREADS = 32;
+
+    private static final String CONFIGURATION_TIMEOUT_SECONDS_ENV_VAR = "DD_JENKINS_TRACER_CONFIGURATION_TIMEOUT_SECONDS";
+    private static final int DEFAULT_CONFIGURATION_TIMEOUT_SECONDS = 1200;
+
+    /**
+     * Threads are created on demand and released when idle, so that a hanging configurator does not delay the configuration of other builds.
+     * When all threads are busy, the configurator runs on the build thread.
+     */
+    private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(
+            0,
+            Math.max(DatadogUtilities.envVar(CONFIGURATOR_THREADS_ENV_VAR, DEFAULT_CONFIGURATOR_THREADS), 1),
+            60, TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            new ConfiguratorThreadFactory(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private static final long CONFIGURATION_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(
+            DatadogUtilities.envVar(CONFIGURATION_TIMEOUT_SECONDS_ENV_VAR, DEFAULT_CONFIGURATION_TIMEOUT_SECONDS));
+
     private final Map<TracerLanguage, TracerConfigurator> configurators;
 
     public static final DatadogTracerConfigurator INSTANCE = new DatadogTracerConfigurator();
@@ -98,18 +133,41 @@ public class DatadogTracerConfigurator {
         }
 
         Map<String, String> variables = new HashMap<>(getCommonEnvVariables(datadogConfig, testOptimization));
+
+        // configurators for different languages are independent, so they are run concurrently
+        Map<TracerLanguage, Future<Map<String, String>>> languageVariablesFutures = new LinkedHashMap<>();
         for (TracerLanguage language : languages) {
             TracerConfigurator tracerConfigurator = configurators.get(language);
             if (tracerConfigurator == null) {
                 listener.error("[datadog] Cannot find tracer configurator for " + language);
                 continue;
             }
+            Callable<Map<String, String>> configuration = () -> {
+                try (Timer.Context ignored = getConfigurationTimer(language).time()) {
+                    return tracerConfigurator.configure(testOptimization, node, workspacePath, envs, listener);
+                }
+            };
+            languageVariablesFutures.put(language, languages.size() > 1 ? EXECUTOR.submit(configuration) : runInline(configuration));
+        }
 
+        long deadline = System.nanoTime() + CONFIGURATION_TIMEOUT_NANOS;
+        for (Map.Entry<TracerLanguage, Future<Map<String, String>>> e : languageVariablesFutures.entrySet()) {
+            TracerLanguage language = e.getKey();
             try {
-                Map<String, String> languageVariables = tracerConfigurator.configure(testOptimization, node, workspacePath, envs, listener);
+                Map<String, String> languageVariables = e.getValue().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
                 variables.putAll(languageVariables);
-            } catch (Exception e) {
-                ExceptionUtils.printRootCauseStackTrace(e, listener.error("[datadog] Error while configuring " + language + " Datadog Tracer for run " + run + " and node " + node));
+            } catch (TimeoutException ex) {
+                listener.error("[datadog] Timed out while configuring " + language + " Datadog Tracer for run " + run + " and node " + node
+                        + " (" + TimeUnit.NANOSECONDS.toSeconds(CONFIGURATION_TIMEOUT_NANOS) + " seconds)");
+                languageVariablesFutures.values().forEach(f -> f.cancel(true));
+                return Collections.emptyMap();
+            } catch (Exception ex) {
+                Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+                ExceptionUtils.printRootCauseStackTrace(cause, listener.error("[datadog] Error while configuring " + language + " Datadog Tracer for run " + run + " and node " + node));
+                languageVariablesFutures.values().forEach(f -> f.cancel(true));
+                if (ex instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
                 return Collections.emptyMap();
             }
         }
@@ -117,6 +175,16 @@ public class DatadogTracerConfigurator {
         return variables;
     }
 
+    private static Timer getConfigurationTimer(TracerLanguage language) {
+        return AsyncWriter.METRICS.timer("tracer.configuration." + language.name().toLowerCase());
+    }
+
+    private static <T> Future<T> runInline(Callable<T> callable) {
+        FutureTask<T> task = new FutureTask<>(callable);
+        task.run();
+        return task;
+    }
+
     private static TopLevelItem getTopLevelItem(Run<?, ?> run) {
         if (run instanceof AbstractBuild) {
             AbstractBuild<?, ?> build = (AbstractBuild<?, ?>) run;
@@ -157,6 +225,18 @@ public class DatadogTracerConfigurator {
     }
 
 
+    private static final class ConfiguratorThreadFactory implements ThreadFactory {
+        private final ThreadFactory delegate = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread result = delegate.newThread(r);
+            result.setName("dd-tracer-configurator-" + result.getName());
+            result.setDaemon(true);
+            return result;
+        }
+    }
+
     private static final class ConfigureTracerAction extends DatadogPluginAction {
         private final String nodeHostname;
         private final Collection<TracerLanguage> languages;
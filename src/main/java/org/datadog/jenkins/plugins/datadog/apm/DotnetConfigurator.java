@@ -16,7 +16,7 @@ public class DotnetConfigurator implements TracerConfigurator {
 
     @Override
     public Map<String, String> configure(TestOptimization testOptimization, Node node, FilePath workspacePath, Map<String, String> envs, TaskListener listener) throws Exception {
-        String dotnetVersion = workspacePath.act(new ShellCommandCallable(Collections.emptyMap(), GET_DOTNET_VERSION_TIMEOUT_MILLIS, "dotnet", "--version"));
+        String dotnetVersion = ToolVersionCache.get().getVersion(node, workspacePath, envs, GET_DOTNET_VERSION_TIMEOUT_MILLIS, "dotnet", "--version");
         listener.getLogger().println("[datadog] Configuring DD .NET tracer: got .NET version " + dotnetVersion + " from " + workspacePath + " on " + node);
 
         String installTracerOutput = workspacePath.act(new ShellCommandCallable(Collections.emptyMap(), INSTALL_TRACER_TIMEOUT_MILLIS, "dotnet", "tool", "update", "--tool-path", workspacePath.getRemote(), "dd-trace"));
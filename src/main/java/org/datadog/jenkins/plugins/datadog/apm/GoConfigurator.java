@@ -11,6 +11,7 @@ import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.datadog.jenkins.plugins.datadog.clients.HttpClient;
+import org.datadog.jenkins.plugins.datadog.clients.HttpStream;
 import org.datadog.jenkins.plugins.datadog.steps.TestOptimization;
 import org.datadog.jenkins.plugins.datadog.util.SuppressFBWarnings;
 
@@ -33,12 +34,12 @@ public class GoConfigurator implements TracerConfigurator {
 
     private static final int HTTP_TIMEOUT_MILLIS = 60_000;
     private static final Map<String, String> USER_AGENT_HEADER = Map.of("User-Agent", "github-action");
-    private final HttpClient httpClient = new HttpClient(HTTP_TIMEOUT_MILLIS);
+    private final HttpClient httpClient = new HttpClient(HttpStream.DOWNLOADS, HTTP_TIMEOUT_MILLIS);
 
     @SuppressFBWarnings("REC_CATCH_EXCEPTION")
     @Override
     public Map<String, String> configure(TestOptimization testOptimization, Node node, FilePath workspacePath, Map<String, String> envs, TaskListener listener) throws Exception {
-        String goVersionOutput = workspacePath.act(new ShellCommandCallable(Collections.emptyMap(), SHELL_CMD_TIMEOUT_MILLIS, "go", "version"));
+        String goVersionOutput = ToolVersionCache.get().getVersion(node, workspacePath, envs, SHELL_CMD_TIMEOUT_MILLIS, "go", "version");
         Matcher goVersionMatcher = GO_VERSION_PATTERN.matcher(goVersionOutput);
         if (!goVersionMatcher.find()) {
             listener.getLogger().println("[datadog] Invalid go version installed. Skipping tracer installation");
@@ -8,15 +8,13 @@ import jenkins.model.Jenkins;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
 import org.datadog.jenkins.plugins.datadog.apm.signature.SignatureVerifier;
 import org.datadog.jenkins.plugins.datadog.clients.HttpClient;
+import org.datadog.jenkins.plugins.datadog.clients.HttpStream;
 import org.datadog.jenkins.plugins.datadog.steps.TestOptimization;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -29,6 +27,11 @@ final class JavaConfigurator implements TracerConfigurator {
     private static final Logger LOGGER = Logger.getLogger(JavaConfigurator.class.getName());
 
     private static final String TRACER_DISTRIBUTION_URL_ENV_VAR = "DATADOG_JENKINS_PLUGIN_TRACER_DISTRIBUTION_URL";
+    /**
+     * Local mirror to download the tracer from (e.g. {@code file:///opt/mirror/dd-java-agent.jar}), takes precedence over distribution URL.
+     * The signature is expected to be available next to the tracer, with the {@code .asc} extension.
+     */
+    private static final String TRACER_MIRROR_URL_ENV_VAR = "DATADOG_JENKINS_PLUGIN_TRACER_MIRROR_URL";
     private static final String DATADOG_PUBLIC_KEY_ENV_VAR = "DATADOG_JENKINS_PLUGIN_DATADOG_PUBLIC_KEY";
     private static final String DEFAULT_TRACER_DISTRIBUTION_URL = "https://dtdg.co/latest-java-tracer";
     private static final String TRACER_FILE_NAME = "dd-java-agent.jar";
@@ -37,7 +40,7 @@ final class JavaConfigurator implements TracerConfigurator {
     private static final int DEFAULT_TRACER_JAR_CACHE_TTL_MINUTES = 60 * 12;
     private static final int TRACER_DOWNLOAD_TIMEOUT_MILLIS = 60_000;
 
-    private final HttpClient httpClient = new HttpClient(TRACER_DOWNLOAD_TIMEOUT_MILLIS);
+    private final HttpClient httpClient = new HttpClient(HttpStream.DOWNLOADS, TRACER_DOWNLOAD_TIMEOUT_MILLIS);
 
     @Override
     public Map<String, String> configure(TestOptimization testOptimization, Node node, FilePath workspacePath, Map<String, String> envs, TaskListener listener) throws Exception {
@@ -55,34 +58,14 @@ final class JavaConfigurator implements TracerConfigurator {
         }
 
         String tracerDistributionUrl = getTracerDistributionUrl(testOptimization);
-        httpClient.getBinary(tracerDistributionUrl, Collections.emptyMap(), is -> {
-            try {
-                datadogTracerFile.copyFrom(is);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        });
-
-        listener.getLogger().println("[datadog] Configuring DD Java tracer: tracer installed in " + workspacePath + " on " + node);
+        // verify signature if not downloading from the default location (e.g. downloading from Maven Central or a mirror)
+        byte[] signaturePublicKey = !DEFAULT_TRACER_DISTRIBUTION_URL.equals(tracerDistributionUrl) ? getTracerSignaturePublicKey(testOptimization) : null;
 
-        if (!DEFAULT_TRACER_DISTRIBUTION_URL.equals(tracerDistributionUrl)) {
-            // verify signature if downloading from Maven Central
-            String signatureFileUrl = tracerDistributionUrl + ".asc";
-            byte[] signaturePublicKey = getTracerSignaturePublicKey(testOptimization);
-
-            httpClient.getBinary(signatureFileUrl, Collections.emptyMap(), signatureStream -> {
-                try (InputStream tracerStream = datadogTracerFile.read();
-                     InputStream publicKeyStream = new ByteArrayInputStream(signaturePublicKey)) {
-                    boolean signatureValid = SignatureVerifier.verifySignature(tracerStream, signatureStream, publicKeyStream);
-                    if (!signatureValid) {
-                        throw new IllegalStateException("Tracer downloaded from " + tracerDistributionUrl + " is not signed with a valid signature");
-                    }
-                } catch (Exception e) {
-                    throw new RuntimeException("Error while verifying tracer signature", e);
-                }
-            });
-        }
+        TracerArtifactCache tracerCache = TracerArtifactCache.get();
+        TracerArtifactCache.Artifact tracer = tracerCache.getArtifact(httpClient, tracerDistributionUrl, signaturePublicKey, getTracerJarCacheTtlMinutes(testOptimization));
+        tracerCache.install(tracer, node, datadogTracerFile);
 
+        listener.getLogger().println("[datadog] Configuring DD Java tracer: tracer " + tracer.getDigest() + " installed in " + workspacePath + " on " + node);
         return datadogTracerFile.absolutize();
     }
 
@@ -97,6 +80,10 @@ final class JavaConfigurator implements TracerConfigurator {
     }
 
     private String getTracerDistributionUrl(TestOptimization testOptimization) {
+        String mirrorUrl = getSetting(testOptimization, TRACER_MIRROR_URL_ENV_VAR, null, this::validateUserSuppliedTracerUrl);
+        if (mirrorUrl != null) {
+            return mirrorUrl;
+        }
         return getSetting(testOptimization, TRACER_DISTRIBUTION_URL_ENV_VAR, DEFAULT_TRACER_DISTRIBUTION_URL, this::validateUserSuppliedTracerUrl);
     }
 
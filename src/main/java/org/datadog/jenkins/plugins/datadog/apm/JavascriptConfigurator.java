@@ -24,7 +24,7 @@ final class JavascriptConfigurator implements TracerConfigurator {
 
     @Override
     public Map<String, String> configure(TestOptimization testOptimization, Node node, FilePath workspacePath, Map<String, String> envs, TaskListener listener) throws Exception {
-        String nodeVersion = workspacePath.act(new ShellCommandCallable(Collections.emptyMap(), GET_NPM_VERSION_TIMEOUT_MILLIS, "npm", "-v"));
+        String nodeVersion = ToolVersionCache.get().getVersion(node, workspacePath, envs, GET_NPM_VERSION_TIMEOUT_MILLIS, "npm", "-v");
         listener.getLogger().println("[datadog] Configuring DD JS tracer: got npm version " + nodeVersion + " from " + workspacePath + " on " + node);
 
         FilePath datadogPath = workspacePath.child(".datadog");
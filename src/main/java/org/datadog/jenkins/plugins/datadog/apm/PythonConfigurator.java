@@ -22,7 +22,7 @@ final class PythonConfigurator implements TracerConfigurator {
 
     @Override
     public Map<String, String> configure(TestOptimization testOptimization, Node node, FilePath workspacePath, Map<String, String> envs, TaskListener listener) throws Exception {
-        String pipVersion = workspacePath.act(new ShellCommandCallable(Collections.emptyMap(), GET_PIP_VERSION_TIMEOUT_MILLIS, "pip", "-V"));
+        String pipVersion = ToolVersionCache.get().getVersion(node, workspacePath, envs, GET_PIP_VERSION_TIMEOUT_MILLIS, "pip", "-V");
         listener.getLogger().println("[datadog] Configuring DD Python tracer: got pip version " + pipVersion + " from " + workspacePath + " on " + node);
 
         String installTracerOutput = workspacePath.act(new ShellCommandCallable(Collections.emptyMap(), INSTALL_TRACER_TIMEOUT_MILLIS, "pip", "install", "-U", "ddtrace"));
@@ -20,9 +20,9 @@ public class RubyConfigurator implements TracerConfigurator {
 
     @Override
     public Map<String, String> configure(TestOptimization testOptimization, Node node, FilePath workspacePath, Map<String, String> envs, TaskListener listener) throws Exception {
-        validateRuby(node, workspacePath, listener);
-        validateBundler(node, workspacePath, listener);
-        validateRubygems(node, workspacePath, listener);
+        validateRuby(node, workspacePath, envs, listener);
+        validateBundler(node, workspacePath, envs, listener);
+        validateRubygems(node, workspacePath, envs, listener);
 
         if (!isConfigurationValid(node, workspacePath)) {
             String unfreezeBundleOutput = workspacePath.act(new ShellCommandCallable(Collections.emptyMap(), INSTALL_TRACER_TIMEOUT_MILLIS, "bundle", "config", "set", "frozen", "false"));
@@ -52,8 +52,8 @@ public class RubyConfigurator implements TracerConfigurator {
         }
     }
 
-    private static void validateRubygems(Node node, FilePath workspacePath, TaskListener listener) throws IOException, InterruptedException {
-        String rubygemsVersionOutput = workspacePath.act(new ShellCommandCallable(Collections.emptyMap(), GET_VERSION_TIMEOUT_MILLIS, "gem", "-v"));
+    private static void validateRubygems(Node node, FilePath workspacePath, Map<String, String> envs, TaskListener listener) throws IOException, InterruptedException {
+        String rubygemsVersionOutput = ToolVersionCache.get().getVersion(node, workspacePath, envs, GET_VERSION_TIMEOUT_MILLIS, "gem", "-v");
         listener.getLogger().println("[datadog] Configuring DD Ruby tracer: got rubygems version " + rubygemsVersionOutput + " from " + workspacePath + " on " + node);
         Semver rubygemsVersion = Semver.parse(rubygemsVersionOutput);
         if (rubygemsVersion.compareTo(MIN_RUBYGEMS_VERSION) < 0) {
@@ -61,13 +61,13 @@ public class RubyConfigurator implements TracerConfigurator {
         }
     }
 
-    private static void validateBundler(Node node, FilePath workspacePath, TaskListener listener) throws IOException, InterruptedException {
-        String bundlerVersionOutput = workspacePath.act(new ShellCommandCallable(Collections.emptyMap(), GET_VERSION_TIMEOUT_MILLIS, "bundle", "-v"));
+    private static void validateBundler(Node node, FilePath workspacePath, Map<String, String> envs, TaskListener listener) throws IOException, InterruptedException {
+        String bundlerVersionOutput = ToolVersionCache.get().getVersion(node, workspacePath, envs, GET_VERSION_TIMEOUT_MILLIS, "bundle", "-v");
         listener.getLogger().println("[datadog] Configuring DD Ruby tracer: got bundler version " + bundlerVersionOutput + " from " + workspacePath + " on " + node);
     }
 
-    private static void validateRuby(Node node, FilePath workspacePath, TaskListener listener) throws IOException, InterruptedException {
-        String rubyVersionOutput = workspacePath.act(new ShellCommandCallable(Collections.emptyMap(), GET_VERSION_TIMEOUT_MILLIS, "ruby", "-v"));
+    private static void validateRuby(Node node, FilePath workspacePath, Map<String, String> envs, TaskListener listener) throws IOException, InterruptedException {
+        String rubyVersionOutput = ToolVersionCache.get().getVersion(node, workspacePath, envs, GET_VERSION_TIMEOUT_MILLIS, "ruby", "-v");
         listener.getLogger().println("[datadog] Configuring DD Ruby tracer: got ruby version " + rubyVersionOutput + " from " + workspacePath + " on " + node);
         Semver rubyVersion = Semver.parse(rubyVersionOutput.split(" ")[1]);
         if (rubyVersion.compareTo(MIN_RUBY_VERSION) < 0) {
@@ -0,0 +1,144 @@
+package org.datadog.jenkins.plugins.datadog.apm;
+
+import hudson.FilePath;
+import hudson.model.Node;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+
+/**
+ * Caches the output of tool version probes (such as {@code npm -v} or {@code ruby -v}) per node, workspace and tool environment.
+ * <p>
+ * Tool versions rarely change on a given node,
+ * while running the probes requires executing a process on the node before every build that uses tracer auto-configuration.
+ * Version managers (rbenv, pyenv, nvm, etc.) select tools based on the working directory and the environment,
+ * so the probes are run with the {@link #TOOL_ENVIRONMENT_VARIABLES tool environment} of the build,
+ * and the workspace and the tool environment are part of the cache key.
+ * Failed probes are not cached, and expired entries are removed whenever a new entry is added.
+ */
+final class ToolVersionCache {
+
+    private static final String TTL_SECONDS_ENV_VAR = "DD_JENKINS_TRACER_TOOL_VERSION_CACHE_TTL_SECONDS";
+    private static final int DEFAULT_TTL_SECONDS = 600;
+
+    /** Build environment variables that affect which tool version is resolved */
+    private static final String[] TOOL_ENVIRONMENT_VARIABLES = {
+            "PATH", "RBENV_VERSION", "PYENV_VERSION", "VIRTUAL_ENV", "NVM_BIN", "NODE_VERSION", "GOROOT", "DOTNET_ROOT"
+    };
+
+    private static final ToolVersionCache INSTANCE = new ToolVersionCache(
+            TimeUnit.SECONDS.toNanos(DatadogUtilities.envVar(TTL_SECONDS_ENV_VAR, DEFAULT_TTL_SECONDS)),
+            System::nanoTime);
+
+    static ToolVersionCache get() {
+        return INSTANCE;
+    }
+
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    ToolVersionCache(long ttlNanos, LongSupplier nanoClock) {
+        this.ttlNanos = ttlNanos;
+        this.nanoClock = nanoClock;
+    }
+
+    String getVersion(Node node, FilePath workspacePath, Map<String, String> envs, long timeoutMillis, String... command) throws IOException, InterruptedException {
+        return getVersion(node.getNodeName(), workspacePath.getRemote(), envs,
+                toolEnvironment -> workspacePath.act(new ShellCommandCallable(toolEnvironment, timeoutMillis, command)), command);
+    }
+
+    String getVersion(String nodeName, String workspace, Map<String, String> envs, Probe probe, String... command) throws IOException, InterruptedException {
+        Map<String, String> toolEnvironment = getToolEnvironment(envs);
+        if (ttlNanos <= 0) {
+            return probe.run(toolEnvironment);
+        }
+
+        Key key = new Key(nodeName, workspace, toolEnvironment, command);
+        Entry entry = entries.get(key);
+        long now = nanoClock.getAsLong();
+        if (entry != null && now - entry.createdAtNanos < ttlNanos) {
+            return entry.output;
+        }
+
+        String output = probe.run(toolEnvironment);
+        // entries are only added after running a process on a node, so scanning them is cheap in comparison
+        entries.values().removeIf(e -> now - e.createdAtNanos >= ttlNanos);
+        entries.put(key, new Entry(output, now));
+        return output;
+    }
+
+    private static Map<String, String> getToolEnvironment(Map<String, String> envs) {
+        Map<String, String> toolEnvironment = new TreeMap<>();
+        if (envs != null) {
+            for (String variable : TOOL_ENVIRONMENT_VARIABLES) {
+                String value = envs.get(variable);
+                if (value != null) {
+                    toolEnvironment.put(variable, value);
+                }
+            }
+        }
+        return toolEnvironment;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    interface Probe {
+        String run(Map<String, String> toolEnvironment) throws IOException, InterruptedException;
+    }
+
+    private static final class Entry {
+        private final String output;
+        private final long createdAtNanos;
+
+        private Entry(String output, long createdAtNanos) {
+            this.output = output;
+            this.createdAtNanos = createdAtNanos;
+        }
+    }
+
+    private static final class Key {
+        private final String nodeName;
+        private final String workspace;
+        private final Map<String, String> toolEnvironment;
+        private final String[] command;
+
+        private Key(String nodeName, String workspace, Map<String, String> toolEnvironment, String[] command) {
+            this.nodeName = nodeName;
+            this.workspace = workspace;
+            this.toolEnvironment = toolEnvironment;
+            this.command = command;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return nodeName.equals(key.nodeName)
+                    && workspace.equals(key.workspace)
+                    && toolEnvironment.equals(key.toolEnvironment)
+                    && Arrays.equals(command, key.command);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = nodeName.hashCode();
+            result = 31 * result + workspace.hashCode();
+            result = 31 * result + toolEnvironment.hashCode();
+            result = 31 * result + Arrays.hashCode(command);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package org.datadog.jenkins.plugins.datadog.apm;
+
+import hudson.FilePath;
+import hudson.model.Node;
+import hudson.remoting.VirtualChannel;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.model.Jenkins;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.apm.signature.SignatureVerifier;
+import org.datadog.jenkins.plugins.datadog.clients.HttpClient;
+
+/**
+ * Content-addressed cache of tracer artifacts.
+ * <p>
+ * Artifacts are downloaded and verified once on the controller, and stored under their SHA-256 digest.
+ * A verified artifact is then pushed once to every node that needs it (into a node-level cache directory),
+ * and is copied from there into the workspaces, so that a build modifying its copy cannot corrupt the cache.
+ * The built-in node uses the controller cache directly.
+ * <p>
+ * Only the latest artifact of every URL (and public key) is kept: when a download replaces an artifact,
+ * or when the number of cached artifacts exceeds its limit and the least recently downloaded one is evicted,
+ * the artifacts that are no longer indexed are deleted from the controller,
+ * and from the cache directory of a node the next time a new artifact is pushed to it.
+ * <p>
+ * Besides HTTP(S) URLs, {@code file:} URLs are supported, which allows using a local mirror in offline environments.
+ */
+final class TracerArtifactCache {
+
+    private static final Logger LOGGER = Logger.getLogger(TracerArtifactCache.class.getName());
+
+    private static final String CONTROLLER_CACHE_DIR = "datadog/tracer-cache";
+    private static final String NODE_CACHE_DIR = ".datadog-cache/tracers";
+    private static final String INDEX_FILE_NAME = "index.properties";
+    private static final String ARTIFACT_FILE_EXTENSION = ".jar";
+
+    private static final String MAX_ARTIFACTS_ENV_VAR = "DD_JENKINS_TRACER_CACHE_MAX_ARTIFACTS";
+    private static final int DEFAULT_MAX_ARTIFACTS = 8;
+
+    private static final TracerArtifactCache INSTANCE = new TracerArtifactCache(
+            () -> new File(Jenkins.get().getRootDir(), CONTROLLER_CACHE_DIR), System::currentTimeMillis, TracerArtifactCache::fetch,
+            Math.max(DatadogUtilities.envVar(MAX_ARTIFACTS_ENV_VAR, DEFAULT_MAX_ARTIFACTS), 1));
+
+    static TracerArtifactCache get() {
+        return INSTANCE;
+    }
+
+    private final Supplier<File> cacheDirSupplier;
+    private final LongSupplier currentTimeMillis;
+    private final Fetcher fetcher;
+    private final int maxArtifacts;
+
+    /**
+     * Downloads are serialized per artifact URL, so that concurrent builds download an artifact once,
+     * without waiting for downloads of other artifacts.
+     */
+    private final ConcurrentMap<String, Object> downloadLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Artifact URL and public key to the digest of the latest artifact downloaded from the URL and verified with the key
+     * (and the time of the download).
+     */
+    @GuardedBy("this")
+    private Map<String, IndexEntry> index;
+
+    /**
+     * Digests of artifacts (and of the public keys) whose signatures were verified,
+     * to avoid repeating verification if the same artifact is downloaded again.
+     */
+    private final Set<String> verifiedDigests = ConcurrentHashMap.newKeySet();
+
+    TracerArtifactCache(Supplier<File> cacheDirSupplier, LongSupplier currentTimeMillis, Fetcher fetcher, int maxArtifacts) {
+        this.cacheDirSupplier = cacheDirSupplier;
+        this.currentTimeMillis = currentTimeMillis;
+        this.fetcher = fetcher;
+        this.maxArtifacts = maxArtifacts;
+    }
+
+    /**
+     * Returns a verified artifact downloaded from the given URL, downloading it if there is no cached artifact that is fresh enough.
+     * If the download fails but a stale artifact is available, the stale artifact is returned.
+     *
+     * @param artifactUrl        URL to download the artifact from ({@code http}, {@code https} or {@code file})
+     * @param signaturePublicKey public key to verify the artifact signature with (the signature is expected at {@code artifactUrl + ".asc"}),
+     *                           or {@code null} if the signature should not be verified
+     * @param ttlMinutes         how long a downloaded artifact is considered fresh
+     */
+    Artifact getArtifact(@Nullable HttpClient httpClient, String artifactUrl, @Nullable byte[] signaturePublicKey, int ttlMinutes) throws Exception {
+        File cacheDir = getCacheDir();
+        String publicKeyDigest = signaturePublicKey != null ? toHex(MessageDigest.getInstance("SHA-256").digest(signaturePublicKey)) : null;
+        String indexKey = publicKeyDigest != null ? artifactUrl + " " + publicKeyDigest : artifactUrl;
+        synchronized (downloadLocks.computeIfAbsent(indexKey, k -> new Object())) {
+            IndexEntry entry = getIndexEntry(cacheDir, indexKey);
+            File cachedArtifact = entry != null ? new File(cacheDir, entry.digest + ARTIFACT_FILE_EXTENSION) : null;
+            if (cachedArtifact != null && cachedArtifact.isFile()
+                    && currentTimeMillis.getAsLong() - entry.fetchedAtMillis < TimeUnit.MINUTES.toMillis(ttlMinutes)) {
+                return new Artifact(entry.digest, cachedArtifact);
+            }
+
+            try {
+                Artifact artifact = download(httpClient, cacheDir, artifactUrl, signaturePublicKey, publicKeyDigest);
+                putIndexEntry(cacheDir, indexKey, new IndexEntry(artifact.digest, currentTimeMillis.getAsLong()));
+                return artifact;
+
+            } catch (Exception e) {
+                if (cachedArtifact != null && cachedArtifact.isFile()) {
+                    DatadogUtilities.logException(LOGGER, Level.WARNING, "Could not refresh tracer artifact from " + artifactUrl + ", will use previously downloaded artifact " + entry.digest, e);
+                    return new Artifact(entry.digest, cachedArtifact);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private Artifact download(@Nullable HttpClient httpClient, File cacheDir, String artifactUrl,
+                              @Nullable byte[] signaturePublicKey, @Nullable String publicKeyDigest) throws Exception {
+        Path tempFile = Files.createTempFile(cacheDir.toPath(), "download", ".tmp");
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            fetcher.fetch(httpClient, artifactUrl, is -> {
+                try (DigestInputStream digestStream = new DigestInputStream(is, messageDigest)) {
+                    Files.copy(digestStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            });
+            String digest = toHex(messageDigest.digest());
+
+            String verifiedDigest = digest + " " + publicKeyDigest;
+            if (signaturePublicKey != null && !verifiedDigests.contains(verifiedDigest)) {
+                fetcher.fetch(httpClient, artifactUrl + ".asc", signatureStream -> {
+                    try (InputStream artifactStream = Files.newInputStream(tempFile);
+                         InputStream publicKeyStream = new ByteArrayInputStream(signaturePublicKey)) {
+                        boolean signatureValid = SignatureVerifier.verifySignature(artifactStream, signatureStream, publicKeyStream);
+                        if (!signatureValid) {
+                            throw new IllegalStateException("Tracer downloaded from " + artifactUrl + " is not signed with a valid signature");
+                        }
+                    }
+                });
+                verifiedDigests.add(verifiedDigest);
+            }
+
+            File artifactFile = new File(cacheDir, digest + ARTIFACT_FILE_EXTENSION);
+            Files.move(tempFile, artifactFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return new Artifact(digest, artifactFile);
+
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static void fetch(@Nullable HttpClient httpClient, String url, StreamConsumer consumer) throws Exception {
+        URI uri = URI.create(url);
+        if ("file".equalsIgnoreCase(uri.getScheme())) {
+            try (InputStream is = Files.newInputStream(Paths.get(uri))) {
+                consumer.accept(is);
+            }
+            return;
+        }
+
+        if (httpClient == null) {
+            throw new IllegalArgumentException("No HTTP client to download " + url);
+        }
+        httpClient.getBinary(url, Collections.emptyMap(), is -> {
+            try {
+                consumer.accept(is);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Error while processing " + url, e);
+            }
+        });
+    }
+
+    /**
+     * Installs the artifact into the given location on a node.
+     * The artifact is copied to the node-level cache directory, unless it is already there,
+     * and is then copied into the target location.
+     * When an artifact is copied to the node-level cache directory, the artifacts there that are no longer indexed are deleted.
+     */
+    FilePath install(Artifact artifact, Node node, FilePath target) throws IOException, InterruptedException {
+        FilePath nodeRoot = node.getRootPath();
+        if (nodeRoot == null || node instanceof Jenkins) {
+            // the built-in node can copy from the controller cache,
+            // for a node that is offline or whose root is not known the artifact is copied directly
+            target.copyFrom(new FilePath(artifact.file));
+            return target;
+        }
+
+        FilePath nodeCachedArtifact = nodeRoot.child(NODE_CACHE_DIR).child(artifact.digest + ARTIFACT_FILE_EXTENSION);
+        if (!nodeCachedArtifact.exists()) {
+            FilePath nodeCacheDir = nodeCachedArtifact.getParent();
+            nodeCacheDir.mkdirs();
+            // copy to a temporary file first so that concurrent builds never copy a partially written artifact
+            FilePath tempFile = nodeCacheDir.createTempFile(artifact.digest, ".tmp");
+            tempFile.copyFrom(new FilePath(artifact.file));
+            tempFile.renameTo(nodeCachedArtifact);
+
+            Set<String> retainedFileNames = getIndexedFileNames();
+            retainedFileNames.add(nodeCachedArtifact.getName());
+            nodeCacheDir.act(new PruneCallable(retainedFileNames));
+        }
+
+        target.act(new CopyCallable(nodeCachedArtifact.getRemote()));
+        return target;
+    }
+
+    private File getCacheDir() throws IOException {
+        File cacheDir = cacheDirSupplier.get();
+        Files.createDirectories(cacheDir.toPath());
+        return cacheDir;
+    }
+
+    @Nullable
+    private synchronized IndexEntry getIndexEntry(File cacheDir, String indexKey) {
+        return getIndex(cacheDir).get(indexKey);
+    }
+
+    /**
+     * Indexes the given entry, evicting the least recently downloaded entries if there are too many,
+     * and deletes the artifacts that are no longer indexed.
+     */
+    private synchronized void putIndexEntry(File cacheDir, String indexKey, IndexEntry entry) {
+        Map<String, IndexEntry> index = getIndex(cacheDir);
+        Set<String> supersededDigests = new HashSet<>();
+        IndexEntry replaced = index.put(indexKey, entry);
+        if (replaced != null) {
+            supersededDigests.add(replaced.digest);
+        }
+        while (index.size() > maxArtifacts) {
+            String eldestKey = index.entrySet().stream()
+                    .filter(e -> !e.getKey().equals(indexKey))
+                    .min(Comparator.comparingLong(e -> e.getValue().fetchedAtMillis))
+                    .map(Map.Entry::getKey)
+                    .orElseThrow(IllegalStateException::new);
+            supersededDigests.add(index.remove(eldestKey).digest);
+        }
+        writeIndex(cacheDir, index);
+
+        // the same artifact can be indexed for different URLs or keys
+        for (IndexEntry indexed : index.values()) {
+            supersededDigests.remove(indexed.digest);
+        }
+        for (String digest : supersededDigests) {
+            deleteArtifact(new File(cacheDir, digest + ARTIFACT_FILE_EXTENSION));
+        }
+    }
+
+    /**
+     * Returns the names of the artifact files that are indexed, or an empty set if the index was not read yet.
+     */
+    private synchronized Set<String> getIndexedFileNames() {
+        return index != null ? getFileNames(index.values()) : new HashSet<>();
+    }
+
+    @GuardedBy("this")
+    private Map<String, IndexEntry> getIndex(File cacheDir) {
+        if (index == null) {
+            index = readIndex(cacheDir);
+            // delete the artifacts that were superseded by previous versions of the cache, or by an index that could not be written
+            Set<String> indexedFileNames = getFileNames(index.values());
+            File[] artifactFiles = cacheDir.listFiles((dir, name) -> name.endsWith(ARTIFACT_FILE_EXTENSION) && !indexedFileNames.contains(name));
+            if (artifactFiles != null) {
+                for (File artifactFile : artifactFiles) {
+                    deleteArtifact(artifactFile);
+                }
+            }
+        }
+        return index;
+    }
+
+    private static Set<String> getFileNames(Collection<IndexEntry> entries) {
+        Set<String> fileNames = new HashSet<>();
+        for (IndexEntry entry : entries) {
+            fileNames.add(entry.digest + ARTIFACT_FILE_EXTENSION);
+        }
+        return fileNames;
+    }
+
+    private static void deleteArtifact(File artifactFile) {
+        try {
+            Files.deleteIfExists(artifactFile.toPath());
+        } catch (IOException e) {
+            DatadogUtilities.logException(LOGGER, Level.FINE, "Could not delete superseded tracer artifact " + artifactFile, e);
+        }
+    }
+
+    private static Map<String, IndexEntry> readIndex(File cacheDir) {
+        Map<String, IndexEntry> index = new HashMap<>();
+        File indexFile = new File(cacheDir, INDEX_FILE_NAME);
+        if (!indexFile.isFile()) {
+            return index;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (Exception e) {
+            DatadogUtilities.logException(LOGGER, Level.FINE, "Could not read tracer artifact cache index", e);
+            return index;
+        }
+        for (String indexKey : properties.stringPropertyNames()) {
+            IndexEntry entry = IndexEntry.parse(properties.getProperty(indexKey));
+            if (entry != null) {
+                index.put(indexKey, entry);
+            }
+        }
+        return index;
+    }
+
+    private static void writeIndex(File cacheDir, Map<String, IndexEntry> index) {
+        Properties properties = new Properties();
+        for (Map.Entry<String, IndexEntry> e : index.entrySet()) {
+            properties.setProperty(e.getKey(), e.getValue().toString());
+        }
+        try (Writer writer = Files.newBufferedWriter(new File(cacheDir, INDEX_FILE_NAME).toPath(), StandardCharsets.UTF_8)) {
+            properties.store(writer, "Datadog tracer artifact cache");
+        } catch (Exception e) {
+            DatadogUtilities.logException(LOGGER, Level.FINE, "Could not write tracer artifact cache index", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    static final class Artifact {
+        private final String digest;
+        private final File file;
+
+        Artifact(String digest, File file) {
+            this.digest = digest;
+            this.file = file;
+        }
+
+        String getDigest() {
+            return digest;
+        }
+
+        File getFile() {
+            return file;
+        }
+    }
+
+    private static final class IndexEntry {
+        private final String digest;
+        private final long fetchedAtMillis;
+
+        private IndexEntry(String digest, long fetchedAtMillis) {
+            this.digest = digest;
+            this.fetchedAtMillis = fetchedAtMillis;
+        }
+
+        @Nullable
+        private static IndexEntry parse(String s) {
+            int separator = s != null ? s.indexOf(',') : -1;
+            if (separator < 0) {
+                return null;
+            }
+            try {
+                return new IndexEntry(s.substring(0, separator), Long.parseLong(s.substring(separator + 1)));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return digest + "," + fetchedAtMillis;
+        }
+    }
+
+    interface StreamConsumer {
+        void accept(InputStream is) throws Exception;
+    }
+
+    interface Fetcher {
+        void fetch(@Nullable HttpClient httpClient, String url, StreamConsumer consumer) throws Exception;
+    }
+
+    /**
+     * Replaces the target file with a copy of the source file.
+     */
+    private static final class CopyCallable extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String source;
+
+        private CopyCallable(String source) {
+            this.source = source;
+        }
+
+        @Override
+        public Void invoke(File target, VirtualChannel channel) throws IOException {
+            Files.copy(Paths.get(source), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the artifacts in a node-level cache directory that are not in the given set.
+     */
+    private static final class PruneCallable extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final Set<String> retainedFileNames;
+
+        private PruneCallable(Set<String> retainedFileNames) {
+            this.retainedFileNames = retainedFileNames;
+        }
+
+        @Override
+        public Void invoke(File cacheDir, VirtualChannel channel) {
+            File[] artifactFiles = cacheDir.listFiles((dir, name) -> name.endsWith(ARTIFACT_FILE_EXTENSION) && !retainedFileNames.contains(name));
+            if (artifactFiles != null) {
+                for (File artifactFile : artifactFiles) {
+                    if (!artifactFile.delete()) {
+                        LOGGER.fine("Could not delete superseded tracer artifact " + artifactFile);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.datadog.jenkins.plugins.datadog.clients;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.annotation.Nullable;
+
+/**
+ * Features of the Datadog Agent, as advertised by its {@code /info} endpoint.
+ */
+public final class AgentCapabilities {
+
+    static final String EVP_PROXY_ENDPOINT = "/evp_proxy/v3/";
+    /** EVP Proxy v4 forwards the Content-Encoding header, so compressed payloads are supported */
+    static final String EVP_PROXY_COMPRESSION_ENDPOINT = "/evp_proxy/v4/";
+
+    /** Capabilities before the Agent was successfully probed */
+    static final AgentCapabilities UNKNOWN = new AgentCapabilities(null, 0, 0, null);
+
+    @Nullable
+    private final Set<String> endpoints;
+    private final long lastProbeMillis;
+    private final long lastSuccessfulProbeMillis;
+    @Nullable
+    private final String lastError;
+
+    private AgentCapabilities(@Nullable Set<String> endpoints, long lastProbeMillis, long lastSuccessfulProbeMillis, @Nullable String lastError) {
+        this.endpoints = endpoints != null ? Collections.unmodifiableSet(new TreeSet<>(endpoints)) : null;
+        this.lastProbeMillis = lastProbeMillis;
+        this.lastSuccessfulProbeMillis = lastSuccessfulProbeMillis;
+        this.lastError = lastError;
+    }
+
+    AgentCapabilities probed(Set<String> endpoints, long now) {
+        return new AgentCapabilities(endpoints, now, now, null);
+    }
+
+    /**
+     * The last known endpoints are kept when a probe fails, so that a transient failure does not downgrade the transport.
+     */
+    AgentCapabilities probeFailed(String error, long now) {
+        return new AgentCapabilities(endpoints, now, lastSuccessfulProbeMillis, error);
+    }
+
+    public boolean isKnown() {
+        return endpoints != null;
+    }
+
+    public boolean isEvpProxySupported() {
+        return endpoints != null && endpoints.contains(EVP_PROXY_ENDPOINT);
+    }
+
+    public boolean isCompressionSupported() {
+        return endpoints != null && endpoints.contains(EVP_PROXY_COMPRESSION_ENDPOINT);
+    }
+
+    /**
+     * @return human-readable name of the transport that is used for pipeline traces
+     */
+    public String getTraceTransport() {
+        if (isEvpProxySupported()) {
+            return isCompressionSupported() ? "EVP Proxy (webhook, compressed)" : "EVP Proxy (webhook)";
+        }
+        return "APM traces (/v0.3/traces)";
+    }
+
+    public Set<String> getEndpoints() {
+        return endpoints != null ? endpoints : Collections.emptySet();
+    }
+
+    @Nullable
+    public Date getLastProbe() {
+        return lastProbeMillis > 0 ? new Date(lastProbeMillis) : null;
+    }
+
+    @Nullable
+    public Date getLastSuccessfulProbe() {
+        return lastSuccessfulProbeMillis > 0 ? new Date(lastSuccessfulProbeMillis) : null;
+    }
+
+    @Nullable
+    public String getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public String toString() {
+        return "AgentCapabilities{" +
+                "endpoints=" + endpoints +
+                ", lastProbeMillis=" + lastProbeMillis +
+                ", lastSuccessfulProbeMillis=" + lastSuccessfulProbeMillis +
+                ", lastError='" + lastError + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,270 @@
+package org.datadog.jenkins.plugins.datadog.clients;
+
+import hudson.model.Run;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.model.BuildData;
+import org.datadog.jenkins.plugins.datadog.model.PipelineStepData;
+import org.datadog.jenkins.plugins.datadog.traces.write.Payload;
+import org.datadog.jenkins.plugins.datadog.traces.write.TraceWriteStrategy;
+import org.datadog.jenkins.plugins.datadog.traces.write.Track;
+
+/**
+ * Sends pipeline traces to the Datadog Agent using the best transport that the Agent supports.
+ * <p>
+ * Until the Agent is probed, traces are sent to the APM endpoint, which is supported by every Agent version.
+ * The capabilities of the Agent are probed in the background and then periodically re-probed:
+ * when the Agent advertises the EVP Proxy, the strategy switches to the webhook track, with compression if supported.
+ * <p>
+ * The track is selected when the first payload of a run is serialized, and is kept until the run is finished,
+ * so that the spans of a run are not split between the two tracks when the transport is switched.
+ * The tracks of the runs in progress are taken over by the strategy that replaces this one when the client is reconfigured,
+ * and the track of a run is released when the run is finalized or deleted.
+ * Payloads are sent with the strategy of the track they were serialized for,
+ * so payloads that are queued while the transport is switched are not lost.
+ * A webhook strategy that is replaced is closed once the payloads that it is sending are sent.
+ */
+final class AgentTraceWriteStrategy implements TraceWriteStrategy {
+
+    private static final Logger logger = Logger.getLogger(AgentTraceWriteStrategy.class.getName());
+
+    private static final ScheduledThreadPoolExecutor PROBER = createProber();
+
+    private final Callable<Set<String>> endpointsProbe;
+    private final TraceWriteStrategy apmStrategy;
+    private final Function<Boolean, TraceWriteStrategy> webhookStrategyFactory;
+    private final long refreshIntervalMillis;
+    private final long retryIntervalMillis;
+
+    private volatile AgentCapabilities capabilities = AgentCapabilities.UNKNOWN;
+    /** Created when the EVP Proxy is advertised for the first time, recreated if compression support changes */
+    private volatile TraceWriteStrategy webhookStrategy;
+    private volatile boolean webhookStrategyCompressed;
+    /** Webhook strategies that were replaced, closed by the writer thread once the ongoing send is over */
+    private final Queue<TraceWriteStrategy> replacedWebhookStrategies = new ConcurrentLinkedQueue<>();
+    /** Tracks of the runs that are in progress, keyed by run ID */
+    private final Map<String, Track> runTracks = new ConcurrentHashMap<>();
+
+    @GuardedBy("this")
+    private ScheduledFuture<?> nextProbe;
+    @GuardedBy("this")
+    private boolean closed;
+
+    /**
+     * @param endpointsProbe         returns the endpoints advertised by the Agent, throws if the Agent cannot be reached
+     * @param webhookStrategyFactory creates the webhook strategy, the argument tells whether compression is supported
+     */
+    AgentTraceWriteStrategy(Callable<Set<String>> endpointsProbe,
+                            TraceWriteStrategy apmStrategy,
+                            Function<Boolean, TraceWriteStrategy> webhookStrategyFactory,
+                            long refreshIntervalMillis,
+                            long retryIntervalMillis) {
+        this.endpointsProbe = endpointsProbe;
+        this.apmStrategy = apmStrategy;
+        this.webhookStrategyFactory = webhookStrategyFactory;
+        this.refreshIntervalMillis = Math.max(refreshIntervalMillis, 1);
+        this.retryIntervalMillis = Math.max(retryIntervalMillis, 1);
+    }
+
+    private static ScheduledThreadPoolExecutor createProber() {
+        ScheduledThreadPoolExecutor prober = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "DD-Agent-Capabilities-Probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prober.setRemoveOnCancelPolicy(true);
+        return prober;
+    }
+
+    /**
+     * Schedules the first probe, which is executed right away in the background.
+     */
+    synchronized void start() {
+        if (!closed && nextProbe == null) {
+            nextProbe = PROBER.schedule(this::probeAndReschedule, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void probeAndReschedule() {
+        long delayMillis;
+        try {
+            delayMillis = probe() ? refreshIntervalMillis : retryIntervalMillis;
+        } catch (Exception e) {
+            DatadogUtilities.severe(logger, e, "Failed to update Datadog Agent capabilities");
+            delayMillis = retryIntervalMillis;
+        }
+        synchronized (this) {
+            if (!closed) {
+                nextProbe = PROBER.schedule(this::probeAndReschedule, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Probes the Agent and updates the transport.
+     *
+     * @return {@code true} if the Agent could be reached
+     */
+    boolean probe() {
+        long now = System.currentTimeMillis();
+        Set<String> endpoints;
+        try {
+            endpoints = endpointsProbe.call();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            capabilities = capabilities.probeFailed(String.valueOf(e.getMessage()), now);
+            logger.fine("Could not probe Datadog Agent capabilities: " + e.getMessage());
+            return false;
+        }
+
+        AgentCapabilities previous = capabilities;
+        AgentCapabilities current = previous.probed(endpoints, now);
+        if (current.isEvpProxySupported()
+                && (webhookStrategy == null || webhookStrategyCompressed != current.isCompressionSupported())) {
+            webhookStrategyCompressed = current.isCompressionSupported();
+            TraceWriteStrategy replaced = webhookStrategy;
+            webhookStrategy = webhookStrategyFactory.apply(webhookStrategyCompressed);
+            if (replaced != null) {
+                replacedWebhookStrategies.add(replaced);
+            }
+        }
+        capabilities = current;
+        if (!previous.getTraceTransport().equals(current.getTraceTransport()) || !previous.isKnown()) {
+            logger.info("Datadog Agent pipeline traces transport: " + current.getTraceTransport());
+        }
+        return true;
+    }
+
+    AgentCapabilities getCapabilities() {
+        return capabilities;
+    }
+
+    private Track getCurrentTrack() {
+        return capabilities.isEvpProxySupported() && webhookStrategy != null ? Track.WEBHOOK : Track.APM;
+    }
+
+    /**
+     * @return the track of the run, selected when the first payload of the run is serialized
+     */
+    private Track getRunTrack(@Nullable Run<?, ?> run) {
+        if (run == null) {
+            return getCurrentTrack();
+        }
+        return runTracks.computeIfAbsent(run.getExternalizableId(), k -> getCurrentTrack());
+    }
+
+    private TraceWriteStrategy getStrategy(Track track) {
+        // the webhook strategy is set before the webhook track can be selected, and is never unset,
+        // but a run taken over from the predecessor can be on the webhook track before the Agent is probed
+        TraceWriteStrategy webhook = webhookStrategy;
+        return track == Track.WEBHOOK && webhook != null ? webhook : apmStrategy;
+    }
+
+    @Override
+    public Track getTrack(Run<?, ?> run) {
+        // consistent with getStrategy, which falls back to the APM track until the webhook strategy is created
+        return getRunTrack(run) == Track.WEBHOOK && webhookStrategy != null ? Track.WEBHOOK : Track.APM;
+    }
+
+    @Nullable
+    @Override
+    public Payload serialize(BuildData buildData, Run<?, ?> run) {
+        try {
+            return getStrategy(getRunTrack(run)).serialize(buildData, run);
+        } finally {
+            if (run != null && buildData != null && !buildData.isBuilding()) {
+                // the payload of the finished build is the last payload of the run
+                runTracks.remove(run.getExternalizableId());
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public Payload serialize(PipelineStepData stepData, Run<?, ?> run) throws IOException, InterruptedException {
+        return getStrategy(getRunTrack(run)).serialize(stepData, run);
+    }
+
+    @Override
+    public void takeOver(TraceWriteStrategy predecessor) {
+        if (predecessor instanceof AgentTraceWriteStrategy) {
+            ((AgentTraceWriteStrategy) predecessor).runTracks.forEach(runTracks::putIfAbsent);
+        }
+    }
+
+    @Override
+    public void release(Run<?, ?> run) {
+        runTracks.remove(run.getExternalizableId());
+    }
+
+    @Override
+    public void send(Collection<Payload> spans) {
+        List<Payload> apmSpans = new ArrayList<>();
+        List<Payload> webhookSpans = new ArrayList<>();
+        for (Payload span : spans) {
+            if (span.getTrack() == Track.WEBHOOK) {
+                webhookSpans.add(span);
+            } else {
+                apmSpans.add(span);
+            }
+        }
+        if (!apmSpans.isEmpty()) {
+            apmStrategy.send(apmSpans);
+        }
+        try {
+            if (!webhookSpans.isEmpty()) {
+                TraceWriteStrategy webhook = webhookStrategy;
+                if (webhook != null) {
+                    webhook.send(webhookSpans);
+                } else {
+                    // only possible for payloads migrated from the predecessor before the Agent is probed
+                    logger.warning("Dropping " + webhookSpans.size() + " pipeline spans: the Datadog Agent does not support the EVP Proxy");
+                }
+            }
+        } finally {
+            closeReplacedWebhookStrategies();
+        }
+    }
+
+    private void closeReplacedWebhookStrategies() {
+        TraceWriteStrategy replaced;
+        while ((replaced = replacedWebhookStrategies.poll()) != null) {
+            replaced.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (nextProbe != null) {
+                nextProbe.cancel(false);
+                nextProbe = null;
+            }
+        }
+        apmStrategy.close();
+        closeReplacedWebhookStrategies();
+        TraceWriteStrategy webhook = webhookStrategy;
+        if (webhook != null) {
+            webhook.close();
+        }
+    }
+}
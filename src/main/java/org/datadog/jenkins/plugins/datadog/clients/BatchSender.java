@@ -2,14 +2,17 @@ package org.datadog.jenkins.plugins.datadog.clients;
 
 import net.sf.json.JSONObject;
 import java.io.ByteArrayOutputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 import java.util.logging.Logger;
-import java.util.zip.GZIPOutputStream;
+import org.datadog.jenkins.plugins.datadog.util.InFlightLimit;
+import org.datadog.jenkins.plugins.datadog.util.ThrowingConsumer;
 
 public class BatchSender<T> implements JsonPayloadSender<T> {
 
@@ -19,12 +22,19 @@ public class BatchSender<T> implements JsonPayloadSender<T> {
     private static final byte[] END_JSON_ARRAY = "]".getBytes(StandardCharsets.UTF_8);
     private static final byte[] COMMA = ",".getBytes(StandardCharsets.UTF_8);
 
+    // uncompressed request is only needed until it is compressed, so the buffer can be reused
+    private static final ThreadLocal<GzipCompressor.ReusableByteArrayOutputStream> UNCOMPRESSED_REQUEST_BUFFER =
+            ThreadLocal.withInitial(() -> new GzipCompressor.ReusableByteArrayOutputStream(64 * 1024));
+
     private final HttpClient httpClient;
     private final String url;
     private final Map<String, String> headers;
     private final int batchLimitBytes;
     private final Function<T, JSONObject> payloadToJson;
     private final boolean compress;
+    private final GzipCompressor compressor;
+    /** Limits the requests sent with {@link #sendAsync} that are waiting for a response or a retry */
+    private final InFlightLimit inFlightLimit = new InFlightLimit();
 
     public BatchSender(HttpClient httpClient,
                        String url,
@@ -38,6 +48,7 @@ public class BatchSender<T> implements JsonPayloadSender<T> {
         this.batchLimitBytes = batchLimitBytes;
         this.payloadToJson = payloadToJson;
         this.compress = compress;
+        this.compressor = GzipCompressor.get();
 
         // older Datadog Agent versions do not support compressed payloads
         // because EVP Proxy prior to v3 drops Content-Encoding header
@@ -48,9 +59,34 @@ public class BatchSender<T> implements JsonPayloadSender<T> {
 
     @Override
     public void send(Collection<T> payloads) throws Exception {
-        ByteArrayOutputStream request = new ByteArrayOutputStream();
-        OutputStream output = compress ? new GZIPOutputStream(request) : request;
+        forEachRequest(payloads, this::post);
+    }
+
+    /**
+     * Sends the batches without waiting for the responses, so that the calling thread is not blocked while failed requests are retried.
+     * The calling thread only waits if too many requests are already in flight.
+     */
+    @Override
+    public CompletableFuture<Void> sendAsync(Collection<T> payloads) {
+        List<CompletableFuture<?>> responses = new ArrayList<>();
+        try {
+            forEachRequest(payloads, request -> responses.add(postAsync(request)));
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            responses.add(CompletableFuture.failedFuture(e));
+        }
+        return CompletableFuture.allOf(responses.toArray(new CompletableFuture[0]));
+    }
 
+    private void forEachRequest(Collection<T> payloads, ThrowingConsumer<byte[]> requestConsumer) throws Exception {
+        // chunks are compressed in parallel only if the compressor has threads to do so,
+        // otherwise every chunk is sent as soon as it is full
+        boolean parallel = compress && compressor.isParallel();
+        List<List<byte[]>> pendingChunks = new ArrayList<>();
+
+        List<byte[]> chunk = new ArrayList<>();
         // the backend checks the size limit against the uncompressed body of the request
         int uncompressedRequestLength = 0;
 
@@ -63,21 +99,64 @@ public class BatchSender<T> implements JsonPayloadSender<T> {
             }
 
             if (uncompressedRequestLength + body.length + 2 > batchLimitBytes) { // + 2 is for comma and array end: ,<payload>]
-                output.write(END_JSON_ARRAY);
-                output.close();
-                httpClient.post(url, headers, "application/json", request.toByteArray(), Function.identity());
-                request = new ByteArrayOutputStream();
-                output = compress ? new GZIPOutputStream(request) : request;
+                if (parallel) {
+                    pendingChunks.add(chunk);
+                } else {
+                    requestConsumer.accept(encode(chunk, uncompressedRequestLength + 1));
+                }
+                chunk = new ArrayList<>();
                 uncompressedRequestLength = 0;
             }
 
-            output.write(uncompressedRequestLength == 0 ? BEGIN_JSON_ARRAY : COMMA);
-            output.write(body);
+            chunk.add(body);
             uncompressedRequestLength += body.length + 1;
         }
 
-        output.write(END_JSON_ARRAY);
-        output.close();
-        httpClient.post(url, headers, "application/json", request.toByteArray(), Function.identity());
+        if (!chunk.isEmpty()) {
+            if (parallel) {
+                pendingChunks.add(chunk);
+            } else {
+                requestConsumer.accept(encode(chunk, uncompressedRequestLength + 1));
+            }
+        }
+
+        if (!pendingChunks.isEmpty()) {
+            for (byte[] request : compressor.encodeAll(pendingChunks, c -> encode(c, batchLimitBytes))) {
+                requestConsumer.accept(request);
+            }
+        }
+    }
+
+    private void post(byte[] request) throws Exception {
+        httpClient.post(url, headers, "application/json", request, Function.identity());
+    }
+
+    private CompletableFuture<?> postAsync(byte[] request) throws Exception {
+        return inFlightLimit.start(() -> httpClient.postAsync(url, headers, "application/json", request, Function.identity()));
+    }
+
+    private byte[] encode(List<byte[]> chunk, int expectedLength) {
+        if (!compress) {
+            ByteArrayOutputStream request = new ByteArrayOutputStream(expectedLength);
+            writeJsonArray(chunk, request);
+            return request.toByteArray();
+        }
+
+        GzipCompressor.ReusableByteArrayOutputStream request = UNCOMPRESSED_REQUEST_BUFFER.get();
+        request.reset();
+        writeJsonArray(chunk, request);
+        return compressor.gzip(request.getBuffer(), 0, request.size());
+    }
+
+    private static void writeJsonArray(List<byte[]> elements, ByteArrayOutputStream output) {
+        output.write(BEGIN_JSON_ARRAY, 0, BEGIN_JSON_ARRAY.length);
+        for (int i = 0; i < elements.size(); i++) {
+            if (i > 0) {
+                output.write(COMMA, 0, COMMA.length);
+            }
+            byte[] element = elements.get(i);
+            output.write(element, 0, element.length);
+        }
+        output.write(END_JSON_ARRAY, 0, END_JSON_ARRAY.length);
     }
 }
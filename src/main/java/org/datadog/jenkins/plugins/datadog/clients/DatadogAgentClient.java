@@ -46,18 +46,25 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.logging.Logger;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import org.datadog.jenkins.plugins.datadog.DatadogClient;
 import org.datadog.jenkins.plugins.datadog.DatadogEvent;
 import org.datadog.jenkins.plugins.datadog.DatadogGlobalConfiguration;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
 import org.datadog.jenkins.plugins.datadog.logs.LogWriteStrategy;
+import org.datadog.jenkins.plugins.datadog.logs.RemoteLogTarget;
+import org.datadog.jenkins.plugins.datadog.metrics.DistributionSketch;
 import org.datadog.jenkins.plugins.datadog.metrics.MetricsClient;
+import org.datadog.jenkins.plugins.datadog.metrics.TagSet;
 import org.datadog.jenkins.plugins.datadog.traces.mapper.JsonTraceSpanMapper;
 import org.datadog.jenkins.plugins.datadog.traces.write.*;
 import org.datadog.jenkins.plugins.datadog.util.CircuitBreaker;
+import org.datadog.jenkins.plugins.datadog.util.InFlightLimit;
 import org.datadog.jenkins.plugins.datadog.util.TagsUtil;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -78,9 +85,12 @@ public class DatadogAgentClient implements DatadogClient {
     private final Integer traceCollectionPort;
 
     private final HttpClient client;
+    /** Limits the APM payloads that are waiting for a response or a retry */
+    private final InFlightLimit apmInFlightLimit = new InFlightLimit();
 
     // statsd
     private volatile StatsDClient statsd;
+    private volatile DogStatsDDistributionSender distributionSender;
     private final Object statsdInitLock = new Object();
     @GuardedBy("statsdInitLock")
     private String resolvedIp;
@@ -92,6 +102,15 @@ public class DatadogAgentClient implements DatadogClient {
      */
     private static final int HTTP_TIMEOUT_EVP_PROXY_MS = 60 * 1000;
 
+    /** Interval between re-probes of the Agent capabilities, so that an upgraded or reconfigured Agent is picked up */
+    private static final String CAPABILITIES_REFRESH_SECONDS_ENV_VAR = "DD_JENKINS_AGENT_CAPABILITIES_REFRESH_SECONDS";
+    private static final int CAPABILITIES_REFRESH_SECONDS_DEFAULT = 300;
+    /** Interval between probes of the Agent capabilities while the Agent cannot be reached */
+    private static final String CAPABILITIES_RETRY_SECONDS_ENV_VAR = "DD_JENKINS_AGENT_CAPABILITIES_RETRY_SECONDS";
+    private static final int CAPABILITIES_RETRY_SECONDS_DEFAULT = 10;
+
+    private volatile AgentTraceWriteStrategy traceWriteStrategy;
+
     public DatadogAgentClient(String hostname, Integer port, Integer logCollectionPort, Integer traceCollectionPort) {
         this(hostname, port, logCollectionPort, traceCollectionPort, HTTP_TIMEOUT_EVP_PROXY_MS);
     }
@@ -101,7 +120,7 @@ public class DatadogAgentClient implements DatadogClient {
         this.port = port;
         this.logCollectionPort = logCollectionPort;
         this.traceCollectionPort = traceCollectionPort;
-        this.client = new HttpClient(evpProxyTimeoutMillis);
+        this.client = new HttpClient(HttpStream.TRACES, evpProxyTimeoutMillis);
     }
 
     public static class ConnectivityResult {
@@ -158,13 +177,22 @@ public class DatadogAgentClient implements DatadogClient {
     private final class AgentMetrics implements MetricsClient {
         @Override
         public void gauge(String name, double value, String hostname, Map<String, Set<String>> tags) {
+            gauge(name, value, TagsUtil.convertTagsToArray(tags));
+        }
+
+        @Override
+        public void gauge(String name, double value, String hostname, TagSet tags) {
+            gauge(name, value, tags.toArray());
+        }
+
+        private void gauge(String name, double value, String[] tags) {
             try {
                 boolean status = reinitializeStatsDClient(false);
                 if (!status) {
                     return;
                 }
                 logger.fine("Submit gauge with dogStatD client");
-                statsd.gauge(name, value, TagsUtil.convertTagsToArray(tags));
+                statsd.gauge(name, value, tags);
             } catch(Exception e){
                 DatadogUtilities.severe(logger, e, "Failed to send gauge metric payload to DogStatsD");
                 reinitializeStatsDClient(true);
@@ -173,13 +201,37 @@ public class DatadogAgentClient implements DatadogClient {
 
         @Override
         public void rate(String name, double value, String hostname, Map<String, Set<String>> tags) {
+            rate(name, value, TagsUtil.convertTagsToArray(tags));
+        }
+
+        @Override
+        public void rate(String name, double value, String hostname, TagSet tags) {
+            rate(name, value, tags.toArray());
+        }
+
+        @Override
+        public void distribution(String name, DistributionSketch sketch, String hostname, TagSet tags) {
+            try {
+                boolean status = reinitializeStatsDClient(false);
+                if (!status) {
+                    return;
+                }
+                logger.fine("Submit distribution with DogStatsD");
+                distributionSender.send(name, sketch, tags.toArray());
+            } catch(Exception e){
+                DatadogUtilities.severe(logger, e, "Failed to send distribution metric payload to DogStatsD");
+                reinitializeStatsDClient(true);
+            }
+        }
+
+        private void rate(String name, double value, String[] tags) {
             try {
                 boolean status = reinitializeStatsDClient(false);
                 if(!status){
                     return;
                 }
                 logger.fine("increment counter with dogStatD client");
-                statsd.count(name, value, TagsUtil.convertTagsToArray(tags));
+                statsd.count(name, value, tags);
             } catch(Exception e){
                 DatadogUtilities.severe(logger, e, "Failed to increment counter with DogStatsD");
                 reinitializeStatsDClient(true);
@@ -224,13 +276,14 @@ public class DatadogAgentClient implements DatadogClient {
         synchronized (statsdInitLock) {
             try {
                 boolean refreshClient = DatadogUtilities.getDatadogGlobalDescriptor().isRefreshDogstatsdClient();
-                if (this.statsd != null && !force && (!refreshClient || !this.hasIpChanged())) {
+                if (this.statsd != null && this.distributionSender != null && !force && (!refreshClient || !this.hasIpChanged())) {
                     return true;
                 }
 
                 stopStatsDClient();
                 logger.info("Re/Initialize DogStatsD Client: hostname = " + this.hostname + ", port = " + this.port);
                 this.statsd = new NonBlockingStatsDClient(null, this.hostname, this.port);
+                this.distributionSender = new DogStatsDDistributionSender(this.hostname, this.port);
                 return true;
 
             } catch (Exception e){
@@ -264,6 +317,14 @@ public class DatadogAgentClient implements DatadogClient {
             }
             this.statsd = null;
         }
+        if (this.distributionSender != null) {
+            try {
+                this.distributionSender.close();
+            } catch (Exception e) {
+                DatadogUtilities.severe(logger, e, "Failed to close DogStatsD distribution sender");
+            }
+            this.distributionSender = null;
+        }
     }
 
     @Override
@@ -275,6 +336,14 @@ public class DatadogAgentClient implements DatadogClient {
         return new AgentLogWriteStrategy(hostname, logCollectionPort);
     }
 
+    @Override
+    public RemoteLogTarget createRemoteLogTarget(String host, int queueCapacity, int batchSizeLimit) {
+        if (logCollectionPort == null) {
+            return null;
+        }
+        return RemoteLogTarget.datadogAgent(host, logCollectionPort, queueCapacity, batchSizeLimit);
+    }
+
     private static final class AgentLogWriteStrategy implements LogWriteStrategy {
         private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
 
@@ -290,6 +359,7 @@ public class DatadogAgentClient implements DatadogClient {
             this.host = host;
             this.port = port;
             this.circuitBreaker = new CircuitBreaker<>(
+                    "logs.agent",
                     this::doSend,
                     this::fallback,
                     this::handleError,
@@ -302,7 +372,8 @@ public class DatadogAgentClient implements DatadogClient {
             circuitBreaker.accept(payloads);
         }
 
-        private void doSend(List<net.sf.json.JSONObject> payloads) throws Exception {
+        // the circuit breaker does not serialize calls, while the socket can only be used by one thread at a time
+        private synchronized void doSend(List<net.sf.json.JSONObject> payloads) throws Exception {
             if (socket == null || socket.isClosed() || !socket.isConnected()) {
                 socket = new Socket(host, port);
                 out = new BufferedOutputStream(socket.getOutputStream());
@@ -313,7 +384,7 @@ public class DatadogAgentClient implements DatadogClient {
             }
         }
 
-        private void handleError(Exception e) {
+        private synchronized void handleError(Exception e) {
             socket = null;
             DatadogUtilities.severe(logger, e, "Could not write logs to agent");
         }
@@ -323,7 +394,7 @@ public class DatadogAgentClient implements DatadogClient {
         }
 
         @Override
-        public void close() {
+        public synchronized void close() {
             try {
                 if (out != null) {
                     flushSafely();
@@ -348,25 +419,38 @@ public class DatadogAgentClient implements DatadogClient {
 
     @Override
     public TraceWriteStrategy createTraceWriteStrategy() {
-        Set<String> agentEndpoints = fetchAgentEndpoints(client, hostname, traceCollectionPort);
-        boolean evpProxyExists = agentEndpoints.contains("/evp_proxy/v3/");
-        if (evpProxyExists) {
-            DatadogGlobalConfiguration datadogGlobalDescriptor = DatadogUtilities.getDatadogGlobalDescriptor();
-            String urlParameters = datadogGlobalDescriptor != null ? "?service=" + datadogGlobalDescriptor.getCiInstanceName() : "";
-            // sending to evp_proxy/v1 as the Agent does not seem to care which version is set in the URL
-            String url = String.format("http://%s:%d/evp_proxy/v1/api/v2/webhook/%s", hostname, traceCollectionPort, urlParameters);
-
-            Map<String, String> headers = Map.of(
-                "X-Datadog-EVP-Subdomain", "webhook-intake",
-                "DD-CI-PROVIDER-NAME", "jenkins");
-
-            boolean evpProxySupportsGzip = agentEndpoints.contains("/evp_proxy/v4/");
-            JsonPayloadSender<Payload> payloadSender = new BatchSender<>(client, url, headers, PAYLOAD_SIZE_LIMIT, p -> p.getJson(), evpProxySupportsGzip);
-            return new TraceWriteStrategyImpl(Track.WEBHOOK, payloadSender::send);
+        AgentTraceWriteStrategy strategy = new AgentTraceWriteStrategy(
+                () -> probeAgentEndpoints(client, hostname, traceCollectionPort),
+                new TraceWriteStrategyImpl(Track.APM, this::sendSpansToApm),
+                this::createWebhookStrategy,
+                TimeUnit.SECONDS.toMillis(DatadogUtilities.envVar(CAPABILITIES_REFRESH_SECONDS_ENV_VAR, CAPABILITIES_REFRESH_SECONDS_DEFAULT)),
+                TimeUnit.SECONDS.toMillis(DatadogUtilities.envVar(CAPABILITIES_RETRY_SECONDS_ENV_VAR, CAPABILITIES_RETRY_SECONDS_DEFAULT)));
+        traceWriteStrategy = strategy;
+        strategy.start();
+        return strategy;
+    }
 
-        } else {
-            return new TraceWriteStrategyImpl(Track.APM, this::sendSpansToApm);
-        }
+    private TraceWriteStrategy createWebhookStrategy(boolean evpProxySupportsGzip) {
+        DatadogGlobalConfiguration datadogGlobalDescriptor = DatadogUtilities.getDatadogGlobalDescriptor();
+        String urlParameters = datadogGlobalDescriptor != null ? "?service=" + datadogGlobalDescriptor.getCiInstanceName() : "";
+        // sending to evp_proxy/v1 as the Agent does not seem to care which version is set in the URL
+        String url = String.format("http://%s:%d/evp_proxy/v1/api/v2/webhook/%s", hostname, traceCollectionPort, urlParameters);
+
+        Map<String, String> headers = Map.of(
+            "X-Datadog-EVP-Subdomain", "webhook-intake",
+            "DD-CI-PROVIDER-NAME", "jenkins");
+
+        JsonPayloadSender<Payload> payloadSender = new BatchSender<>(client, url, headers, PAYLOAD_SIZE_LIMIT, p -> p.getJson(), evpProxySupportsGzip);
+        return new TraceWriteStrategyImpl(Track.WEBHOOK, payloadSender::sendAsync);
+    }
+
+    /**
+     * @return capabilities negotiated with the Agent, or {@code null} if traces have not been written with this client
+     */
+    @Nullable
+    public AgentCapabilities getCapabilities() {
+        AgentTraceWriteStrategy strategy = traceWriteStrategy;
+        return strategy != null ? strategy.getCapabilities() : null;
     }
 
     /**
@@ -376,20 +460,8 @@ public class DatadogAgentClient implements DatadogClient {
      */
     @SuppressFBWarnings("REC_CATCH_EXCEPTION")
     public static Set<String> fetchAgentEndpoints(HttpClient client, String hostname, Integer traceCollectionPort) {
-        logger.fine("Fetching Agent info");
-
-        String url = String.format("http://%s:%d/info", hostname, traceCollectionPort);
         try {
-            return client.get(url, Collections.emptyMap(), s -> {
-                JSONObject jsonResponse = new JSONObject(s);
-                JSONArray jsonEndpoints = jsonResponse.getJSONArray("endpoints");
-
-                Set<String> endpoints = new HashSet<>();
-                for (int i = 0; i < jsonEndpoints.length(); i++) {
-                    endpoints.add(jsonEndpoints.getString(i));
-                }
-                return endpoints;
-            });
+            return probeAgentEndpoints(client, hostname, traceCollectionPort);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             DatadogUtilities.severe(logger, e, "Could not get the list of agent endpoints");
@@ -400,33 +472,46 @@ public class DatadogAgentClient implements DatadogClient {
         }
     }
 
-    private void sendSpansToApm(Collection<Payload> spans) {
-        try {
-            Map<String, net.sf.json.JSONArray> tracesById = new HashMap<>();
-            for (Payload span : spans) {
-                if (span.getTrack() != Track.APM) {
-                    logger.severe("Expected APM track, got " + span.getTrack() + ", dropping span");
-                    continue;
-                }
-                tracesById.computeIfAbsent(span.getJson().getString(JsonTraceSpanMapper.TRACE_ID), k -> new net.sf.json.JSONArray()).add(span.getJson());
-            }
+    /**
+     * Fetches the supported endpoints from the Trace Agent /info API
+     *
+     * @return a set of endpoints
+     * @throws Exception if /info wasn't available
+     */
+    static Set<String> probeAgentEndpoints(HttpClient client, String hostname, Integer traceCollectionPort) throws Exception {
+        logger.fine("Fetching Agent info");
 
-            final JSONArray jsonTraces = new JSONArray();
-            for(net.sf.json.JSONArray trace : tracesById.values()) {
-                jsonTraces.put(trace);
-            }
-            byte[] payload = jsonTraces.toString().getBytes(StandardCharsets.UTF_8);
+        String url = String.format("http://%s:%d/info", hostname, traceCollectionPort);
+        return client.get(url, Collections.emptyMap(), s -> {
+            JSONObject jsonResponse = new JSONObject(s);
+            JSONArray jsonEndpoints = jsonResponse.getJSONArray("endpoints");
 
-            String tracesUrl = String.format("http://%s:%d/v0.3/traces", hostname, traceCollectionPort);
-            client.put(tracesUrl, Collections.emptyMap(), "application/json", payload, Function.identity());
+            Set<String> endpoints = new HashSet<>();
+            for (int i = 0; i < jsonEndpoints.length(); i++) {
+                endpoints.add(jsonEndpoints.getString(i));
+            }
+            return endpoints;
+        });
+    }
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Interrupted while sending trace", e);
+    private CompletableFuture<?> sendSpansToApm(Collection<Payload> spans) throws Exception {
+        Map<String, net.sf.json.JSONArray> tracesById = new HashMap<>();
+        for (Payload span : spans) {
+            if (span.getTrack() != Track.APM) {
+                logger.severe("Expected APM track, got " + span.getTrack() + ", dropping span");
+                continue;
+            }
+            tracesById.computeIfAbsent(span.getJson().getString(JsonTraceSpanMapper.TRACE_ID), k -> new net.sf.json.JSONArray()).add(span.getJson());
+        }
 
-        } catch (Exception e) {
-            throw new RuntimeException("Error while sending trace", e);
+        final JSONArray jsonTraces = new JSONArray();
+        for(net.sf.json.JSONArray trace : tracesById.values()) {
+            jsonTraces.put(trace);
         }
+        byte[] payload = jsonTraces.toString().getBytes(StandardCharsets.UTF_8);
+
+        String tracesUrl = String.format("http://%s:%d/v0.3/traces", hostname, traceCollectionPort);
+        return apmInFlightLimit.start(() -> client.putAsync(tracesUrl, Collections.emptyMap(), "application/json", payload, Function.identity()));
     }
 
     @Override
@@ -45,7 +45,9 @@ import org.datadog.jenkins.plugins.datadog.DatadogEvent;
 import org.datadog.jenkins.plugins.datadog.DatadogGlobalConfiguration;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
 import org.datadog.jenkins.plugins.datadog.logs.LogWriteStrategy;
+import org.datadog.jenkins.plugins.datadog.metrics.DistributionSketch;
 import org.datadog.jenkins.plugins.datadog.metrics.MetricsClient;
+import org.datadog.jenkins.plugins.datadog.metrics.TagSet;
 import org.datadog.jenkins.plugins.datadog.traces.write.Payload;
 import org.datadog.jenkins.plugins.datadog.traces.write.TraceWriteStrategy;
 import org.datadog.jenkins.plugins.datadog.traces.write.TraceWriteStrategyImpl;
@@ -66,6 +68,7 @@ public class DatadogApiClient implements DatadogClient {
 
     private static final String EVENT = "v1/events";
     private static final String METRIC = "v1/series";
+    private static final String DISTRIBUTION_POINTS = "v1/distribution_points";
     private static final String SERVICECHECK = "v1/check_run";
     private static final String VALIDATE = "v1/validate";
 
@@ -82,13 +85,17 @@ public class DatadogApiClient implements DatadogClient {
     private final Secret apiKey;
 
     private final HttpClient httpClient;
+    private final HttpClient logsHttpClient;
+    private final HttpClient tracesHttpClient;
 
     public DatadogApiClient(String url, String logIntakeUrl, String webhookIntakeUrl, Secret apiKey) {
         this.url = url;
         this.apiKey = apiKey;
         this.logIntakeUrl = logIntakeUrl;
         this.webhookIntakeUrl = webhookIntakeUrl;
-        this.httpClient = new HttpClient(HTTP_TIMEOUT_MS);
+        this.httpClient = new HttpClient(HttpStream.METRICS, HTTP_TIMEOUT_MS);
+        this.logsHttpClient = new HttpClient(HttpStream.LOGS, HTTP_TIMEOUT_MS);
+        this.tracesHttpClient = new HttpClient(HttpStream.TRACES, HTTP_TIMEOUT_MS);
     }
 
     public boolean event(DatadogEvent event) {
@@ -122,19 +129,63 @@ public class DatadogApiClient implements DatadogClient {
         private static final int RATE_INTERVAL = 10;
 
         private final JSONArray series = new JSONArray();
+        private final JSONArray distributionSeries = new JSONArray();
         private final long timestamp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
 
         @Override
         public void gauge(String name, double value, String hostname, Map<String, Set<String>> tags) {
-            addMetric(name, value, hostname, tags, "gauge");
+            addMetric(name, value, hostname, tags != null ? TagsUtil.convertTagsToJSONArray(tags) : null, "gauge");
+        }
+
+        @Override
+        public void gauge(String name, double value, String hostname, TagSet tags) {
+            addMetric(name, value, hostname, toJSONArray(tags), "gauge");
         }
 
         @Override
         public void rate(String name, double value, String hostname, Map<String, Set<String>> tags) {
-            addMetric(name, value, hostname, tags, "rate");
+            addMetric(name, value, hostname, tags != null ? TagsUtil.convertTagsToJSONArray(tags) : null, "rate");
+        }
+
+        @Override
+        public void rate(String name, double value, String hostname, TagSet tags) {
+            addMetric(name, value, hostname, toJSONArray(tags), "rate");
         }
 
-        private void addMetric(String name, double value, String hostname, Map<String, Set<String>> tags, String type) {
+        @Override
+        public void distribution(String name, DistributionSketch sketch, String hostname, TagSet tags) {
+            logger.fine(String.format("Sending distribution '%s' with %s values", name, sketch.getCount()));
+
+            // distribution points cannot carry sample weights, so the value of a bin is repeated for every value it holds
+            JSONArray values = new JSONArray();
+            sketch.forEachBin((value, count) -> {
+                for (long i = 0; i < count; i++) {
+                    values.add(value);
+                }
+            });
+
+            // Setup data point, of type [<unix_timestamp>, [<value>, ...]]
+            JSONArray point = new JSONArray();
+            point.add(timestamp);
+            point.add(values);
+            JSONArray points = new JSONArray();
+            points.add(point);
+
+            JSONObject metric = new JSONObject();
+            metric.put("metric", name);
+            metric.put("points", points);
+            metric.put("host", hostname);
+            metric.put("tags", toJSONArray(tags));
+            distributionSeries.add(metric);
+        }
+
+        private JSONArray toJSONArray(TagSet tags) {
+            JSONArray result = new JSONArray();
+            result.addAll(tags.getRenderedTags());
+            return result;
+        }
+
+        private void addMetric(String name, double value, String hostname, JSONArray tags, String type) {
             logger.fine(String.format("Sending metric '%s' with value %s", name, value));
 
             JSONArray point = new JSONArray();
@@ -163,7 +214,7 @@ public class DatadogApiClient implements DatadogClient {
             }
             if (tags != null) {
                 logger.fine(tags.toString());
-                metric.put("tags", TagsUtil.convertTagsToJSONArray(tags));
+                metric.put("tags", tags);
             }
 
             // Place metric as item of series list
@@ -178,6 +229,12 @@ public class DatadogApiClient implements DatadogClient {
 
             logger.fine(String.format("payload: %s", payload));
             postApi(payload, METRIC);
+
+            if (!distributionSeries.isEmpty()) {
+                JSONObject distributionPayload = new JSONObject();
+                distributionPayload.put("series", distributionSeries);
+                postApi(distributionPayload, DISTRIBUTION_POINTS);
+            }
         }
 
         public JSONObject getOriginMetadata() {
@@ -247,7 +304,7 @@ public class DatadogApiClient implements DatadogClient {
             logger.severe("Datadog Log Intake URL is not set properly, logs will not be written to Datadog");
             return LogWriteStrategy.NO_OP;
         }
-        return new ApiLogWriteStrategy(logIntakeUrl, apiKey, httpClient);
+        return new ApiLogWriteStrategy(logIntakeUrl, apiKey, logsHttpClient);
     }
 
     private static final class ApiLogWriteStrategy implements LogWriteStrategy {
@@ -264,8 +321,9 @@ public class DatadogApiClient implements DatadogClient {
                     Function.identity(),
                     COMPRESS_REQUEST);
 
-            this.circuitBreaker = new CircuitBreaker<>(
-                    payloadSender::send,
+            this.circuitBreaker = CircuitBreaker.async(
+                    "logs.api",
+                    payloadSender::sendAsync,
                     this::fallback,
                     this::handleError,
                     100,
@@ -301,9 +359,9 @@ public class DatadogApiClient implements DatadogClient {
         Map<String, String> headers = Map.of(
             "DD-API-KEY", Secret.toString(apiKey),
             "DD-CI-PROVIDER-NAME", "jenkins");
-        JsonPayloadSender<Payload> payloadSender = new BatchSender<>(httpClient, url, headers, PAYLOAD_SIZE_LIMIT, p -> p.getJson(), COMPRESS_REQUEST);
+        JsonPayloadSender<Payload> payloadSender = new BatchSender<>(tracesHttpClient, url, headers, PAYLOAD_SIZE_LIMIT, p -> p.getJson(), COMPRESS_REQUEST);
 
-        return new TraceWriteStrategyImpl(Track.WEBHOOK, payloadSender::send);
+        return new TraceWriteStrategyImpl(Track.WEBHOOK, payloadSender::sendAsync);
     }
 
     @Override
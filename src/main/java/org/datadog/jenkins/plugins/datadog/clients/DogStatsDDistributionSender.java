@@ -0,0 +1,75 @@
+package org.datadog.jenkins.plugins.datadog.clients;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import org.datadog.jenkins.plugins.datadog.metrics.DistributionSketch;
+
+/**
+ * Sends distribution sketches to DogStatsD, one datagram per sketch bin.
+ * <p>
+ * The representative value of a bin is sent once, with a sample rate of {@code 1/count}:
+ * the Agent weighs every distribution sample by the inverse of its sample rate,
+ * so a bin that holds thousands of values costs a single datagram.
+ * The DogStatsD client cannot be used for this, because it drops samples randomly when the sample rate is below 1.
+ */
+final class DogStatsDDistributionSender implements Closeable {
+
+    private final DatagramChannel channel;
+
+    DogStatsDDistributionSender(String hostname, int port) throws IOException {
+        channel = DatagramChannel.open();
+        try {
+            channel.connect(new InetSocketAddress(hostname, port));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of datagrams that were sent
+     */
+    int send(String name, DistributionSketch sketch, String[] tags) throws IOException {
+        String suffix = tagsSuffix(tags);
+        int[] datagrams = {0};
+        IOException[] error = {null};
+        sketch.forEachBin((value, count) -> {
+            if (error[0] != null) {
+                return;
+            }
+            try {
+                channel.write(ByteBuffer.wrap(format(name, value, count, suffix).getBytes(StandardCharsets.UTF_8)));
+                datagrams[0]++;
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return datagrams[0];
+    }
+
+    static String format(String name, double value, long count, String tagsSuffix) {
+        StringBuilder message = new StringBuilder(name).append(':').append(value).append("|d");
+        if (count > 1) {
+            // the Agent truncates the inverse of the rate to get the sample count,
+            // rounding the rate down makes sure the inverse is not below the count
+            message.append("|@").append(Math.nextDown(1.0 / count));
+        }
+        return message.append(tagsSuffix).toString();
+    }
+
+    private static String tagsSuffix(String[] tags) {
+        return tags == null || tags.length == 0 ? "" : "|#" + String.join(",", tags);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,240 @@
+package org.datadog.jenkins.plugins.datadog.clients;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
+
+/**
+ * Produces GZIP-compressed request bodies.
+ * <p>
+ * Native {@link Deflater} instances are pooled and reused across requests,
+ * and the output is written into a per-thread scratch buffer that is reused between calls,
+ * so that compressing a batch only allocates the resulting byte array.
+ * <p>
+ * Independent chunks can optionally be compressed in parallel
+ * (see {@link #encodeAll(List, Function)}) if more than one compression thread is configured.
+ */
+public final class GzipCompressor {
+
+    private static final String COMPRESSION_LEVEL_ENV_VAR = "DD_JENKINS_HTTP_CLIENT_COMPRESSION_LEVEL";
+    private static final String DEFLATER_POOL_SIZE_ENV_VAR = "DD_JENKINS_HTTP_CLIENT_COMPRESSION_POOL_SIZE";
+    private static final String COMPRESSION_THREADS_ENV_VAR = "DD_JENKINS_HTTP_CLIENT_COMPRESSION_THREADS";
+    private static final int COMPRESSION_LEVEL_DEFAULT = Deflater.DEFAULT_COMPRESSION;
+    private static final int DEFLATER_POOL_SIZE_DEFAULT = 4;
+    private static final int COMPRESSION_THREADS_DEFAULT = 1;
+
+    private static final int MAX_RETAINED_SCRATCH_BUFFER_BYTES = 8 * 1024 * 1024;
+    private static final int MIN_SCRATCH_BUFFER_BYTES = 4 * 1024;
+    private static final int GZIP_HEADER_LENGTH = 10;
+    private static final int GZIP_TRAILER_LENGTH = 8;
+    private static final byte[] GZIP_HEADER = new byte[]{
+            (byte) 0x1f, (byte) 0x8b, // magic number
+            Deflater.DEFLATED, // compression method
+            0, // flags
+            0, 0, 0, 0, // modification time
+            0, // extra flags
+            (byte) 0xff // OS: unknown
+    };
+
+    private static final GzipCompressor INSTANCE = new GzipCompressor(
+            DatadogUtilities.envVar(COMPRESSION_LEVEL_ENV_VAR, COMPRESSION_LEVEL_DEFAULT),
+            DatadogUtilities.envVar(DEFLATER_POOL_SIZE_ENV_VAR, DEFLATER_POOL_SIZE_DEFAULT),
+            DatadogUtilities.envVar(COMPRESSION_THREADS_ENV_VAR, COMPRESSION_THREADS_DEFAULT));
+
+    public static GzipCompressor get() {
+        return INSTANCE;
+    }
+
+    private final int level;
+    private final BlockingQueue<Deflater> deflaters;
+    private final ThreadLocal<byte[]> scratchBuffer = new ThreadLocal<>();
+    private final ExecutorService executor;
+
+    private final Histogram compressionRatio;
+    private final Histogram compressionMicrosPerMegabyte;
+    private final Meter compressionInputBytes;
+    private final Meter compressionOutputBytes;
+
+    GzipCompressor(int level, int deflaterPoolSize, int threads) {
+        this.level = level;
+        this.deflaters = new ArrayBlockingQueue<>(Math.max(deflaterPoolSize, 1));
+        this.executor = threads > 1 ? Executors.newFixedThreadPool(threads, new CompressorThreadFactory()) : null;
+        this.compressionRatio = AsyncWriter.METRICS.histogram("compression.ratio.percent");
+        this.compressionMicrosPerMegabyte = AsyncWriter.METRICS.histogram("compression.micros.per.mb");
+        this.compressionInputBytes = AsyncWriter.METRICS.meter("compression.bytes.in");
+        this.compressionOutputBytes = AsyncWriter.METRICS.meter("compression.bytes.out");
+    }
+
+    public boolean isParallel() {
+        return executor != null;
+    }
+
+    public byte[] gzip(byte[] data) {
+        return gzip(data, 0, data.length);
+    }
+
+    public byte[] gzip(byte[] data, int offset, int length) {
+        long startNanos = System.nanoTime();
+        Deflater deflater = borrowDeflater();
+        try {
+            byte[] out = getScratchBuffer(length);
+            System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER_LENGTH);
+            int position = GZIP_HEADER_LENGTH;
+
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (position == out.length) {
+                    out = growScratchBuffer(out);
+                }
+                position += deflater.deflate(out, position, out.length - position);
+            }
+
+            if (out.length - position < GZIP_TRAILER_LENGTH) {
+                out = growScratchBuffer(out);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, offset, length);
+            position = writeIntLittleEndian(out, position, (int) crc.getValue());
+            position = writeIntLittleEndian(out, position, length);
+
+            byte[] result = Arrays.copyOf(out, position);
+            recordStats(length, result.length, System.nanoTime() - startNanos);
+            return result;
+
+        } finally {
+            returnDeflater(deflater);
+        }
+    }
+
+    /**
+     * Applies the encoder to every input, in parallel if compression threads are configured.
+     * The order of the results matches the order of the inputs.
+     */
+    public <T> List<byte[]> encodeAll(List<T> inputs, Function<T, byte[]> encoder) throws InterruptedException, ExecutionException {
+        List<byte[]> results = new ArrayList<>(inputs.size());
+        if (executor == null || inputs.size() < 2) {
+            for (T input : inputs) {
+                results.add(encoder.apply(input));
+            }
+            return results;
+        }
+
+        List<Future<byte[]>> futures = new ArrayList<>(inputs.size());
+        for (T input : inputs) {
+            futures.add(executor.submit(() -> encoder.apply(input)));
+        }
+        for (Future<byte[]> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    private Deflater borrowDeflater() {
+        Deflater deflater = deflaters.poll();
+        return deflater != null ? deflater : new Deflater(level, true);
+    }
+
+    private void returnDeflater(Deflater deflater) {
+        deflater.reset();
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private byte[] getScratchBuffer(int inputLength) {
+        // compressed JSON is usually several times smaller than the input
+        int expectedLength = Math.max(inputLength / 4, MIN_SCRATCH_BUFFER_BYTES) + GZIP_HEADER_LENGTH + GZIP_TRAILER_LENGTH;
+        byte[] buffer = scratchBuffer.get();
+        if (buffer == null || buffer.length < expectedLength) {
+            buffer = new byte[expectedLength];
+            retainScratchBuffer(buffer);
+        }
+        return buffer;
+    }
+
+    private byte[] growScratchBuffer(byte[] buffer) {
+        byte[] grown = Arrays.copyOf(buffer, buffer.length * 2);
+        retainScratchBuffer(grown);
+        return grown;
+    }
+
+    private void retainScratchBuffer(byte[] buffer) {
+        if (buffer.length <= MAX_RETAINED_SCRATCH_BUFFER_BYTES) {
+            scratchBuffer.set(buffer);
+        }
+    }
+
+    private static int writeIntLittleEndian(byte[] buffer, int position, int value) {
+        buffer[position] = (byte) value;
+        buffer[position + 1] = (byte) (value >>> 8);
+        buffer[position + 2] = (byte) (value >>> 16);
+        buffer[position + 3] = (byte) (value >>> 24);
+        return position + 4;
+    }
+
+    private void recordStats(int inputLength, int outputLength, long elapsedNanos) {
+        compressionInputBytes.mark(inputLength);
+        compressionOutputBytes.mark(outputLength);
+        if (inputLength > 0) {
+            compressionRatio.update(Math.round(outputLength * 100.0 / inputLength));
+            compressionMicrosPerMegabyte.update(Math.round(TimeUnit.NANOSECONDS.toMicros(elapsedNanos) * (1024.0 * 1024.0) / inputLength));
+        }
+    }
+
+    /**
+     * A {@link ByteArrayOutputStream} whose internal buffer can be read without copying
+     * and reused after {@link #reset()}.
+     */
+    static final class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+        private final int initialSize;
+
+        ReusableByteArrayOutputStream(int size) {
+            super(size);
+            this.initialSize = size;
+        }
+
+        /**
+         * Discards the written bytes, releasing the buffer if it grew too large to be retained.
+         */
+        @Override
+        public synchronized void reset() {
+            super.reset();
+            if (buf.length > MAX_RETAINED_SCRATCH_BUFFER_BYTES) {
+                buf = new byte[initialSize];
+            }
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    private static final class CompressorThreadFactory implements ThreadFactory {
+        private final ThreadFactory delegate = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread result = delegate.newThread(r);
+            result.setName("dd-compressor-" + result.getName());
+            result.setDaemon(true);
+            return result;
+        }
+    }
+}
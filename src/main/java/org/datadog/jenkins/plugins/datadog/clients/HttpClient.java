@@ -1,30 +1,45 @@
 package org.datadog.jenkins.plugins.datadog.clients;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntPredicate;
 import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import jenkins.model.Jenkins;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
+import org.eclipse.jetty.client.HttpDestination;
 import org.eclipse.jetty.client.HttpProxy;
 import org.eclipse.jetty.client.Origin;
 import org.eclipse.jetty.client.ProxyConfiguration;
-import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Destination;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
 import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.client.util.BytesContentProvider;
 import org.eclipse.jetty.client.util.InputStreamResponseListener;
@@ -32,15 +47,13 @@ import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 public class HttpClient {
 
-    private static final Object CLIENT_INIT_LOCK = new Object();
-    private static volatile hudson.ProxyConfiguration EFFECTIVE_PROXY_CONFIGURATION;
-    private static volatile org.eclipse.jetty.client.HttpClient CLIENT;
-
     private static final String MAX_CONNECTIONS_PER_DESTINATION_ENV_VAR = "DD_JENKINS_HTTP_CLIENT_MAX_CONNECTIONS_PER_DESTINATION";
     private static final String MAX_THREADS_ENV_VAR = "DD_JENKINS_HTTP_CLIENT_MAX_THREADS";
     private static final String MIN_THREADS_ENV_VAR = "DD_JENKINS_HTTP_CLIENT_MIN_THREADS";
@@ -50,63 +63,156 @@ public class HttpClient {
     private static final String INITIAL_RETRY_DELAY_MILLIS_ENV_VAR = "DD_JENKINS_HTTP_CLIENT_INITIAL_RETRY_DELAY";
     private static final String RETRY_DELAY_FACTOR_ENV_VAR = "DD_JENKINS_HTTP_CLIENT_RETRY_DELAY_FACTOR";
     private static final String MAX_RESPONSE_LENGTH_BYTES_ENV_VAR = "DD_JENKINS_HTTP_CLIENT_MAX_RESPONSE_LENGTH";
-    private static final int MAX_CONNECTIONS_PER_DESTINATION_DEFAULT = 6;
-    private static final int MAX_THREADS_DEFAULT = 64;
+    private static final String HTTP2_ENABLED_ENV_VAR = "DD_JENKINS_HTTP_CLIENT_HTTP2_ENABLED";
+    private static final String HTTP2_CLEARTEXT_ENABLED_ENV_VAR = "DD_JENKINS_HTTP_CLIENT_HTTP2_CLEARTEXT_ENABLED";
+    private static final String HTTP2_MAX_CONNECTIONS_PER_DESTINATION_ENV_VAR = "DD_JENKINS_HTTP_CLIENT_HTTP2_MAX_CONNECTIONS_PER_DESTINATION";
     private static final int MIN_THREADS_DEFAULT = 1;
     private static final int IDLE_THREAD_TIMEOUT_MILLIS = 60_000;
     private static final int RESERVED_THREADS_DEFAULT = -1;
+    private static final int THREAD_POOL_QUEUE_CAPACITY = 1024;
     private static final int MAX_REQUEST_RETRIES_DEFAULT = 5;
     private static final int INITIAL_RETRY_DELAY_MILLIS_DEFAULT = 200;
     private static final double RETRY_DELAY_FACTOR_DEFAULT = 2.0;
     private static final int MAX_RESPONSE_LENGTH_BYTES_DEFAULT = 64 * 1024 * 1024; // 64 MB
+    private static final boolean HTTP2_ENABLED_DEFAULT = false;
+    private static final boolean HTTP2_CLEARTEXT_ENABLED_DEFAULT = false;
+    private static final int HTTP2_MAX_CONNECTIONS_PER_DESTINATION_DEFAULT = 1;
 
     private static final Logger logger = Logger.getLogger(HttpClient.class.getName());
 
-    private static void ensureClientIsUpToDate() {
-        hudson.ProxyConfiguration jenkinsProxyConfiguration = getJenkinsProxyConfiguration();
-        if (CLIENT == null || jenkinsProxyConfiguration != EFFECTIVE_PROXY_CONFIGURATION) {
-            synchronized (CLIENT_INIT_LOCK) {
-                if (CLIENT == null || jenkinsProxyConfiguration != EFFECTIVE_PROXY_CONFIGURATION) {
-                    stopExistingClientIfNeeded();
-                    CLIENT = buildHttpClient(jenkinsProxyConfiguration);
-                    EFFECTIVE_PROXY_CONFIGURATION = jenkinsProxyConfiguration;
-                }
-            }
+    /** Status of the responses that are parsed as results */
+    private static final IntPredicate SUCCESSFUL_STATUS = status -> status >= 200 && status < 300;
+    /** Status of the responses that are not considered failures when the response is not needed */
+    private static final IntPredicate NON_ERRONEOUS_STATUS = status -> status > 0 && status < 400;
+
+    private static final ScheduledExecutorService RETRY_SCHEDULER = buildRetryScheduler();
+    private static final AtomicInteger PENDING_RETRIES = new AtomicInteger();
+    private static final Meter RETRIES = AsyncWriter.METRICS.meter("http.retries");
+
+    static {
+        AsyncWriter.METRICS.gauge("http.retries.pending", () -> PENDING_RETRIES::get);
+    }
+
+    private static final Map<HttpStream, Bulkhead> BULKHEADS = new EnumMap<>(HttpStream.class);
+    private static volatile Map<HttpStream, Limits> CONFIGURED_LIMITS = Collections.emptyMap();
+
+    static {
+        for (HttpStream stream : HttpStream.values()) {
+            BULKHEADS.put(stream, new Bulkhead(stream));
         }
     }
 
+    private static ScheduledExecutorService buildRetryScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "dd-http-client-retry-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * Sets the resources available to each of the streams.
+     * Streams that are not present in the map use the default limits.
+     * The clients of the streams whose limits changed are rebuilt the next time they are used.
+     */
+    public static void configureBulkheads(Map<HttpStream, Limits> limits) {
+        Map<HttpStream, Limits> configuredLimits = new EnumMap<>(HttpStream.class);
+        configuredLimits.putAll(limits);
+        CONFIGURED_LIMITS = Collections.unmodifiableMap(configuredLimits);
+    }
+
+    public static Limits getDefaultLimits(HttpStream stream) {
+        // the env vars that predate the bulkheads apply to every stream
+        return new Limits(
+                DatadogUtilities.envVar(MAX_CONNECTIONS_PER_DESTINATION_ENV_VAR, stream.getDefaultMaxConnectionsPerDestination()),
+                DatadogUtilities.envVar(MAX_THREADS_ENV_VAR, stream.getDefaultMaxThreads()),
+                stream.getDefaultMaxQueuedRequests());
+    }
+
+    private static Limits getLimits(HttpStream stream) {
+        Limits limits = CONFIGURED_LIMITS.get(stream);
+        return limits != null ? limits : getDefaultLimits(stream);
+    }
+
     private static hudson.ProxyConfiguration getJenkinsProxyConfiguration() {
         Jenkins jenkins = Jenkins.getInstanceOrNull();
         return jenkins != null ? jenkins.getProxy() : null;
     }
 
-    private static void stopExistingClientIfNeeded() {
+    private static boolean isHttp2Enabled() {
+        return DatadogUtilities.envVar(HTTP2_ENABLED_ENV_VAR, HTTP2_ENABLED_DEFAULT)
+                || DatadogUtilities.envVar(HTTP2_CLEARTEXT_ENABLED_ENV_VAR, HTTP2_CLEARTEXT_ENABLED_DEFAULT);
+    }
+
+    private static void stop(org.eclipse.jetty.client.HttpClient client) {
         try {
-            if (CLIENT != null) {
-                CLIENT.stop();
-                CLIENT = null;
+            if (client != null) {
+                client.stop();
             }
         } catch (Exception e) {
             // ignore
         }
     }
 
-    private static org.eclipse.jetty.client.HttpClient buildHttpClient(hudson.ProxyConfiguration jenkinsProxyConfiguration) {
-        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(1024);
+    private static org.eclipse.jetty.client.HttpClient buildHttpClient(Limits limits, QueuedThreadPool threadPool, hudson.ProxyConfiguration jenkinsProxyConfiguration) {
+        SslContextFactory.Client sslContextFactory = new SslContextFactory.Client();
+        org.eclipse.jetty.client.HttpClient httpClient = new org.eclipse.jetty.client.HttpClient(new HttpClientTransportOverHTTP(1), sslContextFactory);
+
+        configureProxies(jenkinsProxyConfiguration, httpClient);
+
+        httpClient.setExecutor(threadPool);
+        httpClient.setMaxConnectionsPerDestination(limits.getMaxConnectionsPerDestination());
+        httpClient.setMaxRequestsQueuedPerDestination(limits.getMaxQueuedRequests());
+        return start(httpClient);
+    }
+
+    /**
+     * Builds a client that multiplexes concurrent requests to the same destination over a single HTTP/2 connection.
+     * The protocol is negotiated with ALPN for TLS destinations,
+     * while plain-text destinations (e.g. a local Agent) are sent HTTP/2 frames directly (h2c with prior knowledge).
+     */
+    private static org.eclipse.jetty.client.HttpClient buildHttp2Client(Limits limits, QueuedThreadPool threadPool) {
+        HTTP2Client http2Client = new HTTP2Client();
+        http2Client.setSelectors(1);
+        HttpClientTransportOverHTTP2 transport = new HttpClientTransportOverHTTP2(http2Client);
+        transport.setUseALPN(true);
+
+        SslContextFactory.Client sslContextFactory = new SslContextFactory.Client();
+        org.eclipse.jetty.client.HttpClient httpClient = new org.eclipse.jetty.client.HttpClient(transport, sslContextFactory);
+        httpClient.setExecutor(threadPool);
+        httpClient.setMaxConnectionsPerDestination(DatadogUtilities.envVar(HTTP2_MAX_CONNECTIONS_PER_DESTINATION_ENV_VAR, HTTP2_MAX_CONNECTIONS_PER_DESTINATION_DEFAULT));
+        httpClient.setMaxRequestsQueuedPerDestination(limits.getMaxQueuedRequests());
+        return start(httpClient);
+    }
+
+    private static org.eclipse.jetty.client.HttpClient start(org.eclipse.jetty.client.HttpClient httpClient) {
+        httpClient.setUserAgentField(new HttpField("User-Agent", getUserAgent()));
+        try {
+            httpClient.start();
+        } catch (Exception e) {
+            throw new RuntimeException("Could not start HTTP client", e);
+        }
+        return httpClient;
+    }
+
+    private static QueuedThreadPool buildThreadPool(String threadNamePrefix, Limits limits) {
+        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(THREAD_POOL_QUEUE_CAPACITY);
         ThreadFactory threadFactory = new ThreadFactory() {
             final ThreadFactory delegate = Executors.defaultThreadFactory();
 
             @Override
             public Thread newThread(final Runnable r) {
                 final Thread result = delegate.newThread(r);
-                result.setName("dd-http-client-" + result.getName());
+                result.setName(threadNamePrefix + result.getName());
                 result.setDaemon(true);
                 return result;
             }
         };
 
         QueuedThreadPool threadPool = new QueuedThreadPool(
-                DatadogUtilities.envVar(MAX_THREADS_ENV_VAR, MAX_THREADS_DEFAULT),
+                limits.getMaxThreads(),
                 DatadogUtilities.envVar(MIN_THREADS_ENV_VAR, MIN_THREADS_DEFAULT),
                 DatadogUtilities.envVar(IDLE_THREAD_TIMEOUT_MILLIS_ENV_VAR, IDLE_THREAD_TIMEOUT_MILLIS),
                 DatadogUtilities.envVar(RESERVED_THREADS_ENV_VAR, RESERVED_THREADS_DEFAULT),
@@ -114,22 +220,24 @@ public class HttpClient {
                 null,
                 threadFactory
         );
-        threadPool.setName("dd-http-client-thread-pool");
-
-        SslContextFactory.Client sslContextFactory = new SslContextFactory.Client();
-        org.eclipse.jetty.client.HttpClient httpClient = new org.eclipse.jetty.client.HttpClient(sslContextFactory);
-
-        configureProxies(jenkinsProxyConfiguration, httpClient);
+        threadPool.setName(threadNamePrefix + "thread-pool");
+        return threadPool;
+    }
 
-        httpClient.setExecutor(threadPool);
-        httpClient.setMaxConnectionsPerDestination(DatadogUtilities.envVar(MAX_CONNECTIONS_PER_DESTINATION_ENV_VAR, MAX_CONNECTIONS_PER_DESTINATION_DEFAULT));
-        httpClient.setUserAgentField(new HttpField("User-Agent", getUserAgent()));
+    static boolean useHttp2(String url, boolean http2Enabled, boolean cleartextEnabled) {
+        String scheme;
         try {
-            httpClient.start();
-        } catch (Exception e) {
-            throw new RuntimeException("Could not start HTTP client", e);
+            scheme = URI.create(url).getScheme();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if ("https".equalsIgnoreCase(scheme)) {
+            return http2Enabled;
+        } else if ("http".equalsIgnoreCase(scheme)) {
+            return cleartextEnabled;
+        } else {
+            return false;
         }
-        return httpClient;
     }
 
     private static void configureProxies(hudson.ProxyConfiguration jenkinsProxyConfiguration, org.eclipse.jetty.client.HttpClient httpClient) {
@@ -166,27 +274,36 @@ public class HttpClient {
                 Jenkins.VERSION);
     }
 
+    private final Bulkhead bulkhead;
     private final long timeoutMillis;
     private final HttpRetryPolicy.Factory retryPolicyFactory;
 
-    public HttpClient(long timeoutMillis) {
-        this.timeoutMillis = timeoutMillis;
-        this.retryPolicyFactory = new HttpRetryPolicy.Factory(
+    public HttpClient(HttpStream stream, long timeoutMillis) {
+        this(stream, timeoutMillis, new HttpRetryPolicy.Factory(
                 DatadogUtilities.envVar(MAX_REQUEST_RETRIES_ENV_VAR, MAX_REQUEST_RETRIES_DEFAULT),
                 DatadogUtilities.envVar(INITIAL_RETRY_DELAY_MILLIS_ENV_VAR, INITIAL_RETRY_DELAY_MILLIS_DEFAULT),
-                DatadogUtilities.envVar(RETRY_DELAY_FACTOR_ENV_VAR, RETRY_DELAY_FACTOR_DEFAULT));
+                DatadogUtilities.envVar(RETRY_DELAY_FACTOR_ENV_VAR, RETRY_DELAY_FACTOR_DEFAULT)));
+    }
+
+    HttpClient(HttpStream stream, long timeoutMillis, HttpRetryPolicy.Factory retryPolicyFactory) {
+        this.bulkhead = BULKHEADS.get(stream);
+        this.timeoutMillis = timeoutMillis;
+        this.retryPolicyFactory = retryPolicyFactory;
     }
 
     public <T> T get(String url, Map<String, String> headers, Function<String, T> responseParser) throws ExecutionException, InterruptedException, TimeoutException {
-        return executeSynchronously(
+        return awaitResult(getAsync(url, headers, responseParser));
+    }
+
+    public <T> CompletableFuture<T> getAsync(String url, Map<String, String> headers, Function<String, T> responseParser) {
+        return execute(
                 requestSupplier(url, HttpMethod.GET, headers, null, null),
                 retryPolicyFactory.create(),
+                SUCCESSFUL_STATUS,
                 responseParser);
     }
 
     public void getBinary(String url, Map<String, String> headers, Consumer<InputStream> responseParser) throws ExecutionException, InterruptedException, TimeoutException, IOException {
-        ensureClientIsUpToDate();
-
         Request request = requestSupplier(url, HttpMethod.GET, headers, null, null).get();
         InputStreamResponseListener responseListener = new InputStreamResponseListener();
         request.send(responseListener);
@@ -203,34 +320,49 @@ public class HttpClient {
     }
 
     public <T> T put(String url, Map<String, String> headers, String contentType, byte[] body, Function<String, T> responseParser) throws ExecutionException, InterruptedException, TimeoutException {
-        return executeSynchronously(
+        return awaitResult(putAsync(url, headers, contentType, body, responseParser));
+    }
+
+    public <T> CompletableFuture<T> putAsync(String url, Map<String, String> headers, String contentType, byte[] body, Function<String, T> responseParser) {
+        return execute(
                 requestSupplier(url, HttpMethod.PUT, headers, contentType, body),
                 retryPolicyFactory.create(),
+                SUCCESSFUL_STATUS,
                 responseParser);
     }
 
     public <T> T post(String url, Map<String, String> headers, String contentType, byte[] body, Function<String, T> responseParser) throws ExecutionException, InterruptedException, TimeoutException {
-        return executeSynchronously(
+        return awaitResult(postAsync(url, headers, contentType, body, responseParser));
+    }
+
+    public <T> CompletableFuture<T> postAsync(String url, Map<String, String> headers, String contentType, byte[] body, Function<String, T> responseParser) {
+        return execute(
                 requestSupplier(url, HttpMethod.POST, headers, contentType, body),
                 retryPolicyFactory.create(),
+                SUCCESSFUL_STATUS,
                 responseParser);
     }
 
+    /**
+     * Sends a request without waiting for the response.
+     * Since the response is not needed, any status below 400 is considered a success.
+     */
     public void postAsynchronously(String url, Map<String, String> headers, String contentType, byte[] body) {
-        executeAsynchronously(
-                requestSupplier(
-                        url,
-                        HttpMethod.POST,
-                        headers,
-                        contentType,
-                        body),
-                retryPolicyFactory.create()
-        );
+        CompletableFuture<Void> future = execute(
+                requestSupplier(url, HttpMethod.POST, headers, contentType, body),
+                retryPolicyFactory.create(),
+                NON_ERRONEOUS_STATUS,
+                null);
+        future.whenComplete((result, failure) -> {
+            if (failure != null) {
+                DatadogUtilities.severe(logger, failure, "HTTP request failed: " + url);
+            }
+        });
     }
 
     private Supplier<Request> requestSupplier(String url, HttpMethod method, Map<String, String> headers, String contentType, byte[] body) {
         return () -> {
-            Request request = CLIENT
+            Request request = bulkhead.getClient(url)
                     .newRequest(url)
                     .method(method)
                     .timeout(timeoutMillis, TimeUnit.MILLISECONDS);
@@ -243,100 +375,264 @@ public class HttpClient {
             if (body != null) {
                 request.content(new BytesContentProvider(contentType, body));
             }
+            long startNanos = System.nanoTime();
+            request.onComplete(result -> bulkhead.requestLatency.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS));
             return request;
         };
     }
 
-    private static <T> T executeSynchronously(Supplier<Request> requestSupplier, HttpRetryPolicy retryPolicy, Function<String, T> responseParser) throws InterruptedException, TimeoutException, ExecutionException {
-        ensureClientIsUpToDate();
-
-        while (true) {
-            ContentResponse response;
-            try {
-                Request request = requestSupplier.get();
-                response = request.send();
-
-            } catch (TimeoutException | ExecutionException e) {
-                if (retryPolicy.shouldRetry(null)) {
-                    Thread.sleep(retryPolicy.backoff());
-                    continue;
-                } else {
-                    throw e;
-                }
-            }
-
-            int status = response.getStatus();
-            if (status >= 200 && status < 300) {
-                if (responseParser == null) {
-                    return null;
-                }
-
-                String content = response.getContentAsString();
-                return responseParser.apply(content);
-
+    /**
+     * Waits for the result of a request, unwrapping the exceptions so that they are the same as the ones thrown by a blocking Jetty call.
+     */
+    private static <T> T awaitResult(CompletableFuture<T> future) throws InterruptedException, TimeoutException, ExecutionException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw (TimeoutException) cause;
+            } else if (cause instanceof ExecutionException) {
+                throw (ExecutionException) cause;
             } else {
-                if (retryPolicy.shouldRetry(response)) {
-                    Thread.sleep(retryPolicy.backoff());
-                    continue;
-                }
-
-                String additionalHint;
-                switch (status) {
-                    case HttpStatus.FORBIDDEN_403:
-                        additionalHint = "API key might be invalid, please check your config";
-                        break;
-                    case HttpStatus.NOT_FOUND_404:
-                    case HttpStatus.BAD_REQUEST_400:
-                        additionalHint = "Request URL might be invalid, please check your config";
-                        break;
-                    default:
-                        additionalHint = "";
-                        break;
-                }
-
-                throw new ResponseProcessingException("Received erroneous response " + response + ". "  + additionalHint);
+                throw e;
             }
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
         }
     }
 
-    private static void executeAsynchronously(Supplier<Request> requestSupplier, HttpRetryPolicy retryPolicy) {
-        ensureClientIsUpToDate();
+    /**
+     * Sends a request, retrying it according to the retry policy.
+     * <p>
+     * No thread is blocked while waiting for a retry:
+     * retries are scheduled with {@link #RETRY_SCHEDULER}, and the result is delivered via the returned future.
+     */
+    private static <T> CompletableFuture<T> execute(Supplier<Request> requestSupplier, HttpRetryPolicy retryPolicy, IntPredicate successfulStatus, Function<String, T> responseParser) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        send(requestSupplier, retryPolicy, successfulStatus, responseParser, future);
+        return future;
+    }
+
+    private static <T> void send(Supplier<Request> requestSupplier, HttpRetryPolicy retryPolicy, IntPredicate successfulStatus, Function<String, T> responseParser, CompletableFuture<T> future) {
+        if (future.isDone()) {
+            // cancelled by the caller
+            return;
+        }
+        try {
+            Request request = requestSupplier.get();
+            request.send(new ResponseListener<>(DatadogUtilities.envVar(MAX_RESPONSE_LENGTH_BYTES_ENV_VAR, MAX_RESPONSE_LENGTH_BYTES_DEFAULT), requestSupplier, retryPolicy, successfulStatus, responseParser, future));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
 
-        Request request = requestSupplier.get();
-        request.send(new ResponseListener(DatadogUtilities.envVar(MAX_RESPONSE_LENGTH_BYTES_ENV_VAR, MAX_RESPONSE_LENGTH_BYTES_DEFAULT), requestSupplier, retryPolicy));
+    private static <T> void scheduleRetry(Supplier<Request> requestSupplier, HttpRetryPolicy retryPolicy, IntPredicate successfulStatus, Function<String, T> responseParser, CompletableFuture<T> future) {
+        PENDING_RETRIES.incrementAndGet();
+        RETRIES.mark();
+        try {
+            RETRY_SCHEDULER.schedule(() -> {
+                PENDING_RETRIES.decrementAndGet();
+                send(requestSupplier, retryPolicy, successfulStatus, responseParser, future);
+            }, retryPolicy.backoff(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            PENDING_RETRIES.decrementAndGet();
+            future.completeExceptionally(e);
+        }
     }
 
-    private static final class ResponseListener extends BufferingResponseListener {
+    private static final class ResponseListener<T> extends BufferingResponseListener {
         private final Supplier<Request> requestSupplier;
         private final HttpRetryPolicy retryPolicy;
+        private final IntPredicate successfulStatus;
+        private final Function<String, T> responseParser;
+        private final CompletableFuture<T> future;
 
-        public ResponseListener(int maxLength, Supplier<Request> requestSupplier, HttpRetryPolicy retryPolicy) {
+        public ResponseListener(int maxLength, Supplier<Request> requestSupplier, HttpRetryPolicy retryPolicy, IntPredicate successfulStatus, Function<String, T> responseParser, CompletableFuture<T> future) {
             super(maxLength);
             this.requestSupplier = requestSupplier;
             this.retryPolicy = retryPolicy;
+            this.successfulStatus = successfulStatus;
+            this.responseParser = responseParser;
+            this.future = future;
         }
 
         @Override
         public void onComplete(Result result) {
             try {
                 Response response = result.getResponse();
-                int responseCode = response != null ? response.getStatus() : -1;
-                if (responseCode > 0 && responseCode < 400) {
-                    // successful response
+                int status = response != null && !result.isFailed() ? response.getStatus() : -1;
+                if (successfulStatus.test(status)) {
+                    future.complete(responseParser != null ? responseParser.apply(getContentAsString()) : null);
                     return;
                 }
 
-                if (retryPolicy.shouldRetry(response)) {
-                    Thread.sleep(retryPolicy.backoff());
-                    requestSupplier.get().send(this);
+                if (retryPolicy.shouldRetry(result.isFailed() ? null : response)) {
+                    scheduleRetry(requestSupplier, retryPolicy, successfulStatus, responseParser, future);
+                    return;
+                }
+
+                Throwable failure = result.getFailure();
+                if (failure != null) {
+                    future.completeExceptionally(failure);
                 } else {
-                    Throwable failure = result.getFailure();
-                    DatadogUtilities.severe(logger, failure, "HTTP request failed: " + result.getRequest() + ", response: " + response);
+                    future.completeExceptionally(new ResponseProcessingException("Received erroneous response " + response + ". " + getAdditionalHint(status)));
                 }
 
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static String getAdditionalHint(int status) {
+        switch (status) {
+            case HttpStatus.FORBIDDEN_403:
+                return "API key might be invalid, please check your config";
+            case HttpStatus.NOT_FOUND_404:
+            case HttpStatus.BAD_REQUEST_400:
+                return "Request URL might be invalid, please check your config";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Resources available to a single {@link HttpStream}.
+     */
+    public static final class Limits {
+        private final int maxConnectionsPerDestination;
+        private final int maxThreads;
+        private final int maxQueuedRequests;
+
+        public Limits(int maxConnectionsPerDestination, int maxThreads, int maxQueuedRequests) {
+            this.maxConnectionsPerDestination = maxConnectionsPerDestination;
+            this.maxThreads = maxThreads;
+            this.maxQueuedRequests = maxQueuedRequests;
+        }
+
+        public int getMaxConnectionsPerDestination() {
+            return maxConnectionsPerDestination;
+        }
+
+        public int getMaxThreads() {
+            return maxThreads;
+        }
+
+        public int getMaxQueuedRequests() {
+            return maxQueuedRequests;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Limits limits = (Limits) o;
+            return maxConnectionsPerDestination == limits.maxConnectionsPerDestination
+                    && maxThreads == limits.maxThreads
+                    && maxQueuedRequests == limits.maxQueuedRequests;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(maxConnectionsPerDestination, maxThreads, maxQueuedRequests);
+        }
+
+        @Override
+        public String toString() {
+            return "Limits{maxConnectionsPerDestination=" + maxConnectionsPerDestination
+                    + ", maxThreads=" + maxThreads
+                    + ", maxQueuedRequests=" + maxQueuedRequests + '}';
+        }
+    }
+
+    /**
+     * Jetty clients, thread pool and connection pools dedicated to a single {@link HttpStream},
+     * so that a saturated stream (e.g. a log storm or a slow tracer download) does not delay the others.
+     */
+    private static final class Bulkhead {
+        private final HttpStream stream;
+        private final Timer requestLatency;
+        private volatile hudson.ProxyConfiguration effectiveProxyConfiguration;
+        private volatile Limits effectiveLimits;
+        private volatile QueuedThreadPool threadPool;
+        private volatile org.eclipse.jetty.client.HttpClient client;
+        private volatile org.eclipse.jetty.client.HttpClient http2Client;
+
+        private Bulkhead(HttpStream stream) {
+            this.stream = stream;
+            String prefix = "http." + stream.getName() + ".";
+            this.requestLatency = AsyncWriter.METRICS.timer(prefix + "request.latency");
+            AsyncWriter.METRICS.gauge(prefix + "threads.busy", () -> this::getBusyThreads);
+            AsyncWriter.METRICS.gauge(prefix + "threads.utilization", () -> this::getThreadUtilization);
+            AsyncWriter.METRICS.gauge(prefix + "requests.queued", () -> this::getQueuedRequests);
+        }
+
+        /**
+         * Returns the client that should be used to send a request to the given URL:
+         * HTTP/2 is only used for the destinations it was enabled for,
+         * every other request goes through the HTTP/1.1 client.
+         */
+        private org.eclipse.jetty.client.HttpClient getClient(String url) {
+            ensureClientIsUpToDate();
+            org.eclipse.jetty.client.HttpClient http2Client = this.http2Client;
+            if (http2Client != null && useHttp2(url,
+                    DatadogUtilities.envVar(HTTP2_ENABLED_ENV_VAR, HTTP2_ENABLED_DEFAULT),
+                    DatadogUtilities.envVar(HTTP2_CLEARTEXT_ENABLED_ENV_VAR, HTTP2_CLEARTEXT_ENABLED_DEFAULT))) {
+                return http2Client;
+            }
+            return client;
+        }
+
+        private void ensureClientIsUpToDate() {
+            hudson.ProxyConfiguration jenkinsProxyConfiguration = getJenkinsProxyConfiguration();
+            Limits limits = getLimits(stream);
+            if (client == null || jenkinsProxyConfiguration != effectiveProxyConfiguration || !limits.equals(effectiveLimits)) {
+                synchronized (this) {
+                    if (client == null || jenkinsProxyConfiguration != effectiveProxyConfiguration || !limits.equals(effectiveLimits)) {
+                        stop(client);
+                        stop(http2Client);
+                        QueuedThreadPool threadPool = buildThreadPool("dd-http-client-" + stream.getName() + "-", limits);
+                        // tunneling HTTP/2 through a forward proxy is not supported by the Jetty transport, proxied requests always use HTTP/1.1
+                        http2Client = isHttp2Enabled() && jenkinsProxyConfiguration == null ? buildHttp2Client(limits, threadPool) : null;
+                        client = buildHttpClient(limits, threadPool, jenkinsProxyConfiguration);
+                        this.threadPool = threadPool;
+                        effectiveProxyConfiguration = jenkinsProxyConfiguration;
+                        effectiveLimits = limits;
+                    }
+                }
+            }
+        }
+
+        private int getBusyThreads() {
+            QueuedThreadPool threadPool = this.threadPool;
+            return threadPool != null ? threadPool.getBusyThreads() : 0;
+        }
+
+        private double getThreadUtilization() {
+            QueuedThreadPool threadPool = this.threadPool;
+            return threadPool != null ? (double) threadPool.getBusyThreads() / threadPool.getMaxThreads() : 0;
+        }
+
+        private int getQueuedRequests() {
+            return getQueuedRequests(client) + getQueuedRequests(http2Client);
+        }
+
+        private static int getQueuedRequests(org.eclipse.jetty.client.HttpClient client) {
+            if (client == null) {
+                return 0;
+            }
+            int queuedRequests = 0;
+            for (Destination destination : client.getDestinations()) {
+                if (destination instanceof HttpDestination) {
+                    queuedRequests += ((HttpDestination) destination).getQueuedRequestCount();
+                }
             }
+            return queuedRequests;
         }
     }
 
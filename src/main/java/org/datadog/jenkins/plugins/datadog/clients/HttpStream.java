@@ -0,0 +1,49 @@
+package org.datadog.jenkins.plugins.datadog.clients;
+
+/**
+ * Kinds of data sent by the plugin over HTTP.
+ * Every stream has its own connections, threads and request queue (see {@link HttpClient}),
+ * so that a burst of requests in one stream cannot starve the others.
+ */
+public enum HttpStream {
+    LOGS("logs", "Logs", 6, 32, 1024),
+    TRACES("traces", "Traces", 6, 32, 1024),
+    /** Metrics, events, service checks and connectivity checks */
+    METRICS("metrics", "Metrics and events", 4, 16, 1024),
+    /** Tracer libraries and other artifacts */
+    DOWNLOADS("downloads", "Downloads", 2, 8, 64);
+
+    private final String name;
+    private final String displayName;
+    private final int defaultMaxConnectionsPerDestination;
+    private final int defaultMaxThreads;
+    private final int defaultMaxQueuedRequests;
+
+    HttpStream(String name, String displayName, int defaultMaxConnectionsPerDestination, int defaultMaxThreads, int defaultMaxQueuedRequests) {
+        this.name = name;
+        this.displayName = displayName;
+        this.defaultMaxConnectionsPerDestination = defaultMaxConnectionsPerDestination;
+        this.defaultMaxThreads = defaultMaxThreads;
+        this.defaultMaxQueuedRequests = defaultMaxQueuedRequests;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public int getDefaultMaxConnectionsPerDestination() {
+        return defaultMaxConnectionsPerDestination;
+    }
+
+    public int getDefaultMaxThreads() {
+        return defaultMaxThreads;
+    }
+
+    public int getDefaultMaxQueuedRequests() {
+        return defaultMaxQueuedRequests;
+    }
+}
@@ -1,7 +1,22 @@
 package org.datadog.jenkins.plugins.datadog.clients;
 
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 public interface JsonPayloadSender<T> {
   void send(Collection<T> payloads) throws Exception;
+
+  /**
+   * Sends the payloads without waiting for the responses (or for the retries of failed requests).
+   *
+   * @return the future that completes when all the payloads are sent, or fails if any of them could not be sent
+   */
+  default CompletableFuture<Void> sendAsync(Collection<T> payloads) {
+    try {
+      send(payloads);
+      return CompletableFuture.completedFuture(null);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
 }
@@ -0,0 +1,215 @@
+package org.datadog.jenkins.plugins.datadog.clients.otlp;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.sf.json.JSONObject;
+import org.datadog.jenkins.plugins.datadog.traces.message.TraceSpan;
+
+/**
+ * Encodes spans and log records as OpenTelemetry protocol (OTLP) messages.
+ * <p>
+ * Field numbers follow the definitions in
+ * <a href="https://github.com/open-telemetry/opentelemetry-proto">opentelemetry-proto</a>
+ * ({@code trace/v1/trace.proto}, {@code logs/v1/logs.proto}, {@code common/v1/common.proto}).
+ * Datadog-specific span properties are written as attributes that the Datadog OTLP ingestion maps back
+ * ({@code resource.name}, {@code span.type}, {@code operation.name}).
+ */
+final class OtlpEncoder {
+
+    static final String SCOPE_NAME = "datadog-jenkins-plugin";
+
+    static final String SERVICE_NAME_ATTRIBUTE = "service.name";
+    static final String HOST_NAME_ATTRIBUTE = "host.name";
+    static final String RESOURCE_NAME_ATTRIBUTE = "resource.name";
+    static final String SPAN_TYPE_ATTRIBUTE = "span.type";
+    static final String OPERATION_NAME_ATTRIBUTE = "operation.name";
+    static final String ERROR_MESSAGE_TAG = "error.message";
+
+    // ExportTraceServiceRequest / ExportLogsServiceRequest
+    static final int REQUEST_RESOURCE_SPANS = 1;
+    static final int REQUEST_RESOURCE_LOGS = 1;
+
+    // ResourceSpans / ResourceLogs
+    static final int RESOURCE = 1;
+    static final int SCOPE_SPANS = 2;
+    static final int SCOPE_LOGS = 2;
+
+    // Resource
+    static final int RESOURCE_ATTRIBUTES = 1;
+
+    // ScopeSpans / ScopeLogs
+    static final int SCOPE = 1;
+    static final int SCOPE_SPANS_SPANS = 2;
+    static final int SCOPE_LOGS_LOG_RECORDS = 2;
+
+    // InstrumentationScope
+    static final int SCOPE_NAME_FIELD = 1;
+    static final int SCOPE_VERSION_FIELD = 2;
+
+    // Span
+    static final int SPAN_TRACE_ID = 1;
+    static final int SPAN_SPAN_ID = 2;
+    static final int SPAN_PARENT_SPAN_ID = 4;
+    static final int SPAN_NAME = 5;
+    static final int SPAN_KIND = 6;
+    static final int SPAN_START_TIME = 7;
+    static final int SPAN_END_TIME = 8;
+    static final int SPAN_ATTRIBUTES = 9;
+    static final int SPAN_STATUS = 15;
+
+    static final int SPAN_KIND_INTERNAL = 1;
+
+    // Status
+    static final int STATUS_MESSAGE = 2;
+    static final int STATUS_CODE = 3;
+    static final int STATUS_CODE_ERROR = 2;
+
+    // LogRecord
+    static final int LOG_TIME = 1;
+    static final int LOG_BODY = 5;
+    static final int LOG_ATTRIBUTES = 6;
+    static final int LOG_OBSERVED_TIME = 11;
+
+    // KeyValue
+    static final int KEY_VALUE_KEY = 1;
+    static final int KEY_VALUE_VALUE = 2;
+
+    // AnyValue
+    static final int ANY_VALUE_STRING = 1;
+    static final int ANY_VALUE_BOOL = 2;
+    static final int ANY_VALUE_INT = 3;
+    static final int ANY_VALUE_DOUBLE = 4;
+
+    private OtlpEncoder() {
+    }
+
+    /**
+     * Writes the fields of a {@code Span} message.
+     */
+    static void writeSpan(ProtobufWriter out, TraceSpan span) {
+        TraceSpan.TraceSpanContext context = span.context();
+        out.writeId128(SPAN_TRACE_ID, 0, context.getTraceId());
+        out.writeId64(SPAN_SPAN_ID, context.getSpanId());
+        if (context.getParentId() != 0) {
+            out.writeId64(SPAN_PARENT_SPAN_ID, context.getParentId());
+        }
+        out.writeString(SPAN_NAME, span.getOperationName());
+        out.writeInt64(SPAN_KIND, SPAN_KIND_INTERNAL);
+        out.writeFixed64(SPAN_START_TIME, span.getStartNano());
+        out.writeFixed64(SPAN_END_TIME, span.getStartNano() + span.getDurationNano());
+
+        writeAttribute(out, SPAN_ATTRIBUTES, OPERATION_NAME_ATTRIBUTE, span.getOperationName());
+        writeAttribute(out, SPAN_ATTRIBUTES, RESOURCE_NAME_ATTRIBUTE, span.getResourceName());
+        writeAttribute(out, SPAN_ATTRIBUTES, SPAN_TYPE_ATTRIBUTE, span.getType());
+        for (Map.Entry<String, String> meta : span.getMeta().entrySet()) {
+            writeAttribute(out, SPAN_ATTRIBUTES, meta.getKey(), meta.getValue());
+        }
+        for (Map.Entry<String, Double> metric : span.getMetrics().entrySet()) {
+            writeAttribute(out, SPAN_ATTRIBUTES, metric.getKey(), metric.getValue());
+        }
+
+        if (span.isError()) {
+            int status = out.startMessage(SPAN_STATUS);
+            out.writeString(STATUS_MESSAGE, span.getMeta().get(ERROR_MESSAGE_TAG));
+            out.writeInt64(STATUS_CODE, STATUS_CODE_ERROR);
+            out.endMessage(status);
+        }
+    }
+
+    /**
+     * Writes the fields of a {@code LogRecord} message.
+     * The {@code message} and {@code timestamp} properties of the log become the body and the time of the record,
+     * {@code service} and {@code hostname} are expected to be written as resource attributes,
+     * the other properties are written as attributes.
+     */
+    static void writeLogRecord(ProtobufWriter out, JSONObject log, long observedTimeMillis) {
+        Object timestamp = log.opt("timestamp");
+        if (timestamp instanceof Number) {
+            out.writeFixed64(LOG_TIME, TimeUnit.MILLISECONDS.toNanos(((Number) timestamp).longValue()));
+        }
+        out.writeFixed64(LOG_OBSERVED_TIME, TimeUnit.MILLISECONDS.toNanos(observedTimeMillis));
+
+        int body = out.startMessage(LOG_BODY);
+        out.writeString(ANY_VALUE_STRING, log.optString("message", ""));
+        out.endMessage(body);
+
+        for (Object key : log.keySet()) {
+            String name = String.valueOf(key);
+            if (isLogRecordField(name)) {
+                continue;
+            }
+            writeAttribute(out, LOG_ATTRIBUTES, name, log.opt(name));
+        }
+    }
+
+    private static boolean isLogRecordField(String name) {
+        return "message".equals(name) || "timestamp".equals(name) || "service".equals(name) || "hostname".equals(name);
+    }
+
+    /**
+     * Writes an {@code ExportTraceServiceRequest} containing already encoded {@code Span} messages.
+     */
+    static void writeTracesRequest(ProtobufWriter out, Map<String, String> resourceAttributes, String scopeVersion, List<byte[]> spans) {
+        int resourceSpans = out.startMessage(REQUEST_RESOURCE_SPANS);
+        writeResource(out, resourceAttributes);
+        int scopeSpans = out.startMessage(SCOPE_SPANS);
+        writeScope(out, scopeVersion);
+        for (byte[] span : spans) {
+            out.writeMessage(SCOPE_SPANS_SPANS, span);
+        }
+        out.endMessage(scopeSpans);
+        out.endMessage(resourceSpans);
+    }
+
+    /**
+     * Writes a {@code ResourceLogs} entry of an {@code ExportLogsServiceRequest},
+     * containing already encoded {@code LogRecord} messages.
+     */
+    static void writeResourceLogs(ProtobufWriter out, Map<String, String> resourceAttributes, String scopeVersion, List<byte[]> logRecords) {
+        int resourceLogs = out.startMessage(REQUEST_RESOURCE_LOGS);
+        writeResource(out, resourceAttributes);
+        int scopeLogs = out.startMessage(SCOPE_LOGS);
+        writeScope(out, scopeVersion);
+        for (byte[] logRecord : logRecords) {
+            out.writeMessage(SCOPE_LOGS_LOG_RECORDS, logRecord);
+        }
+        out.endMessage(scopeLogs);
+        out.endMessage(resourceLogs);
+    }
+
+    private static void writeResource(ProtobufWriter out, Map<String, String> attributes) {
+        int resource = out.startMessage(RESOURCE);
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            writeAttribute(out, RESOURCE_ATTRIBUTES, attribute.getKey(), attribute.getValue());
+        }
+        out.endMessage(resource);
+    }
+
+    private static void writeScope(ProtobufWriter out, String version) {
+        int scope = out.startMessage(SCOPE);
+        out.writeString(SCOPE_NAME_FIELD, SCOPE_NAME);
+        out.writeString(SCOPE_VERSION_FIELD, version);
+        out.endMessage(scope);
+    }
+
+    private static void writeAttribute(ProtobufWriter out, int fieldNumber, String key, Object value) {
+        if (key == null || value == null || value instanceof JSONObject && ((JSONObject) value).isNullObject()) {
+            return;
+        }
+        int keyValue = out.startMessage(fieldNumber);
+        out.writeString(KEY_VALUE_KEY, key);
+        int anyValue = out.startMessage(KEY_VALUE_VALUE);
+        if (value instanceof Boolean) {
+            out.writeBool(ANY_VALUE_BOOL, (Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            out.writeInt64(ANY_VALUE_INT, ((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.writeDouble(ANY_VALUE_DOUBLE, ((Number) value).doubleValue());
+        } else {
+            out.writeString(ANY_VALUE_STRING, value.toString());
+        }
+        out.endMessage(anyValue);
+        out.endMessage(keyValue);
+    }
+}
@@ -0,0 +1,342 @@
+package org.datadog.jenkins.plugins.datadog.clients.otlp;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import hudson.model.Run;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import net.sf.json.JSONObject;
+import org.datadog.jenkins.plugins.datadog.DatadogGlobalConfiguration;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.clients.GzipCompressor;
+import org.datadog.jenkins.plugins.datadog.clients.HttpClient;
+import org.datadog.jenkins.plugins.datadog.clients.HttpStream;
+import org.datadog.jenkins.plugins.datadog.logs.LogWriteStrategy;
+import org.datadog.jenkins.plugins.datadog.model.BuildData;
+import org.datadog.jenkins.plugins.datadog.model.PipelineStepData;
+import org.datadog.jenkins.plugins.datadog.traces.DatadogTraceBuildLogic;
+import org.datadog.jenkins.plugins.datadog.traces.DatadogTracePipelineLogic;
+import org.datadog.jenkins.plugins.datadog.traces.message.TraceSpan;
+import org.datadog.jenkins.plugins.datadog.traces.write.Payload;
+import org.datadog.jenkins.plugins.datadog.traces.write.TraceWriteStrategy;
+import org.datadog.jenkins.plugins.datadog.traces.write.Track;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
+import org.datadog.jenkins.plugins.datadog.util.CircuitBreaker;
+import org.datadog.jenkins.plugins.datadog.util.InFlightLimit;
+
+/**
+ * Exports pipeline spans and logs as OTLP protobuf to an OTLP/HTTP endpoint,
+ * such as an OpenTelemetry Collector or the OTLP receiver of the Datadog Agent.
+ * <p>
+ * Every span or log record is encoded once, into a per-thread buffer that is reused between records;
+ * requests are assembled from the encoded records in another reused buffer and then compressed.
+ * The {@code traces.otlp.span.bytes} histogram and the {@code traces.serialization.otlp.*} timers
+ * can be compared with the {@code traces.serialization.*} timers of the JSON tracks.
+ */
+public final class OtlpExporter {
+
+    private static final Logger logger = Logger.getLogger(OtlpExporter.class.getName());
+
+    private static final String ENDPOINT_ENV_VAR = "DD_JENKINS_OTLP_ENDPOINT";
+    private static final String HEADERS_ENV_VAR = "DD_JENKINS_OTLP_HEADERS";
+    private static final String COMPRESSION_ENABLED_ENV_VAR = "DD_JENKINS_OTLP_COMPRESSION_ENABLED";
+    private static final String BATCH_LIMIT_BYTES_ENV_VAR = "DD_JENKINS_OTLP_BATCH_LIMIT_BYTES";
+    private static final boolean DEFAULT_COMPRESSION_ENABLED = true;
+    private static final int DEFAULT_BATCH_LIMIT_BYTES = 4 * 1024 * 1024;
+
+    private static final int HTTP_TIMEOUT_MS = 60 * 1000;
+    private static final String CONTENT_TYPE = "application/x-protobuf";
+    /** Upper bound of the bytes that wrap the records in a request: resource, scope, and the nested message prefixes */
+    private static final int REQUEST_OVERHEAD_BYTES = 1024;
+
+    private static final Timer BUILD_SERIALIZATION = AsyncWriter.METRICS.timer("traces.serialization.otlp.build");
+    private static final Timer STEP_SERIALIZATION = AsyncWriter.METRICS.timer("traces.serialization.otlp.step");
+    private static final Histogram SPAN_BYTES = AsyncWriter.METRICS.histogram("traces.otlp.span.bytes");
+
+    // a record is copied out of the buffer as soon as it is encoded, so the buffer can be reused
+    private static final ThreadLocal<ProtobufWriter> RECORD_BUFFER = ThreadLocal.withInitial(() -> new ProtobufWriter(4 * 1024));
+    // a request is only needed until it is compressed, so the buffer can be reused
+    private static final ThreadLocal<ProtobufWriter> REQUEST_BUFFER = ThreadLocal.withInitial(() -> new ProtobufWriter(64 * 1024));
+
+    private final String tracesUrl;
+    private final String logsUrl;
+    private final Map<String, String> headers;
+    private final boolean compress;
+    private final int batchLimitBytes;
+
+    OtlpExporter(String endpoint, Map<String, String> headers, boolean compress, int batchLimitBytes) {
+        String base = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        this.tracesUrl = base + "/v1/traces";
+        this.logsUrl = base + "/v1/logs";
+        this.headers = new HashMap<>(headers);
+        this.compress = compress;
+        this.batchLimitBytes = Math.max(batchLimitBytes, REQUEST_OVERHEAD_BYTES * 2);
+        if (compress) {
+            this.headers.put("Content-Encoding", "gzip");
+        }
+    }
+
+    /**
+     * @return the exporter, or {@code null} if no OTLP endpoint is configured
+     */
+    @Nullable
+    public static OtlpExporter fromEnvVars() {
+        String endpoint = System.getenv(ENDPOINT_ENV_VAR);
+        if (endpoint == null || endpoint.isBlank()) {
+            return null;
+        }
+        return new OtlpExporter(endpoint.trim(),
+                parseHeaders(System.getenv(HEADERS_ENV_VAR)),
+                DatadogUtilities.envVar(COMPRESSION_ENABLED_ENV_VAR, DEFAULT_COMPRESSION_ENABLED),
+                DatadogUtilities.envVar(BATCH_LIMIT_BYTES_ENV_VAR, DEFAULT_BATCH_LIMIT_BYTES));
+    }
+
+    /**
+     * Parses comma-separated {@code key=value} pairs, same format as {@code OTEL_EXPORTER_OTLP_HEADERS}.
+     */
+    static Map<String, String> parseHeaders(@Nullable String headers) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String header : DatadogUtilities.cstrToList(headers)) {
+            int separator = header.indexOf('=');
+            if (separator <= 0) {
+                logger.warning("Ignoring invalid OTLP header (expected key=value): " + header);
+                continue;
+            }
+            result.put(header.substring(0, separator).trim(), header.substring(separator + 1).trim());
+        }
+        return result;
+    }
+
+    String getTracesUrl() {
+        return tracesUrl;
+    }
+
+    String getLogsUrl() {
+        return logsUrl;
+    }
+
+    public TraceWriteStrategy createTraceWriteStrategy() {
+        return new OtlpTraceWriteStrategy(new HttpClient(HttpStream.TRACES, HTTP_TIMEOUT_MS));
+    }
+
+    public LogWriteStrategy createLogWriteStrategy() {
+        return new OtlpLogWriteStrategy(new HttpClient(HttpStream.LOGS, HTTP_TIMEOUT_MS));
+    }
+
+    static byte[] encodeSpan(TraceSpan span) {
+        ProtobufWriter buffer = RECORD_BUFFER.get();
+        buffer.reset();
+        OtlpEncoder.writeSpan(buffer, span);
+        SPAN_BYTES.update(buffer.size());
+        return buffer.toByteArray();
+    }
+
+    static byte[] encodeLogRecord(JSONObject log, long observedTimeMillis) {
+        ProtobufWriter buffer = RECORD_BUFFER.get();
+        buffer.reset();
+        OtlpEncoder.writeLogRecord(buffer, log, observedTimeMillis);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Splits the records into requests that fit the batch limit.
+     */
+    List<List<byte[]>> split(List<byte[]> records) {
+        List<List<byte[]>> chunks = new ArrayList<>();
+        List<byte[]> chunk = new ArrayList<>();
+        int chunkBytes = REQUEST_OVERHEAD_BYTES;
+        for (byte[] record : records) {
+            int recordBytes = record.length + 1 + ProtobufWriter.varintLength(record.length);
+            if (REQUEST_OVERHEAD_BYTES + recordBytes > batchLimitBytes) {
+                logger.severe("Dropping an OTLP record because size (" + record.length + ") exceeds the allowed limit of " + batchLimitBytes);
+                continue;
+            }
+            if (chunkBytes + recordBytes > batchLimitBytes) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                chunkBytes = REQUEST_OVERHEAD_BYTES;
+            }
+            chunk.add(record);
+            chunkBytes += recordBytes;
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Sends the records without waiting for the responses, the futures of the requests are added to {@code responses}.
+     */
+    private void postAsync(HttpClient httpClient,
+                           InFlightLimit inFlightLimit,
+                           String url,
+                           List<byte[]> records,
+                           BiConsumer<ProtobufWriter, List<byte[]>> requestWriter,
+                           List<CompletableFuture<?>> responses) throws Exception {
+        for (List<byte[]> chunk : split(records)) {
+            ProtobufWriter request = REQUEST_BUFFER.get();
+            request.reset();
+            requestWriter.accept(request, chunk);
+            byte[] body = compress
+                    ? GzipCompressor.get().gzip(request.getBuffer(), 0, request.size())
+                    : request.toByteArray();
+            responses.add(inFlightLimit.start(() -> httpClient.postAsync(url, headers, CONTENT_TYPE, body, Function.identity())));
+        }
+    }
+
+    private static Map<String, String> getTraceResourceAttributes() {
+        DatadogGlobalConfiguration configuration = DatadogUtilities.getDatadogGlobalDescriptor();
+        if (configuration == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.singletonMap(OtlpEncoder.SERVICE_NAME_ATTRIBUTE, configuration.getCiInstanceName());
+    }
+
+    private final class OtlpTraceWriteStrategy implements TraceWriteStrategy {
+        private final HttpClient httpClient;
+        private final InFlightLimit inFlightLimit = new InFlightLimit();
+        private final DatadogTraceBuildLogic buildLogic = new DatadogTraceBuildLogic();
+        private final DatadogTracePipelineLogic pipelineLogic = new DatadogTracePipelineLogic();
+        private final CircuitBreaker<Collection<Payload>> circuitBreaker;
+
+        private OtlpTraceWriteStrategy(HttpClient httpClient) {
+            this.httpClient = httpClient;
+            this.circuitBreaker = CircuitBreaker.async(
+                    "traces.otlp",
+                    this::doSend,
+                    this::fallback,
+                    this::handleError);
+        }
+
+        @Nullable
+        @Override
+        public Payload serialize(BuildData buildData, Run<?, ?> run) {
+            try (Timer.Context ignored = BUILD_SERIALIZATION.time()) {
+                TraceSpan span = buildLogic.toSpan(buildData, run);
+                return span != null ? new Payload(encodeSpan(span), Track.OTLP) : null;
+            }
+        }
+
+        @Nullable
+        @Override
+        public Payload serialize(PipelineStepData stepData, Run<?, ?> run) throws IOException, InterruptedException {
+            try (Timer.Context ignored = STEP_SERIALIZATION.time()) {
+                TraceSpan span = pipelineLogic.toSpan(stepData, run);
+                return new Payload(encodeSpan(span), Track.OTLP);
+            }
+        }
+
+        @Override
+        public Track getTrack(Run<?, ?> run) {
+            return Track.OTLP;
+        }
+
+        @Override
+        public void send(Collection<Payload> spans) {
+            circuitBreaker.accept(spans);
+        }
+
+        private CompletableFuture<?> doSend(Collection<Payload> spans) throws Exception {
+            List<byte[]> records = new ArrayList<>(spans.size());
+            for (Payload span : spans) {
+                byte[] bytes = span.getBytes();
+                if (span.getTrack() != Track.OTLP || bytes == null) {
+                    logger.severe("Expected OTLP track, got " + span.getTrack() + ", dropping span");
+                    continue;
+                }
+                records.add(bytes);
+            }
+            Map<String, String> resourceAttributes = getTraceResourceAttributes();
+            String version = DatadogUtilities.getDatadogPluginVersion();
+            List<CompletableFuture<?>> responses = new ArrayList<>();
+            postAsync(httpClient, inFlightLimit, tracesUrl, records, (request, chunk) -> OtlpEncoder.writeTracesRequest(request, resourceAttributes, version, chunk), responses);
+            return CompletableFuture.allOf(responses.toArray(new CompletableFuture[0]));
+        }
+
+        private void fallback(Collection<Payload> spans) {
+            logger.fine("Ignoring " + spans.size() + " because transport is broken");
+        }
+
+        private void handleError(Exception e) {
+            DatadogUtilities.severe(logger, e, "Error while sending OTLP traces to " + tracesUrl);
+        }
+    }
+
+    private final class OtlpLogWriteStrategy implements LogWriteStrategy {
+        private final HttpClient httpClient;
+        private final InFlightLimit inFlightLimit = new InFlightLimit();
+        private final CircuitBreaker<List<JSONObject>> circuitBreaker;
+
+        private OtlpLogWriteStrategy(HttpClient httpClient) {
+            this.httpClient = httpClient;
+            this.circuitBreaker = CircuitBreaker.async(
+                    "logs.otlp",
+                    this::doSend,
+                    this::fallback,
+                    this::handleError,
+                    100,
+                    CircuitBreaker.DEFAULT_MAX_HEALTH_CHECK_DELAY_MILLIS,
+                    CircuitBreaker.DEFAULT_DELAY_FACTOR);
+        }
+
+        @Override
+        public void send(List<JSONObject> logs) {
+            circuitBreaker.accept(logs);
+        }
+
+        private CompletableFuture<?> doSend(List<JSONObject> logs) throws Exception {
+            long now = System.currentTimeMillis();
+            // logs of different services or hosts belong to different OTLP resources
+            Map<Map<String, String>, List<byte[]>> recordsByResource = new LinkedHashMap<>();
+            for (JSONObject log : logs) {
+                recordsByResource
+                        .computeIfAbsent(getLogResourceAttributes(log), k -> new ArrayList<>())
+                        .add(encodeLogRecord(log, now));
+            }
+            String version = DatadogUtilities.getDatadogPluginVersion();
+            List<CompletableFuture<?>> responses = new ArrayList<>();
+            for (Map.Entry<Map<String, String>, List<byte[]>> e : recordsByResource.entrySet()) {
+                postAsync(httpClient, inFlightLimit, logsUrl, e.getValue(), (request, chunk) -> OtlpEncoder.writeResourceLogs(request, e.getKey(), version, chunk), responses);
+            }
+            return CompletableFuture.allOf(responses.toArray(new CompletableFuture[0]));
+        }
+
+        private Map<String, String> getLogResourceAttributes(JSONObject log) {
+            Map<String, String> attributes = new LinkedHashMap<>();
+            String service = log.optString("service", null);
+            if (service != null) {
+                attributes.put(OtlpEncoder.SERVICE_NAME_ATTRIBUTE, service);
+            }
+            String hostname = log.optString("hostname", null);
+            if (hostname != null) {
+                attributes.put(OtlpEncoder.HOST_NAME_ATTRIBUTE, hostname);
+            }
+            return attributes;
+        }
+
+        private void fallback(List<JSONObject> logs) {
+            // cannot establish connection to the endpoint, do nothing
+        }
+
+        private void handleError(Exception e) {
+            DatadogUtilities.severe(logger, e, "Failed to post OTLP logs to " + logsUrl);
+        }
+
+        @Override
+        public void close() {
+            // do nothing
+        }
+    }
+}
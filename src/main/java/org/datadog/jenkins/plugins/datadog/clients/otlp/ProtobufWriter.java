@@ -0,0 +1,234 @@
+package org.datadog.jenkins.plugins.datadog.clients.otlp;
+
+import java.util.Arrays;
+
+/**
+ * Minimal streaming encoder for the protobuf wire format.
+ * <p>
+ * Fields are written directly into a growable byte array that is reused between messages (see {@link #reset()}).
+ * The length of a nested message is not known until the message is complete,
+ * so its content is written first and then shifted to make room for the length prefix.
+ */
+public final class ProtobufWriter {
+
+    private static final int WIRE_TYPE_VARINT = 0;
+    private static final int WIRE_TYPE_FIXED64 = 1;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+
+    private static final int MAX_RETAINED_BUFFER_BYTES = 8 * 1024 * 1024;
+
+    private final int initialCapacity;
+    private byte[] buffer;
+    private int position;
+
+    public ProtobufWriter(int initialCapacity) {
+        this.initialCapacity = Math.max(initialCapacity, 16);
+        this.buffer = new byte[this.initialCapacity];
+    }
+
+    /**
+     * Discards the written bytes, releasing the buffer if it grew too large to be retained.
+     */
+    public void reset() {
+        position = 0;
+        if (buffer.length > MAX_RETAINED_BUFFER_BYTES) {
+            buffer = new byte[initialCapacity];
+        }
+    }
+
+    public int size() {
+        return position;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Writes a string field, unless the value is {@code null}.
+     */
+    public ProtobufWriter writeString(int fieldNumber, String value) {
+        if (value == null) {
+            return this;
+        }
+        writeTag(fieldNumber, WIRE_TYPE_LENGTH_DELIMITED);
+        writeVarint(utf8Length(value));
+        writeUtf8(value);
+        return this;
+    }
+
+    public ProtobufWriter writeBytes(int fieldNumber, byte[] value) {
+        return writeBytes(fieldNumber, value, 0, value.length);
+    }
+
+    public ProtobufWriter writeBytes(int fieldNumber, byte[] value, int offset, int length) {
+        writeTag(fieldNumber, WIRE_TYPE_LENGTH_DELIMITED);
+        writeVarint(length);
+        writeRaw(value, offset, length);
+        return this;
+    }
+
+    /**
+     * Writes an already encoded message as a length-delimited field.
+     */
+    public ProtobufWriter writeMessage(int fieldNumber, byte[] encodedMessage) {
+        return writeBytes(fieldNumber, encodedMessage);
+    }
+
+    public ProtobufWriter writeBool(int fieldNumber, boolean value) {
+        writeTag(fieldNumber, WIRE_TYPE_VARINT);
+        writeVarint(value ? 1 : 0);
+        return this;
+    }
+
+    public ProtobufWriter writeInt64(int fieldNumber, long value) {
+        writeTag(fieldNumber, WIRE_TYPE_VARINT);
+        writeVarint(value);
+        return this;
+    }
+
+    public ProtobufWriter writeFixed64(int fieldNumber, long value) {
+        writeTag(fieldNumber, WIRE_TYPE_FIXED64);
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[position++] = (byte) (value >>> (8 * i));
+        }
+        return this;
+    }
+
+    public ProtobufWriter writeDouble(int fieldNumber, double value) {
+        return writeFixed64(fieldNumber, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Writes the 16-byte big-endian representation of a 128-bit ID whose high bits are {@code high} and low bits are {@code low}.
+     */
+    public ProtobufWriter writeId128(int fieldNumber, long high, long low) {
+        writeTag(fieldNumber, WIRE_TYPE_LENGTH_DELIMITED);
+        writeVarint(16);
+        writeLongBigEndian(high);
+        writeLongBigEndian(low);
+        return this;
+    }
+
+    /**
+     * Writes the 8-byte big-endian representation of a 64-bit ID.
+     */
+    public ProtobufWriter writeId64(int fieldNumber, long id) {
+        writeTag(fieldNumber, WIRE_TYPE_LENGTH_DELIMITED);
+        writeVarint(8);
+        writeLongBigEndian(id);
+        return this;
+    }
+
+    /**
+     * Starts a nested message. The returned mark has to be passed to {@link #endMessage(int)}
+     * once all the fields of the nested message have been written.
+     */
+    public int startMessage(int fieldNumber) {
+        writeTag(fieldNumber, WIRE_TYPE_LENGTH_DELIMITED);
+        return position;
+    }
+
+    public void endMessage(int mark) {
+        int length = position - mark;
+        int prefixLength = varintLength(length);
+        ensureCapacity(prefixLength);
+        System.arraycopy(buffer, mark, buffer, mark + prefixLength, length);
+        int end = position + prefixLength;
+        position = mark;
+        writeVarint(length);
+        position = end;
+    }
+
+    private void writeTag(int fieldNumber, int wireType) {
+        writeVarint((fieldNumber << 3) | wireType);
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeLongBigEndian(long value) {
+        ensureCapacity(8);
+        for (int i = 7; i >= 0; i--) {
+            buffer[position++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private void writeRaw(byte[] value, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(value, offset, buffer, position, length);
+        position += length;
+    }
+
+    private void writeUtf8(String s) {
+        ensureCapacity(s.length() * 3);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?'; // unpaired surrogate, same replacement as String.getBytes(UTF_8)
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            length++;
+            value >>>= 7;
+        }
+        return length;
+    }
+
+    private void ensureCapacity(int additional) {
+        int required = position + additional;
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.datadog.jenkins.plugins.datadog.DatadogClient;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
 import org.datadog.jenkins.plugins.datadog.clients.DatadogAgentClient;
 import org.datadog.jenkins.plugins.datadog.clients.HttpClient;
+import org.datadog.jenkins.plugins.datadog.clients.HttpStream;
 import org.datadog.jenkins.plugins.datadog.configuration.api.intake.DatadogSite;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -70,7 +71,9 @@ public class DatadogAgentConfiguration extends DatadogClientConfiguration {
         Integer agentPort = DatadogAgentConfigurationDescriptor.getAgentPortFromEnvVars(this.agentPort);
         Integer agentLogCollectionPort = DatadogAgentConfigurationDescriptor.getAgentLogCollectionPortFromEnvVars(this.agentLogCollectionPort);
         Integer agentTraceCollectionPort = DatadogAgentConfigurationDescriptor.getAgentTraceCollectionPortFromEnvVars(this.agentTraceCollectionPort);
-        return new DatadogAgentConfiguration(agentHost, agentPort, agentLogCollectionPort, agentTraceCollectionPort);
+        DatadogAgentConfiguration configuration = new DatadogAgentConfiguration(agentHost, agentPort, agentLogCollectionPort, agentTraceCollectionPort);
+        configuration.setHttpBulkheads(getHttpBulkheads());
+        return configuration;
     }
 
     public String getAgentHost() {
@@ -91,6 +94,7 @@ public class DatadogAgentConfiguration extends DatadogClientConfiguration {
 
     @Override
     public DatadogClient createClient() {
+        configureHttpBulkheads();
         return new DatadogAgentClient(agentHost, agentPort, agentLogCollectionPort, agentTraceCollectionPort);
     }
 
@@ -110,7 +114,7 @@ public class DatadogAgentConfiguration extends DatadogClientConfiguration {
             return FormValidation.error("Trace collection port missing");
         }
         try {
-            Set<String> endpoints = DatadogAgentClient.fetchAgentEndpoints(new HttpClient(AGENT_CONNECTIVITY_CHECK_TIMEOUT_MILLIS), agentHost, agentTraceCollectionPort);
+            Set<String> endpoints = DatadogAgentClient.fetchAgentEndpoints(new HttpClient(HttpStream.METRICS, AGENT_CONNECTIVITY_CHECK_TIMEOUT_MILLIS), agentHost, agentTraceCollectionPort);
             if (!endpoints.isEmpty()) {
                 return FormValidation.ok("Success!");
             } else {
@@ -385,11 +389,12 @@ public class DatadogAgentConfiguration extends DatadogClientConfiguration {
         return Objects.equals(agentHost, that.agentHost)
                 && Objects.equals(agentPort, that.agentPort)
                 && Objects.equals(agentLogCollectionPort, that.agentLogCollectionPort)
-                && Objects.equals(agentTraceCollectionPort, that.agentTraceCollectionPort);
+                && Objects.equals(agentTraceCollectionPort, that.agentTraceCollectionPort)
+                && Objects.equals(getHttpBulkheads(), that.getHttpBulkheads());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(agentHost, agentPort, agentLogCollectionPort, agentTraceCollectionPort);
+        return Objects.hash(agentHost, agentPort, agentLogCollectionPort, agentTraceCollectionPort, getHttpBulkheads());
     }
 }
@@ -22,6 +22,7 @@ import org.datadog.jenkins.plugins.datadog.DatadogClient;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
 import org.datadog.jenkins.plugins.datadog.clients.DatadogApiClient;
 import org.datadog.jenkins.plugins.datadog.clients.HttpClient;
+import org.datadog.jenkins.plugins.datadog.clients.HttpStream;
 import org.datadog.jenkins.plugins.datadog.configuration.api.intake.DatadogIntake;
 import org.datadog.jenkins.plugins.datadog.configuration.api.key.DatadogApiKey;
 import org.datadog.jenkins.plugins.datadog.configuration.api.key.DatadogTextApiKey;
@@ -58,6 +59,7 @@ public class DatadogApiConfiguration extends DatadogClientConfiguration {
 
     @Override
     public DatadogClient createClient() {
+        configureHttpBulkheads();
         return new DatadogApiClient(intake.getApiUrl(), intake.getLogsUrl(), intake.getWebhooksUrl(), getApiKeyValue());
     }
 
@@ -112,7 +114,7 @@ public class DatadogApiConfiguration extends DatadogClientConfiguration {
 
         byte[] body = payload.getBytes(StandardCharsets.UTF_8);
         try {
-            new HttpClient(30_000).post(url, headers, "application/json", body, responseParser);
+            new HttpClient(HttpStream.METRICS, 30_000).post(url, headers, "application/json", body, responseParser);
 
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -191,11 +193,12 @@ public class DatadogApiConfiguration extends DatadogClientConfiguration {
         }
         DatadogApiConfiguration that = (DatadogApiConfiguration) o;
         return Objects.equals(intake, that.intake)
-                && Objects.equals(apiKey, that.apiKey);
+                && Objects.equals(apiKey, that.apiKey)
+                && Objects.equals(getHttpBulkheads(), that.getHttpBulkheads());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(intake, apiKey);
+        return Objects.hash(intake, apiKey, getHttpBulkheads());
     }
 }
@@ -4,18 +4,48 @@ import hudson.model.Describable;
 import hudson.model.Descriptor;
 import jenkins.model.Jenkins;
 import org.datadog.jenkins.plugins.datadog.DatadogClient;
+import org.datadog.jenkins.plugins.datadog.clients.HttpClient;
+import org.datadog.jenkins.plugins.datadog.clients.HttpStream;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import javax.annotation.Nullable;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 
 public abstract class DatadogClientConfiguration implements Describable<DatadogClientConfiguration>, Serializable {
 
+    private List<DatadogHttpBulkhead> httpBulkheads;
+
     public abstract DatadogClient createClient();
 
+    public List<DatadogHttpBulkhead> getHttpBulkheads() {
+        return httpBulkheads != null ? httpBulkheads : Collections.emptyList();
+    }
+
+    @DataBoundSetter
+    public void setHttpBulkheads(List<DatadogHttpBulkhead> httpBulkheads) {
+        this.httpBulkheads = httpBulkheads != null && !httpBulkheads.isEmpty() ? new ArrayList<>(httpBulkheads) : null;
+    }
+
+    /**
+     * Applies the configured HTTP resource limits to the clients of every stream.
+     * Should be called before the configuration is used to create a Datadog client.
+     */
+    protected void configureHttpBulkheads() {
+        Map<HttpStream, HttpClient.Limits> limits = new EnumMap<>(HttpStream.class);
+        for (DatadogHttpBulkhead bulkhead : getHttpBulkheads()) {
+            if (bulkhead.getStream() != null) {
+                limits.put(bulkhead.getStream(), bulkhead.toLimits());
+            }
+        }
+        HttpClient.configureBulkheads(limits);
+    }
+
     public abstract void validateTracesConnection() throws Descriptor.FormException;
 
     public abstract void validateLogsConnection() throws Descriptor.FormException;
@@ -0,0 +1,145 @@
+package org.datadog.jenkins.plugins.datadog.configuration;
+
+import hudson.Extension;
+import hudson.model.Describable;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import java.io.Serializable;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import jenkins.model.Jenkins;
+import org.datadog.jenkins.plugins.datadog.clients.HttpClient;
+import org.datadog.jenkins.plugins.datadog.clients.HttpStream;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * Connection, thread and request queue limits for one of the HTTP data streams (logs, traces, metrics and events, downloads).
+ * Limits that are not set fall back to the stream defaults.
+ */
+@Symbol("datadogHttpBulkhead")
+public class DatadogHttpBulkhead implements Describable<DatadogHttpBulkhead>, Serializable {
+
+    private final HttpStream stream;
+    private final Integer maxConnectionsPerDestination;
+    private final Integer maxThreads;
+    private final Integer maxQueuedRequests;
+
+    @DataBoundConstructor
+    public DatadogHttpBulkhead(HttpStream stream, Integer maxConnectionsPerDestination, Integer maxThreads, Integer maxQueuedRequests) {
+        this.stream = stream;
+        this.maxConnectionsPerDestination = maxConnectionsPerDestination;
+        this.maxThreads = maxThreads;
+        this.maxQueuedRequests = maxQueuedRequests;
+    }
+
+    public HttpStream getStream() {
+        return stream;
+    }
+
+    @Nullable
+    public Integer getMaxConnectionsPerDestination() {
+        return maxConnectionsPerDestination;
+    }
+
+    @Nullable
+    public Integer getMaxThreads() {
+        return maxThreads;
+    }
+
+    @Nullable
+    public Integer getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+
+    public HttpClient.Limits toLimits() {
+        HttpClient.Limits defaults = HttpClient.getDefaultLimits(stream);
+        return new HttpClient.Limits(
+                maxConnectionsPerDestination != null ? maxConnectionsPerDestination : defaults.getMaxConnectionsPerDestination(),
+                maxThreads != null ? maxThreads : defaults.getMaxThreads(),
+                maxQueuedRequests != null ? maxQueuedRequests : defaults.getMaxQueuedRequests());
+    }
+
+    @Override
+    public Descriptor<DatadogHttpBulkhead> getDescriptor() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            throw new RuntimeException("Jenkins instance is null");
+        }
+        return jenkins.getDescriptorOrDie(DatadogHttpBulkhead.class);
+    }
+
+    @Extension
+    public static final class DatadogHttpBulkheadDescriptor extends Descriptor<DatadogHttpBulkhead> {
+
+        @Override
+        @Nonnull
+        public String getDisplayName() {
+            return "HTTP bulkhead";
+        }
+
+        @RequirePOST
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]") // no side effects, no private information returned
+        public ListBoxModel doFillStreamItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (HttpStream stream : HttpStream.values()) {
+                items.add(stream.getDisplayName(), stream.name());
+            }
+            return items;
+        }
+
+        @RequirePOST
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]") // no side effects, no private information returned
+        public FormValidation doCheckMaxConnectionsPerDestination(@QueryParameter("maxConnectionsPerDestination") final String value) {
+            return validatePositive(value);
+        }
+
+        @RequirePOST
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]") // no side effects, no private information returned
+        public FormValidation doCheckMaxThreads(@QueryParameter("maxThreads") final String value) {
+            FormValidation validation = validatePositive(value);
+            if (validation.kind == FormValidation.Kind.OK && value != null && !value.isEmpty() && Integer.parseInt(value) < 4) {
+                // the Jetty client needs threads for its selector and for processing responses
+                return FormValidation.error("At least 4 threads are required");
+            }
+            return validation;
+        }
+
+        @RequirePOST
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]") // no side effects, no private information returned
+        public FormValidation doCheckMaxQueuedRequests(@QueryParameter("maxQueuedRequests") final String value) {
+            return validatePositive(value);
+        }
+
+        private static FormValidation validatePositive(String value) {
+            if (value == null || value.isEmpty()) {
+                return FormValidation.ok();
+            }
+            return FormValidation.validatePositiveInteger(value);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DatadogHttpBulkhead that = (DatadogHttpBulkhead) o;
+        return stream == that.stream
+                && Objects.equals(maxConnectionsPerDestination, that.maxConnectionsPerDestination)
+                && Objects.equals(maxThreads, that.maxThreads)
+                && Objects.equals(maxQueuedRequests, that.maxQueuedRequests);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(stream, maxConnectionsPerDestination, maxThreads, maxQueuedRequests);
+    }
+}
@@ -0,0 +1,252 @@
+package org.datadog.jenkins.plugins.datadog.configuration;
+
+import hudson.Extension;
+import hudson.model.Describable;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * A rule that reduces the number of spans submitted for pipeline steps.
+ * Matching steps are dropped, sampled, or collapsed with their siblings into a single summary span.
+ * All conditions that are set have to match for the rule to apply.
+ */
+@Symbol("datadogSpanRule")
+public class DatadogSpanRule implements Describable<DatadogSpanRule>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final double DEFAULT_SAMPLE_RATE = 0.1;
+
+    public enum Action {
+        DROP("Drop"),
+        SAMPLE("Sample"),
+        COLLAPSE("Collapse siblings");
+
+        private final String displayName;
+
+        Action(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final Action action;
+    private final String stepName;
+    private final String stageName;
+    private final Integer minDepth;
+    private final Long maxDurationMillis;
+    private final Double sampleRate;
+
+    private transient volatile Pattern stepNamePattern;
+    private transient volatile Pattern stageNamePattern;
+
+    @DataBoundConstructor
+    public DatadogSpanRule(Action action, String stepName, String stageName, Integer minDepth, Long maxDurationMillis, Double sampleRate) {
+        this.action = action;
+        this.stepName = StringUtils.trimToNull(stepName);
+        this.stageName = StringUtils.trimToNull(stageName);
+        this.minDepth = minDepth;
+        this.maxDurationMillis = maxDurationMillis;
+        this.sampleRate = sampleRate;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * @return regular expression that the step function name (e.g. {@code echo}, {@code sh}) has to match
+     */
+    @Nullable
+    public String getStepName() {
+        return stepName;
+    }
+
+    /**
+     * @return regular expression that the name of the enclosing stage has to match
+     */
+    @Nullable
+    public String getStageName() {
+        return stageName;
+    }
+
+    /**
+     * @return minimum number of stages that have to enclose the step
+     */
+    @Nullable
+    public Integer getMinDepth() {
+        return minDepth;
+    }
+
+    /**
+     * @return the rule only applies to steps that took less than this
+     */
+    @Nullable
+    public Long getMaxDurationMillis() {
+        return maxDurationMillis;
+    }
+
+    @Nullable
+    public Double getSampleRate() {
+        return sampleRate;
+    }
+
+    public double getEffectiveSampleRate() {
+        return sampleRate != null ? sampleRate : DEFAULT_SAMPLE_RATE;
+    }
+
+    public boolean matches(@Nullable String stepFunctionName, @Nullable String enclosingStageName, int depth, long durationMillis) {
+        if (stepName != null && (stepFunctionName == null || !getStepNamePattern().matcher(stepFunctionName).matches())) {
+            return false;
+        }
+        if (stageName != null && (enclosingStageName == null || !getStageNamePattern().matcher(enclosingStageName).matches())) {
+            return false;
+        }
+        if (minDepth != null && depth < minDepth) {
+            return false;
+        }
+        return maxDurationMillis == null || durationMillis < maxDurationMillis;
+    }
+
+    private Pattern getStepNamePattern() {
+        Pattern pattern = stepNamePattern;
+        if (pattern == null) {
+            stepNamePattern = pattern = Pattern.compile(stepName);
+        }
+        return pattern;
+    }
+
+    private Pattern getStageNamePattern() {
+        Pattern pattern = stageNamePattern;
+        if (pattern == null) {
+            stageNamePattern = pattern = Pattern.compile(stageName);
+        }
+        return pattern;
+    }
+
+    @Override
+    public Descriptor<DatadogSpanRule> getDescriptor() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            throw new RuntimeException("Jenkins instance is null");
+        }
+        return jenkins.getDescriptorOrDie(DatadogSpanRule.class);
+    }
+
+    @Extension
+    public static final class DatadogSpanRuleDescriptor extends Descriptor<DatadogSpanRule> {
+
+        @Override
+        @Nonnull
+        public String getDisplayName() {
+            return "Step span rule";
+        }
+
+        @RequirePOST
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]") // no side effects, no private information returned
+        public ListBoxModel doFillActionItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (Action action : Action.values()) {
+                items.add(action.getDisplayName(), action.name());
+            }
+            return items;
+        }
+
+        @RequirePOST
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]") // no side effects, no private information returned
+        public FormValidation doCheckStepName(@QueryParameter("stepName") final String value) {
+            return validateRegex(value);
+        }
+
+        @RequirePOST
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]") // no side effects, no private information returned
+        public FormValidation doCheckStageName(@QueryParameter("stageName") final String value) {
+            return validateRegex(value);
+        }
+
+        @RequirePOST
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]") // no side effects, no private information returned
+        public FormValidation doCheckMinDepth(@QueryParameter("minDepth") final String value) {
+            if (StringUtils.isBlank(value)) {
+                return FormValidation.ok();
+            }
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
+        @RequirePOST
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]") // no side effects, no private information returned
+        public FormValidation doCheckMaxDurationMillis(@QueryParameter("maxDurationMillis") final String value) {
+            if (StringUtils.isBlank(value)) {
+                return FormValidation.ok();
+            }
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @RequirePOST
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]") // no side effects, no private information returned
+        public FormValidation doCheckSampleRate(@QueryParameter("sampleRate") final String value) {
+            if (StringUtils.isBlank(value)) {
+                return FormValidation.ok();
+            }
+            try {
+                double sampleRate = Double.parseDouble(value);
+                if (sampleRate < 0 || sampleRate > 1) {
+                    return FormValidation.error("Sample rate has to be between 0 and 1");
+                }
+                return FormValidation.ok();
+            } catch (NumberFormatException e) {
+                return FormValidation.error("Not a number");
+            }
+        }
+
+        private static FormValidation validateRegex(String value) {
+            if (StringUtils.isBlank(value)) {
+                return FormValidation.ok();
+            }
+            try {
+                Pattern.compile(value.trim());
+                return FormValidation.ok();
+            } catch (PatternSyntaxException e) {
+                return FormValidation.error("Invalid regular expression: " + e.getDescription());
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DatadogSpanRule that = (DatadogSpanRule) o;
+        return action == that.action
+                && Objects.equals(stepName, that.stepName)
+                && Objects.equals(stageName, that.stageName)
+                && Objects.equals(minDepth, that.minDepth)
+                && Objects.equals(maxDurationMillis, that.maxDurationMillis)
+                && Objects.equals(sampleRate, that.sampleRate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(action, stepName, stageName, minDepth, maxDurationMillis, sampleRate);
+    }
+}
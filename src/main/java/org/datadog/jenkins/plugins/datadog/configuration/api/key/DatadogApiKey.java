@@ -16,6 +16,7 @@ import net.sf.json.JSONSerializer;
 import org.apache.commons.lang.StringUtils;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
 import org.datadog.jenkins.plugins.datadog.clients.HttpClient;
+import org.datadog.jenkins.plugins.datadog.clients.HttpStream;
 import org.datadog.jenkins.plugins.datadog.configuration.api.intake.DatadogIntake;
 import org.datadog.jenkins.plugins.datadog.configuration.api.intake.DatadogIntakeSite;
 import org.datadog.jenkins.plugins.datadog.configuration.api.intake.DatadogSite;
@@ -65,7 +66,7 @@ public abstract class DatadogApiKey implements Describable<DatadogApiKey>, Seria
         String urlParameters = "?api_key=" + Secret.toString(apiKeyValue);
         String url = apiUrl + VALIDATE_ENDPOINT + urlParameters;
         try {
-            JSONObject json = (JSONObject) new HttpClient(30_000).get(url, Collections.emptyMap(), JSONSerializer::toJSON);
+            JSONObject json = (JSONObject) new HttpClient(HttpStream.METRICS, 30_000).get(url, Collections.emptyMap(), JSONSerializer::toJSON);
             if (json.getBoolean("valid")) {
                 return FormValidation.ok("Great! Your API key is valid.");
             } else {
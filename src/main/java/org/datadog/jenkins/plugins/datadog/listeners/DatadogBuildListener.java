@@ -50,14 +50,18 @@ import org.datadog.jenkins.plugins.datadog.configuration.DatadogClientConfigurat
 import org.datadog.jenkins.plugins.datadog.events.BuildAbortedEventImpl;
 import org.datadog.jenkins.plugins.datadog.events.BuildFinishedEventImpl;
 import org.datadog.jenkins.plugins.datadog.events.BuildStartedEventImpl;
+import org.datadog.jenkins.plugins.datadog.logs.LogRateLimiter;
 import org.datadog.jenkins.plugins.datadog.metrics.Metrics;
 import org.datadog.jenkins.plugins.datadog.metrics.MetricsClient;
+import org.datadog.jenkins.plugins.datadog.metrics.TagSet;
 import org.datadog.jenkins.plugins.datadog.model.*;
 import org.datadog.jenkins.plugins.datadog.model.BuildData;
 import org.datadog.jenkins.plugins.datadog.model.PipelineQueueInfoAction;
 import org.datadog.jenkins.plugins.datadog.model.TraceInfoAction;
 import org.datadog.jenkins.plugins.datadog.traces.BuildSpanAction;
 import org.datadog.jenkins.plugins.datadog.traces.BuildSpanManager;
+import org.datadog.jenkins.plugins.datadog.traces.FlowNodeSpanIds;
+import org.datadog.jenkins.plugins.datadog.traces.StepSpanFilter;
 import org.datadog.jenkins.plugins.datadog.traces.message.TraceSpan;
 import org.datadog.jenkins.plugins.datadog.traces.write.TraceWriter;
 import org.datadog.jenkins.plugins.datadog.traces.write.TraceWriterFactory;
@@ -91,7 +95,9 @@ public class DatadogBuildListener extends RunListener<Run> {
             logger.fine("Start DatadogBuildListener#onInitialize");
 
             run.addAction(new GitMetadataAction());
-            run.addAction(new TraceInfoAction());
+            if (!FlowNodeSpanIds.isDeterministic()) {
+                run.addAction(new TraceInfoAction());
+            }
             run.addAction(new PipelineQueueInfoAction());
 
             BuildData buildData = BuildData.create(run, null);
@@ -105,7 +111,7 @@ public class DatadogBuildListener extends RunListener<Run> {
                 upstreamBuildSpanContext = BuildSpanManager.get().get(upstreamBuildTag);
                 if (upstreamBuildSpanContext == null) {
                     logger.warning("Could not find upstream build span context for tag: " + upstreamBuildTag +
-                            ". Try increasing " + BuildSpanManager.DD_JENKINS_SPAN_CONTEXT_STORAGE_MAX_SIZE_ENV + " if this happens regularly.");
+                            ". Try increasing " + BuildSpanManager.DD_JENKINS_SPAN_CONTEXT_STORAGE_MAX_MEMORY_ENV + " if this happens regularly.");
                 }
             }
 
@@ -203,12 +209,12 @@ public class DatadogBuildListener extends RunListener<Run> {
                 client.event(event);
             }
 
-            Map<String, Set<String>> tags = buildData.getTags();
+            TagSet tags = TagSet.of(buildData.getTags());
             String hostname = buildData.getHostname(DatadogUtilities.getHostname(null));
 
             if (waitingMs != null) {
                 try (MetricsClient metrics = client.metrics()) {
-                    metrics.gauge("jenkins.job.waiting", TimeUnit.MILLISECONDS.toSeconds(waitingMs), hostname, tags);
+                    Metrics.getInstance().submitDuration(metrics, "jenkins.job.waiting", TimeUnit.MILLISECONDS.toSeconds(waitingMs), hostname, tags);
                 }
             }
 
@@ -269,9 +275,9 @@ public class DatadogBuildListener extends RunListener<Run> {
             }
 
             // Send a metric
-            Map<String, Set<String>> tags = buildData.getTags();
+            TagSet tags = TagSet.of(buildData.getTags());
             String hostname = buildData.getHostname(DatadogUtilities.getHostname(null));
-            metrics.gauge("jenkins.job.duration", TimeUnit.MILLISECONDS.toSeconds(buildData.getDuration(0L)), hostname, tags);
+            Metrics.getInstance().submitDuration(metrics, "jenkins.job.duration", TimeUnit.MILLISECONDS.toSeconds(buildData.getDuration(0L)), hostname, tags);
             logger.fine(String.format("[%s]: Duration: %s", buildData.getJobName(), toTimeString(buildData.getDuration(0L))));
 
             if (run instanceof WorkflowRun) {
@@ -281,10 +287,10 @@ public class DatadogBuildListener extends RunListener<Run> {
                     for (StageNodeExt stage : extRun.getStages()) {
                         pauseDurationMillis += stage.getPauseDurationMillis();
                     }
-                    metrics.gauge("jenkins.job.pause_duration", TimeUnit.MILLISECONDS.toSeconds(pauseDurationMillis), hostname, tags);
+                    Metrics.getInstance().submitDuration(metrics, "jenkins.job.pause_duration", TimeUnit.MILLISECONDS.toSeconds(pauseDurationMillis), hostname, tags);
                     logger.fine(String.format("[%s]: Pause Duration: %s", buildData.getJobName(), toTimeString(pauseDurationMillis)));
                     long buildDurationMillis = run.getDuration() - pauseDurationMillis;
-                    metrics.gauge("jenkins.job.build_duration", TimeUnit.MILLISECONDS.toSeconds(buildDurationMillis), hostname, tags);
+                    Metrics.getInstance().submitDuration(metrics, "jenkins.job.build_duration", TimeUnit.MILLISECONDS.toSeconds(buildDurationMillis), hostname, tags);
                     logger.fine(
                             String.format("[%s]: Build Duration (without pause): %s", buildData.getJobName(), toTimeString(buildDurationMillis)));
                 }
@@ -315,24 +321,24 @@ public class DatadogBuildListener extends RunListener<Run> {
                 long cycleTimeMillis = getCycleTime(run);
                 long leadTimeMillis = run.getDuration() + mttrMillis;
 
-                metrics.gauge("jenkins.job.leadtime", TimeUnit.MILLISECONDS.toSeconds(leadTimeMillis), hostname, tags);
+                Metrics.getInstance().submitDuration(metrics, "jenkins.job.leadtime", TimeUnit.MILLISECONDS.toSeconds(leadTimeMillis), hostname, tags);
                 logger.fine(String.format("[%s]: Lead time: %s", buildData.getJobName(), toTimeString(leadTimeMillis)));
                 if (cycleTimeMillis > 0) {
-                    metrics.gauge("jenkins.job.cycletime", TimeUnit.MILLISECONDS.toSeconds(cycleTimeMillis), hostname, tags);
+                    Metrics.getInstance().submitDuration(metrics, "jenkins.job.cycletime", TimeUnit.MILLISECONDS.toSeconds(cycleTimeMillis), hostname, tags);
                     logger.fine(String.format("[%s]: Cycle Time: %s", buildData.getJobName(), toTimeString(cycleTimeMillis)));
                 }
                 if (mttrMillis > 0) {
-                    metrics.gauge("jenkins.job.mttr", TimeUnit.MILLISECONDS.toSeconds(mttrMillis), hostname, tags);
+                    Metrics.getInstance().submitDuration(metrics, "jenkins.job.mttr", TimeUnit.MILLISECONDS.toSeconds(mttrMillis), hostname, tags);
                     logger.fine(String.format("[%s]: MTTR: %s", buildData.getJobName(), toTimeString(mttrMillis)));
                 }
             } else {
                 long feedbackTimeMillis = run.getDuration();
                 long mtbfMillis = getMeanTimeBetweenFailure(run);
 
-                metrics.gauge("jenkins.job.feedbacktime", TimeUnit.MILLISECONDS.toSeconds(feedbackTimeMillis), hostname, tags);
+                Metrics.getInstance().submitDuration(metrics, "jenkins.job.feedbacktime", TimeUnit.MILLISECONDS.toSeconds(feedbackTimeMillis), hostname, tags);
                 logger.fine(String.format("[%s]: Feedback Time: %s", buildData.getJobName(), toTimeString(feedbackTimeMillis)));
                 if (mtbfMillis > 0) {
-                    metrics.gauge("jenkins.job.mtbf", TimeUnit.MILLISECONDS.toSeconds(mtbfMillis), hostname, tags);
+                    Metrics.getInstance().submitDuration(metrics, "jenkins.job.mtbf", TimeUnit.MILLISECONDS.toSeconds(mtbfMillis), hostname, tags);
                     logger.fine(String.format("[%s]: MTBF: %s", buildData.getJobName(), toTimeString(mtbfMillis)));
                 }
             }
@@ -370,6 +376,12 @@ public class DatadogBuildListener extends RunListener<Run> {
                 return;
             }
 
+            // the pipeline span can only be built once all the nodes have been processed
+            DatadogGraphListener.awaitProcessing(run);
+            if (run instanceof WorkflowRun) {
+                DatadogGraphListener.submitCollapsedSteps((WorkflowRun) run);
+            }
+
             BuildData buildData = BuildData.create(run, null);
 
             traceWriter.submitBuild(buildData, run);
@@ -383,6 +395,8 @@ public class DatadogBuildListener extends RunListener<Run> {
         } finally {
             // Explicit removal of InvisibleActions used to collect Traces when the Run finishes.
             cleanUpTraceActions(run);
+            LogRateLimiter.release(run.getExternalizableId());
+            releaseTraceState(run);
         }
     }
 
@@ -442,13 +456,26 @@ public class DatadogBuildListener extends RunListener<Run> {
                 client.event(event);
             }
 
-            Map<String, Set<String>> tags = buildData.getTags();
+            TagSet tags = TagSet.of(buildData.getTags());
             Metrics.getInstance().incrementCounter("jenkins.job.aborted", hostname, tags);
 
             logger.fine("End DatadogBuildListener#onDeleted");
         } catch (Exception e) {
             String text = "Failed to process build deletion: " + e;
             logger.fine(text);
+        } finally {
+            releaseTraceState(run);
+        }
+    }
+
+    /**
+     * Releases the state kept in memory for the run while its traces are collected.
+     */
+    private static void releaseTraceState(Run<?, ?> run) {
+        StepSpanFilter.getInstance().release(run);
+        TraceWriter traceWriter = TraceWriterFactory.getTraceWriter();
+        if (traceWriter != null) {
+            traceWriter.release(run);
         }
     }
 
@@ -26,13 +26,17 @@ THE SOFTWARE.
 package org.datadog.jenkins.plugins.datadog.listeners;
 
 import com.cloudbees.workflow.rest.external.FlowNodeExt;
+import com.codahale.metrics.Timer;
 import hudson.Extension;
+import hudson.init.Terminator;
 import hudson.model.Queue;
+import hudson.model.Run;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -43,6 +47,7 @@ import org.datadog.jenkins.plugins.datadog.audit.DatadogAudit;
 import org.datadog.jenkins.plugins.datadog.clients.ClientHolder;
 import org.datadog.jenkins.plugins.datadog.metrics.Metrics;
 import org.datadog.jenkins.plugins.datadog.metrics.MetricsClient;
+import org.datadog.jenkins.plugins.datadog.metrics.TagSet;
 import org.datadog.jenkins.plugins.datadog.model.BuildData;
 import org.datadog.jenkins.plugins.datadog.model.DatadogPluginAction;
 import org.datadog.jenkins.plugins.datadog.model.PipelineStepData;
@@ -50,8 +55,11 @@ import org.datadog.jenkins.plugins.datadog.model.Status;
 import org.datadog.jenkins.plugins.datadog.model.TraceInfoAction;
 import org.datadog.jenkins.plugins.datadog.model.node.NodeInfoAction;
 import org.datadog.jenkins.plugins.datadog.model.node.StatusAction;
+import org.datadog.jenkins.plugins.datadog.traces.StepSpanFilter;
 import org.datadog.jenkins.plugins.datadog.traces.write.TraceWriter;
 import org.datadog.jenkins.plugins.datadog.traces.write.TraceWriterFactory;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
+import org.datadog.jenkins.plugins.datadog.util.KeyedSerialExecutor;
 import org.datadog.jenkins.plugins.datadog.util.SuppressFBWarnings;
 import org.datadog.jenkins.plugins.datadog.util.TagsUtil;
 import org.jenkinsci.plugins.workflow.actions.ThreadNameAction;
@@ -62,6 +70,7 @@ import org.jenkinsci.plugins.workflow.cps.nodes.StepStartNode;
 import org.jenkinsci.plugins.workflow.flow.GraphListener;
 import org.jenkinsci.plugins.workflow.graph.BlockEndNode;
 import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
+import org.jenkinsci.plugins.workflow.graph.FlowEndNode;
 import org.jenkinsci.plugins.workflow.graph.FlowGraphWalker;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
@@ -69,22 +78,88 @@ import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 /**
  * A GraphListener implementation which computes timing information
  * for the various stages in a pipeline.
+ * <p>
+ * Graph listeners are notified on the CPS VM thread of the pipeline, so any time spent here delays the pipeline itself.
+ * The listener only decides whether a node needs to be processed, and hands it over to a bounded pool of threads
+ * that does the expensive work (gathering build data, computing tags and pause durations, building and submitting spans).
+ * The nodes of a run are processed one at a time, in the order they were received.
+ * When the processing queue is full, the node is processed on the CPS VM thread instead of being dropped,
+ * after the queued nodes of the run (or after the await timeout, if they take longer to process).
  */
 @Extension
 public class DatadogGraphListener implements GraphListener {
 
     private static final Logger logger = Logger.getLogger(DatadogGraphListener.class.getName());
 
+    private static final String ASYNC_ENABLED_ENV_VAR = "DD_JENKINS_GRAPH_LISTENER_ASYNC_ENABLED";
+    private static final String AWAIT_TIMEOUT_ENV_VAR = "DD_JENKINS_GRAPH_LISTENER_AWAIT_TIMEOUT_SECONDS";
+    private static final boolean DEFAULT_ASYNC_ENABLED = true;
+    private static final int DEFAULT_AWAIT_TIMEOUT_SECONDS = 60;
+
+    private static final String NAME = "DD-Graph-Listener";
+    private static final Timer CAPTURE = AsyncWriter.METRICS.timer(NAME + ".capture");
+
     @SuppressFBWarnings("REC_CATCH_EXCEPTION")
     @Override
     public void onNewHead(FlowNode flowNode) {
+        long captureStart = System.nanoTime();
         WorkflowRun run = getRun(flowNode);
         // Filter the node if the job has been excluded from the Datadog plugin configuration.
         if (run == null || !DatadogUtilities.isJobTracked(run)) {
             return;
         }
 
-        if (DatadogUtilities.getDatadogGlobalDescriptor().getEnableCiVisibility()) {
+        boolean ciVisibilityEnabled = DatadogUtilities.getDatadogGlobalDescriptor().getEnableCiVisibility();
+        if (!ciVisibilityEnabled && !isMonitored(flowNode)) {
+            return;
+        }
+
+        if (!isAsync()) {
+            process(run, flowNode, ciVisibilityEnabled);
+            return;
+        }
+
+        try {
+            if (!Processing.EXECUTOR.execute(run.getExternalizableId(), () -> process(run, flowNode, ciVisibilityEnabled))) {
+                logger.fine("Processed pipeline node " + flowNode.getId() + " (" + flowNode.getDisplayName() + ") in run " + run.getDisplayName() + " synchronously: processing queue is full");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            DatadogUtilities.severe(logger, e, "Interrupted while submitting pipeline node " + flowNode.getId() + " for processing");
+        } finally {
+            CAPTURE.update(System.nanoTime() - captureStart, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Waits until the pipeline nodes of the run that were received so far are processed.
+     */
+    public static void awaitProcessing(Run<?, ?> run) throws InterruptedException {
+        if (!isAsync()) {
+            return;
+        }
+        int timeoutSeconds = DatadogUtilities.envVar(AWAIT_TIMEOUT_ENV_VAR, DEFAULT_AWAIT_TIMEOUT_SECONDS);
+        if (!Processing.EXECUTOR.awaitQuiescence(run.getExternalizableId(), timeoutSeconds, TimeUnit.SECONDS)) {
+            logger.warning("Timed out while waiting for the pipeline nodes of run " + run.getDisplayName() + " to be processed");
+        }
+    }
+
+    /**
+     * Called when Jenkins stops, the nodes that are already queued are processed before the pool threads stop.
+     */
+    @Terminator
+    public static void stopProcessing() throws InterruptedException {
+        if (!Processing.EXECUTOR.shutdown(DatadogUtilities.envVar(AWAIT_TIMEOUT_ENV_VAR, DEFAULT_AWAIT_TIMEOUT_SECONDS), TimeUnit.SECONDS)) {
+            logger.warning("Timed out while waiting for the queued pipeline nodes to be processed");
+        }
+    }
+
+    private static boolean isAsync() {
+        return DatadogUtilities.envVar(ASYNC_ENABLED_ENV_VAR, DEFAULT_ASYNC_ENABLED);
+    }
+
+    private void process(WorkflowRun run, FlowNode flowNode, boolean ciVisibilityEnabled) {
+        if (ciVisibilityEnabled) {
             processNode(run, flowNode);
         }
 
@@ -143,9 +218,10 @@ public class DatadogGraphListener implements GraphListener {
             TagsUtil.addTagToTags(tags, "result", result);
             long pauseDuration = getPauseDurationMillis(startNode);
 
-            metrics.gauge("jenkins.job.stage_duration", getTime(startNode, endNode), hostname, tags);
-            metrics.gauge("jenkins.job.stage_pause_duration", pauseDuration, hostname, tags);
-            Metrics.getInstance().incrementCounter("jenkins.job.stage_completed", hostname, tags);
+            TagSet tagSet = TagSet.of(tags);
+            Metrics.getInstance().submitDuration(metrics, "jenkins.job.stage_duration", getTime(startNode, endNode), hostname, tagSet);
+            Metrics.getInstance().submitDuration(metrics, "jenkins.job.stage_pause_duration", pauseDuration, hostname, tagSet);
+            Metrics.getInstance().incrementCounter("jenkins.job.stage_completed", hostname, tagSet);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             DatadogUtilities.severe(logger, e, "Interrupted while trying to submit the stage duration metric for " + getStageName(startNode));
@@ -183,6 +259,10 @@ public class DatadogGraphListener implements GraphListener {
      * Those that store data relevant for the pipeline as a whole are attached to {@link WorkflowRun}.
      * These actions are persisted to disk along with the rest of the pipeline/node state,
      * so it is important to make sure that they contain as little data as possible, and that they are removed once no longer needed.
+     *
+     * <p>
+     * Before any data is gathered for an atomic step, the step is checked against the configured span rules (see {@link StepSpanFilter}):
+     * it can be dropped, or collapsed with its siblings into a summary span that is submitted when the enclosing stage ends.
      */
     private void processNode(WorkflowRun run, FlowNode flowNode) {
         try {
@@ -198,20 +278,41 @@ public class DatadogGraphListener implements GraphListener {
             if (flowNode instanceof BlockEndNode) {
                 processStageNode(run, (BlockEndNode<?>) flowNode);
             }
+
+            if (flowNode instanceof FlowEndNode) {
+                submitCollapsedSteps(run, StepSpanFilter.getInstance().flushAll(run));
+            }
         } catch (Exception e) {
             DatadogUtilities.severe(logger, e, "Could not process pipeline node " + flowNode.getId() + " (" + flowNode.getDisplayName() + ")");
         }
     }
 
     private void processStageNode(WorkflowRun run, BlockEndNode<?> blockEndNode) {
-        if (!DatadogUtilities.isStageNode(blockEndNode.getStartNode())) {
+        BlockStartNode startNode = blockEndNode.getStartNode();
+        if (!DatadogUtilities.isStageNode(startNode)) {
             return;
         }
+        submitCollapsedSteps(run, StepSpanFilter.getInstance().flush(run, startNode.getId()));
         processNode(run, blockEndNode, null);
     }
 
     private void processNode(WorkflowRun run, FlowNode node, FlowNode nextNode) {
         try {
+            if (node instanceof StepAtomNode) {
+                StepAtomNode stepNode = (StepAtomNode) node;
+                StepSpanFilter stepSpanFilter = StepSpanFilter.getInstance();
+                StepSpanFilter.Decision decision = stepSpanFilter.evaluate(run, stepNode, nextNode);
+                if (decision == StepSpanFilter.Decision.DROP) {
+                    propagateStatus(node, nextNode);
+                    stepSpanFilter.drop(run, stepNode);
+                    return;
+                } else if (decision == StepSpanFilter.Decision.COLLAPSE) {
+                    propagateStatus(node, nextNode);
+                    stepSpanFilter.collapse(run, stepNode, nextNode);
+                    return;
+                }
+            }
+
             PipelineStepData stepData = buildStepData(run, node, nextNode);
             propagateStatus(node, nextNode);
 
@@ -230,6 +331,35 @@ public class DatadogGraphListener implements GraphListener {
         }
     }
 
+    /**
+     * Submits the summaries of the steps collapsed in the run that were not submitted yet.
+     * A run that is aborted or fails abnormally might end without a {@link FlowEndNode}, which would have submitted them.
+     */
+    public static void submitCollapsedSteps(WorkflowRun run) {
+        submitCollapsedSteps(run, StepSpanFilter.getInstance().flushAll(run));
+    }
+
+    private static void submitCollapsedSteps(WorkflowRun run, List<PipelineStepData> summaries) {
+        if (summaries.isEmpty()) {
+            return;
+        }
+        TraceWriter traceWriter = TraceWriterFactory.getTraceWriter();
+        if (traceWriter == null) {
+            return;
+        }
+        for (PipelineStepData summary : summaries) {
+            try {
+                traceWriter.submitPipelineStep(summary, run);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                DatadogUtilities.severe(logger, e, "Interrupted while submitting collapsed steps " + summary.getName() + " in run " + run.getDisplayName());
+                return;
+            } catch (Exception e) {
+                DatadogUtilities.severe(logger, e, "Error while submitting collapsed steps " + summary.getName() + " in run " + run.getDisplayName());
+            }
+        }
+    }
+
     private void propagateStatus(FlowNode flowNode, @Nullable FlowNode nextNode) {
         Status status = getPropagatedStatus(flowNode, nextNode);
         if (status == Status.UNSTABLE) {
@@ -382,4 +512,22 @@ public class DatadogGraphListener implements GraphListener {
         }
         return 0;
     }
+
+    /**
+     * Holds the executor, so that its threads are only started when asynchronous processing is used.
+     */
+    private static final class Processing {
+        private static final String THREADS_ENV_VAR = "DD_JENKINS_GRAPH_LISTENER_THREADS";
+        private static final String QUEUE_CAPACITY_ENV_VAR = "DD_JENKINS_GRAPH_LISTENER_QUEUE_CAPACITY";
+        private static final String SUBMIT_TIMEOUT_ENV_VAR = "DD_JENKINS_GRAPH_LISTENER_SUBMIT_TIMEOUT_SECONDS";
+        private static final int DEFAULT_THREADS = 2;
+        private static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+        private static final int DEFAULT_SUBMIT_TIMEOUT_SECONDS = 0;
+
+        private static final KeyedSerialExecutor EXECUTOR = new KeyedSerialExecutor(NAME,
+                DatadogUtilities.envVar(THREADS_ENV_VAR, DEFAULT_THREADS),
+                DatadogUtilities.envVar(QUEUE_CAPACITY_ENV_VAR, DEFAULT_QUEUE_CAPACITY),
+                DatadogUtilities.envVar(SUBMIT_TIMEOUT_ENV_VAR, DEFAULT_SUBMIT_TIMEOUT_SECONDS),
+                DatadogUtilities.envVar(AWAIT_TIMEOUT_ENV_VAR, DEFAULT_AWAIT_TIMEOUT_SECONDS));
+    }
 }
@@ -38,6 +38,7 @@ import org.datadog.jenkins.plugins.datadog.clients.ClientHolder;
 import org.datadog.jenkins.plugins.datadog.events.ItemCRUDEventImpl;
 import org.datadog.jenkins.plugins.datadog.events.ItemCopiedEventImpl;
 import org.datadog.jenkins.plugins.datadog.events.ItemLocationChangedEventImpl;
+import org.datadog.jenkins.plugins.datadog.metrics.ItemCounts;
 import org.datadog.jenkins.plugins.datadog.metrics.Metrics;
 import org.datadog.jenkins.plugins.datadog.util.TagsUtil;
 
@@ -69,8 +70,19 @@ public class DatadogItemListener extends ItemListener {
         onCRUD(item, ItemCRUDEventImpl.UPDATED);
     }
 
+    @Override
+    public void onLoaded() {
+        // all items were (re)loaded from disk
+        ItemCounts.getInstance().invalidate();
+    }
+
     private void onCRUD(Item item, String action) {
         try {
+            if (ItemCRUDEventImpl.CREATED.equals(action)) {
+                ItemCounts.getInstance().onCreated(item);
+            } else if (ItemCRUDEventImpl.DELETED.equals(action)) {
+                ItemCounts.getInstance().onDeleted(item);
+            }
 
             // Get the list of global tags to apply
             Map<String, Set<String>> tags = DatadogUtilities.getTagsFromGlobalTags();
@@ -104,6 +116,7 @@ public class DatadogItemListener extends ItemListener {
     @Override
     public void onCopied(Item src, Item item) {
         try {
+            ItemCounts.getInstance().onCreated(item);
 
             // Get the list of global tags to apply
             Map<String, Set<String>> tags = DatadogUtilities.getTagsFromGlobalTags();
@@ -52,6 +52,7 @@ import org.datadog.jenkins.plugins.datadog.events.SCMCheckoutCompletedEventImpl;
 import org.datadog.jenkins.plugins.datadog.metrics.Metrics;
 import org.datadog.jenkins.plugins.datadog.model.BuildData;
 import org.datadog.jenkins.plugins.datadog.model.GitMetadataAction;
+import org.datadog.jenkins.plugins.datadog.model.git.GitMetadata;
 import org.datadog.jenkins.plugins.datadog.model.git.Source;
 import org.datadog.jenkins.plugins.datadog.traces.write.TraceWriter;
 import org.datadog.jenkins.plugins.datadog.traces.write.TraceWriterFactory;
@@ -104,7 +105,13 @@ public class DatadogSCMListener extends SCMListener {
                     GitClient gitClient = GitUtils.newGitClient(listener, environment, workspace);
                     Source metadataSource = isPipelineScriptClone(workspace) ? Source.GIT_CLIENT_PIPELINE_DEFINITION : Source.GIT_CLIENT;
                     String branchHint = gitMetadataAction.getMetadata().getBranch();
-                    gitMetadataAction.addMetadata(metadataSource, GitUtils.buildGitMetadata(gitClient, branchHint));
+                    // the cache key has to describe this checkout only: the action holds the merged data of all the checkouts of the run
+                    GitMetadata checkoutMetadata = GitMetadata.merge(
+                            GitUtils.buildGitMetadataWithJenkinsEnvVars(environment),
+                            GitUtils.buildGitMetadataWithUserSuppliedEnvVars(environment));
+                    String repositoryUrl = checkoutMetadata.getRepositoryURL();
+                    String commitSha = checkoutMetadata.getCommitMetadata() != null ? checkoutMetadata.getCommitMetadata().getCommit() : null;
+                    gitMetadataAction.addMetadata(metadataSource, GitUtils.buildGitMetadata(gitClient, branchHint, repositoryUrl, commitSha));
                 } else {
                     logger.fine("Non-git SCM checkout: " + (scm != null ? scm.getType() : null));
                 }
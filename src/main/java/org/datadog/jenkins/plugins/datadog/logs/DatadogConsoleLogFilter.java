@@ -60,11 +60,11 @@ public class DatadogConsoleLogFilter extends ConsoleLogFilter implements Seriali
             }
 
             if (DatadogUtilities.isJobTracked(build)) {
-                DatadogWriter writer = new DatadogWriter(BuildData.create(build, null));
-                return new DatadogOutputStream(outputStream, writer);
+                DatadogWriter writer = new DatadogWriter(BuildData.create(build, null), getRateLimiter(build));
+                return new DatadogOutputStream(outputStream, writer, MultiLineGrouper.Config.fromEnvVars());
             } else if (DatadogUtilities.isJobTracked(run)) {
-                DatadogWriter writer = new DatadogWriter(BuildData.create(run, null));
-                return new DatadogOutputStream(outputStream, writer);
+                DatadogWriter writer = new DatadogWriter(BuildData.create(run, null), getRateLimiter(run));
+                return new DatadogOutputStream(outputStream, writer, MultiLineGrouper.Config.fromEnvVars());
             } else {
                 return outputStream;
             }
@@ -75,6 +75,10 @@ public class DatadogConsoleLogFilter extends ConsoleLogFilter implements Seriali
         return outputStream;
     }
 
+    private static LogRateLimiter getRateLimiter(Run<?, ?> run) {
+        return LogRateLimiter.forRun(run.getExternalizableId(), LogRateLimiter.Config.forRun(run));
+    }
+
     @Override
     public OutputStream decorateLogger(AbstractBuild abstractBuild, OutputStream outputStream) throws IOException, InterruptedException {
         return decorateLogger((Run) abstractBuild, outputStream);
@@ -30,21 +30,49 @@ import hudson.console.LineTransformationOutputStream;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import javax.annotation.Nullable;
 
 public class DatadogOutputStream extends LineTransformationOutputStream.Delegating {
-    private DatadogWriter writer;
+    private LogLineWriter writer;
+    @Nullable
+    private final MultiLineGrouper grouper;
 
-    public DatadogOutputStream(OutputStream delegate, DatadogWriter writer) {
+    public DatadogOutputStream(OutputStream delegate, LogLineWriter writer) {
+        this(delegate, writer, null);
+    }
+
+    public DatadogOutputStream(OutputStream delegate, LogLineWriter writer, @Nullable MultiLineGrouper.Config multiLineConfig) {
         super(delegate);
         this.writer = writer;
+        this.grouper = multiLineConfig != null ? new MultiLineGrouper(multiLineConfig, writer::write) : null;
     }
 
     @Override
     protected void eol(byte[] b, int len) throws IOException {
         out.write(b, 0, len);
         String line = new String(b, 0, len, writer.getCharset());
-        line = ConsoleNote.removeNotes(line).trim();
-        writer.write(line);
+        line = ConsoleNote.removeNotes(line);
+        if (grouper != null) {
+            // leading whitespace is needed to recognize continuation lines
+            grouper.add(line);
+        } else {
+            writer.write(line.trim());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            try {
+                if (grouper != null) {
+                    grouper.flush();
+                }
+            } finally {
+                writer.close();
+            }
+        }
     }
 
 }
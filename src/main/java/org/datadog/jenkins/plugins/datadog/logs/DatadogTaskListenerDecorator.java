@@ -28,31 +28,98 @@ import hudson.Extension;
 import hudson.model.Queue;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import jenkins.model.Jenkins;
+import org.datadog.jenkins.plugins.datadog.DatadogClient;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.clients.ClientHolder;
+import org.datadog.jenkins.plugins.datadog.clients.otlp.OtlpExporter;
 import org.datadog.jenkins.plugins.datadog.model.BuildData;
 import org.jenkinsci.plugins.workflow.flow.FlowExecutionOwner;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.log.TaskListenerDecorator;
 
+/**
+ * Sends the console output of pipelines to Datadog.
+ * <p>
+ * By default, the output is written to the controller-wide log writer.
+ * When agent-side shipping is enabled, the output of the steps that run on remote agents
+ * (the decorator is serialized to the agent JVM) is shipped from the agents directly,
+ * so that the controller does not have to process every log line.
+ */
 public class DatadogTaskListenerDecorator extends TaskListenerDecorator {
     private static final long serialVersionUID = 1L;
     private static final Logger LOGGER = Logger.getLogger(DatadogTaskListenerDecorator.class.getName());
 
+    private static final String REMOTE_SHIPPING_ENABLED_ENV_VAR = "DD_JENKINS_LOGS_REMOTE_SHIPPING_ENABLED";
+    /** Host of the Datadog Agent as reachable from the Jenkins agents, the host configured for the controller is often a local one */
+    private static final String REMOTE_AGENT_HOST_ENV_VAR = "DD_JENKINS_LOGS_REMOTE_AGENT_HOST";
+    private static final String REMOTE_QUEUE_CAPACITY_ENV_VAR = "DD_JENKINS_LOGS_REMOTE_QUEUE_CAPACITY";
+    private static final String REMOTE_BATCH_SIZE_LIMIT_ENV_VAR = "DD_JENKINS_LOGS_REMOTE_BATCH_SIZE_LIMIT";
+    private static final boolean DEFAULT_REMOTE_SHIPPING_ENABLED = false;
+    private static final int DEFAULT_REMOTE_QUEUE_CAPACITY = 10_000;
+    private static final int DEFAULT_REMOTE_BATCH_SIZE_LIMIT = 500;
+
     private final BuildData buildData;
+    private final String runId;
+    private final LogRateLimiter.Config rateLimiterConfig;
+    @Nullable
+    private final MultiLineGrouper.Config multiLineConfig;
+    // computed on the controller, used on the agents
+    @Nullable
+    private final RemoteLogTarget remoteLogTarget;
+    @Nullable
+    private final String remoteLogEnvelope;
 
     public DatadogTaskListenerDecorator(WorkflowRun run) {
         this.buildData = BuildData.create(run, null);
+        this.runId = run.getExternalizableId();
+        this.rateLimiterConfig = LogRateLimiter.Config.forRun(run);
+        this.multiLineConfig = MultiLineGrouper.Config.fromEnvVars();
+        this.remoteLogTarget = createRemoteLogTarget();
+        this.remoteLogEnvelope = remoteLogTarget != null ? DatadogWriter.buildEnvelope(buildData).toString() : null;
+    }
+
+    @Nullable
+    private static RemoteLogTarget createRemoteLogTarget() {
+        if (!DatadogUtilities.envVar(REMOTE_SHIPPING_ENABLED_ENV_VAR, DEFAULT_REMOTE_SHIPPING_ENABLED)) {
+            return null;
+        }
+        if (OtlpExporter.fromEnvVars() != null) {
+            // OTLP export is done by the controller only
+            return null;
+        }
+        String remoteAgentHost = DatadogUtilities.envVar(REMOTE_AGENT_HOST_ENV_VAR, Function.identity(), null);
+        if (remoteAgentHost == null || remoteAgentHost.trim().isEmpty()) {
+            LOGGER.fine("Logs are shipped by the controller, " + REMOTE_AGENT_HOST_ENV_VAR + " is not set");
+            return null;
+        }
+        DatadogClient client = ClientHolder.getClient();
+        if (client == null) {
+            return null;
+        }
+        return client.createRemoteLogTarget(
+                remoteAgentHost.trim(),
+                DatadogUtilities.envVar(REMOTE_QUEUE_CAPACITY_ENV_VAR, DEFAULT_REMOTE_QUEUE_CAPACITY),
+                DatadogUtilities.envVar(REMOTE_BATCH_SIZE_LIMIT_ENV_VAR, DEFAULT_REMOTE_BATCH_SIZE_LIMIT));
     }
 
     @Nonnull
     @Override
     public OutputStream decorate(@Nonnull OutputStream outputStream) {
-        DatadogWriter writer = new DatadogWriter(this.buildData);
-        return new DatadogOutputStream(outputStream, writer);
+        LogRateLimiter rateLimiter = LogRateLimiter.forRun(runId, rateLimiterConfig);
+        LogLineWriter writer;
+        if (remoteLogTarget != null && remoteLogEnvelope != null && Jenkins.getInstanceOrNull() == null) {
+            // running in an agent JVM
+            writer = new RemoteLogWriter(buildData.getCharset(), remoteLogEnvelope, rateLimiter, RemoteLogShipper.forTarget(remoteLogTarget));
+        } else {
+            writer = new DatadogWriter(this.buildData, rateLimiter);
+        }
+        return new DatadogOutputStream(outputStream, writer, multiLineConfig);
     }
 
     @Extension
@@ -37,50 +37,104 @@ import org.datadog.jenkins.plugins.datadog.util.TagsUtil;
 import java.nio.charset.Charset;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
-public class DatadogWriter {
+public class DatadogWriter implements LogLineWriter {
 
     private static final Logger logger = Logger.getLogger(DatadogWriter.class.getName());
 
     private final Charset charset;
     private final BuildData buildData;
+    @Nullable
+    private final LogRateLimiter rateLimiter;
 
     public DatadogWriter(@Nonnull BuildData buildData) {
+        this(buildData, null);
+    }
+
+    public DatadogWriter(@Nonnull BuildData buildData, @Nullable LogRateLimiter rateLimiter) {
         this.charset = buildData.getCharset();
         this.buildData = buildData;
+        this.rateLimiter = rateLimiter;
     }
 
+    @Override
     public Charset getCharset() {
         return charset;
     }
 
+    @Override
     public void write(String line) {
         try {
             if (!StringUtils.isNotEmpty(line)) {
                 return;
             }
 
-            JSONObject payload = this.buildData.addLogAttributes();
+            AsyncWriter<JSONObject> logWriter = LogWriterFactory.getLogWriter();
+            if (logWriter == null) {
+                return;
+            }
 
-            Map<String, Set<String>> ddtags = this.buildData.getTags();
-            TagsUtil.addTagToTags(ddtags, "datadog.product", "cipipeline");
-            payload.put("ddtags", String.join(",", TagsUtil.convertTagsToArray(ddtags)));
-            payload.put("message", line);
-            payload.put("ddsource", "jenkins");
-            payload.put("service", "jenkins");
-            payload.put("timestamp", System.currentTimeMillis());
-            payload.put(PipelineStepData.StepType.PIPELINE.getTagName() + CITags._NAME, this.buildData.getJobName());
+            if (rateLimiter != null) {
+                if (!rateLimiter.tryAcquire()) {
+                    return;
+                }
+                submitSuppressedCount(logWriter);
+            }
 
+            logWriter.submit(buildPayload(line));
+
+        } catch (Exception e) {
+            DatadogUtilities.severe(logger, e, "Failed to submit log payload");
+        }
+    }
+
+    /**
+     * Reports the lines that were suppressed after the last line that was let through,
+     * as no later line will carry their count.
+     */
+    @Override
+    public void close() {
+        try {
             AsyncWriter<JSONObject> logWriter = LogWriterFactory.getLogWriter();
-            if (logWriter != null) {
-                logWriter.submit(payload);
+            if (rateLimiter != null && logWriter != null) {
+                submitSuppressedCount(logWriter);
             }
-
         } catch (Exception e) {
             DatadogUtilities.severe(logger, e, "Failed to submit log payload");
         }
     }
 
+    private void submitSuppressedCount(AsyncWriter<JSONObject> logWriter) throws InterruptedException, TimeoutException {
+        long suppressed = rateLimiter.getAndResetSuppressedCount();
+        if (suppressed > 0) {
+            logWriter.submit(buildPayload(suppressed + " log lines suppressed by Datadog plugin rate limiter"));
+        }
+    }
+
+    private JSONObject buildPayload(String line) {
+        JSONObject payload = buildEnvelope(this.buildData);
+        payload.put("message", line);
+        payload.put("timestamp", System.currentTimeMillis());
+        return payload;
+    }
+
+    /**
+     * Builds the attributes that are shared by all the log lines of a build.
+     */
+    static JSONObject buildEnvelope(BuildData buildData) {
+        JSONObject payload = buildData.addLogAttributes();
+
+        Map<String, Set<String>> ddtags = buildData.getTags();
+        TagsUtil.addTagToTags(ddtags, "datadog.product", "cipipeline");
+        payload.put("ddtags", String.join(",", TagsUtil.convertTagsToArray(ddtags)));
+        payload.put("ddsource", "jenkins");
+        payload.put("service", "jenkins");
+        payload.put(PipelineStepData.StepType.PIPELINE.getTagName() + CITags._NAME, buildData.getJobName());
+        return payload;
+    }
+
 }
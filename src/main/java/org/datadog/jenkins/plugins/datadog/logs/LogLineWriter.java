@@ -0,0 +1,19 @@
+package org.datadog.jenkins.plugins.datadog.logs;
+
+import java.nio.charset.Charset;
+
+/**
+ * Receives the console output lines of a build, after the console notes have been removed.
+ */
+public interface LogLineWriter {
+
+    Charset getCharset();
+
+    void write(String line);
+
+    /**
+     * Called when the output stream is closed, no more lines are written after that.
+     */
+    default void close() {
+    }
+}
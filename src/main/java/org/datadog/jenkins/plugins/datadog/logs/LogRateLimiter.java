@@ -0,0 +1,241 @@
+package org.datadog.jenkins.plugins.datadog.logs;
+
+import com.codahale.metrics.Meter;
+import hudson.model.Run;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.datadog.jenkins.plugins.datadog.DatadogJobProperty;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
+
+/**
+ * Token bucket that limits the number of log lines a single run can submit to the shared log writer queue.
+ * <p>
+ * A bucket holds up to {@code burst} tokens and is refilled at {@code linesPerSecond}.
+ * Every submitted line consumes a token.
+ * When the bucket is empty, lines are suppressed,
+ * except for every {@code sampleEvery}-th suppressed line, which is let through (deterministic sampling).
+ * The number of suppressed lines is reported with the next line that is let through,
+ * or when the log stream is closed, so that the logs in Datadog show where and how much output was cut.
+ * <p>
+ * One limiter instance is shared by all the log streams of a run (in a given JVM).
+ */
+public final class LogRateLimiter {
+
+    private static final String LINES_PER_SECOND_ENV_VAR = "DD_JENKINS_LOGS_RATE_LIMIT_LINES_PER_SECOND";
+    private static final String BURST_ENV_VAR = "DD_JENKINS_LOGS_RATE_LIMIT_BURST";
+    private static final String SAMPLE_EVERY_ENV_VAR = "DD_JENKINS_LOGS_RATE_LIMIT_SAMPLE_EVERY";
+    private static final String MAX_TRACKED_RUNS_ENV_VAR = "DD_JENKINS_LOGS_RATE_LIMIT_MAX_TRACKED_RUNS";
+
+    private static final int DEFAULT_LINES_PER_SECOND = 0; // unlimited
+    private static final int DEFAULT_BURST = 10_000;
+    private static final int DEFAULT_SAMPLE_EVERY = 0; // no sampling
+    private static final int DEFAULT_MAX_TRACKED_RUNS = 10_000;
+
+    private static final Meter SUPPRESSED_LINES = AsyncWriter.METRICS.meter("DD-Log-Writer.rate.limited");
+
+    private static final int MAX_TRACKED_RUNS = DatadogUtilities.envVar(MAX_TRACKED_RUNS_ENV_VAR, DEFAULT_MAX_TRACKED_RUNS);
+
+    @GuardedBy("LIMITERS_BY_RUN")
+    private static final Map<String, LogRateLimiter> LIMITERS_BY_RUN = new LinkedHashMap<String, LogRateLimiter>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LogRateLimiter> eldest) {
+            // runs are released explicitly when they are finalized,
+            // the size cap only protects JVMs that never see finalization (e.g. remote agents)
+            return size() > MAX_TRACKED_RUNS;
+        }
+    };
+
+    /**
+     * Returns the limiter shared by all log streams of the given run.
+     *
+     * @param runId  - externalizable ID of the run
+     * @param config - limits to use if the limiter for the run does not exist yet
+     * @return the limiter, or {@code null} if rate limiting is disabled for the run
+     */
+    @Nullable
+    public static LogRateLimiter forRun(@Nullable String runId, @Nullable Config config) {
+        if (runId == null || config == null || !config.isEnabled()) {
+            return null;
+        }
+        synchronized (LIMITERS_BY_RUN) {
+            LogRateLimiter limiter = LIMITERS_BY_RUN.get(runId);
+            if (limiter == null || !limiter.config.equals(config)) {
+                limiter = new LogRateLimiter(config, System::nanoTime);
+                LIMITERS_BY_RUN.put(runId, limiter);
+            }
+            return limiter;
+        }
+    }
+
+    /**
+     * Discards the limiter associated with the given run.
+     * Called when the run is finalized and no more log lines are expected.
+     */
+    public static void release(@Nullable String runId) {
+        if (runId == null) {
+            return;
+        }
+        synchronized (LIMITERS_BY_RUN) {
+            LIMITERS_BY_RUN.remove(runId);
+        }
+    }
+
+    private final Config config;
+    private final LongSupplier nanoClock;
+
+    @GuardedBy("this")
+    private double tokens;
+    @GuardedBy("this")
+    private long lastRefillNanos;
+    @GuardedBy("this")
+    private long suppressedSinceLastReport;
+    @GuardedBy("this")
+    private long suppressedTotal;
+
+    LogRateLimiter(Config config, LongSupplier nanoClock) {
+        this.config = config;
+        this.nanoClock = nanoClock;
+        synchronized (this) {
+            this.tokens = config.burst;
+            this.lastRefillNanos = nanoClock.getAsLong();
+        }
+    }
+
+    /**
+     * Tries to acquire a permit for submitting one log line.
+     *
+     * @return {@code true} if the line should be submitted, {@code false} if it should be suppressed
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+
+        suppressedTotal++;
+        if (config.sampleEvery > 0 && suppressedTotal % config.sampleEvery == 0) {
+            // sampled line is let through, it will carry the count of the lines suppressed before it
+            return true;
+        }
+
+        suppressedSinceLastReport++;
+        SUPPRESSED_LINES.mark();
+        return false;
+    }
+
+    /**
+     * @return the number of lines suppressed since the previous call to this method
+     */
+    public synchronized long getAndResetSuppressedCount() {
+        long suppressed = suppressedSinceLastReport;
+        suppressedSinceLastReport = 0;
+        return suppressed;
+    }
+
+    @GuardedBy("this")
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        long elapsedNanos = now - lastRefillNanos;
+        if (elapsedNanos <= 0) {
+            return;
+        }
+        lastRefillNanos = now;
+        tokens = Math.min(config.burst, tokens + elapsedNanos * config.linesPerSecond / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Rate limiting settings of a run.
+     * Global defaults come from environment variables and can be overridden for a job in {@link DatadogJobProperty}.
+     */
+    public static final class Config implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int linesPerSecond;
+        private final int burst;
+        private final int sampleEvery;
+
+        public Config(int linesPerSecond, int burst, int sampleEvery) {
+            this.linesPerSecond = linesPerSecond;
+            this.burst = Math.max(burst, 1);
+            this.sampleEvery = sampleEvery;
+        }
+
+        public boolean isEnabled() {
+            return linesPerSecond > 0;
+        }
+
+        public int getLinesPerSecond() {
+            return linesPerSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public int getSampleEvery() {
+            return sampleEvery;
+        }
+
+        @Nonnull
+        public static Config forRun(@Nullable Run<?, ?> run) {
+            int linesPerSecond = DatadogUtilities.envVar(LINES_PER_SECOND_ENV_VAR, DEFAULT_LINES_PER_SECOND);
+            int burst = DatadogUtilities.envVar(BURST_ENV_VAR, DEFAULT_BURST);
+            int sampleEvery = DatadogUtilities.envVar(SAMPLE_EVERY_ENV_VAR, DEFAULT_SAMPLE_EVERY);
+
+            DatadogJobProperty<?> property = run != null ? DatadogUtilities.getDatadogJobProperties(run) : null;
+            if (property != null) {
+                Integer jobLinesPerSecond = property.getLogRateLimitLinesPerSecond();
+                if (jobLinesPerSecond != null) {
+                    linesPerSecond = jobLinesPerSecond;
+                }
+                Integer jobBurst = property.getLogRateLimitBurst();
+                if (jobBurst != null) {
+                    burst = jobBurst;
+                }
+                Integer jobSampleEvery = property.getLogRateLimitSampleEvery();
+                if (jobSampleEvery != null) {
+                    sampleEvery = jobSampleEvery;
+                }
+            }
+            return new Config(linesPerSecond, burst, sampleEvery);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Config config = (Config) o;
+            return linesPerSecond == config.linesPerSecond
+                    && burst == config.burst
+                    && sampleEvery == config.sampleEvery;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(linesPerSecond, burst, sampleEvery);
+        }
+
+        @Override
+        public String toString() {
+            return "Config{" +
+                    "linesPerSecond=" + linesPerSecond +
+                    ", burst=" + burst +
+                    ", sampleEvery=" + sampleEvery +
+                    '}';
+        }
+    }
+}
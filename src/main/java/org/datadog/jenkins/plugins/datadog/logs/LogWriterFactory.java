@@ -5,6 +5,7 @@ import net.sf.json.JSONObject;
 import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
 import org.datadog.jenkins.plugins.datadog.DatadogClient;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.clients.otlp.OtlpExporter;
 
 import javax.annotation.Nullable;
 
@@ -29,12 +30,9 @@ public class LogWriterFactory {
             return;
         }
 
-        if (LOG_WRITER != null) {
-            LOG_WRITER.stopAsynchronously();
-        }
-
-        LogWriteStrategy logWriteStrategy = client.createLogWriteStrategy();
-        LOG_WRITER = new AsyncWriter<>("DD-Log-Writer",
+        OtlpExporter otlpExporter = OtlpExporter.fromEnvVars();
+        LogWriteStrategy logWriteStrategy = otlpExporter != null ? otlpExporter.createLogWriteStrategy() : client.createLogWriteStrategy();
+        AsyncWriter<JSONObject> logWriter = new AsyncWriter<>("DD-Log-Writer",
                 logWriteStrategy::send,
                 logWriteStrategy::close,
                 DatadogUtilities.envVar(QUEUE_CAPACITY_ENV_VAR, DEFAULT_QUEUE_CAPACITY),
@@ -42,7 +40,12 @@ public class LogWriterFactory {
                 DatadogUtilities.envVar(POLLING_TIMEOUT_ENV_VAR, DEFAULT_POLLING_TIMEOUT_SECONDS),
                 DatadogUtilities.envVar(STOP_TIMEOUT_ENV_VAR, DEFAULT_STOP_TIMEOUT_SECONDS),
                 DatadogUtilities.envVar(BATCH_SIZE_LIMIT_ENV_VAR, DEFAULT_BATCH_SIZE_LIMIT));
-        LOG_WRITER.start();
+        logWriter.start();
+        if (LOG_WRITER != null) {
+            // log payloads do not depend on the client, queued ones are moved as is
+            LOG_WRITER.handOverTo(logWriter, payload -> payload);
+        }
+        LOG_WRITER = logWriter;
     }
 
     /**
@@ -0,0 +1,241 @@
+package org.datadog.jenkins.plugins.datadog.logs;
+
+import com.codahale.metrics.Meter;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
+
+/**
+ * Merges multi-line console output (e.g. stack traces, compiler errors) into single log events.
+ * <p>
+ * A line that matches one of the start-of-event patterns begins a new event,
+ * any other line is appended to the current event.
+ * An event is emitted when the next event starts, when it reaches the maximum number of lines,
+ * when no line was added to it for the maximum wait time, or when the stream is closed.
+ */
+public final class MultiLineGrouper {
+
+    private static final Logger logger = Logger.getLogger(MultiLineGrouper.class.getName());
+
+    private static final Meter GROUPED_LINES = AsyncWriter.METRICS.meter("DD-Log-Writer.multiline.grouped");
+
+    private static final ScheduledThreadPoolExecutor FLUSHER = createFlusher();
+
+    private final Config config;
+    private final Consumer<String> emitter;
+
+    @GuardedBy("this")
+    private StringBuilder pending;
+    @GuardedBy("this")
+    private int pendingLines;
+    @GuardedBy("this")
+    private ScheduledFuture<?> pendingFlush;
+
+    public MultiLineGrouper(Config config, Consumer<String> emitter) {
+        this.config = config;
+        this.emitter = emitter;
+    }
+
+    private static ScheduledThreadPoolExecutor createFlusher() {
+        ScheduledThreadPoolExecutor flusher = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "DD-Log-Grouping-Flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.setRemoveOnCancelPolicy(true);
+        return flusher;
+    }
+
+    /**
+     * @param line console line, with console notes removed
+     */
+    public synchronized void add(String line) {
+        String stripped = line.stripTrailing();
+        if (stripped.isBlank()) {
+            flush();
+            return;
+        }
+        if (pending != null && !config.isEventStart(stripped)) {
+            pending.append('\n').append(stripped);
+            pendingLines++;
+            GROUPED_LINES.mark();
+            if (pendingLines >= config.getMaxLines()) {
+                flush();
+            } else {
+                scheduleFlush();
+            }
+            return;
+        }
+        flush();
+        pending = new StringBuilder(stripped.trim());
+        pendingLines = 1;
+        if (config.getMaxLines() <= 1) {
+            flush();
+        } else {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Emits the event that is being grouped, if any.
+     */
+    public synchronized void flush() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        if (pending == null) {
+            return;
+        }
+        String event = pending.toString();
+        pending = null;
+        pendingLines = 0;
+        emitter.accept(event);
+    }
+
+    @GuardedBy("this")
+    private void scheduleFlush() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+        }
+        pendingFlush = FLUSHER.schedule(this::flushSafely, config.getMaxWaitMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            DatadogUtilities.severe(logger, e, "Failed to flush grouped log lines");
+        }
+    }
+
+    /**
+     * Grouping settings, read on the controller and shipped to the agents along with the log decorators.
+     */
+    public static final class Config implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final String ENABLED_ENV_VAR = "DD_JENKINS_LOGS_MULTILINE_ENABLED";
+        private static final String START_PATTERNS_ENV_VAR = "DD_JENKINS_LOGS_MULTILINE_START_PATTERNS";
+        private static final String MAX_LINES_ENV_VAR = "DD_JENKINS_LOGS_MULTILINE_MAX_LINES";
+        private static final String MAX_WAIT_MILLIS_ENV_VAR = "DD_JENKINS_LOGS_MULTILINE_MAX_WAIT_MILLIS";
+
+        private static final boolean DEFAULT_ENABLED = false;
+        // an event starts with a non-whitespace character, except for the continuations of Java stack traces
+        static final String DEFAULT_START_PATTERN = "^(?!Caused by:|Suppressed:|\\.\\.\\. \\d+ (more|common frames omitted))\\S";
+        private static final int DEFAULT_MAX_LINES = 500;
+        private static final int DEFAULT_MAX_WAIT_MILLIS = 1000;
+
+        private final List<String> startPatterns;
+        private final int maxLines;
+        private final int maxWaitMillis;
+
+        private transient volatile List<Pattern> compiledStartPatterns;
+
+        public Config(List<String> startPatterns, int maxLines, int maxWaitMillis) {
+            this.startPatterns = Collections.unmodifiableList(new ArrayList<>(startPatterns));
+            this.maxLines = Math.max(maxLines, 1);
+            this.maxWaitMillis = Math.max(maxWaitMillis, 1);
+        }
+
+        /**
+         * @return the settings, or {@code null} if grouping is disabled
+         */
+        @Nullable
+        public static Config fromEnvVars() {
+            if (!DatadogUtilities.envVar(ENABLED_ENV_VAR, DEFAULT_ENABLED)) {
+                return null;
+            }
+            // patterns may contain commas, so they are separated by new lines
+            List<String> startPatterns = DatadogUtilities.linesToList(System.getenv(START_PATTERNS_ENV_VAR));
+            if (startPatterns.isEmpty()) {
+                startPatterns = Collections.singletonList(DEFAULT_START_PATTERN);
+            }
+            return new Config(startPatterns,
+                    DatadogUtilities.envVar(MAX_LINES_ENV_VAR, DEFAULT_MAX_LINES),
+                    DatadogUtilities.envVar(MAX_WAIT_MILLIS_ENV_VAR, DEFAULT_MAX_WAIT_MILLIS));
+        }
+
+        public List<String> getStartPatterns() {
+            return startPatterns;
+        }
+
+        public int getMaxLines() {
+            return maxLines;
+        }
+
+        public int getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+
+        boolean isEventStart(String line) {
+            for (Pattern pattern : getCompiledStartPatterns()) {
+                if (pattern.matcher(line).find()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private List<Pattern> getCompiledStartPatterns() {
+            List<Pattern> patterns = compiledStartPatterns;
+            if (patterns == null) {
+                patterns = new ArrayList<>(startPatterns.size());
+                for (String startPattern : startPatterns) {
+                    try {
+                        patterns.add(Pattern.compile(startPattern));
+                    } catch (PatternSyntaxException e) {
+                        DatadogUtilities.severe(logger, e, "Invalid multi-line start pattern: " + startPattern);
+                    }
+                }
+                if (patterns.isEmpty()) {
+                    patterns.add(Pattern.compile(DEFAULT_START_PATTERN));
+                }
+                compiledStartPatterns = patterns;
+            }
+            return patterns;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Config config = (Config) o;
+            return maxLines == config.maxLines
+                    && maxWaitMillis == config.maxWaitMillis
+                    && Objects.equals(startPatterns, config.startPatterns);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(startPatterns, maxLines, maxWaitMillis);
+        }
+
+        @Override
+        public String toString() {
+            return "Config{" +
+                    "startPatterns=" + startPatterns +
+                    ", maxLines=" + maxLines +
+                    ", maxWaitMillis=" + maxWaitMillis +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.datadog.jenkins.plugins.datadog.logs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ships log entries from a Jenkins agent JVM directly to a {@link RemoteLogTarget}.
+ * <p>
+ * There is one shipper per target in a JVM, shared by all the builds that run on the agent.
+ * Entries are buffered in a bounded queue, and sent in batches by a daemon thread.
+ * The thread is started when entries are offered, and stops (closing the connection to the target)
+ * once no entries have been offered for a while, so idle agents do not keep a thread and a connection open.
+ * When the queue is full or the target cannot be reached, entries are dropped,
+ * so that a slow or unavailable target never blocks the build.
+ */
+public final class RemoteLogShipper {
+
+    private static final Logger logger = Logger.getLogger(RemoteLogShipper.class.getName());
+
+    private static final long POLLING_TIMEOUT_MILLIS = 1000;
+    private static final long MIN_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+    private static final long IDLE_TIMEOUT_MILLIS = 60_000;
+
+    private static final ConcurrentMap<RemoteLogTarget, RemoteLogShipper> SHIPPERS = new ConcurrentHashMap<>();
+
+    private final RemoteLogTarget target;
+    private final BlockingQueue<String> queue;
+    private final Executor threadStarter;
+    private final long idleTimeoutMillis;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+    private long retryDelayMillis;
+    private long retryAt;
+
+    RemoteLogShipper(RemoteLogTarget target) {
+        this(target, RemoteLogShipper::startDaemonThread, IDLE_TIMEOUT_MILLIS);
+    }
+
+    RemoteLogShipper(RemoteLogTarget target, Executor threadStarter, long idleTimeoutMillis) {
+        this.target = target;
+        this.queue = new ArrayBlockingQueue<>(Math.max(target.getQueueCapacity(), 1));
+        this.threadStarter = threadStarter;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public static RemoteLogShipper forTarget(RemoteLogTarget target) {
+        return SHIPPERS.computeIfAbsent(target, RemoteLogShipper::new);
+    }
+
+    private static void startDaemonThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "DD-Remote-Log-Shipper");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return {@code false} if the entry was dropped because the queue is full
+     */
+    public boolean offer(String payload) {
+        if (!queue.offer(payload)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (running.compareAndSet(false, true)) {
+            threadStarter.execute(this::run);
+        }
+        return true;
+    }
+
+    private void run() {
+        int batchSizeLimit = Math.max(target.getBatchSizeLimit(), 1);
+        List<String> batch = new ArrayList<>(batchSizeLimit);
+        long lastShippedAt = System.currentTimeMillis();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                String payload = queue.poll(POLLING_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                long now = System.currentTimeMillis();
+                if (payload == null) {
+                    if (now - lastShippedAt >= idleTimeoutMillis && stopIfIdle()) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(payload);
+                queue.drainTo(batch, batchSizeLimit - 1);
+                sendBatch(batch, now);
+                batch.clear();
+                lastShippedAt = now;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        target.close();
+        running.set(false);
+    }
+
+    /**
+     * @return {@code true} if the thread can stop, {@code false} if entries were offered in the meantime and it has to ship them
+     */
+    private boolean stopIfIdle() {
+        // the connection is closed before the thread gives up its role, so it is never closed under the next thread
+        target.close();
+        running.set(false);
+        // entries offered before the flag was cleared did not start a thread
+        return queue.isEmpty() || !running.compareAndSet(false, true);
+    }
+
+    void sendBatch(List<String> batch, long now) {
+        if (now < retryAt) {
+            // the target failed recently, do not wait for timeouts on every batch
+            dropped.addAndGet(batch.size());
+            return;
+        }
+        try {
+            target.send(batch);
+            retryDelayMillis = 0;
+            long droppedCount = dropped.getAndSet(0);
+            if (droppedCount > 0) {
+                logger.warning("Dropped " + droppedCount + " log entries before shipping to " + target + " succeeded");
+            }
+        } catch (Exception e) {
+            retryDelayMillis = Math.min(Math.max(retryDelayMillis * 2, MIN_RETRY_DELAY_MILLIS), MAX_RETRY_DELAY_MILLIS);
+            retryAt = now + retryDelayMillis;
+            dropped.addAndGet(batch.size());
+            logger.log(Level.WARNING, "Failed to ship logs to " + target + ", retrying in " + retryDelayMillis + " ms", e);
+        }
+    }
+
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    boolean isRunning() {
+        return running.get();
+    }
+}
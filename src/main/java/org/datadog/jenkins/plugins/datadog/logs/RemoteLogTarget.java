@@ -0,0 +1,142 @@
+package org.datadog.jenkins.plugins.datadog.logs;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Destination of the logs that are shipped directly from a Jenkins agent, bypassing the controller.
+ * <p>
+ * Targets are created on the controller and serialized to the agents along with the task listener decorator,
+ * so the implementations only rely on JDK classes:
+ * the plugin's HTTP client and its configuration (e.g. the Jenkins proxy settings) are not available on the agents.
+ * Targets are also persisted with the pipeline program, so they must not hold credentials:
+ * logs that are sent to the Datadog API are always forwarded by the controller.
+ */
+public abstract class RemoteLogTarget implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int queueCapacity;
+    private final int batchSizeLimit;
+
+    RemoteLogTarget(int queueCapacity, int batchSizeLimit) {
+        this.queueCapacity = queueCapacity;
+        this.batchSizeLimit = batchSizeLimit;
+    }
+
+    /**
+     * Logs are written to the TCP log collection port of a Datadog Agent.
+     * The host name is resolved on the Jenkins agent.
+     */
+    public static RemoteLogTarget datadogAgent(String host, int port, int queueCapacity, int batchSizeLimit) {
+        return new DatadogAgent(host, port, queueCapacity, batchSizeLimit);
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getBatchSizeLimit() {
+        return batchSizeLimit;
+    }
+
+    /**
+     * Sends serialized log entries.
+     * Called from a single thread.
+     */
+    abstract void send(List<String> payloads) throws IOException;
+
+    abstract void close();
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RemoteLogTarget that = (RemoteLogTarget) o;
+        return queueCapacity == that.queueCapacity && batchSizeLimit == that.batchSizeLimit;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(queueCapacity, batchSizeLimit);
+    }
+
+    private static final class DatadogAgent extends RemoteLogTarget {
+        private static final long serialVersionUID = 1L;
+
+        private static final byte[] LINE_SEPARATOR = "\n".getBytes(StandardCharsets.UTF_8);
+
+        private final String host;
+        private final int port;
+
+        private transient Socket socket;
+        private transient OutputStream out;
+
+        private DatadogAgent(String host, int port, int queueCapacity, int batchSizeLimit) {
+            super(queueCapacity, batchSizeLimit);
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        void send(List<String> payloads) throws IOException {
+            try {
+                if (socket == null || socket.isClosed() || !socket.isConnected()) {
+                    socket = new Socket(host, port);
+                    out = new BufferedOutputStream(socket.getOutputStream());
+                }
+                for (String payload : payloads) {
+                    out.write(payload.getBytes(StandardCharsets.UTF_8));
+                    out.write(LINE_SEPARATOR);
+                }
+                out.flush();
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        void close() {
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                // ignore
+            } finally {
+                socket = null;
+                out = null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!super.equals(o)) {
+                return false;
+            }
+            DatadogAgent that = (DatadogAgent) o;
+            return port == that.port && Objects.equals(host, that.host);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(super.hashCode(), host, port);
+        }
+
+        @Override
+        public String toString() {
+            return "Datadog Agent " + host + ":" + port;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.datadog.jenkins.plugins.datadog.logs;
+
+import java.nio.charset.Charset;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Writes the console output lines of a build that runs on a Jenkins agent directly to a {@link RemoteLogShipper}.
+ * <p>
+ * The attributes shared by all the lines of the build (the envelope) are serialized once on the controller,
+ * the writer only adds the message and the timestamp to it.
+ */
+public class RemoteLogWriter implements LogLineWriter {
+
+    private final Charset charset;
+    private final String envelopePrefix;
+    @Nullable
+    private final LogRateLimiter rateLimiter;
+    private final RemoteLogShipper shipper;
+    private final LongSupplier clock;
+
+    public RemoteLogWriter(Charset charset, String envelope, @Nullable LogRateLimiter rateLimiter, RemoteLogShipper shipper) {
+        this(charset, envelope, rateLimiter, shipper, System::currentTimeMillis);
+    }
+
+    RemoteLogWriter(Charset charset, String envelope, @Nullable LogRateLimiter rateLimiter, RemoteLogShipper shipper, LongSupplier clock) {
+        this.charset = charset;
+        this.envelopePrefix = toPrefix(envelope);
+        this.rateLimiter = rateLimiter;
+        this.shipper = shipper;
+        this.clock = clock;
+    }
+
+    private static String toPrefix(String envelope) {
+        String prefix = envelope.trim();
+        if (!prefix.startsWith("{") || !prefix.endsWith("}")) {
+            throw new IllegalArgumentException("Log envelope is not a JSON object: " + envelope);
+        }
+        prefix = prefix.substring(0, prefix.length() - 1).trim();
+        return prefix.equals("{") ? prefix : prefix + ",";
+    }
+
+    @Override
+    public Charset getCharset() {
+        return charset;
+    }
+
+    @Override
+    public void write(String line) {
+        if (line == null || line.isEmpty()) {
+            return;
+        }
+        if (rateLimiter != null) {
+            if (!rateLimiter.tryAcquire()) {
+                return;
+            }
+            offerSuppressedCount();
+        }
+        shipper.offer(buildPayload(line));
+    }
+
+    /**
+     * Reports the lines that were suppressed after the last line that was let through,
+     * as no later line will carry their count.
+     */
+    @Override
+    public void close() {
+        if (rateLimiter != null) {
+            offerSuppressedCount();
+        }
+    }
+
+    private void offerSuppressedCount() {
+        long suppressed = rateLimiter.getAndResetSuppressedCount();
+        if (suppressed > 0) {
+            shipper.offer(buildPayload(suppressed + " log lines suppressed by Datadog plugin rate limiter"));
+        }
+    }
+
+    String buildPayload(String line) {
+        StringBuilder payload = new StringBuilder(envelopePrefix.length() + line.length() + 48);
+        payload.append(envelopePrefix).append("\"message\":");
+        appendQuoted(payload, line);
+        payload.append(",\"timestamp\":").append(clock.getAsLong()).append('}');
+        return payload.toString();
+    }
+
+    static void appendQuoted(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
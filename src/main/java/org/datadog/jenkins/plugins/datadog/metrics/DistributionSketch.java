@@ -0,0 +1,179 @@
+package org.datadog.jenkins.plugins.datadog.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Mergeable quantile sketch with relative-error guarantees, modelled after DDSketch.
+ * <p>
+ * Positive values are mapped to logarithmically-sized bins:
+ * every value in a bin is within {@code relativeAccuracy} of the bin's representative value,
+ * so any quantile computed from the sketch is accurate to within the same relative error.
+ * Zero and negative values are counted in a dedicated zero bin.
+ * <p>
+ * Sketches with the same relative accuracy can be merged without loss of accuracy,
+ * which makes percentiles computed over many recorded values (e.g. durations of many builds) correct.
+ */
+public final class DistributionSketch {
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    // values smaller than this are counted as zeros, this keeps bin indices in int range
+    private static final double MIN_INDEXABLE_VALUE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+
+    @GuardedBy("this")
+    private final TreeMap<Integer, Long> bins = new TreeMap<>();
+    @GuardedBy("this")
+    private long zeroCount;
+    @GuardedBy("this")
+    private long count;
+    @GuardedBy("this")
+    private double sum;
+    @GuardedBy("this")
+    private double min = Double.POSITIVE_INFINITY;
+    @GuardedBy("this")
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public DistributionSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public DistributionSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public synchronized void accept(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (value < MIN_INDEXABLE_VALUE) {
+            zeroCount++;
+        } else {
+            bins.merge(index(value), 1L, Long::sum);
+        }
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(DistributionSketch other) {
+        if (other == this) {
+            throw new IllegalArgumentException("Cannot merge a sketch into itself");
+        }
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with different relative accuracy: " + relativeAccuracy + " and " + other.relativeAccuracy);
+        }
+        TreeMap<Integer, Long> otherBins;
+        long otherZeroCount, otherCount;
+        double otherSum, otherMin, otherMax;
+        synchronized (other) {
+            otherBins = new TreeMap<>(other.bins);
+            otherZeroCount = other.zeroCount;
+            otherCount = other.count;
+            otherSum = other.sum;
+            otherMin = other.min;
+            otherMax = other.max;
+        }
+        synchronized (this) {
+            for (Map.Entry<Integer, Long> e : otherBins.entrySet()) {
+                bins.merge(e.getKey(), e.getValue(), Long::sum);
+            }
+            zeroCount += otherZeroCount;
+            count += otherCount;
+            sum += otherSum;
+            min = Math.min(min, otherMin);
+            max = Math.max(max, otherMax);
+        }
+    }
+
+    /**
+     * @param quantile - a number between 0 and 1
+     * @return the approximate value at the given quantile, or {@code NaN} if the sketch is empty
+     */
+    public synchronized double getValueAtQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1 || count == 0) {
+            return Double.NaN;
+        }
+        double rank = quantile * (count - 1);
+        long cumulativeCount = zeroCount;
+        if (cumulativeCount > rank) {
+            return clamp(0);
+        }
+        for (Map.Entry<Integer, Long> e : bins.entrySet()) {
+            cumulativeCount += e.getValue();
+            if (cumulativeCount > rank) {
+                return clamp(value(e.getKey()));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Passes every non-empty bin to the consumer, in ascending order of values.
+     */
+    public synchronized void forEachBin(BinConsumer consumer) {
+        if (zeroCount > 0) {
+            consumer.accept(clamp(0), zeroCount);
+        }
+        for (Map.Entry<Integer, Long> e : bins.entrySet()) {
+            consumer.accept(clamp(value(e.getKey())), e.getValue());
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getSum() {
+        return sum;
+    }
+
+    public synchronized double getMin() {
+        return count > 0 ? min : Double.NaN;
+    }
+
+    public synchronized double getMax() {
+        return count > 0 ? max : Double.NaN;
+    }
+
+    public synchronized double getAverage() {
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    private double value(int index) {
+        // the point that is equally distant (relative error-wise) from both bin boundaries
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    @GuardedBy("this")
+    private double clamp(double value) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public interface BinConsumer {
+        void accept(double value, long count);
+    }
+}
@@ -0,0 +1,108 @@
+package org.datadog.jenkins.plugins.datadog.metrics;
+
+import hudson.model.Item;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+
+/**
+ * Number of items on the controller, by item type.
+ * <p>
+ * Counts are maintained incrementally from item events (see {@code DatadogItemListener}),
+ * so that reading them does not require walking all the folders and items.
+ * Since not every change is reported with an event (e.g. copying a folder creates its children without firing events for them),
+ * the counts are periodically reconciled with a full scan of the items.
+ */
+public class ItemCounts {
+
+    private static final Logger logger = Logger.getLogger(ItemCounts.class.getName());
+
+    private static final String RECONCILIATION_INTERVAL_ENV_VAR = "DD_JENKINS_ITEM_COUNT_RECONCILIATION_INTERVAL_MINUTES";
+    private static final int DEFAULT_RECONCILIATION_INTERVAL_MINUTES = 60;
+
+    private static final ItemCounts instance = new ItemCounts(
+            TimeUnit.MINUTES.toNanos(DatadogUtilities.envVar(RECONCILIATION_INTERVAL_ENV_VAR, DEFAULT_RECONCILIATION_INTERVAL_MINUTES)),
+            System::nanoTime);
+
+    public static ItemCounts getInstance() {
+        return instance;
+    }
+
+    private final long reconciliationIntervalNanos;
+    private final LongSupplier nanoClock;
+    private final Map<Class<?>, LongAdder> countsByType = new ConcurrentHashMap<>();
+    private volatile long lastReconciliationNanos;
+    private volatile boolean reconciled;
+
+    ItemCounts(long reconciliationIntervalNanos, LongSupplier nanoClock) {
+        this.reconciliationIntervalNanos = reconciliationIntervalNanos;
+        this.nanoClock = nanoClock;
+    }
+
+    public void onCreated(Item item) {
+        if (item != null) {
+            countsByType.computeIfAbsent(item.getClass(), k -> new LongAdder()).increment();
+        }
+    }
+
+    public void onDeleted(Item item) {
+        if (item != null) {
+            countsByType.computeIfAbsent(item.getClass(), k -> new LongAdder()).decrement();
+        }
+    }
+
+    /**
+     * Forces a full scan the next time the counts are read.
+     */
+    public void invalidate() {
+        reconciled = false;
+    }
+
+    /**
+     * Returns the number of items of the given type (including its subtypes).
+     * Does a full scan if the counts were never reconciled or if the reconciliation interval has passed.
+     */
+    public long getCount(Jenkins jenkins, Class<?> type) {
+        if (!reconciled || nanoClock.getAsLong() - lastReconciliationNanos > reconciliationIntervalNanos) {
+            reconcile(jenkins);
+        }
+        return getCount(type);
+    }
+
+    long getCount(Class<?> type) {
+        long count = 0;
+        for (Map.Entry<Class<?>, LongAdder> e : countsByType.entrySet()) {
+            if (type.isAssignableFrom(e.getKey())) {
+                count += e.getValue().sum();
+            }
+        }
+        return Math.max(count, 0);
+    }
+
+    public synchronized void reconcile(Jenkins jenkins) {
+        long start = System.currentTimeMillis();
+        Map<Class<?>, Long> scannedCounts = new HashMap<>();
+        for (Item item : jenkins.allItems(Item.class)) {
+            scannedCounts.merge(item.getClass(), 1L, Long::sum);
+        }
+        reset(scannedCounts);
+        logger.fine("Reconciled item counts in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    synchronized void reset(Map<Class<?>, Long> scannedCounts) {
+        countsByType.keySet().retainAll(scannedCounts.keySet());
+        for (Map.Entry<Class<?>, Long> e : scannedCounts.entrySet()) {
+            LongAdder counter = countsByType.computeIfAbsent(e.getKey(), k -> new LongAdder());
+            counter.reset();
+            counter.add(e.getValue());
+        }
+        lastReconciliationNanos = nanoClock.getAsLong();
+        reconciled = true;
+    }
+}
@@ -31,17 +31,27 @@ import java.util.Set;
 
 public class MetricKey {
 
-    private final Map<String, Set<String>> tags;
+    private final TagSet tags;
     private final String metricName;
     private final String hostname;
+    private final int hashCode;
 
     public MetricKey(Map<String, Set<String>> tags, String metricName, String hostname) {
+        this(TagSet.of(tags), metricName, hostname);
+    }
+
+    public MetricKey(TagSet tags, String metricName, String hostname) {
         this.tags = tags;
         this.metricName = metricName;
         this.hostname = hostname;
+        this.hashCode = Objects.hash(tags, metricName, hostname);
     }
 
     public Map<String, Set<String>> getTags() {
+        return tags.asMap();
+    }
+
+    public TagSet getTagSet() {
         return tags;
     }
 
@@ -62,14 +72,15 @@ public class MetricKey {
             return false;
         }
         MetricKey that = (MetricKey) o;
-        return Objects.equals(tags, that.tags)
+        return hashCode == that.hashCode
+                && Objects.equals(tags, that.tags)
                 && Objects.equals(metricName, that.metricName)
                 && Objects.equals(hostname, that.hostname);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(tags, metricName, hostname);
+        return hashCode;
     }
 
     @Override
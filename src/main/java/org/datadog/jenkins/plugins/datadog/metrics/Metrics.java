@@ -25,11 +25,14 @@ THE SOFTWARE.
 
 package org.datadog.jenkins.plugins.datadog.metrics;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
 
 public class Metrics {
 
@@ -39,17 +42,67 @@ public class Metrics {
         return instance;
     }
 
-    private final AtomicReference<ConcurrentMap<MetricKey, Integer>> counters = new AtomicReference<>(new ConcurrentHashMap<>());
+    private static final String DURATIONS_AS_DISTRIBUTIONS_ENV_VAR = "DD_JENKINS_DURATION_METRICS_AS_DISTRIBUTIONS";
+
+    private final AtomicReference<ConcurrentMap<MetricKey, LongAdder>> counters = new AtomicReference<>(new ConcurrentHashMap<>());
+    private final AtomicReference<ConcurrentMap<MetricKey, DistributionSketch>> distributions = new AtomicReference<>(new ConcurrentHashMap<>());
+    private final boolean durationsAsDistributions = DatadogUtilities.envVar(DURATIONS_AS_DISTRIBUTIONS_ENV_VAR, false);
 
     private Metrics(){}
 
     public void incrementCounter(String name, String hostname, Map<String, Set<String>> tags) {
+        incrementCounter(name, hostname, TagSet.of(tags));
+    }
+
+    public void incrementCounter(String name, String hostname, TagSet tags) {
         MetricKey key = new MetricKey(tags, name, hostname);
-        counters.get().merge(key, 1, Integer::sum);
+        ConcurrentMap<MetricKey, LongAdder> currentCounters = counters.get();
+        LongAdder counter = currentCounters.get(key);
+        if (counter == null) {
+            counter = currentCounters.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
     }
 
     public Map<MetricKey, Integer> getAndResetCounters() {
-        return counters.getAndSet(new ConcurrentHashMap<>());
+        ConcurrentMap<MetricKey, LongAdder> flushedCounters = counters.getAndSet(new ConcurrentHashMap<>());
+        Map<MetricKey, Integer> result = new HashMap<>(flushedCounters.size() * 2);
+        for (Map.Entry<MetricKey, LongAdder> e : flushedCounters.entrySet()) {
+            // counts accumulated during a single flush interval are well within int range
+            result.put(e.getKey(), (int) Math.min(e.getValue().sum(), Integer.MAX_VALUE));
+        }
+        return result;
+    }
+
+    /**
+     * Submits a duration metric.
+     * If durations are configured to be sent as distributions, the value is recorded in a sketch
+     * that is flushed together with the counters; otherwise the value is submitted as a gauge.
+     */
+    public void submitDuration(MetricsClient metrics, String name, double value, String hostname, Map<String, Set<String>> tags) {
+        submitDuration(metrics, name, value, hostname, TagSet.of(tags));
+    }
+
+    public void submitDuration(MetricsClient metrics, String name, double value, String hostname, TagSet tags) {
+        if (durationsAsDistributions) {
+            recordDistributionValue(name, hostname, tags, value);
+        } else {
+            metrics.gauge(name, value, hostname, tags);
+        }
+    }
+
+    public void recordDistributionValue(String name, String hostname, TagSet tags, double value) {
+        MetricKey key = new MetricKey(tags, name, hostname);
+        ConcurrentMap<MetricKey, DistributionSketch> currentDistributions = distributions.get();
+        DistributionSketch sketch = currentDistributions.get(key);
+        if (sketch == null) {
+            sketch = currentDistributions.computeIfAbsent(key, k -> new DistributionSketch());
+        }
+        sketch.accept(value);
+    }
+
+    public Map<MetricKey, DistributionSketch> getAndResetDistributions() {
+        return distributions.getAndSet(new ConcurrentHashMap<>());
     }
 
 }
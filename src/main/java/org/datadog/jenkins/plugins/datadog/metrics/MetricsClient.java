@@ -23,4 +23,43 @@ public interface MetricsClient extends AutoCloseable {
      * @param tags     - A Map containing the tags to submit.
      */
     void rate(String name, double value, String hostname, Map<String, Set<String>> tags);
+
+    /**
+     * Sends a metric to the Datadog API, including the gauge name and value.
+     * Clients should override this method to use pre-rendered tags.
+     *
+     * @param name     - A String with the name of the metric to record.
+     * @param value    - A long containing the value to submit.
+     * @param hostname - A String with the hostname to submit.
+     * @param tags     - A TagSet containing the tags to submit.
+     */
+    default void gauge(String name, double value, String hostname, TagSet tags) {
+        gauge(name, value, hostname, tags.asMap());
+    }
+
+    /**
+     * Sends a rate metric to the Datadog API, including the counter name and value.
+     * Clients should override this method to use pre-rendered tags.
+     *
+     * @param name     - A String with the name of the metric to record.
+     * @param value    - A long containing the value to submit.
+     * @param hostname - A String with the hostname to submit.
+     * @param tags     - A TagSet containing the tags to submit.
+     */
+    default void rate(String name, double value, String hostname, TagSet tags) {
+        rate(name, value, hostname, tags.asMap());
+    }
+
+    /**
+     * Sends the values aggregated in a sketch as a distribution metric.
+     * Clients that do not support distributions submit the average value as a gauge.
+     *
+     * @param name     - A String with the name of the metric to record.
+     * @param sketch   - A DistributionSketch with the values to submit.
+     * @param hostname - A String with the hostname to submit.
+     * @param tags     - A TagSet containing the tags to submit.
+     */
+    default void distribution(String name, DistributionSketch sketch, String hostname, TagSet tags) {
+        gauge(name, sketch.getAverage(), hostname, tags);
+    }
 }
@@ -0,0 +1,157 @@
+package org.datadog.jenkins.plugins.datadog.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+
+/**
+ * Immutable set of metric tags.
+ * <p>
+ * The tags are rendered into {@code name:value} strings (or just {@code name} for tags without a value) once, when the set is created,
+ * and the hash code is precomputed, so that tag sets are cheap to use as map keys and to submit.
+ * <p>
+ * Instances obtained with {@link #of(Map)} are interned:
+ * equal tags yield the same instance, as long as it is not evicted from the intern cache.
+ * The cache is keyed on the immutable rendered form of the tags and is not locked on lookups.
+ * It is made of two generations: when the current generation is full, it replaces the previous one
+ * and a new generation is started, and tag sets found in the previous generation are moved to the current one.
+ * This way the tags of active jobs stay interned while the tags of finished ones age out.
+ * Callers that submit several metrics for the same event should obtain the tag set once and reuse it.
+ */
+public final class TagSet {
+
+    private static final String INTERN_CACHE_SIZE_ENV_VAR = "DD_JENKINS_METRICS_TAG_SET_CACHE_SIZE";
+    private static final int DEFAULT_INTERN_CACHE_SIZE = 10_000;
+    private static final int INTERN_CACHE_SIZE = DatadogUtilities.envVar(INTERN_CACHE_SIZE_ENV_VAR, DEFAULT_INTERN_CACHE_SIZE);
+
+    private static final int INTERN_GENERATION_SIZE = Math.max(INTERN_CACHE_SIZE / 2, 1);
+
+    private static volatile ConcurrentMap<TagSet, TagSet> interned = new ConcurrentHashMap<>();
+    private static volatile ConcurrentMap<TagSet, TagSet> previouslyInterned = new ConcurrentHashMap<>();
+
+    public static final TagSet EMPTY = new TagSet(Collections.emptyMap());
+
+    private final Map<String, Set<String>> tags;
+    private final String[] renderedTags;
+    private final List<String> renderedTagsView;
+    private final int hashCode;
+
+    private TagSet(Map<String, Set<String>> tags) {
+        Map<String, Set<String>> sortedTags = new TreeMap<>();
+        List<String> rendered = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> entry : tags.entrySet()) {
+            String name = entry.getKey();
+            Set<String> values = entry.getValue();
+            if (name == null || values == null) {
+                continue;
+            }
+            Set<String> sortedValues = new TreeSet<>();
+            for (String value : values) {
+                if (value == null || value.isEmpty()) {
+                    sortedValues.add("");
+                    rendered.add(name); // Tag with no value
+                } else {
+                    sortedValues.add(value);
+                    rendered.add(name + ":" + value);
+                }
+            }
+            sortedTags.put(name, Collections.unmodifiableSet(sortedValues));
+        }
+        Collections.sort(rendered);
+
+        this.tags = Collections.unmodifiableMap(sortedTags);
+        this.renderedTags = rendered.toArray(new String[0]);
+        this.renderedTagsView = Collections.unmodifiableList(Arrays.asList(renderedTags));
+        this.hashCode = Arrays.hashCode(renderedTags);
+    }
+
+    /**
+     * Returns the interned tag set that corresponds to the given tags.
+     * The map is not retained, so it can be modified after the call.
+     */
+    public static TagSet of(@Nullable Map<String, Set<String>> tags) {
+        if (tags == null || tags.isEmpty()) {
+            return EMPTY;
+        }
+        TagSet tagSet = new TagSet(tags);
+        ConcurrentMap<TagSet, TagSet> current = interned;
+        TagSet existing = current.get(tagSet);
+        if (existing != null) {
+            return existing;
+        }
+
+        TagSet previous = previouslyInterned.get(tagSet);
+        TagSet candidate = previous != null ? previous : tagSet;
+        existing = current.putIfAbsent(candidate, candidate);
+        if (existing != null) {
+            return existing;
+        }
+        if (current.size() > INTERN_GENERATION_SIZE) {
+            startNewGeneration(current);
+        }
+        return candidate;
+    }
+
+    private static synchronized void startNewGeneration(ConcurrentMap<TagSet, TagSet> full) {
+        if (interned == full) {
+            previouslyInterned = full;
+            interned = new ConcurrentHashMap<>();
+        }
+    }
+
+    public boolean isEmpty() {
+        return renderedTags.length == 0;
+    }
+
+    /**
+     * @return unmodifiable view of the tags, with tag names and values sorted
+     */
+    public Map<String, Set<String>> asMap() {
+        return tags;
+    }
+
+    /**
+     * @return sorted {@code name:value} strings
+     */
+    public List<String> getRenderedTags() {
+        return renderedTagsView;
+    }
+
+    /**
+     * @return a copy of the sorted {@code name:value} strings
+     */
+    public String[] toArray() {
+        return renderedTags.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TagSet that = (TagSet) o;
+        return hashCode == that.hashCode && Arrays.equals(renderedTags, that.renderedTags);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return renderedTagsView.toString();
+    }
+}
@@ -34,6 +34,7 @@ import hudson.model.BooleanParameterValue;
 import hudson.model.Cause;
 import hudson.model.CauseAction;
 import hudson.model.Computer;
+import hudson.model.Executor;
 import hudson.model.ItemGroup;
 import hudson.model.Job;
 import hudson.model.Node;
@@ -159,6 +160,9 @@ public class BuildData implements Serializable {
     private String upstreamBuildTag;
     private String jenkinsUrl;
     private String executorNumber;
+    /** Labels of the node that the run is executing on, captured while the executor is still assigned to the run */
+    @Nullable
+    private Set<String> executorNodeLabels;
     private String javaHome;
     private String workspace;
 
@@ -350,6 +354,12 @@ public class BuildData implements Serializable {
             this.executorNumber = pipelineInfo.getExecutorNumber();
         }
 
+        Executor executor = run.getExecutor();
+        Computer executorOwner = executor != null ? executor.getOwner() : null;
+        if (executorOwner != null) {
+            this.executorNodeLabels = DatadogUtilities.getNodeLabels(executorOwner);
+        }
+
         // Save charset canonical name
         this.charsetName = run.getCharset().name();
 
@@ -661,6 +671,11 @@ public class BuildData implements Serializable {
         return defaultIfNull(nodeName, value);
     }
 
+    @Nullable
+    public Set<String> getExecutorNodeLabels() {
+        return executorNodeLabels;
+    }
+
     public String getBranch(String value) {
         return defaultIfNull(gitMetadata.getBranch(), value);
     }
@@ -20,6 +20,11 @@ public class GitMetadataAction extends DatadogPluginAction {
 
   private final Map<Source, GitMetadata> metadataBySource;
 
+  /**
+   * Metadata merged across all the sources, {@code null} if it has to be recomputed.
+   */
+  private transient volatile GitMetadata mergedMetadata;
+
   public GitMetadataAction() {
     this.metadataBySource = new HashMap<>();
   }
@@ -29,11 +34,33 @@ public class GitMetadataAction extends DatadogPluginAction {
   }
 
   public synchronized void addMetadata(Source metadataSource, GitMetadata metadata) {
-    metadataBySource.merge(metadataSource, metadata, GitMetadata::merge);
+    GitMetadata existing = metadataBySource.get(metadataSource);
+    if (metadata.equals(existing)) {
+      return;
+    }
+    GitMetadata updated = existing != null ? GitMetadata.merge(existing, metadata) : metadata;
+    if (updated.equals(existing)) {
+      return;
+    }
+    metadataBySource.put(metadataSource, updated);
+    mergedMetadata = null;
   }
 
   @Nonnull
-  public synchronized GitMetadata getMetadata() {
+  public GitMetadata getMetadata() {
+    GitMetadata metadata = mergedMetadata;
+    if (metadata == null) {
+      synchronized (this) {
+        metadata = mergedMetadata;
+        if (metadata == null) {
+          mergedMetadata = metadata = mergeSources();
+        }
+      }
+    }
+    return metadata;
+  }
+
+  private GitMetadata mergeSources() {
     GitMetadata metadata = GitMetadata.EMPTY;
     for (Source source : Source.values()) {
       GitMetadata sourceMetadata = metadataBySource.get(source);
@@ -44,7 +71,7 @@ public class GitMetadataAction extends DatadogPluginAction {
     return metadata;
   }
 
-  public GitMetadata getPipelineDefinitionMetadata() {
+  public synchronized GitMetadata getPipelineDefinitionMetadata() {
     return metadataBySource.getOrDefault(Source.GIT_CLIENT_PIPELINE_DEFINITION, GitMetadata.EMPTY);
   }
 
@@ -1,6 +1,7 @@
 package org.datadog.jenkins.plugins.datadog.model;
 
 import hudson.model.Run;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
@@ -8,7 +9,9 @@ import org.datadog.jenkins.plugins.datadog.model.node.DequeueAction;
 import org.datadog.jenkins.plugins.datadog.model.node.NodeInfoAction;
 import org.datadog.jenkins.plugins.datadog.model.node.StatusAction;
 import org.datadog.jenkins.plugins.datadog.traces.BuildSpanAction;
+import org.datadog.jenkins.plugins.datadog.traces.FlowNodeSpanIds;
 import org.datadog.jenkins.plugins.datadog.traces.message.TraceSpan;
+import org.datadog.jenkins.plugins.datadog.util.TagsUtil;
 import org.jenkinsci.plugins.workflow.actions.ArgumentsAction;
 import org.jenkinsci.plugins.workflow.actions.WarningAction;
 import org.jenkinsci.plugins.workflow.cps.nodes.StepAtomNode;
@@ -117,21 +120,20 @@ public class PipelineStepData {
     }
 
     private PipelineStepData(final Run<?, ?> run, FlowNode startNode, FlowNode endNode) {
-        TraceInfoAction traceInfoAction = run.getAction(TraceInfoAction.class);
-        if (traceInfoAction != null) {
-            /*
-             * Use "remove-or-create" semantics:
-             * - if the ID is there in the action, remove it since it is no longer needed (we're about to submit this node and be done with it)
-             * - if the ID is not there, create a new one on the spot without saving it in the action (IDs are initialized lazily, if the node's ID is not there, it means the node had no children that needed to know its ID)
-             */
-            Long spanId = traceInfoAction.removeOrCreate(startNode.getId());
-            if (spanId != null) {
-                this.spanId = spanId;
-            }
-        } else {
-            throw new IllegalStateException("Step " + startNode.getId() + " (" + startNode.getDisplayName() + ") has no span info." +
+        BuildSpanAction buildSpanAction = run.getAction(BuildSpanAction.class);
+        if (buildSpanAction == null) {
+            throw new IllegalStateException("Step " + startNode.getId() + " (" + startNode.getDisplayName() + ") has no trace info." +
                     "It is possible that CI Visibility was enabled while this step was in progress");
         }
+        TraceSpan.TraceSpanContext traceContext = buildSpanAction.getBuildSpanContext();
+        this.traceId = traceContext.getTraceId();
+
+        /*
+         * Use "remove-or-create" semantics:
+         * - if the ID is stored, remove it since it is no longer needed (we're about to submit this node and be done with it)
+         * - if the ID is not stored, create a new one on the spot without storing it (IDs are initialized lazily, if the node's ID is not there, it means the node had no children that needed to know its ID)
+         */
+        this.spanId = FlowNodeSpanIds.removeOrCreate(run, traceId, startNode.getId());
 
         /*
          * Find node's parent: iterate over the blocks that contain it, starting with the innermost,
@@ -141,28 +143,10 @@ public class PipelineStepData {
         if (enclosingStage != null) {
             this.stageId = enclosingStage.getId();
             this.stageName = enclosingStage.getDisplayName();
-
-            Long parentSpanId = traceInfoAction.getOrCreate(enclosingStage.getId());
-            if (parentSpanId != null) {
-                this.parentSpanId = parentSpanId;
-            }
-        }
-
-        BuildSpanAction buildSpanAction = run.getAction(BuildSpanAction.class);
-        if (buildSpanAction != null) {
-            TraceSpan.TraceSpanContext traceContext = buildSpanAction.getBuildSpanContext();
-            this.traceId = traceContext.getTraceId();
-
-            /*
-             * If we didn't find this node's parent previously,
-             * then it is a top-level stage, so its parent will be the span that correspond to the build as a whole.
-             */
-            if (this.parentSpanId == -1) {
-                this.parentSpanId = traceContext.getSpanId();
-            }
+            this.parentSpanId = FlowNodeSpanIds.getOrCreate(run, traceId, enclosingStage.getId());
         } else {
-            throw new IllegalStateException("Step " + startNode.getId() + " (" + startNode.getDisplayName() + ") has no trace info." +
-                    "It is possible that CI Visibility was enabled while this step was in progress");
+            // top-level stage, its parent is the span that corresponds to the build as a whole
+            this.parentSpanId = traceContext.getSpanId();
         }
 
         DequeueAction queueInfoAction = startNode.getAction(DequeueAction.class);
@@ -284,6 +268,23 @@ public class PipelineStepData {
         return tags;
     }
 
+    /**
+     * Turns this step into a summary of several sibling steps that are submitted as a single span.
+     * The summary spans the time between the start of the first step and the end of the last one,
+     * and has the number of steps and their duration statistics as tags.
+     */
+    public void summarize(int count, long startTimeMillis, long endTimeMillis, long minDurationMillis, long maxDurationMillis, long totalDurationMillis) {
+        this.name = name + " (" + count + " collapsed steps)";
+        this.args = Collections.emptyMap();
+        this.startTimeMillis = startTimeMillis;
+        this.endTimeMillis = endTimeMillis;
+        TagsUtil.addTagToTags(tags, "collapsed_steps.count", String.valueOf(count));
+        TagsUtil.addTagToTags(tags, "collapsed_steps.duration.min", String.valueOf(minDurationMillis));
+        TagsUtil.addTagToTags(tags, "collapsed_steps.duration.max", String.valueOf(maxDurationMillis));
+        TagsUtil.addTagToTags(tags, "collapsed_steps.duration.avg", String.valueOf(totalDurationMillis / count));
+        TagsUtil.addTagToTags(tags, "collapsed_steps.duration.total", String.valueOf(totalDurationMillis));
+    }
+
     private static Status getStatus(FlowNode node, String jenkinsResult) {
         Status nodeStatus = Status.fromJenkinsResult(jenkinsResult);
         StatusAction statusAction = node.getAction(StatusAction.class);
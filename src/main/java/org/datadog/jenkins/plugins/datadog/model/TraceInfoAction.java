@@ -35,6 +35,8 @@ import org.datadog.jenkins.plugins.datadog.util.conversion.VersionedConverter;
  * rather than a separate action with a single ID associated with the node.
  * This is done for performance reasons, as changes to run actions are batched,
  * while changes to node actions are written to disk immediately.
+ * <p>
+ * The action is not added to runs that use deterministic span IDs (see {@link org.datadog.jenkins.plugins.datadog.traces.FlowNodeSpanIds}).
  */
 public class TraceInfoAction extends DatadogPluginAction {
 
@@ -36,6 +36,7 @@ import java.util.logging.Logger;
 import org.datadog.jenkins.plugins.datadog.DatadogClient;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
 import org.datadog.jenkins.plugins.datadog.clients.ClientHolder;
+import org.datadog.jenkins.plugins.datadog.metrics.DistributionSketch;
 import org.datadog.jenkins.plugins.datadog.metrics.MetricKey;
 import org.datadog.jenkins.plugins.datadog.metrics.Metrics;
 import org.datadog.jenkins.plugins.datadog.metrics.MetricsClient;
@@ -73,7 +74,15 @@ public class DatadogCountersPublisher extends AsyncPeriodicWork {
                 MetricKey metric = entry.getKey();
                 Number value = entry.getValue();
                 logger.fine("Flushing: " + metric.getMetricName() + " - " + value);
-                metricsClient.rate(metric.getMetricName(), value.doubleValue(), metric.getHostname(), metric.getTags());
+                metricsClient.rate(metric.getMetricName(), value.doubleValue(), metric.getHostname(), metric.getTagSet());
+            }
+
+            Map<MetricKey, DistributionSketch> distributions = Metrics.getInstance().getAndResetDistributions();
+            for (Map.Entry<MetricKey, DistributionSketch> entry : distributions.entrySet()) {
+                MetricKey metric = entry.getKey();
+                DistributionSketch sketch = entry.getValue();
+                logger.fine("Flushing: " + metric.getMetricName() + " - " + sketch.getCount() + " values");
+                metricsClient.distribution(metric.getMetricName(), sketch, metric.getHostname(), metric.getTagSet());
             }
 
         } catch (Exception e) {
@@ -37,6 +37,7 @@ import jenkins.security.UpdateSiteWarningsMonitor;
 import org.datadog.jenkins.plugins.datadog.DatadogClient;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
 import org.datadog.jenkins.plugins.datadog.clients.ClientHolder;
+import org.datadog.jenkins.plugins.datadog.metrics.ItemCounts;
 import org.datadog.jenkins.plugins.datadog.metrics.MetricsClient;
 import org.datadog.jenkins.plugins.datadog.model.PluginData;
 import org.datadog.jenkins.plugins.datadog.util.TagsUtil;
@@ -85,7 +86,7 @@ public class DatadogJenkinsPublisher extends PeriodicWork {
             if (instance == null) {
                 logger.fine("Could not retrieve projects");
             } else {
-                projectCount = instance.getAllItems(Project.class).size();
+                projectCount = ItemCounts.getInstance().getCount(instance, Project.class);
             }
 
             PluginData pluginData = collectPluginData(instance);
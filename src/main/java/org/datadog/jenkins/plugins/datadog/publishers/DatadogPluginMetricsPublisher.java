@@ -0,0 +1,150 @@
+package org.datadog.jenkins.plugins.datadog.publishers;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.jmx.JmxReporter;
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import org.datadog.jenkins.plugins.datadog.DatadogClient;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.clients.ClientHolder;
+import org.datadog.jenkins.plugins.datadog.metrics.MetricsClient;
+import org.datadog.jenkins.plugins.datadog.metrics.TagSet;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
+import org.datadog.jenkins.plugins.datadog.util.TagsUtil;
+
+/**
+ * Exports the plugin's own metrics (writer queues, dropped payloads, HTTP latency and retries, circuit breaker states, etc.)
+ * as {@code jenkins.datadog.plugin.*} metrics, so that the health of the data pipeline can be monitored in Datadog.
+ * <p>
+ * Sending the metrics through the Datadog client is opt-in, as they count towards custom metrics.
+ * The metrics are also exposed via JMX (enabled by default).
+ */
+@Extension
+public class DatadogPluginMetricsPublisher extends AsyncPeriodicWork {
+
+    private static final Logger logger = Logger.getLogger(DatadogPluginMetricsPublisher.class.getName());
+
+    private static final String ENABLED_ENV_VAR = "DD_JENKINS_PLUGIN_METRICS_ENABLED";
+    private static final String INTERVAL_ENV_VAR = "DD_JENKINS_PLUGIN_METRICS_INTERVAL_SECONDS";
+    private static final String JMX_ENABLED_ENV_VAR = "DD_JENKINS_PLUGIN_METRICS_JMX_ENABLED";
+    private static final boolean DEFAULT_ENABLED = false;
+    private static final int DEFAULT_INTERVAL_SECONDS = 60;
+    private static final boolean DEFAULT_JMX_ENABLED = true;
+
+    static final String METRIC_PREFIX = "jenkins.datadog.plugin.";
+    private static final String JMX_DOMAIN = "org.datadog.jenkins.plugins.datadog";
+    private static final Pattern INVALID_METRIC_NAME_CHARACTERS = Pattern.compile("[^a-z0-9_.]");
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static JmxReporter jmxReporter;
+
+    public DatadogPluginMetricsPublisher() {
+        super("Datadog Plugin Metrics Publisher");
+    }
+
+    @Initializer(after = InitMilestone.PLUGINS_STARTED)
+    public static synchronized void startJmxReporter() {
+        if (jmxReporter != null || !DatadogUtilities.envVar(JMX_ENABLED_ENV_VAR, DEFAULT_JMX_ENABLED)) {
+            return;
+        }
+        try {
+            jmxReporter = JmxReporter.forRegistry(AsyncWriter.METRICS)
+                    .inDomain(JMX_DOMAIN)
+                    .convertDurationsTo(TimeUnit.MILLISECONDS)
+                    .convertRatesTo(TimeUnit.SECONDS)
+                    .build();
+            jmxReporter.start();
+        } catch (Exception e) {
+            DatadogUtilities.severe(logger, e, "Failed to expose plugin metrics via JMX");
+        }
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.SECONDS.toMillis(DatadogUtilities.envVar(INTERVAL_ENV_VAR, DEFAULT_INTERVAL_SECONDS));
+    }
+
+    @Override
+    protected void execute(TaskListener taskListener) {
+        if (!DatadogUtilities.envVar(ENABLED_ENV_VAR, DEFAULT_ENABLED)) {
+            return;
+        }
+        DatadogClient client = ClientHolder.getClient();
+        if (client == null) {
+            return;
+        }
+
+        Map<String, Set<String>> tags = TagsUtil.addTagToTags(null, "jenkins_url", DatadogUtilities.getJenkinsUrl());
+        try (MetricsClient metricsClient = client.metrics()) {
+            export(AsyncWriter.METRICS, metricsClient, DatadogUtilities.getHostname(null), TagSet.of(tags));
+        } catch (Exception e) {
+            DatadogUtilities.severe(logger, e, "Failed to publish plugin metrics");
+        }
+    }
+
+    static void export(MetricRegistry registry, MetricsClient metricsClient, String hostname, TagSet tags) {
+        for (Map.Entry<String, Gauge> e : registry.getGauges().entrySet()) {
+            Object value = e.getValue().getValue();
+            if (value instanceof Number) {
+                metricsClient.gauge(metricName(e.getKey()), ((Number) value).doubleValue(), hostname, tags);
+            } else if (value instanceof Boolean) {
+                metricsClient.gauge(metricName(e.getKey()), (Boolean) value ? 1 : 0, hostname, tags);
+            }
+        }
+        for (Map.Entry<String, Counter> e : registry.getCounters().entrySet()) {
+            metricsClient.gauge(metricName(e.getKey()), e.getValue().getCount(), hostname, tags);
+        }
+        for (Map.Entry<String, Meter> e : registry.getMeters().entrySet()) {
+            String name = metricName(e.getKey());
+            Meter meter = e.getValue();
+            metricsClient.gauge(name + ".count", meter.getCount(), hostname, tags);
+            metricsClient.gauge(name + ".rate", meter.getOneMinuteRate(), hostname, tags);
+        }
+        for (Map.Entry<String, Histogram> e : registry.getHistograms().entrySet()) {
+            String name = metricName(e.getKey());
+            Histogram histogram = e.getValue();
+            metricsClient.gauge(name + ".count", histogram.getCount(), hostname, tags);
+            exportSnapshot(metricsClient, name, histogram.getSnapshot(), 1, hostname, tags);
+        }
+        for (Map.Entry<String, Timer> e : registry.getTimers().entrySet()) {
+            String name = metricName(e.getKey());
+            Timer timer = e.getValue();
+            metricsClient.gauge(name + ".count", timer.getCount(), hostname, tags);
+            metricsClient.gauge(name + ".rate", timer.getOneMinuteRate(), hostname, tags);
+            // timer values are in nanoseconds, export milliseconds
+            exportSnapshot(metricsClient, name, timer.getSnapshot(), NANOS_PER_MILLI, hostname, tags);
+        }
+    }
+
+    private static void exportSnapshot(MetricsClient metricsClient, String name, Snapshot snapshot, double divisor, String hostname, TagSet tags) {
+        metricsClient.gauge(name + ".avg", snapshot.getMean() / divisor, hostname, tags);
+        metricsClient.gauge(name + ".max", snapshot.getMax() / divisor, hostname, tags);
+        metricsClient.gauge(name + ".median", snapshot.getMedian() / divisor, hostname, tags);
+        metricsClient.gauge(name + ".95percentile", snapshot.get95thPercentile() / divisor, hostname, tags);
+        metricsClient.gauge(name + ".99percentile", snapshot.get99thPercentile() / divisor, hostname, tags);
+    }
+
+    static String metricName(String registryName) {
+        return METRIC_PREFIX + INVALID_METRIC_NAME_CHARACTERS.matcher(registryName.toLowerCase()).replaceAll("_");
+    }
+
+    @Override
+    protected Level getNormalLoggingLevel() {
+        return Level.FINE;
+    }
+}
@@ -1,64 +1,244 @@
 package org.datadog.jenkins.plugins.datadog.traces;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import jenkins.model.Jenkins;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
 import org.datadog.jenkins.plugins.datadog.traces.message.TraceSpan;
 
 /**
  * Used to store trace data after the build has finished.
  * The data is needed to link upstream build to a downstream build.
+ * <p>
+ * The contexts are kept in an LRU index, bounded by a memory budget (and optionally by a number of entries).
+ * Every update is appended to a file under {@code JENKINS_HOME}, which is replayed on startup,
+ * so that downstream builds can be linked to upstream builds that ran before a controller restart.
+ * The file is compacted (rewritten with the live entries only) when it grows past twice the size of the index.
  */
 public class BuildSpanManager {
 
     private static final Logger LOGGER = Logger.getLogger(BuildSpanManager.class.getName());
 
     public static final String DD_JENKINS_SPAN_CONTEXT_STORAGE_MAX_SIZE_ENV = "DD_JENKINS_SPAN_CONTEXT_STORAGE_MAX_SIZE";
-    private static final int DEFAULT_CONTEXT_STORAGE_MAX_SIZE = 1024;
+    public static final String DD_JENKINS_SPAN_CONTEXT_STORAGE_MAX_MEMORY_ENV = "DD_JENKINS_SPAN_CONTEXT_STORAGE_MAX_MEMORY_BYTES";
+    private static final String PERSISTENCE_ENABLED_ENV = "DD_JENKINS_SPAN_CONTEXT_STORAGE_PERSISTENCE_ENABLED";
+    private static final int DEFAULT_CONTEXT_STORAGE_MAX_SIZE = Integer.MAX_VALUE; // bounded by memory
+    private static final int DEFAULT_CONTEXT_STORAGE_MAX_MEMORY_BYTES = 16 * 1024 * 1024;
+    private static final boolean DEFAULT_PERSISTENCE_ENABLED = true;
 
-    private static final BuildSpanManager INSTANCE = new BuildSpanManager(getCapacity());
+    private static final String STORAGE_FILE = "datadog/span-contexts.bin";
 
-    private final Map<String, TraceSpan.TraceSpanContext> contextByTag;
-    private final BlockingQueue<String> tags;
+    /**
+     * Approximate heap footprint of an entry, excluding the characters of the tag:
+     * the map entry, the string and its array headers, and the context object.
+     */
+    static final int ENTRY_OVERHEAD_BYTES = 120;
+
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 1024;
+
+    private final int maxEntries;
+    private final long maxMemoryBytes;
+    @Nullable
+    private final File storageFile;
+
+    @GuardedBy("this")
+    private final LinkedHashMap<String, TraceSpan.TraceSpanContext> contextByTag = new LinkedHashMap<>(16, 0.75f, true);
+    @GuardedBy("this")
+    private long memoryBytes;
+    @GuardedBy("this")
+    private DataOutputStream storage;
+    @GuardedBy("this")
+    private long storedRecords;
 
     public static BuildSpanManager get() {
-        return INSTANCE;
+        return Holder.INSTANCE;
     }
 
     BuildSpanManager(int capacity) {
-        this.tags = new ArrayBlockingQueue<>(capacity);
-        this.contextByTag = new ConcurrentHashMap<>();
+        this(capacity, Long.MAX_VALUE, null);
+    }
+
+    BuildSpanManager(int maxEntries, long maxMemoryBytes, @Nullable File storageFile) {
+        this.maxEntries = Math.max(maxEntries, 1);
+        this.maxMemoryBytes = Math.max(maxMemoryBytes, 1);
+        this.storageFile = storageFile;
+        if (storageFile != null) {
+            synchronized (this) {
+                load(storageFile);
+                compact();
+            }
+        }
     }
 
-    public void put(final String tag, final TraceSpan.TraceSpanContext context) {
-        while (!tags.offer(tag)) {
-            // drop the oldest tag if the storage is full
-            contextByTag.remove(tags.poll());
+    public synchronized void put(final String tag, final TraceSpan.TraceSpanContext context) {
+        TraceSpan.TraceSpanContext previous = contextByTag.put(tag, context);
+        if (previous == null) {
+            memoryBytes += entrySize(tag);
         }
-        contextByTag.put(tag, context);
+        evict();
+        append(tag, context);
     }
 
-    public TraceSpan.TraceSpanContext get(final String tag) {
+    public synchronized TraceSpan.TraceSpanContext get(final String tag) {
         return contextByTag.get(tag);
     }
 
-    private static int getCapacity() {
-        String maxSize = System.getenv(DD_JENKINS_SPAN_CONTEXT_STORAGE_MAX_SIZE_ENV);
-        if (maxSize != null) {
-            try {
-                int parsedMaxSize = Integer.parseInt(maxSize);
-                if (parsedMaxSize > 0) {
-                    return parsedMaxSize;
-                } else {
-                    LOGGER.warning("Invalid value for " + DD_JENKINS_SPAN_CONTEXT_STORAGE_MAX_SIZE_ENV + ": " + parsedMaxSize);
+    synchronized int size() {
+        return contextByTag.size();
+    }
+
+    @GuardedBy("this")
+    private void evict() {
+        Iterator<Map.Entry<String, TraceSpan.TraceSpanContext>> it = contextByTag.entrySet().iterator();
+        while ((contextByTag.size() > maxEntries || memoryBytes > maxMemoryBytes) && it.hasNext()) {
+            // iteration starts from the least recently used entry
+            String eldest = it.next().getKey();
+            it.remove();
+            memoryBytes -= entrySize(eldest);
+        }
+    }
+
+    private static long entrySize(String tag) {
+        return ENTRY_OVERHEAD_BYTES + tag.length();
+    }
+
+    @GuardedBy("this")
+    private void load(File file) {
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                String tag;
+                TraceSpan.TraceSpanContext context;
+                try {
+                    tag = in.readUTF();
+                    context = new TraceSpan.TraceSpanContext(in.readLong(), in.readLong(), in.readLong());
+                } catch (EOFException e) {
+                    // end of file, or a record that was only partially written before the controller stopped
+                    break;
+                }
+                if (contextByTag.put(tag, context) == null) {
+                    memoryBytes += entrySize(tag);
                 }
-            } catch (NumberFormatException e) {
-                LOGGER.warning("Invalid value for " + DD_JENKINS_SPAN_CONTEXT_STORAGE_MAX_SIZE_ENV + ": " + maxSize);
+                evict();
+            }
+        } catch (IOException e) {
+            DatadogUtilities.severe(LOGGER, e, "Failed to load span contexts from " + file);
+        }
+    }
+
+    @GuardedBy("this")
+    private void append(String tag, TraceSpan.TraceSpanContext context) {
+        if (storageFile == null) {
+            return;
+        }
+        if (storedRecords >= Math.max(2L * contextByTag.size(), MIN_RECORDS_BEFORE_COMPACTION)) {
+            compact();
+            return; // the new entry is written as part of the compaction
+        }
+        try {
+            if (storage == null) {
+                storage = open(storageFile, true);
+            }
+            write(storage, tag, context);
+            storage.flush();
+            storedRecords++;
+        } catch (IOException e) {
+            DatadogUtilities.severe(LOGGER, e, "Failed to persist span context to " + storageFile);
+            closeStorage();
+        }
+    }
+
+    /**
+     * Rewrites the file with the entries that are currently in the index.
+     */
+    @GuardedBy("this")
+    private void compact() {
+        if (storageFile == null) {
+            return;
+        }
+        closeStorage();
+        File tmp = new File(storageFile.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = open(tmp, false)) {
+                for (Map.Entry<String, TraceSpan.TraceSpanContext> e : contextByTag.entrySet()) {
+                    write(out, e.getKey(), e.getValue());
+                }
+            }
+            Files.move(tmp.toPath(), storageFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            storedRecords = contextByTag.size();
+        } catch (IOException e) {
+            DatadogUtilities.severe(LOGGER, e, "Failed to compact span contexts storage " + storageFile);
+        }
+    }
+
+    private static DataOutputStream open(File file, boolean append) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+    }
+
+    private static void write(DataOutputStream out, String tag, TraceSpan.TraceSpanContext context) throws IOException {
+        out.writeUTF(tag);
+        out.writeLong(context.getTraceId());
+        out.writeLong(context.getParentId());
+        out.writeLong(context.getSpanId());
+    }
+
+    @GuardedBy("this")
+    private void closeStorage() {
+        if (storage != null) {
+            try {
+                storage.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            storage = null;
+        }
+    }
+
+    private static final class Holder {
+        private static final BuildSpanManager INSTANCE = new BuildSpanManager(
+                getPositive(DD_JENKINS_SPAN_CONTEXT_STORAGE_MAX_SIZE_ENV, DEFAULT_CONTEXT_STORAGE_MAX_SIZE),
+                getPositive(DD_JENKINS_SPAN_CONTEXT_STORAGE_MAX_MEMORY_ENV, DEFAULT_CONTEXT_STORAGE_MAX_MEMORY_BYTES),
+                getStorageFile());
+
+        @Nullable
+        private static File getStorageFile() {
+            if (!DatadogUtilities.envVar(PERSISTENCE_ENABLED_ENV, DEFAULT_PERSISTENCE_ENABLED)) {
+                return null;
+            }
+            Jenkins jenkins = Jenkins.getInstanceOrNull();
+            return jenkins != null ? new File(jenkins.getRootDir(), STORAGE_FILE) : null;
+        }
+
+        private static int getPositive(String envVar, int defaultValue) {
+            int value = DatadogUtilities.envVar(envVar, defaultValue);
+            if (value > 0) {
+                return value;
             }
+            LOGGER.warning("Invalid value for " + envVar + ": " + value);
+            return defaultValue;
         }
-        return DEFAULT_CONTEXT_STORAGE_MAX_SIZE;
     }
 
 }
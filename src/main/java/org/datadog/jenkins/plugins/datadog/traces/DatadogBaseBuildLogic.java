@@ -38,7 +38,7 @@ public abstract class DatadogBaseBuildLogic {
     public abstract JSONObject toJson(final BuildData buildData, final Run<?,?> run);
 
     @SuppressFBWarnings("NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE")
-    protected Set<String> getNodeLabels(Run<?,?> run, final String nodeName) {
+    protected Set<String> getNodeLabels(Run<?,?> run, final BuildData buildData, final String nodeName) {
         try {
             if(run == null){
                 return Collections.emptySet();
@@ -51,11 +51,11 @@ public abstract class DatadogBaseBuildLogic {
                 return pipelineNodeInfoAction.getNodeLabels();
             }
 
-            if(run.getExecutor() != null && run.getExecutor().getOwner() != null) {
-                Set<String> nodeLabels = DatadogUtilities.getNodeLabels(run.getExecutor().getOwner());
-                if(nodeLabels != null && !nodeLabels.isEmpty()) {
-                    return nodeLabels;
-                }
+            // Build data can be serialized after the run has released its executor,
+            // so the labels of the executor node are taken from the snapshot made when the data was created.
+            Set<String> nodeLabels = buildData.getExecutorNodeLabels();
+            if(nodeLabels != null && !nodeLabels.isEmpty()) {
+                return nodeLabels;
             }
 
             // If there is no labels and the node name is master,
@@ -102,7 +102,7 @@ public class DatadogTraceBuildLogic extends DatadogBaseBuildLogic {
         buildSpan.putMeta(CITags.WORKSPACE_PATH, buildData.getWorkspace(""));
         buildSpan.putMeta(CITags.NODE_NAME, nodeName);
 
-        final String nodeLabelsJson = DatadogUtilities.toJson(getNodeLabels(run, buildData.getNodeName("")));
+        final String nodeLabelsJson = DatadogUtilities.toJson(getNodeLabels(run, buildData, buildData.getNodeName("")));
         if(nodeLabelsJson != null && !nodeLabelsJson.isEmpty()){
             buildSpan.putMeta(CITags.NODE_LABELS, nodeLabelsJson);
         } else {
@@ -174,7 +174,7 @@ public class DatadogWebhookBuildLogic extends DatadogBaseBuildLogic {
             final String workspace = buildData.getWorkspace("");
             nodePayload.put("workspace", workspace);
 
-            final Set<String> nodeLabels = getNodeLabels(run, nodeName);
+            final Set<String> nodeLabels = getNodeLabels(run, buildData, nodeName);
             nodePayload.put("labels", JSONArray.fromObject((nodeLabels)));
 
             payload.put("node", nodePayload);
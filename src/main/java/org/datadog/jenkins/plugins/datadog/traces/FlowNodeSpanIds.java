@@ -0,0 +1,61 @@
+package org.datadog.jenkins.plugins.datadog.traces;
+
+import hudson.model.Run;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.model.TraceInfoAction;
+
+/**
+ * Resolves span IDs of flow nodes.
+ * <p>
+ * By default, span IDs are random, and are kept in the run's {@link TraceInfoAction} from the moment they are first needed
+ * until the node is submitted.
+ * If deterministic span IDs are enabled, the IDs are derived from the trace ID and the flow node ID instead (see {@link IdGenerator#generate(long, String)}),
+ * so that no per-node state needs to be kept and persisted with the run.
+ * <p>
+ * The mode is chosen when the run is initialized: runs that have a {@link TraceInfoAction} use stored IDs, runs that do not use derived IDs.
+ * This keeps the IDs of a run consistent if the setting is changed while the run is in progress.
+ */
+public final class FlowNodeSpanIds {
+
+    private static final String DETERMINISTIC_ENV_VAR = "DD_JENKINS_DETERMINISTIC_SPAN_IDS_ENABLED";
+    private static final boolean DEFAULT_DETERMINISTIC = false;
+
+    private FlowNodeSpanIds() {
+    }
+
+    public static boolean isDeterministic() {
+        return DatadogUtilities.envVar(DETERMINISTIC_ENV_VAR, DEFAULT_DETERMINISTIC);
+    }
+
+    /**
+     * Returns the span ID of a node that is still executing.
+     */
+    public static long getOrCreate(Run<?, ?> run, long traceId, String flowNodeId) {
+        TraceInfoAction traceInfoAction = run.getAction(TraceInfoAction.class);
+        if (traceInfoAction == null) {
+            return IdGenerator.generate(traceId, flowNodeId);
+        }
+        return traceInfoAction.getOrCreate(flowNodeId);
+    }
+
+    /**
+     * Returns the span ID of a node that is about to be submitted, the ID will not be needed afterwards.
+     */
+    public static long removeOrCreate(Run<?, ?> run, long traceId, String flowNodeId) {
+        TraceInfoAction traceInfoAction = run.getAction(TraceInfoAction.class);
+        if (traceInfoAction == null) {
+            return IdGenerator.generate(traceId, flowNodeId);
+        }
+        return traceInfoAction.removeOrCreate(flowNodeId);
+    }
+
+    /**
+     * Forgets the span ID of a node that is not going to be submitted.
+     */
+    public static void remove(Run<?, ?> run, String flowNodeId) {
+        TraceInfoAction traceInfoAction = run.getAction(TraceInfoAction.class);
+        if (traceInfoAction != null) {
+            traceInfoAction.removeOrCreate(flowNodeId);
+        }
+    }
+}
@@ -7,7 +7,60 @@ import java.util.concurrent.ThreadLocalRandom;
  */
 public class IdGenerator {
 
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final int MAX_NUMERIC_ID_LENGTH = 18;
+
     public static long generate(){
         return ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
     }
+
+    /**
+     * Derives a span ID from a trace ID and a flow node ID: the same node of the same trace always gets the same ID.
+     * <p>
+     * Flow node IDs are numbers in practice. For those the derivation is a bijection (up to the sign bit, which is cleared),
+     * so different nodes of a trace practically never share an ID. Other IDs are hashed first.
+     */
+    public static long generate(long traceId, String flowNodeId) {
+        long id = mix(traceId + nodeKey(flowNodeId) * GOLDEN_RATIO) & Long.MAX_VALUE;
+        return id != 0 ? id : 1;
+    }
+
+    private static long nodeKey(String flowNodeId) {
+        int length = flowNodeId.length();
+        if (length > 0 && length <= MAX_NUMERIC_ID_LENGTH) {
+            long number = 0;
+            int i = 0;
+            for (; i < length; i++) {
+                char c = flowNodeId.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                number = number * 10 + (c - '0');
+            }
+            if (i == length) {
+                return number;
+            }
+        }
+        // FNV-1a
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < length; i++) {
+            hash ^= flowNodeId.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Murmur3 64-bit finalizer: a bijection that spreads every input bit over the whole output.
+     */
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xFF51AFD7ED558CCDL;
+        k ^= k >>> 33;
+        k *= 0xC4CEB9FE1A85EC53L;
+        k ^= k >>> 33;
+        return k;
+    }
 }
@@ -0,0 +1,258 @@
+package org.datadog.jenkins.plugins.datadog.traces;
+
+import com.codahale.metrics.Meter;
+import hudson.model.Run;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nullable;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.configuration.DatadogSpanRule;
+import org.datadog.jenkins.plugins.datadog.model.PipelineStepData;
+import org.datadog.jenkins.plugins.datadog.model.Status;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
+import org.jenkinsci.plugins.workflow.cps.nodes.StepAtomNode;
+import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+
+/**
+ * Applies the configured {@link DatadogSpanRule}s to pipeline steps, before their data is gathered and serialized.
+ * <p>
+ * Only atomic steps are filtered: they have no children, so dropping them does not leave orphaned spans.
+ * Steps that failed or are unstable are always submitted.
+ * <p>
+ * Collapsed steps are accumulated in memory, grouped by enclosing stage and step function name,
+ * and are submitted as summary spans when the enclosing stage (or the pipeline) ends.
+ */
+public final class StepSpanFilter {
+
+    public enum Decision {
+        SUBMIT, DROP, COLLAPSE
+    }
+
+    private static final StepSpanFilter INSTANCE = new StepSpanFilter();
+
+    public static StepSpanFilter getInstance() {
+        return INSTANCE;
+    }
+
+    private final ConcurrentMap<String, Map<GroupKey, CollapsedSteps>> collapsedStepsByRun = new ConcurrentHashMap<>();
+
+    private final Meter dropped = AsyncWriter.METRICS.meter("traces.steps.dropped");
+    private final Meter sampledOut = AsyncWriter.METRICS.meter("traces.steps.sampled.out");
+    private final Meter collapsed = AsyncWriter.METRICS.meter("traces.steps.collapsed");
+
+    StepSpanFilter() {
+    }
+
+    public Decision evaluate(WorkflowRun run, StepAtomNode node, @Nullable FlowNode nextNode) {
+        List<DatadogSpanRule> rules = DatadogUtilities.getDatadogGlobalDescriptor().getSpanRules();
+        if (rules.isEmpty()) {
+            return Decision.SUBMIT;
+        }
+
+        Status status = Status.fromJenkinsResult(DatadogUtilities.getResultTag(node));
+        if (status == Status.ERROR || status == Status.UNSTABLE) {
+            return Decision.SUBMIT;
+        }
+
+        String functionName = node.getDisplayFunctionName();
+        BlockStartNode enclosingStage = DatadogUtilities.getEnclosingStageNode(node);
+        String stageName = enclosingStage != null ? enclosingStage.getDisplayName() : null;
+        int depth = requiresDepth(rules) ? getStageDepth(node) : 0;
+        long durationMillis = nextNode != null ? DatadogUtilities.getTimeMillis(nextNode) - DatadogUtilities.getTimeMillis(node) : 0;
+
+        for (DatadogSpanRule rule : rules) {
+            if (!rule.matches(functionName, stageName, depth, durationMillis)) {
+                continue;
+            }
+            switch (rule.getAction()) {
+                case DROP:
+                    dropped.mark();
+                    return Decision.DROP;
+                case SAMPLE:
+                    if (ThreadLocalRandom.current().nextDouble() < rule.getEffectiveSampleRate()) {
+                        return Decision.SUBMIT;
+                    }
+                    sampledOut.mark();
+                    return Decision.DROP;
+                case COLLAPSE:
+                    return Decision.COLLAPSE;
+                default:
+                    throw new IllegalArgumentException("Unexpected span rule action: " + rule.getAction());
+            }
+        }
+        return Decision.SUBMIT;
+    }
+
+    /**
+     * Releases the span ID of a step that is not submitted.
+     */
+    public void drop(WorkflowRun run, StepAtomNode node) {
+        releaseSpanId(run, node);
+    }
+
+    /**
+     * Adds the step to the group of its siblings with the same function name.
+     * Only the data of the first step in the group is gathered, for the following steps only the timings are recorded.
+     */
+    public void collapse(WorkflowRun run, StepAtomNode node, @Nullable FlowNode nextNode) {
+        BlockStartNode enclosingStage = DatadogUtilities.getEnclosingStageNode(node);
+        GroupKey key = new GroupKey(enclosingStage != null ? enclosingStage.getId() : null, node.getDisplayFunctionName());
+        Map<GroupKey, CollapsedSteps> groups = collapsedStepsByRun.computeIfAbsent(run.getExternalizableId(), k -> new HashMap<>());
+        synchronized (groups) {
+            CollapsedSteps steps = groups.get(key);
+            if (steps == null) {
+                groups.put(key, new CollapsedSteps(new PipelineStepData(run, node, nextNode)));
+            } else {
+                releaseSpanId(run, node);
+                steps.add(DatadogUtilities.getTimeMillis(node), DatadogUtilities.getTimeMillis(nextNode));
+            }
+        }
+        collapsed.mark();
+    }
+
+    /**
+     * Returns the summaries of the steps collapsed in the given stage.
+     */
+    public List<PipelineStepData> flush(WorkflowRun run, String stageId) {
+        Map<GroupKey, CollapsedSteps> groups = collapsedStepsByRun.get(run.getExternalizableId());
+        if (groups == null) {
+            return Collections.emptyList();
+        }
+        List<PipelineStepData> summaries = new ArrayList<>();
+        synchronized (groups) {
+            Iterator<Map.Entry<GroupKey, CollapsedSteps>> it = groups.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<GroupKey, CollapsedSteps> e = it.next();
+                if (stageId.equals(e.getKey().stageId)) {
+                    summaries.add(e.getValue().toStepData());
+                    it.remove();
+                }
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Returns the summaries of all the steps collapsed in the run, and forgets about the run.
+     */
+    public List<PipelineStepData> flushAll(WorkflowRun run) {
+        Map<GroupKey, CollapsedSteps> groups = collapsedStepsByRun.remove(run.getExternalizableId());
+        if (groups == null) {
+            return Collections.emptyList();
+        }
+        List<PipelineStepData> summaries = new ArrayList<>();
+        synchronized (groups) {
+            for (CollapsedSteps steps : groups.values()) {
+                summaries.add(steps.toStepData());
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Forgets about the steps collapsed in the run, if any.
+     */
+    public void release(Run<?, ?> run) {
+        collapsedStepsByRun.remove(run.getExternalizableId());
+    }
+
+    private static void releaseSpanId(WorkflowRun run, FlowNode node) {
+        FlowNodeSpanIds.remove(run, node.getId());
+    }
+
+    private static boolean requiresDepth(List<DatadogSpanRule> rules) {
+        for (DatadogSpanRule rule : rules) {
+            if (rule.getMinDepth() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int getStageDepth(FlowNode node) {
+        int depth = 0;
+        for (BlockStartNode block : node.iterateEnclosingBlocks()) {
+            if (DatadogUtilities.isStageNode(block)) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    private static final class GroupKey {
+        private final String stageId;
+        private final String functionName;
+
+        private GroupKey(@Nullable String stageId, String functionName) {
+            this.stageId = stageId;
+            this.functionName = functionName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            GroupKey groupKey = (GroupKey) o;
+            return Objects.equals(stageId, groupKey.stageId) && Objects.equals(functionName, groupKey.functionName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stageId, functionName);
+        }
+    }
+
+    static final class CollapsedSteps {
+        private final PipelineStepData first;
+        private int count;
+        private long startTimeMillis;
+        private long endTimeMillis;
+        private long minDurationMillis;
+        private long maxDurationMillis;
+        private long totalDurationMillis;
+
+        CollapsedSteps(PipelineStepData first) {
+            this.first = first;
+            long duration = first.getEndTimeMillis() - first.getStartTimeMillis();
+            this.count = 1;
+            this.startTimeMillis = first.getStartTimeMillis();
+            this.endTimeMillis = first.getEndTimeMillis();
+            this.minDurationMillis = duration;
+            this.maxDurationMillis = duration;
+            this.totalDurationMillis = duration;
+        }
+
+        void add(long stepStartTimeMillis, long stepEndTimeMillis) {
+            long duration = stepStartTimeMillis >= 0 && stepEndTimeMillis >= stepStartTimeMillis ? stepEndTimeMillis - stepStartTimeMillis : 0;
+            count++;
+            if (stepStartTimeMillis >= 0) {
+                startTimeMillis = Math.min(startTimeMillis, stepStartTimeMillis);
+            }
+            endTimeMillis = Math.max(endTimeMillis, stepEndTimeMillis);
+            minDurationMillis = Math.min(minDurationMillis, duration);
+            maxDurationMillis = Math.max(maxDurationMillis, duration);
+            totalDurationMillis += duration;
+        }
+
+        PipelineStepData toStepData() {
+            if (count > 1) {
+                first.summarize(count, startTimeMillis, endTimeMillis, minDurationMillis, maxDurationMillis, totalDurationMillis);
+            }
+            return first;
+        }
+    }
+}
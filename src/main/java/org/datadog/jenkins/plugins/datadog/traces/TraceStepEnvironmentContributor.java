@@ -11,7 +11,6 @@ import hudson.model.TaskListener;
 import java.io.IOException;
 import java.util.logging.Logger;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
-import org.datadog.jenkins.plugins.datadog.model.TraceInfoAction;
 import org.jenkinsci.plugins.workflow.cps.nodes.StepAtomNode;
 import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
@@ -58,21 +57,18 @@ public class TraceStepEnvironmentContributor extends StepEnvironmentContributor
                 logger.fine("Set DD_CUSTOM_TRACE_ID="+traceIdStr+" for FlowNode: "+flowNode);
             }
 
-            TraceInfoAction traceInfoAction = run.getAction(TraceInfoAction.class);
-            if (traceInfoAction != null) {
-                Long spanId = traceInfoAction.getOrCreate(flowNode.getId());
-                if(envs.get(SPAN_ID_ENVVAR_KEY) == null) {
-                    final String spanIdStr  = Long.toUnsignedString(spanId);
-                    envs.put(SPAN_ID_ENVVAR_KEY, spanIdStr);
-                    logger.fine("Set DD_CUSTOM_PARENT_ID="+spanIdStr+" for FlowNode: "+flowNode);
-                }
+            long spanId = FlowNodeSpanIds.getOrCreate(run, buildSpanAction.getBuildSpanContext().getTraceId(), flowNode.getId());
+            if(envs.get(SPAN_ID_ENVVAR_KEY) == null) {
+                final String spanIdStr  = Long.toUnsignedString(spanId);
+                envs.put(SPAN_ID_ENVVAR_KEY, spanIdStr);
+                logger.fine("Set DD_CUSTOM_PARENT_ID="+spanIdStr+" for FlowNode: "+flowNode);
+            }
 
-                if (envs.get(STAGE_ID_ENVVAR_KEY) == null) {
-                    BlockStartNode enclosingStage = DatadogUtilities.getEnclosingStageNode(flowNode);
-                    if (enclosingStage != null) {
-                        envs.put(STAGE_ID_ENVVAR_KEY, enclosingStage.getId());
-                        logger.fine("Set DD_CUSTOM_STAGE_ID=" + enclosingStage.getId() + " for FlowNode: " + flowNode);
-                    }
+            if (envs.get(STAGE_ID_ENVVAR_KEY) == null) {
+                BlockStartNode enclosingStage = DatadogUtilities.getEnclosingStageNode(flowNode);
+                if (enclosingStage != null) {
+                    envs.put(STAGE_ID_ENVVAR_KEY, enclosingStage.getId());
+                    logger.fine("Set DD_CUSTOM_STAGE_ID=" + enclosingStage.getId() + " for FlowNode: " + flowNode);
                 }
             }
 
@@ -1,23 +1,43 @@
 package org.datadog.jenkins.plugins.datadog.traces.write;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import net.sf.json.JSONObject;
 
 public class Payload {
 
     private final JSONObject json;
+    private final byte[] bytes;
     private final Track track;
 
     public Payload(@Nonnull JSONObject json, @Nonnull Track track) {
         this.json = json;
+        this.bytes = null;
+        this.track = track;
+    }
+
+    /**
+     * Creates a payload that was serialized to a binary format.
+     */
+    public Payload(@Nonnull byte[] bytes, @Nonnull Track track) {
+        this.json = null;
+        this.bytes = bytes;
         this.track = track;
     }
 
     @Nonnull
     public JSONObject getJson() {
+        if (json == null) {
+            throw new IllegalStateException("Payload for track " + track + " is not serialized to JSON");
+        }
         return json;
     }
 
+    @Nullable
+    public byte[] getBytes() {
+        return bytes;
+    }
+
     @Nonnull
     public Track getTrack() {
         return track;
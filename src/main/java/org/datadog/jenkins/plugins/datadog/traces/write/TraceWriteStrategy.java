@@ -18,5 +18,23 @@ public interface TraceWriteStrategy {
 
     void send(Collection<Payload> spans);
 
+    /**
+     * @return the track that the payloads of the run are serialized for, or {@code null} if it is not known in advance
+     */
+    @Nullable
+    default Track getTrack(Run<?, ?> run) {
+        return null;
+    }
+
+    /**
+     * Takes over the state kept for the runs in progress by the strategy of the writer that is replaced with this one.
+     */
+    default void takeOver(TraceWriteStrategy predecessor) {}
+
+    /**
+     * Releases the state kept for the run, called when the run is finalized or deleted.
+     */
+    default void release(Run<?, ?> run) {}
+
     default void close() {}
 }
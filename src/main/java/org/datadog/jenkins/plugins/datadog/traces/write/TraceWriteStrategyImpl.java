@@ -1,5 +1,6 @@
 package org.datadog.jenkins.plugins.datadog.traces.write;
 
+import com.codahale.metrics.Timer;
 import hudson.model.Run;
 import java.io.IOException;
 import java.util.Collection;
@@ -16,19 +17,25 @@ import org.datadog.jenkins.plugins.datadog.traces.DatadogTraceBuildLogic;
 import org.datadog.jenkins.plugins.datadog.traces.DatadogTracePipelineLogic;
 import org.datadog.jenkins.plugins.datadog.traces.DatadogWebhookBuildLogic;
 import org.datadog.jenkins.plugins.datadog.traces.DatadogWebhookPipelineLogic;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
 import org.datadog.jenkins.plugins.datadog.util.CircuitBreaker;
-import org.datadog.jenkins.plugins.datadog.util.ThrowingConsumer;
 
 public class TraceWriteStrategyImpl implements TraceWriteStrategy {
 
     private static final Logger logger = Logger.getLogger(TraceWriteStrategyImpl.class.getName());
 
+    private static final Timer BUILD_SERIALIZATION = AsyncWriter.METRICS.timer("traces.serialization.build");
+    private static final Timer STEP_SERIALIZATION = AsyncWriter.METRICS.timer("traces.serialization.step");
+
     private final Track track;
     private final DatadogBaseBuildLogic buildLogic;
     private final DatadogBasePipelineLogic pipelineLogic;
     private final CircuitBreaker<Collection<Payload>> sendSpansCircuitBreaker;
 
-    public TraceWriteStrategyImpl(Track track, ThrowingConsumer<Collection<Payload>> spansSender) {
+    /**
+     * @param spansSender sends the spans asynchronously, so that the writer thread is not blocked while failed requests are retried
+     */
+    public TraceWriteStrategyImpl(Track track, CircuitBreaker.AsyncAction<Collection<Payload>> spansSender) {
         if (track == Track.APM) {
             this.buildLogic = new DatadogTraceBuildLogic();
             this.pipelineLogic = new DatadogTracePipelineLogic();
@@ -39,7 +46,8 @@ public class TraceWriteStrategyImpl implements TraceWriteStrategy {
             throw new IllegalArgumentException("Unexpected track value: " + track);
         }
         this.track = track;
-        this.sendSpansCircuitBreaker = new CircuitBreaker<>(
+        this.sendSpansCircuitBreaker = CircuitBreaker.async(
+                "traces." + track.name().toLowerCase(),
                 spansSender,
                 this::logTransportBroken,
                 this::logTransportError
@@ -49,17 +57,28 @@ public class TraceWriteStrategyImpl implements TraceWriteStrategy {
     @Nullable
     @Override
     public Payload serialize(final BuildData buildData, final Run<?, ?> run) {
-        JSONObject buildSpan = buildLogic.toJson(buildData, run);
+        JSONObject buildSpan;
+        try (Timer.Context ignored = BUILD_SERIALIZATION.time()) {
+            buildSpan = buildLogic.toJson(buildData, run);
+        }
         return buildSpan != null ? new Payload(buildSpan, track) : null;
     }
 
     @Nullable
     @Override
     public Payload serialize(PipelineStepData stepData, Run<?, ?> run) throws IOException, InterruptedException {
-        JSONObject stepSpan = pipelineLogic.toJson(stepData, run);
+        JSONObject stepSpan;
+        try (Timer.Context ignored = STEP_SERIALIZATION.time()) {
+            stepSpan = pipelineLogic.toJson(stepData, run);
+        }
         return stepSpan != null ? new Payload(stepSpan, track) : null;
     }
 
+    @Override
+    public Track getTrack(Run<?, ?> run) {
+        return track;
+    }
+
     @Override
     public void send(Collection<Payload> serializationResult) {
         sendSpansCircuitBreaker.accept(serializationResult);
@@ -4,14 +4,23 @@ import hudson.model.Run;
 import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
 import org.datadog.jenkins.plugins.datadog.DatadogClient;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.clients.otlp.OtlpExporter;
 import org.datadog.jenkins.plugins.datadog.model.BuildData;
 import org.datadog.jenkins.plugins.datadog.model.PipelineStepData;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import org.datadog.jenkins.plugins.datadog.util.KeyedCoalescer;
 
 public final class TraceWriter {
 
+    private static final Logger logger = Logger.getLogger(TraceWriter.class.getName());
+
     private static final String QUEUE_CAPACITY_ENV_VAR = "DD_JENKINS_TRACES_QUEUE_CAPACITY";
     private static final String SUBMIT_TIMEOUT_ENV_VAR = "DD_JENKINS_TRACES_SUBMIT_TIMEOUT_SECONDS";
     private static final String STOP_TIMEOUT_ENV_VAR = "DD_JENKINS_TRACES_STOP_TIMEOUT_SECONDS";
@@ -23,21 +32,38 @@ public final class TraceWriter {
     private static final int DEFAULT_POLLING_TIMEOUT_SECONDS = 5;
     private static final int DEFAULT_BATCH_SIZE_LIMIT = 500;
 
+    private static final String NAME = "DD-Trace-Writer";
+
     private final TraceWriteStrategy traceWriteStrategy;
-    private final AsyncWriter<Payload> asyncWriter;
+    /**
+     * Pipeline-level data is submitted several times for the same run (start, checkout, step updates, finalization).
+     * Only the latest version pending for a run is serialized and sent, superseded ones are dropped.
+     */
+    private final KeyedCoalescer<String, PendingBuild> pendingBuilds;
+    private final AsyncWriter<PendingPayload> asyncWriter;
 
     public TraceWriter(DatadogClient datadogClient) {
-        this.traceWriteStrategy = datadogClient.createTraceWriteStrategy();
-        this.asyncWriter = new AsyncWriter<>("DD-Trace-Writer",
-                traceWriteStrategy::send,
+        this(createTraceWriteStrategy(datadogClient), DatadogUtilities.envVar(QUEUE_CAPACITY_ENV_VAR, DEFAULT_QUEUE_CAPACITY));
+    }
+
+    TraceWriter(TraceWriteStrategy traceWriteStrategy, int queueCapacity) {
+        this.traceWriteStrategy = traceWriteStrategy;
+        this.pendingBuilds = new KeyedCoalescer<>(NAME, PendingBuild.BY_VERSION);
+        this.asyncWriter = new AsyncWriter<>(NAME,
+                this::send,
                 traceWriteStrategy::close,
-                DatadogUtilities.envVar(QUEUE_CAPACITY_ENV_VAR, DEFAULT_QUEUE_CAPACITY),
+                queueCapacity,
                 DatadogUtilities.envVar(SUBMIT_TIMEOUT_ENV_VAR, DEFAULT_SUBMIT_TIMEOUT_SECONDS),
                 DatadogUtilities.envVar(POLLING_TIMEOUT_ENV_VAR, DEFAULT_POLLING_TIMEOUT_SECONDS),
                 DatadogUtilities.envVar(STOP_TIMEOUT_ENV_VAR, DEFAULT_STOP_TIMEOUT_SECONDS),
                 DatadogUtilities.envVar(BATCH_SIZE_LIMIT_ENV_VAR, DEFAULT_BATCH_SIZE_LIMIT));
     }
 
+    private static TraceWriteStrategy createTraceWriteStrategy(DatadogClient datadogClient) {
+        OtlpExporter otlpExporter = OtlpExporter.fromEnvVars();
+        return otlpExporter != null ? otlpExporter.createTraceWriteStrategy() : datadogClient.createTraceWriteStrategy();
+    }
+
     public void start() {
         asyncWriter.start();
     }
@@ -50,11 +76,205 @@ public final class TraceWriter {
         asyncWriter.stopSynchronously();
     }
 
+    /**
+     * Replaces this writer with the given one, see {@link AsyncWriter#handOverTo}.
+     * Pending pipeline data is moved to the successor, and is serialized again with its strategy
+     * if the strategies of the two writers use different tracks.
+     * The state that the strategy keeps for the runs in progress is taken over by the strategy of the successor.
+     */
+    public void handOverTo(TraceWriter successor) {
+        successor.traceWriteStrategy.takeOver(traceWriteStrategy);
+        asyncWriter.handOverTo(successor.asyncWriter, pendingPayload -> pendingPayload.migrateTo(successor), PendingPayload::rejected);
+    }
+
+    /**
+     * Schedules the pipeline-level data for serialization on the writer thread.
+     * <p>
+     * The build data is a snapshot, but the run is live:
+     * serialization only reads the actions attached to it (e.g. the build span and node info actions),
+     * the executor-dependent data is captured in the build data when it is created.
+     * The data of a finished build is serialized right away instead,
+     * as the actions are removed from the run once it is finalized, possibly before the writer thread gets to it.
+     */
     public void submitBuild(final BuildData buildData, final Run<?,?> run) throws InterruptedException, TimeoutException {
-        asyncWriter.submit(traceWriteStrategy.serialize(buildData, run));
+        String key = run.getExternalizableId();
+        if (!buildData.isBuilding()) {
+            // the queued versions of the build, if any, are superseded by this one
+            pendingBuilds.take(key);
+            Payload payload = traceWriteStrategy.serialize(buildData, run);
+            if (payload != null) {
+                asyncWriter.submit(new FinishedBuildPayload(buildData, run, payload));
+            }
+            return;
+        }
+        if (!pendingBuilds.offer(key, new PendingBuild(buildData, run))) {
+            // an older version is still queued, it will be replaced with this one
+            return;
+        }
+        boolean queued = false;
+        try {
+            queued = asyncWriter.submit(new PendingBuildPayload(key));
+        } finally {
+            if (!queued) {
+                // the dispatch was not queued, do not let further versions wait for it
+                pendingBuilds.take(key);
+            }
+        }
     }
 
     public void submitPipelineStep(PipelineStepData stepData, Run<?, ?> run) throws InterruptedException, TimeoutException, IOException {
-        asyncWriter.submit(traceWriteStrategy.serialize(stepData, run));
+        Payload payload = traceWriteStrategy.serialize(stepData, run);
+        if (payload != null) {
+            asyncWriter.submit(new PendingStepPayload(stepData, run, payload));
+        }
+    }
+
+    /**
+     * Releases the state kept for the run, called when the run is finalized or deleted.
+     */
+    public void release(Run<?, ?> run) {
+        traceWriteStrategy.release(run);
+    }
+
+    @Nullable
+    private Payload serializeLatest(String key) {
+        PendingBuild pendingBuild = pendingBuilds.take(key);
+        return pendingBuild != null ? traceWriteStrategy.serialize(pendingBuild.buildData, pendingBuild.run) : null;
+    }
+
+    private void send(List<PendingPayload> pendingPayloads) {
+        List<Payload> payloads = new ArrayList<>(pendingPayloads.size());
+        for (PendingPayload pendingPayload : pendingPayloads) {
+            try {
+                Payload payload = pendingPayload.get();
+                if (payload != null) {
+                    payloads.add(payload);
+                }
+            } catch (Exception e) {
+                DatadogUtilities.severe(logger, e, "Failed to serialize pipeline data");
+            }
+        }
+        if (!payloads.isEmpty()) {
+            traceWriteStrategy.send(payloads);
+        }
+    }
+
+    private interface PendingPayload {
+        @Nullable
+        Payload get();
+
+        /**
+         * @return the element to submit to the successor, or {@code null} if there is nothing left to submit
+         */
+        @Nullable
+        PendingPayload migrateTo(TraceWriter successor) throws IOException, InterruptedException;
+
+        /**
+         * Called when the writer did not queue the element that was returned by {@link #migrateTo}.
+         */
+        default void rejected() {
+        }
+    }
+
+    private final class PendingBuildPayload implements PendingPayload {
+        private final String key;
+
+        private PendingBuildPayload(String key) {
+            this.key = key;
+        }
+
+        @Nullable
+        @Override
+        public Payload get() {
+            return serializeLatest(key);
+        }
+
+        @Nullable
+        @Override
+        public PendingPayload migrateTo(TraceWriter successor) {
+            PendingBuild pendingBuild = pendingBuilds.take(key);
+            if (pendingBuild == null || !successor.pendingBuilds.offer(key, pendingBuild)) {
+                // already dispatched, or a version of the build is already scheduled in the successor
+                return null;
+            }
+            return successor.new PendingBuildPayload(key);
+        }
+
+        @Override
+        public void rejected() {
+            // the dispatch was not queued, do not let further versions wait for it
+            pendingBuilds.take(key);
+        }
+    }
+
+    private final class FinishedBuildPayload implements PendingPayload {
+        private final BuildData buildData;
+        private final Run<?, ?> run;
+        private final Payload payload;
+
+        private FinishedBuildPayload(BuildData buildData, Run<?, ?> run, Payload payload) {
+            this.buildData = buildData;
+            this.run = run;
+            this.payload = payload;
+        }
+
+        @Override
+        public Payload get() {
+            return payload;
+        }
+
+        @Override
+        public PendingPayload migrateTo(TraceWriter successor) {
+            if (successor.traceWriteStrategy.getTrack(run) == payload.getTrack()) {
+                return successor.new FinishedBuildPayload(buildData, run, payload);
+            }
+            Payload migratedPayload = successor.traceWriteStrategy.serialize(buildData, run);
+            // the run might have been finalized already, in which case it cannot be serialized again
+            return successor.new FinishedBuildPayload(buildData, run, migratedPayload != null ? migratedPayload : payload);
+        }
+    }
+
+    private final class PendingStepPayload implements PendingPayload {
+        private final PipelineStepData stepData;
+        private final Run<?, ?> run;
+        private final Payload payload;
+
+        private PendingStepPayload(PipelineStepData stepData, Run<?, ?> run, Payload payload) {
+            this.stepData = stepData;
+            this.run = run;
+            this.payload = payload;
+        }
+
+        @Override
+        public Payload get() {
+            return payload;
+        }
+
+        @Override
+        public PendingPayload migrateTo(TraceWriter successor) throws IOException, InterruptedException {
+            if (successor.traceWriteStrategy.getTrack(run) == payload.getTrack()) {
+                return successor.new PendingStepPayload(stepData, run, payload);
+            }
+            Payload migratedPayload = successor.traceWriteStrategy.serialize(stepData, run);
+            // the run might have been finalized already, in which case the step cannot be serialized again
+            return successor.new PendingStepPayload(stepData, run, migratedPayload != null ? migratedPayload : payload);
+        }
+    }
+
+    private static final class PendingBuild {
+        private static final Comparator<PendingBuild> BY_VERSION = (a, b) -> {
+            Integer versionA = a.buildData.getVersion();
+            Integer versionB = b.buildData.getVersion();
+            // data without a version cannot be ordered, the most recently submitted one wins
+            return versionA != null && versionB != null ? Integer.compare(versionA, versionB) : 0;
+        };
+
+        private final BuildData buildData;
+        private final Run<?, ?> run;
+
+        private PendingBuild(BuildData buildData, Run<?, ?> run) {
+            this.buildData = buildData;
+            this.run = run;
+        }
     }
 }
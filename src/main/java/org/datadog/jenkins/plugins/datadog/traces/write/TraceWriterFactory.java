@@ -14,12 +14,12 @@ public class TraceWriterFactory {
             return;
         }
 
+        TraceWriter traceWriter = new TraceWriter(client);
+        traceWriter.start();
         if (TRACE_WRITER != null) {
-            TRACE_WRITER.stopAsynchronously();
+            TRACE_WRITER.handOverTo(traceWriter);
         }
-
-        TRACE_WRITER = new TraceWriter(client);
-        TRACE_WRITER.start();
+        TRACE_WRITER = traceWriter;
     }
 
     /**
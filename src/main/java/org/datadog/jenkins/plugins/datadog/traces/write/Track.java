@@ -1,5 +1,5 @@
 package org.datadog.jenkins.plugins.datadog.traces.write;
 
 public enum Track {
-    APM, WEBHOOK
+    APM, WEBHOOK, OTLP
 }
@@ -11,6 +11,7 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -39,6 +40,12 @@ public final class AsyncWriter<T> {
     private final Timer dispatch;
     private final Gauge<Integer> queueSize;
     private final Histogram batchSize;
+    private final Meter handoverMigrated;
+    private final Meter handoverSkipped;
+    private final Meter handoverDropped;
+
+    /** Set when the writer is replaced, after that the elements submitted to this writer are forwarded to the successor */
+    private volatile Handover handover;
 
     public AsyncWriter(String name,
                        Consumer<List<T>> queueConsumer,
@@ -60,8 +67,13 @@ public final class AsyncWriter<T> {
         this.submit = METRICS.timer(name + ".submit");
         this.submitDropped = METRICS.meter(name + ".submit.dropped");
         this.dispatch = METRICS.timer(name + ".dispatch");
+        // a writer that replaces another one with the same name reports its own queue
+        METRICS.remove(name + ".queue.size");
         this.queueSize = METRICS.gauge(name + ".queue.size", () -> queue::size);
         this.batchSize = METRICS.histogram(name + ".batch.size");
+        this.handoverMigrated = METRICS.meter(name + ".handover.migrated");
+        this.handoverSkipped = METRICS.meter(name + ".handover.skipped");
+        this.handoverDropped = METRICS.meter(name + ".handover.dropped");
     }
 
     public void start() {
@@ -79,9 +91,43 @@ public final class AsyncWriter<T> {
         onStop.run();
     }
 
-    public void submit(@Nullable T element) throws InterruptedException, TimeoutException {
+    /**
+     * Replaces this writer with the given one, which has to be started by the caller.
+     * <p>
+     * The queued elements are migrated to the successor, and the elements submitted to this writer afterwards
+     * (by producers that still hold a reference to it) are forwarded to the successor.
+     * The batch that is being dispatched is not interrupted: the poller thread stops once it is done with it,
+     * migrates the elements that might have been queued in the meantime, and then runs the stop callback.
+     *
+     * @param migration converts an element of this writer to an element of the successor,
+     *                  returns {@code null} if there is nothing left to submit for the element
+     */
+    public void handOverTo(AsyncWriter<T> successor, ThrowingFunction<T, T> migration) {
+        handOverTo(successor, migration, element -> {});
+    }
+
+    /**
+     * @param rejected called with the migrated elements that the successor did not take, e.g. because its queue is full,
+     *                 so that the state prepared for them by the migration can be released
+     * @see #handOverTo(AsyncWriter, ThrowingFunction)
+     */
+    public void handOverTo(AsyncWriter<T> successor, ThrowingFunction<T, T> migration, Consumer<T> rejected) {
+        Handover handover = new Handover(successor, migration, rejected);
+        this.handover = handover;
+        migrateQueued(handover);
+        logger.info("Queue handed over to the new writer, elements " + handover + ": " + name);
+    }
+
+    /**
+     * @return {@code false} if the element was dropped because the queue stayed full until the submit timeout expired
+     */
+    public boolean submit(@Nullable T element) throws InterruptedException, TimeoutException {
         if (element == null) {
-            return;
+            return true;
+        }
+        Handover currentHandover = handover;
+        if (currentHandover != null) {
+            return currentHandover.forward(element);
         }
         try (Timer.Context submitTime = submit.time()) {
             if (!queue.offer(element, submitTimeoutSeconds, TimeUnit.SECONDS)) {
@@ -89,13 +135,47 @@ public final class AsyncWriter<T> {
                 if (logger.isLoggable(Level.FINE)) {
                     logger.log(Level.FINE, "Timed out while doing async submit: " + name);
                 }
+                return false;
             }
         }
+        migrateIfHandedOver();
+        return true;
+    }
+
+    /**
+     * Queues a migrated element without waiting for space in the queue.
+     */
+    private boolean accept(T element) {
+        if (!queue.offer(element)) {
+            return false;
+        }
+        migrateIfHandedOver();
+        return true;
+    }
+
+    /**
+     * The handover could have happened after the element was checked, but before it was queued:
+     * the element would then stay in the queue of this writer forever.
+     * The handover is published before the queue is drained, so re-checking it after queueing is enough to catch that.
+     */
+    private void migrateIfHandedOver() {
+        Handover currentHandover = handover;
+        if (currentHandover != null) {
+            migrateQueued(currentHandover);
+        }
+    }
+
+    private void migrateQueued(Handover handover) {
+        List<T> elements = new ArrayList<>();
+        queue.drainTo(elements);
+        for (T element : elements) {
+            handover.migrate(element);
+        }
     }
 
     private void runPollingLoop() {
         long stopPollingAt = Long.MAX_VALUE;
-        while (System.currentTimeMillis() < stopPollingAt) {
+        while (System.currentTimeMillis() < stopPollingAt && handover == null) {
             try {
                 T element = queue.poll(pollingTimeoutSeconds, TimeUnit.SECONDS);
                 if (element == null) {
@@ -120,7 +200,89 @@ public final class AsyncWriter<T> {
                 DatadogUtilities.severe(logger, e, "Error while consuming data from queue: " + name);
             }
         }
-        logger.info("Queue polling stopped, elements not flushed " + queue.size() + ": " + name);
+
+        Handover currentHandover = handover;
+        if (currentHandover != null) {
+            migrateQueued(currentHandover);
+            onStop.run();
+            logger.info("Queue polling stopped after handover, elements " + currentHandover + ": " + name);
+        } else {
+            logger.info("Queue polling stopped, elements not flushed " + queue.size() + ": " + name);
+        }
+    }
+
+    private final class Handover {
+        private final AsyncWriter<T> successor;
+        private final ThrowingFunction<T, T> migration;
+        private final Consumer<T> rejected;
+        private final AtomicLong migrated = new AtomicLong();
+        /** Elements that had nothing left to submit */
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+
+        private Handover(AsyncWriter<T> successor, ThrowingFunction<T, T> migration, Consumer<T> rejected) {
+            this.successor = successor;
+            this.migration = migration;
+            this.rejected = rejected;
+        }
+
+        /**
+         * Moves a queued element to the successor.
+         */
+        private void migrate(T element) {
+            T migratedElement;
+            try {
+                migratedElement = migration.apply(element);
+            } catch (Exception e) {
+                DatadogUtilities.severe(logger, e, "Failed to migrate queued element to the new writer: " + name);
+                dropped();
+                return;
+            }
+            if (migratedElement == null) {
+                skipped.incrementAndGet();
+                handoverSkipped.mark();
+            } else if (successor.accept(migratedElement)) {
+                migrated.incrementAndGet();
+                handoverMigrated.mark();
+            } else {
+                rejected.accept(migratedElement);
+                dropped();
+            }
+        }
+
+        private void dropped() {
+            dropped.incrementAndGet();
+            handoverDropped.mark();
+        }
+
+        /**
+         * Submits an element that was submitted to this writer after the handover.
+         */
+        private boolean forward(T element) throws InterruptedException, TimeoutException {
+            T migratedElement;
+            try {
+                migratedElement = migration.apply(element);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                DatadogUtilities.severe(logger, e, "Failed to forward element to the new writer: " + name);
+                return false;
+            }
+            boolean submitted = false;
+            try {
+                submitted = successor.submit(migratedElement);
+                return submitted;
+            } finally {
+                if (!submitted && migratedElement != null) {
+                    rejected.accept(migratedElement);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "migrated " + migrated + ", skipped " + skipped + ", dropped " + dropped;
+        }
     }
 
 }
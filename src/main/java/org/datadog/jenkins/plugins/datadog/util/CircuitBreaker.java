@@ -1,78 +1,381 @@
 package org.datadog.jenkins.plugins.datadog.util;
 
-import javax.annotation.concurrent.GuardedBy;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
 
+/**
+ * Stops calling an action that keeps failing, and calls the fallback instead.
+ * <p>
+ * The breaker does not hold any locks while the action is executed, so concurrent callers do not wait for each other.
+ * <ul>
+ *     <li>While <b>closed</b>, the outcomes of the latest calls are recorded in a sliding window.
+ *     The breaker opens once the window has enough calls and the failure rate reaches the threshold.</li>
+ *     <li>While <b>open</b>, the fallback is called right away.
+ *     After the health check delay passes, the breaker becomes half-open.</li>
+ *     <li>While <b>half-open</b>, a limited number of concurrent calls are let through as probes.
+ *     The breaker closes when enough probes succeed, and opens again (with a longer delay) if any probe fails.</li>
+ * </ul>
+ * Actions can be {@link #async asynchronous}: the outcome of a call is then recorded when the returned stage completes,
+ * and the fallback is called on the thread that completes it.
+ */
 public class CircuitBreaker<T> {
 
+    private static final Logger logger = Logger.getLogger(CircuitBreaker.class.getName());
+
     public static final int DEFAULT_MIN_HEALTH_CHECK_DELAY_MILLIS = 1000;
     public static final int DEFAULT_MAX_HEALTH_CHECK_DELAY_MILLIS = 60000;
     public static final double DEFAULT_DELAY_FACTOR = 2.0;
 
-    private final ThrowingConsumer<T> action;
+    private static final String WINDOW_SIZE_ENV_VAR = "DD_JENKINS_CIRCUIT_BREAKER_WINDOW_SIZE";
+    private static final String MINIMUM_CALLS_ENV_VAR = "DD_JENKINS_CIRCUIT_BREAKER_MINIMUM_CALLS";
+    private static final String FAILURE_RATE_THRESHOLD_ENV_VAR = "DD_JENKINS_CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD";
+    private static final String HALF_OPEN_PROBES_ENV_VAR = "DD_JENKINS_CIRCUIT_BREAKER_HALF_OPEN_PROBES";
+    private static final int DEFAULT_WINDOW_SIZE = 20;
+    private static final int DEFAULT_MINIMUM_CALLS = 5;
+    private static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    private static final int DEFAULT_HALF_OPEN_PROBES = 1;
+
+    public enum Status {
+        CLOSED(0), HALF_OPEN(1), OPEN(2);
+
+        private final int value;
+
+        Status(int value) {
+            this.value = value;
+        }
+
+        public int getValue() {
+            return value;
+        }
+    }
+
+    private final String name;
+    private final AsyncAction<T> action;
     private final Consumer<T> fallback;
     private final Consumer<Exception> errorHandler;
     private final long minHealthCheckDelayMillis;
     private final long maxHealthCheckDelayMillis;
     private final double delayFactor;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final int halfOpenProbes;
+    private final LongSupplier clock;
 
-    @GuardedBy("this")
-    private boolean healthy;
-    @GuardedBy("this")
-    private long healthCheckDelayMillis;
-    @GuardedBy("this")
-    private long healthCheckAt;
+    private final AtomicReference<State> state;
 
-    public CircuitBreaker(ThrowingConsumer<T> action, Consumer<T> fallback, Consumer<Exception> errorHandler) {
-        this(action, fallback, errorHandler, DEFAULT_MIN_HEALTH_CHECK_DELAY_MILLIS, DEFAULT_MAX_HEALTH_CHECK_DELAY_MILLIS, DEFAULT_DELAY_FACTOR);
+    private final Meter opened;
+    private final Meter halfOpened;
+    private final Meter closed;
+    private final Meter rejected;
+
+    public CircuitBreaker(String name, ThrowingConsumer<T> action, Consumer<T> fallback, Consumer<Exception> errorHandler) {
+        this(name, action, fallback, errorHandler, DEFAULT_MIN_HEALTH_CHECK_DELAY_MILLIS, DEFAULT_MAX_HEALTH_CHECK_DELAY_MILLIS, DEFAULT_DELAY_FACTOR);
     }
 
-    public CircuitBreaker(ThrowingConsumer<T> action,
+    public CircuitBreaker(String name,
+                          ThrowingConsumer<T> action,
                           Consumer<T> fallback,
                           Consumer<Exception> errorHandler,
                           long minHealthCheckDelayMillis,
                           long maxHealthCheckDelayMillis,
                           double delayFactor) {
+        this(name, synchronous(action), fallback, errorHandler, minHealthCheckDelayMillis, maxHealthCheckDelayMillis, delayFactor);
+    }
+
+    private CircuitBreaker(String name,
+                           AsyncAction<T> action,
+                           Consumer<T> fallback,
+                           Consumer<Exception> errorHandler,
+                           long minHealthCheckDelayMillis,
+                           long maxHealthCheckDelayMillis,
+                           double delayFactor) {
+        this(name, action, fallback, errorHandler, minHealthCheckDelayMillis, maxHealthCheckDelayMillis, delayFactor,
+                DatadogUtilities.envVar(WINDOW_SIZE_ENV_VAR, DEFAULT_WINDOW_SIZE),
+                DatadogUtilities.envVar(MINIMUM_CALLS_ENV_VAR, DEFAULT_MINIMUM_CALLS),
+                DatadogUtilities.envVar(FAILURE_RATE_THRESHOLD_ENV_VAR, DEFAULT_FAILURE_RATE_THRESHOLD),
+                DatadogUtilities.envVar(HALF_OPEN_PROBES_ENV_VAR, DEFAULT_HALF_OPEN_PROBES),
+                System::currentTimeMillis);
+    }
+
+    CircuitBreaker(String name,
+                   ThrowingConsumer<T> action,
+                   Consumer<T> fallback,
+                   Consumer<Exception> errorHandler,
+                   long minHealthCheckDelayMillis,
+                   long maxHealthCheckDelayMillis,
+                   double delayFactor,
+                   int windowSize,
+                   int minimumCalls,
+                   double failureRateThreshold,
+                   int halfOpenProbes,
+                   LongSupplier clock) {
+        this(name, synchronous(action), fallback, errorHandler, minHealthCheckDelayMillis, maxHealthCheckDelayMillis, delayFactor,
+                windowSize, minimumCalls, failureRateThreshold, halfOpenProbes, clock);
+    }
+
+    CircuitBreaker(String name,
+                   AsyncAction<T> action,
+                   Consumer<T> fallback,
+                   Consumer<Exception> errorHandler,
+                   long minHealthCheckDelayMillis,
+                   long maxHealthCheckDelayMillis,
+                   double delayFactor,
+                   int windowSize,
+                   int minimumCalls,
+                   double failureRateThreshold,
+                   int halfOpenProbes,
+                   LongSupplier clock) {
+        this.name = name;
         this.action = action;
         this.fallback = fallback;
         this.errorHandler = errorHandler;
         this.minHealthCheckDelayMillis = minHealthCheckDelayMillis;
         this.maxHealthCheckDelayMillis = maxHealthCheckDelayMillis;
         this.delayFactor = delayFactor;
-        synchronized (this) {
-            this.healthy = true;
-            this.healthCheckDelayMillis = minHealthCheckDelayMillis;
+        this.windowSize = Math.max(windowSize, 1);
+        this.minimumCalls = Math.max(Math.min(minimumCalls, this.windowSize), 1);
+        this.failureRateThreshold = failureRateThreshold;
+        this.halfOpenProbes = Math.max(halfOpenProbes, 1);
+        this.clock = clock;
+        this.state = new AtomicReference<>(State.closed(this.windowSize));
+
+        String metricPrefix = "circuit.breaker." + name + ".";
+        this.opened = AsyncWriter.METRICS.meter(metricPrefix + "opened");
+        this.halfOpened = AsyncWriter.METRICS.meter(metricPrefix + "half.opened");
+        this.closed = AsyncWriter.METRICS.meter(metricPrefix + "closed");
+        this.rejected = AsyncWriter.METRICS.meter(metricPrefix + "rejected");
+        // the breaker can be recreated when the client is reconfigured, the gauge should report the state of the latest one
+        AsyncWriter.METRICS.remove(metricPrefix + "state");
+        try {
+            AsyncWriter.METRICS.register(metricPrefix + "state", (Gauge<Integer>) () -> getStatus().getValue());
+        } catch (IllegalArgumentException e) {
+            // another breaker with the same name registered its gauge concurrently
         }
     }
 
-    public synchronized void accept(T t) {
-        // normal flow
-        if (healthy) {
-            try {
-                action.accept(t);
-            } catch (Exception e) {
-                errorHandler.accept(e);
-                healthy = false;
-                healthCheckAt = System.currentTimeMillis() + healthCheckDelayMillis;
-                fallback.accept(t);
+    /**
+     * Creates a breaker for an action that completes asynchronously.
+     * A call fails if the action throws or if the stage it returns completes exceptionally.
+     */
+    public static <T> CircuitBreaker<T> async(String name, AsyncAction<T> action, Consumer<T> fallback, Consumer<Exception> errorHandler) {
+        return async(name, action, fallback, errorHandler, DEFAULT_MIN_HEALTH_CHECK_DELAY_MILLIS, DEFAULT_MAX_HEALTH_CHECK_DELAY_MILLIS, DEFAULT_DELAY_FACTOR);
+    }
+
+    public static <T> CircuitBreaker<T> async(String name,
+                                              AsyncAction<T> action,
+                                              Consumer<T> fallback,
+                                              Consumer<Exception> errorHandler,
+                                              long minHealthCheckDelayMillis,
+                                              long maxHealthCheckDelayMillis,
+                                              double delayFactor) {
+        return new CircuitBreaker<>(name, action, fallback, errorHandler, minHealthCheckDelayMillis, maxHealthCheckDelayMillis, delayFactor);
+    }
+
+    private static <T> AsyncAction<T> synchronous(ThrowingConsumer<T> action) {
+        return t -> {
+            action.accept(t);
+            return null;
+        };
+    }
+
+    public Status getStatus() {
+        return state.get().status;
+    }
+
+    public void accept(T t) {
+        while (true) {
+            State current = state.get();
+            switch (current.status) {
+                case CLOSED:
+                    executeClosed(current, t);
+                    return;
+
+                case OPEN:
+                    if (clock.getAsLong() < current.healthCheckAt) {
+                        rejected.mark();
+                        fallback.accept(t);
+                        return;
+                    }
+                    // try to recover: let a limited number of probes through
+                    if (transition(current, State.halfOpen(current.healthCheckDelayMillis))) {
+                        halfOpened.mark();
+                    }
+                    break; // re-read the state
+
+                case HALF_OPEN:
+                    if (!current.tryAcquireProbe(halfOpenProbes)) {
+                        rejected.mark();
+                        fallback.accept(t);
+                        return;
+                    }
+                    executeProbe(current, t);
+                    return;
+
+                default:
+                    throw new IllegalStateException("Unexpected circuit breaker status: " + current.status);
             }
+        }
+    }
 
-        // try to recover
-        } else if (System.currentTimeMillis() >= healthCheckAt) {
+    private void executeClosed(State current, T t) {
+        execute(t).whenComplete((ignored, failure) -> {
+            if (failure == null) {
+                current.window.record(false);
+                return;
+            }
+            errorHandler.accept(toException(failure));
+            current.window.record(true);
+            if (current.window.isFailureRateExceeded(minimumCalls, failureRateThreshold)
+                    && transition(current, State.open(clock.getAsLong() + minHealthCheckDelayMillis, minHealthCheckDelayMillis))) {
+                opened.mark();
+            }
+            fallback.accept(t);
+        });
+    }
+
+    private void executeProbe(State current, T t) {
+        execute(t).whenComplete((ignored, failure) -> {
             try {
-                action.accept(t);
-                healthy = true;
-                healthCheckDelayMillis = minHealthCheckDelayMillis;
-            } catch (Exception e) {
-                errorHandler.accept(e);
-                healthCheckDelayMillis = Math.min(Math.round(healthCheckDelayMillis  * delayFactor), maxHealthCheckDelayMillis);
-                healthCheckAt = System.currentTimeMillis() + healthCheckDelayMillis;
+                if (failure == null) {
+                    if (current.probeSuccesses.incrementAndGet() >= halfOpenProbes && transition(current, State.closed(windowSize))) {
+                        closed.mark();
+                    }
+                    return;
+                }
+                errorHandler.accept(toException(failure));
+                long delay = Math.min(Math.round(current.healthCheckDelayMillis * delayFactor), maxHealthCheckDelayMillis);
+                if (transition(current, State.open(clock.getAsLong() + delay, delay))) {
+                    opened.mark();
+                }
                 fallback.accept(t);
+            } finally {
+                current.probesInFlight.decrementAndGet();
             }
+        });
+    }
 
-        // "broken" flow
-        } else {
-            fallback.accept(t);
+    /**
+     * Calls the action. The returned stage is already completed if the action is synchronous,
+     * in which case the outcome is handled on the calling thread.
+     */
+    private CompletionStage<?> execute(T t) {
+        try {
+            CompletionStage<?> outcome = action.apply(t);
+            return outcome != null ? outcome : CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static Exception toException(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        return cause instanceof Exception ? (Exception) cause : new ExecutionException(cause);
+    }
+
+    private boolean transition(State from, State to) {
+        if (state.compareAndSet(from, to)) {
+            logger.fine("Circuit breaker " + name + " transitioned from " + from.status + " to " + to.status);
+            return true;
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    public interface AsyncAction<T> {
+        /**
+         * @return the stage that completes when the action is done, or {@code null} if the action completed synchronously
+         */
+        CompletionStage<?> apply(T t) throws Exception;
+    }
+
+    private static final class State {
+        private final Status status;
+        private final long healthCheckAt;
+        private final long healthCheckDelayMillis;
+        // only used while closed
+        private final Window window;
+        // only used while half-open
+        private final AtomicInteger probesInFlight = new AtomicInteger();
+        private final AtomicInteger probeSuccesses = new AtomicInteger();
+
+        private State(Status status, long healthCheckAt, long healthCheckDelayMillis, Window window) {
+            this.status = status;
+            this.healthCheckAt = healthCheckAt;
+            this.healthCheckDelayMillis = healthCheckDelayMillis;
+            this.window = window;
+        }
+
+        static State closed(int windowSize) {
+            return new State(Status.CLOSED, 0, 0, new Window(windowSize));
+        }
+
+        static State open(long healthCheckAt, long healthCheckDelayMillis) {
+            return new State(Status.OPEN, healthCheckAt, healthCheckDelayMillis, null);
+        }
+
+        static State halfOpen(long healthCheckDelayMillis) {
+            return new State(Status.HALF_OPEN, 0, healthCheckDelayMillis, null);
+        }
+
+        boolean tryAcquireProbe(int maxProbes) {
+            while (true) {
+                int inFlight = probesInFlight.get();
+                if (inFlight >= maxProbes) {
+                    return false;
+                }
+                if (probesInFlight.compareAndSet(inFlight, inFlight + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Outcomes of the latest calls, stored in a ring buffer.
+     */
+    private static final class Window {
+        private static final int EMPTY = 0;
+        private static final int SUCCESS = 1;
+        private static final int FAILURE = 2;
+
+        private final AtomicIntegerArray outcomes;
+        private final AtomicLong calls = new AtomicLong();
+
+        Window(int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        void record(boolean failure) {
+            long call = calls.getAndIncrement();
+            outcomes.set((int) (call % outcomes.length()), failure ? FAILURE : SUCCESS);
+        }
+
+        boolean isFailureRateExceeded(int minimumCalls, double threshold) {
+            int recorded = 0;
+            int failures = 0;
+            for (int i = 0; i < outcomes.length(); i++) {
+                int outcome = outcomes.get(i);
+                if (outcome != EMPTY) {
+                    recorded++;
+                    if (outcome == FAILURE) {
+                        failures++;
+                    }
+                }
+            }
+            return recorded >= minimumCalls && (double) failures / recorded >= threshold;
         }
     }
 }
@@ -0,0 +1,50 @@
+package org.datadog.jenkins.plugins.datadog.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+
+/**
+ * Bounds the number of asynchronous calls that have been started but have not completed yet.
+ * <p>
+ * Writers send requests asynchronously so that their dispatcher thread is not blocked while a failed request waits to be retried.
+ * The limit provides backpressure: when too many requests are in flight, the dispatcher waits for one of them to complete
+ * instead of piling up requests (and their bodies) in memory.
+ */
+public final class InFlightLimit {
+
+    private static final String MAX_IN_FLIGHT_REQUESTS_ENV_VAR = "DD_JENKINS_MAX_IN_FLIGHT_REQUESTS";
+    private static final int MAX_IN_FLIGHT_REQUESTS_DEFAULT = 16;
+
+    private final Semaphore permits;
+
+    public InFlightLimit() {
+        this(DatadogUtilities.envVar(MAX_IN_FLIGHT_REQUESTS_ENV_VAR, MAX_IN_FLIGHT_REQUESTS_DEFAULT));
+    }
+
+    public InFlightLimit(int maxInFlight) {
+        this.permits = new Semaphore(Math.max(maxInFlight, 1));
+    }
+
+    /**
+     * Starts a call, waiting first if the limit is reached.
+     *
+     * @return the future of the call, the permit is released when it completes
+     */
+    public <T> CompletableFuture<T> start(ThrowingSupplier<CompletableFuture<T>> call) throws Exception {
+        permits.acquire();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (Exception | Error e) {
+            permits.release();
+            throw e;
+        }
+        return future.whenComplete((result, failure) -> permits.release());
+    }
+
+    @FunctionalInterface
+    public interface ThrowingSupplier<T> {
+        T get() throws Exception;
+    }
+}
@@ -0,0 +1,57 @@
+package org.datadog.jenkins.plugins.datadog.util;
+
+import com.codahale.metrics.Meter;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps only the latest pending value for each key.
+ * <p>
+ * The first value offered for a key has to be scheduled for processing by the caller,
+ * values offered while it is pending replace it (if they are not older), so that the processing only sees the latest one.
+ */
+public final class KeyedCoalescer<K, V> {
+
+    private final ConcurrentMap<K, V> pending = new ConcurrentHashMap<>();
+    private final Comparator<V> order;
+    private final Meter coalesced;
+
+    /**
+     * @param order orders the values from oldest to newest; values that compare equal replace each other
+     */
+    public KeyedCoalescer(String name, Comparator<V> order) {
+        this.order = order;
+        this.coalesced = AsyncWriter.METRICS.meter(name + ".coalesced");
+    }
+
+    /**
+     * @return {@code true} if there was no value pending for the key, and the caller has to schedule it for processing
+     */
+    public boolean offer(K key, V value) {
+        boolean[] first = new boolean[1];
+        pending.compute(key, (k, existing) -> {
+            if (existing == null) {
+                first[0] = true;
+                return value;
+            }
+            coalesced.mark();
+            return order.compare(value, existing) >= 0 ? value : existing;
+        });
+        return first[0];
+    }
+
+    /**
+     * Takes the latest value pending for the key.
+     * Values offered afterwards will have to be scheduled again.
+     */
+    @Nullable
+    public V take(K key) {
+        return pending.remove(key);
+    }
+
+    public int size() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,213 @@
+package org.datadog.jenkins.plugins.datadog.util;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+
+/**
+ * Executes tasks on a bounded pool of threads.
+ * Tasks submitted with the same key are executed one at a time, in submission order;
+ * tasks with different keys are executed concurrently.
+ * <p>
+ * The total number of pending tasks is bounded:
+ * when the limit is reached, submitters wait for the submit timeout, and then execute the task themselves,
+ * so that tasks are never dropped.
+ * The submitter first waits (up to the await timeout) for the tasks that were submitted earlier for the same key,
+ * if they are still not executed after that, the task is executed out of order.
+ * Pool threads that stay idle are released; once the executor is shut down, tasks are executed by the submitters.
+ */
+public final class KeyedSerialExecutor {
+
+    private static final Logger logger = Logger.getLogger(KeyedSerialExecutor.class.getName());
+
+    /**
+     * Maximum number of consecutive tasks executed for a key before the thread is yielded to other keys.
+     */
+    private static final int MAX_TASKS_PER_TURN = 64;
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final int capacity;
+    private final Semaphore permits;
+    private final int submitTimeoutSeconds;
+    private final int awaitTimeoutSeconds;
+
+    /**
+     * A key is present in the map if and only if a drain task is scheduled or running for it.
+     * The task queues are only accessed inside atomic map operations.
+     */
+    private final ConcurrentMap<String, Queue<Task>> tasksByKey = new ConcurrentHashMap<>();
+    private final Object quiescence = new Object();
+
+    private final Timer queueWait;
+    private final Timer process;
+    private final Meter callerRuns;
+    private final Meter outOfOrder;
+
+    public KeyedSerialExecutor(String name, int threads, int capacity, int submitTimeoutSeconds, int awaitTimeoutSeconds) {
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(Math.max(threads, 1), Math.max(threads, 1),
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory(name));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.capacity = Math.max(capacity, 1);
+        this.permits = new Semaphore(this.capacity);
+        this.submitTimeoutSeconds = submitTimeoutSeconds;
+        this.awaitTimeoutSeconds = awaitTimeoutSeconds;
+        this.queueWait = AsyncWriter.METRICS.timer(name + ".queue.wait");
+        this.process = AsyncWriter.METRICS.timer(name + ".process");
+        this.callerRuns = AsyncWriter.METRICS.meter(name + ".submit.caller_runs");
+        this.outOfOrder = AsyncWriter.METRICS.meter(name + ".submit.out_of_order");
+        AsyncWriter.METRICS.gauge(name + ".queue.size", () -> this::getQueueSize);
+    }
+
+    /**
+     * @return {@code false} if the task was executed in the calling thread,
+     * because the executor stayed full until the submit timeout expired or because it is shut down
+     */
+    public boolean execute(String key, Runnable runnable) throws InterruptedException {
+        if (executor.isShutdown() || !permits.tryAcquire(submitTimeoutSeconds, TimeUnit.SECONDS)) {
+            callerRuns.mark();
+            // the tasks submitted earlier for the key are executed first, so that the order is preserved
+            // (keys are expected to be used by a single submitter, so no tasks are added for the key while waiting)
+            if (!awaitQuiescence(key, awaitTimeoutSeconds, TimeUnit.SECONDS)) {
+                outOfOrder.mark();
+                logger.warning("Timed out while waiting for the queued tasks of " + key + " to be executed, executing task out of order: " + name);
+            }
+            process(runnable);
+            return false;
+        }
+        Task task = new Task(runnable, System.nanoTime());
+        boolean[] schedule = new boolean[1];
+        tasksByKey.compute(key, (k, tasks) -> {
+            if (tasks == null) {
+                tasks = new ArrayDeque<>();
+                schedule[0] = true;
+            }
+            tasks.add(task);
+            return tasks;
+        });
+        if (schedule[0]) {
+            scheduleDrain(key);
+        }
+        return true;
+    }
+
+    private void scheduleDrain(String key) {
+        try {
+            executor.execute(() -> drain(key));
+        } catch (RejectedExecutionException e) {
+            // the executor is shut down, the tasks are executed by the caller
+            drain(key);
+        }
+    }
+
+    private void drain(String key) {
+        for (int i = 0; i < MAX_TASKS_PER_TURN; i++) {
+            Task[] next = new Task[1];
+            tasksByKey.computeIfPresent(key, (k, tasks) -> {
+                next[0] = tasks.poll();
+                return next[0] != null ? tasks : null;
+            });
+            if (next[0] == null) {
+                synchronized (quiescence) {
+                    quiescence.notifyAll();
+                }
+                return;
+            }
+            run(next[0]);
+        }
+        // let the tasks of other keys run, the key stays in the map so no other drain is scheduled for it
+        scheduleDrain(key);
+    }
+
+    private void run(Task task) {
+        queueWait.update(System.nanoTime() - task.submittedAtNanos, TimeUnit.NANOSECONDS);
+        try {
+            process(task.runnable);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void process(Runnable runnable) {
+        try (Timer.Context processTime = process.time()) {
+            runnable.run();
+        } catch (Exception e) {
+            DatadogUtilities.severe(logger, e, "Error while executing task: " + name);
+        }
+    }
+
+    /**
+     * Stops the pool threads once the tasks that are already submitted are executed.
+     * Tasks submitted afterwards are executed by the submitters.
+     *
+     * @return {@code false} if the timeout expired before all the tasks were executed
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Waits until all the tasks submitted for the key so far are executed.
+     *
+     * @return {@code false} if the timeout expired before that
+     */
+    public boolean awaitQuiescence(String key, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (quiescence) {
+            while (tasksByKey.containsKey(key)) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    return false;
+                }
+                quiescence.wait(remainingMillis);
+            }
+        }
+        return true;
+    }
+
+    public int getQueueSize() {
+        return capacity - permits.availablePermits();
+    }
+
+    private static final class Task {
+        private final Runnable runnable;
+        private final long submittedAtNanos;
+
+        private Task(Runnable runnable, long submittedAtNanos) {
+            this.runnable = runnable;
+            this.submittedAtNanos = submittedAtNanos;
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package org.datadog.jenkins.plugins.datadog.util;
+
+@FunctionalInterface
+public interface ThrowingFunction<T, R> {
+    R apply(T t) throws Exception;
+}
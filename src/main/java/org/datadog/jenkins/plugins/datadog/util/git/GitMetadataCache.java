@@ -0,0 +1,168 @@
+package org.datadog.jenkins.plugins.datadog.util.git;
+
+import com.codahale.metrics.Meter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.model.git.GitMetadata;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
+
+/**
+ * Controller-side cache of Git metadata resolved by inspecting a workspace repository.
+ * <p>
+ * Inspecting a repository requires executing callbacks on the node that hosts the workspace,
+ * which can be expensive for repositories with many refs.
+ * Builds of different jobs frequently check out the same commit of the same repository,
+ * so the resolved metadata is cached by repository URL and commit SHA
+ * (and the branch hint, since it affects how the branch of a detached HEAD is resolved).
+ * <p>
+ * The cache is bounded (least recently used entries are evicted first) and entries expire after a TTL.
+ * <p>
+ * A cached entry can be verified by the caller before it is used (e.g. by checking that the workspace HEAD
+ * is the cached commit, which is a single remote call instead of a full repository inspection):
+ * an entry that fails the verification is counted as a miss.
+ */
+public final class GitMetadataCache {
+
+    private static final String MAX_SIZE_ENV_VAR = "DD_JENKINS_GIT_METADATA_CACHE_SIZE";
+    private static final String TTL_SECONDS_ENV_VAR = "DD_JENKINS_GIT_METADATA_CACHE_TTL_SECONDS";
+    private static final int DEFAULT_MAX_SIZE = 1000;
+    private static final int DEFAULT_TTL_SECONDS = 3600;
+
+    private static final GitMetadataCache INSTANCE = new GitMetadataCache(
+            DatadogUtilities.envVar(MAX_SIZE_ENV_VAR, DEFAULT_MAX_SIZE),
+            TimeUnit.SECONDS.toNanos(DatadogUtilities.envVar(TTL_SECONDS_ENV_VAR, DEFAULT_TTL_SECONDS)),
+            System::nanoTime);
+
+    public static GitMetadataCache get() {
+        return INSTANCE;
+    }
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final Meter hits;
+    private final Meter misses;
+
+    @GuardedBy("this")
+    private final Map<Key, Entry> entries;
+
+    GitMetadataCache(int maxSize, long ttlNanos, LongSupplier nanoClock) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlNanos;
+        this.nanoClock = nanoClock;
+        this.hits = AsyncWriter.METRICS.meter("git.metadata.cache.hit");
+        this.misses = AsyncWriter.METRICS.meter("git.metadata.cache.miss");
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > GitMetadataCache.this.maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0 && ttlNanos > 0;
+    }
+
+    /**
+     * @param verifier checks that the cached metadata applies to the caller, only entries that pass it are counted as hits
+     * @return cached metadata, or {@code null} if there is no valid entry for the given coordinates
+     */
+    @Nullable
+    public GitMetadata get(@Nullable String repositoryUrl, @Nullable String commitSha, @Nullable String branchHint,
+                           @Nonnull Verifier verifier) throws InterruptedException {
+        Key key = Key.create(repositoryUrl, commitSha, branchHint);
+        if (key == null || !isEnabled()) {
+            return null;
+        }
+        GitMetadata metadata;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && nanoClock.getAsLong() - entry.createdAtNanos > ttlNanos) {
+                entries.remove(key);
+                entry = null;
+            }
+            metadata = entry != null ? entry.metadata : null;
+        }
+        if (metadata != null && verifier.verify(metadata)) {
+            hits.mark();
+            return metadata;
+        }
+        misses.mark();
+        return null;
+    }
+
+    public void put(@Nullable String repositoryUrl, @Nullable String commitSha, @Nullable String branchHint, @Nonnull GitMetadata metadata) {
+        Key key = Key.create(repositoryUrl, commitSha, branchHint);
+        if (key == null || !isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            entries.put(key, new Entry(metadata, nanoClock.getAsLong()));
+        }
+    }
+
+    public interface Verifier {
+        boolean verify(GitMetadata metadata) throws InterruptedException;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final GitMetadata metadata;
+        private final long createdAtNanos;
+
+        private Entry(GitMetadata metadata, long createdAtNanos) {
+            this.metadata = metadata;
+            this.createdAtNanos = createdAtNanos;
+        }
+    }
+
+    private static final class Key {
+        private final String repositoryUrl;
+        private final String commitSha;
+        private final String branchHint;
+
+        private Key(String repositoryUrl, String commitSha, String branchHint) {
+            this.repositoryUrl = repositoryUrl;
+            this.commitSha = commitSha;
+            this.branchHint = branchHint;
+        }
+
+        @Nullable
+        private static Key create(@Nullable String repositoryUrl, @Nullable String commitSha, @Nullable String branchHint) {
+            if (repositoryUrl == null || repositoryUrl.isEmpty() || !GitUtils.isValidCommitSha(commitSha)) {
+                return null;
+            }
+            return new Key(repositoryUrl, commitSha.toLowerCase(), branchHint);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return repositoryUrl.equals(key.repositoryUrl)
+                    && commitSha.equals(key.commitSha)
+                    && Objects.equals(branchHint, key.branchHint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(repositoryUrl, commitSha, branchHint);
+        }
+    }
+}
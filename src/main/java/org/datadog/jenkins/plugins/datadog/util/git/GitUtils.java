@@ -1,8 +1,10 @@
 package org.datadog.jenkins.plugins.datadog.util.git;
 
+import com.codahale.metrics.Timer;
 import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.model.TaskListener;
+import hudson.plugins.git.GitException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Date;
@@ -16,7 +18,9 @@ import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
 import org.datadog.jenkins.plugins.datadog.audit.DatadogAudit;
 import org.datadog.jenkins.plugins.datadog.model.git.GitCommitMetadata;
 import org.datadog.jenkins.plugins.datadog.model.git.GitMetadata;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.jenkinsci.plugins.gitclient.Git;
@@ -54,6 +58,9 @@ public final class GitUtils {
     public static final String CHANGE_BRANCH = "CHANGE_BRANCH";
 
     private static transient final Logger LOGGER = Logger.getLogger(GitUtils.class.getName());
+    private static final Timer REPOSITORY_INSPECTION_TIMER = AsyncWriter.METRICS.timer("git.inspection.repository");
+    private static final Timer COMMIT_INSPECTION_TIMER = AsyncWriter.METRICS.timer("git.inspection.commit");
+
     private static transient final Pattern SCP_REPO_URI_REGEX = Pattern.compile("^([\\w.~-]+@)?(?<host>[\\w.-]+):(?<path>[\\w./-]+)(?:\\?|$)(.*)$");
 
     private GitUtils() {
@@ -98,23 +105,59 @@ public final class GitUtils {
     }
 
     public static GitMetadata buildGitMetadata(@Nullable final GitClient gitClient, @Nullable String branchHint) {
+        return buildGitMetadata(gitClient, branchHint, null, null);
+    }
+
+    /**
+     * Builds Git metadata by inspecting the repository in the workspace.
+     * <p>
+     * If the repository URL and commit SHA of the checkout are known in advance (e.g. from Jenkins env vars),
+     * the metadata is looked up in {@link GitMetadataCache} first, and the repository is only inspected on a cache miss.
+     *
+     * @param gitClient     the Git client for the workspace
+     * @param branchHint    the branch name that is expected to be checked out, if known
+     * @param repositoryUrl the URL of the checked out repository, if known
+     * @param commitSha     the SHA of the checked out commit, if known
+     * @return Git metadata or {@code null} if it could not be built
+     */
+    public static GitMetadata buildGitMetadata(@Nullable final GitClient gitClient, @Nullable String branchHint,
+                                               @Nullable String repositoryUrl, @Nullable String commitSha) {
         try {
             if (gitClient == null) {
                 LOGGER.fine("Unable to build Git metadata. GitClient is null");
                 return null;
 
             } else {
+                GitMetadataCache cache = GitMetadataCache.get();
+                // env vars may refer to another checkout if the build checks out several repositories
+                GitMetadata cached = cache.get(repositoryUrl, commitSha, branchHint, metadata -> isHead(gitClient, commitSha));
+                if (cached != null) {
+                    LOGGER.fine("Using cached Git metadata for " + repositoryUrl + "@" + commitSha);
+                    return cached;
+                }
+
                 long repoCheckStart = System.currentTimeMillis();
                 boolean examineRepoRefs = DatadogUtilities.envVar(EXAMINE_REPO_REFS_ENV_VAR, true);
-                GitMetadataBuilderCallback.Result result = gitClient.withRepository(new GitMetadataBuilderCallback(branchHint, examineRepoRefs));
+                GitMetadataBuilderCallback.Result result;
+                try (Timer.Context ignored = REPOSITORY_INSPECTION_TIMER.time()) {
+                    result = gitClient.withRepository(new GitMetadataBuilderCallback(branchHint, examineRepoRefs));
+                }
                 LOGGER.fine("Examined Git repository in " + (System.currentTimeMillis() - repoCheckStart) + " ms");
 
                 GitMetadata.Builder builder = new GitMetadata.Builder();
                 builder.repositoryURL(result.repoUrl);
                 builder.defaultBranch(normalizeBranch(result.defaultBranch));
                 builder.branch(result.branch);
-                builder.commitMetadata(buildCommitMetadata(gitClient, result.branch));
-                return builder.build();
+                GitCommitMetadata commitMetadata = buildCommitMetadata(gitClient, result.branch);
+                builder.commitMetadata(commitMetadata);
+                GitMetadata metadata = builder.build();
+
+                // only cache if the workspace actually contains the expected commit:
+                // env vars may refer to a different checkout if the build checks out several repositories
+                if (commitMetadata != null && commitSha != null && commitSha.equalsIgnoreCase(commitMetadata.getCommit())) {
+                    cache.put(repositoryUrl, commitSha, branchHint, metadata);
+                }
+                return metadata;
             }
 
         } catch (Exception e) {
@@ -123,6 +166,16 @@ public final class GitUtils {
         }
     }
 
+    private static boolean isHead(GitClient gitClient, String commitSha) throws InterruptedException {
+        try {
+            ObjectId head = gitClient.revParse(Constants.HEAD);
+            return head != null && commitSha.equalsIgnoreCase(head.name());
+        } catch (GitException e) {
+            LOGGER.fine("Unable to resolve HEAD. Error: " + e);
+            return false;
+        }
+    }
+
     private static GitCommitMetadata buildCommitMetadata(@Nullable final GitClient gitClient, String branch) {
         try {
             GitCommitMetadata.Builder builder = new GitCommitMetadata.Builder();
@@ -182,7 +235,9 @@ public final class GitUtils {
                 return null;
             }
 
-            return gitClient.withRepository(new RevCommitRepositoryCallback(gitCommit));
+            try (Timer.Context ignored = COMMIT_INSPECTION_TIMER.time()) {
+                return gitClient.withRepository(new RevCommitRepositoryCallback(gitCommit));
+            }
         } catch (Exception e) {
             LOGGER.fine("Unable to search RevCommit. Error: " + e);
             return null;
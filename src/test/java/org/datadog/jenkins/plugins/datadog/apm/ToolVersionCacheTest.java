@@ -0,0 +1,118 @@
+package org.datadog.jenkins.plugins.datadog.apm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class ToolVersionCacheTest {
+
+    private static final String WORKSPACE = "/workspace/job";
+    private static final Map<String, String> ENVS = Collections.singletonMap("PATH", "/usr/bin");
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final AtomicInteger probeCount = new AtomicInteger();
+
+    @Test
+    public void testVersionIsCachedPerNodeAndCommand() throws Exception {
+        ToolVersionCache cache = new ToolVersionCache(TimeUnit.MINUTES.toNanos(10), nanoTime::get);
+
+        assertEquals("1", cache.getVersion("node-a", WORKSPACE, ENVS, this::probe, "npm", "-v"));
+        assertEquals("1", cache.getVersion("node-a", WORKSPACE, ENVS, this::probe, "npm", "-v"));
+        assertEquals("2", cache.getVersion("node-b", WORKSPACE, ENVS, this::probe, "npm", "-v"));
+        assertEquals("3", cache.getVersion("node-a", WORKSPACE, ENVS, this::probe, "ruby", "-v"));
+        assertEquals(3, probeCount.get());
+    }
+
+    @Test
+    public void testVersionIsCachedPerWorkspaceAndToolEnvironment() throws Exception {
+        ToolVersionCache cache = new ToolVersionCache(TimeUnit.MINUTES.toNanos(10), nanoTime::get);
+
+        assertEquals("1", cache.getVersion("node-a", WORKSPACE, ENVS, this::probe, "ruby", "-v"));
+        assertEquals("2", cache.getVersion("node-a", "/workspace/other-job", ENVS, this::probe, "ruby", "-v"));
+
+        Map<String, String> rbenvEnvs = new HashMap<>(ENVS);
+        rbenvEnvs.put("RBENV_VERSION", "3.3.0");
+        assertEquals("3", cache.getVersion("node-a", WORKSPACE, rbenvEnvs, this::probe, "ruby", "-v"));
+
+        Map<String, String> otherPathEnvs = Collections.singletonMap("PATH", "/opt/ruby/bin:/usr/bin");
+        assertEquals("4", cache.getVersion("node-a", WORKSPACE, otherPathEnvs, this::probe, "ruby", "-v"));
+
+        // variables that do not affect tool resolution do not invalidate the cache
+        Map<String, String> unrelatedEnvs = new HashMap<>(ENVS);
+        unrelatedEnvs.put("BUILD_NUMBER", "42");
+        assertEquals("1", cache.getVersion("node-a", WORKSPACE, unrelatedEnvs, this::probe, "ruby", "-v"));
+        assertEquals(4, probeCount.get());
+    }
+
+    @Test
+    public void testProbeIsRunWithToolEnvironment() throws Exception {
+        ToolVersionCache cache = new ToolVersionCache(TimeUnit.MINUTES.toNanos(10), nanoTime::get);
+
+        Map<String, String> envs = new HashMap<>(ENVS);
+        envs.put("RBENV_VERSION", "3.3.0");
+        envs.put("BUILD_NUMBER", "42");
+        Map<String, String> expectedToolEnvironment = new HashMap<>(ENVS);
+        expectedToolEnvironment.put("RBENV_VERSION", "3.3.0");
+
+        cache.getVersion("node-a", WORKSPACE, envs, toolEnvironment -> {
+            assertEquals(expectedToolEnvironment, toolEnvironment);
+            return probe(toolEnvironment);
+        }, "ruby", "-v");
+        assertEquals(1, probeCount.get());
+    }
+
+    @Test
+    public void testExpiredEntriesAreRemoved() throws Exception {
+        ToolVersionCache cache = new ToolVersionCache(TimeUnit.MINUTES.toNanos(10), nanoTime::get);
+
+        cache.getVersion("node-a", WORKSPACE, ENVS, this::probe, "npm", "-v");
+        cache.getVersion("node-b", WORKSPACE, ENVS, this::probe, "npm", "-v");
+        assertEquals(2, cache.size());
+
+        nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(11));
+        cache.getVersion("node-c", WORKSPACE, ENVS, this::probe, "npm", "-v");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testVersionIsProbedAgainAfterTtl() throws Exception {
+        ToolVersionCache cache = new ToolVersionCache(TimeUnit.MINUTES.toNanos(10), nanoTime::get);
+
+        assertEquals("1", cache.getVersion("node-a", WORKSPACE, ENVS, this::probe, "go", "version"));
+        nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(11));
+        assertEquals("2", cache.getVersion("node-a", WORKSPACE, ENVS, this::probe, "go", "version"));
+    }
+
+    @Test
+    public void testFailedProbesAreNotCached() throws Exception {
+        ToolVersionCache cache = new ToolVersionCache(TimeUnit.MINUTES.toNanos(10), nanoTime::get);
+        try {
+            cache.getVersion("node-a", WORKSPACE, ENVS, toolEnvironment -> {
+                throw new IOException("pip not found");
+            }, "pip", "-V");
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals("1", cache.getVersion("node-a", WORKSPACE, ENVS, this::probe, "pip", "-V"));
+    }
+
+    @Test
+    public void testCacheCanBeDisabled() throws Exception {
+        ToolVersionCache cache = new ToolVersionCache(0, nanoTime::get);
+        assertEquals("1", cache.getVersion("node-a", WORKSPACE, ENVS, this::probe, "gem", "-v"));
+        assertEquals("2", cache.getVersion("node-a", WORKSPACE, ENVS, this::probe, "gem", "-v"));
+    }
+
+    private String probe(Map<String, String> toolEnvironment) {
+        return String.valueOf(probeCount.incrementAndGet());
+    }
+}
@@ -0,0 +1,222 @@
+package org.datadog.jenkins.plugins.datadog.apm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.datadog.jenkins.plugins.datadog.clients.HttpClient;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TracerArtifactCacheTest {
+
+    private static final String RESOURCES = "/org/datadog/jenkins/plugins/datadog/apm/tracer-cache/";
+    /** Content that {@code tracer.jar.asc} is a signature of */
+    private static final byte[] SIGNED_CONTENT = "tracer artifact\n".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong currentTimeMillis = new AtomicLong(1_000_000);
+    /** URLs fetched by the cache, in order */
+    private final List<String> fetched = new CopyOnWriteArrayList<>();
+
+    private File cacheDir;
+    private TracerArtifactCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = folder.newFolder("cache");
+        cache = new TracerArtifactCache(() -> cacheDir, currentTimeMillis::get, this::fetch, 2);
+    }
+
+    private void fetch(HttpClient httpClient, String url, TracerArtifactCache.StreamConsumer consumer) throws Exception {
+        fetched.add(url);
+        try (InputStream is = Files.newInputStream(new File(URI.create(url)).toPath())) {
+            consumer.accept(is);
+        }
+    }
+
+    @Test
+    public void testCachedArtifactIsReused() throws Exception {
+        String url = artifactUrl("tracer.jar", SIGNED_CONTENT);
+
+        TracerArtifactCache.Artifact first = cache.getArtifact(null, url, null, 10);
+        TracerArtifactCache.Artifact second = cache.getArtifact(null, url, null, 10);
+
+        assertEquals(1, fetched.size());
+        assertEquals(first.getDigest(), second.getDigest());
+        assertEquals(first.getFile(), second.getFile());
+        assertArrayEquals(SIGNED_CONTENT, Files.readAllBytes(second.getFile().toPath()));
+    }
+
+    @Test
+    public void testArtifactIsDownloadedAgainAfterTtl() throws Exception {
+        String url = artifactUrl("tracer.jar", SIGNED_CONTENT);
+        cache.getArtifact(null, url, null, 10);
+
+        currentTimeMillis.addAndGet(TimeUnit.MINUTES.toMillis(9));
+        cache.getArtifact(null, url, null, 10);
+        assertEquals(1, fetched.size());
+
+        currentTimeMillis.addAndGet(TimeUnit.MINUTES.toMillis(2));
+        cache.getArtifact(null, url, null, 10);
+        assertEquals(2, fetched.size());
+    }
+
+    @Test
+    public void testStaleArtifactIsUsedIfRefreshFails() throws Exception {
+        Path artifact = folder.getRoot().toPath().resolve("tracer.jar");
+        String url = artifactUrl("tracer.jar", SIGNED_CONTENT);
+        String digest = cache.getArtifact(null, url, null, 10).getDigest();
+
+        Files.delete(artifact);
+        currentTimeMillis.addAndGet(TimeUnit.MINUTES.toMillis(11));
+        assertEquals(digest, cache.getArtifact(null, url, null, 10).getDigest());
+    }
+
+    @Test
+    public void testSignatureIsVerified() throws Exception {
+        String url = artifactUrl("tracer.jar", SIGNED_CONTENT);
+        copyResource("tracer.jar.asc");
+
+        cache.getArtifact(null, url, publicKey(), 10);
+        assertEquals(2, fetched.size());
+        assertTrue(fetched.get(1).endsWith(".asc"));
+    }
+
+    @Test
+    public void testArtifactWithSignatureMismatchIsRejected() throws Exception {
+        String url = artifactUrl("tracer.jar", "tampered tracer artifact\n".getBytes(StandardCharsets.UTF_8));
+        copyResource("tracer.jar.asc");
+
+        try {
+            cache.getArtifact(null, url, publicKey(), 10);
+            fail("Expected the artifact to be rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        String[] cachedArtifacts = cacheDir.list((dir, name) -> name.endsWith(".jar") || name.endsWith(".tmp"));
+        assertEquals(0, cachedArtifacts.length);
+    }
+
+    @Test
+    public void testArtifactIsCachedPerPublicKey() throws Exception {
+        String url = artifactUrl("tracer.jar", SIGNED_CONTENT);
+        copyResource("tracer.jar.asc");
+
+        cache.getArtifact(null, url, null, 10);
+        // an artifact that was not verified is not reused when a signature is required
+        cache.getArtifact(null, url, publicKey(), 10);
+        assertEquals(3, fetched.size());
+        assertTrue(fetched.get(2).endsWith(".asc"));
+
+        cache.getArtifact(null, url, publicKey(), 10);
+        assertEquals(3, fetched.size());
+    }
+
+    @Test
+    public void testSupersededArtifactIsDeleted() throws Exception {
+        String url = artifactUrl("tracer.jar", SIGNED_CONTENT);
+        TracerArtifactCache.Artifact first = cache.getArtifact(null, url, null, 10);
+
+        artifactUrl("tracer.jar", "new tracer artifact\n".getBytes(StandardCharsets.UTF_8));
+        currentTimeMillis.addAndGet(TimeUnit.MINUTES.toMillis(11));
+        TracerArtifactCache.Artifact second = cache.getArtifact(null, url, null, 10);
+
+        assertFalse(first.getFile().exists());
+        assertTrue(second.getFile().exists());
+    }
+
+    @Test
+    public void testLeastRecentlyDownloadedArtifactIsEvicted() throws Exception {
+        TracerArtifactCache.Artifact first = cache.getArtifact(null, artifactUrl("first-tracer.jar", "first\n".getBytes(StandardCharsets.UTF_8)), null, 10);
+        currentTimeMillis.incrementAndGet();
+        TracerArtifactCache.Artifact second = cache.getArtifact(null, artifactUrl("second-tracer.jar", "second\n".getBytes(StandardCharsets.UTF_8)), null, 10);
+        currentTimeMillis.incrementAndGet();
+        TracerArtifactCache.Artifact third = cache.getArtifact(null, artifactUrl("third-tracer.jar", "third\n".getBytes(StandardCharsets.UTF_8)), null, 10);
+
+        assertFalse(first.getFile().exists());
+        assertTrue(second.getFile().exists());
+        assertTrue(third.getFile().exists());
+    }
+
+    @Test
+    public void testUnindexedArtifactsAreDeleted() throws Exception {
+        File unindexed = new File(cacheDir, "0123456789abcdef.jar");
+        Files.write(unindexed.toPath(), SIGNED_CONTENT);
+
+        TracerArtifactCache.Artifact artifact = cache.getArtifact(null, artifactUrl("tracer.jar", SIGNED_CONTENT), null, 10);
+        assertFalse(unindexed.exists());
+        assertTrue(artifact.getFile().exists());
+    }
+
+    @Test
+    public void testConcurrentBuildsDownloadArtifactOnce() throws Exception {
+        String url = artifactUrl("tracer.jar", SIGNED_CONTENT);
+        String otherUrl = artifactUrl("other-tracer.jar", "other tracer artifact\n".getBytes(StandardCharsets.UTF_8));
+
+        CountDownLatch downloadStarted = new CountDownLatch(1);
+        CountDownLatch otherArtifactServed = new CountDownLatch(1);
+        TracerArtifactCache slowCache = new TracerArtifactCache(() -> cacheDir, currentTimeMillis::get, (httpClient, u, consumer) -> {
+            if (u.equals(url)) {
+                downloadStarted.countDown();
+                // the download of an artifact does not block the builds that need another artifact
+                assertTrue(otherArtifactServed.await(10, TimeUnit.SECONDS));
+            }
+            fetch(httpClient, u, consumer);
+        }, 2);
+
+        ExecutorService builds = Executors.newFixedThreadPool(2);
+        try {
+            Future<TracerArtifactCache.Artifact> first = builds.submit(() -> slowCache.getArtifact(null, url, null, 10));
+            Future<TracerArtifactCache.Artifact> second = builds.submit(() -> slowCache.getArtifact(null, url, null, 10));
+            assertTrue(downloadStarted.await(10, TimeUnit.SECONDS));
+
+            slowCache.getArtifact(null, otherUrl, null, 10);
+            otherArtifactServed.countDown();
+
+            assertEquals(first.get(10, TimeUnit.SECONDS).getDigest(), second.get(10, TimeUnit.SECONDS).getDigest());
+            assertEquals(1, fetched.stream().filter(url::equals).count());
+        } finally {
+            builds.shutdownNow();
+        }
+    }
+
+    private String artifactUrl(String name, byte[] content) throws IOException {
+        Path artifact = folder.getRoot().toPath().resolve(name);
+        Files.write(artifact, content);
+        return artifact.toUri().toString();
+    }
+
+    private void copyResource(String name) throws IOException {
+        try (InputStream is = TracerArtifactCacheTest.class.getResourceAsStream(RESOURCES + name)) {
+            Files.copy(is, folder.getRoot().toPath().resolve(name));
+        }
+    }
+
+    private static byte[] publicKey() throws IOException {
+        try (InputStream is = TracerArtifactCacheTest.class.getResourceAsStream(RESOURCES + "public-key.asc")) {
+            return is.readAllBytes();
+        }
+    }
+}
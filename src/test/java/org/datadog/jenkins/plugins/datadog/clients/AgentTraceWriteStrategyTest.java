@@ -0,0 +1,254 @@
+package org.datadog.jenkins.plugins.datadog.clients;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.model.Run;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import org.datadog.jenkins.plugins.datadog.model.BuildData;
+import org.datadog.jenkins.plugins.datadog.model.PipelineStepData;
+import org.datadog.jenkins.plugins.datadog.traces.write.Payload;
+import org.datadog.jenkins.plugins.datadog.traces.write.TraceWriteStrategy;
+import org.datadog.jenkins.plugins.datadog.traces.write.Track;
+import org.junit.Test;
+
+public class AgentTraceWriteStrategyTest {
+
+    private static final Set<String> APM_ONLY = Collections.singleton("/v0.3/traces");
+    private static final Set<String> EVP_PROXY = new HashSet<>(Arrays.asList("/v0.3/traces", AgentCapabilities.EVP_PROXY_ENDPOINT));
+    private static final Set<String> EVP_PROXY_WITH_COMPRESSION = new HashSet<>(Arrays.asList(
+            "/v0.3/traces", AgentCapabilities.EVP_PROXY_ENDPOINT, AgentCapabilities.EVP_PROXY_COMPRESSION_ENDPOINT));
+
+    private final StubStrategy apm = new StubStrategy(Track.APM);
+    private final List<StubStrategy> webhooks = new ArrayList<>();
+    private Callable<Set<String>> probe = () -> {
+        throw new IllegalStateException("Agent is not reachable");
+    };
+
+    private final AgentTraceWriteStrategy strategy = new AgentTraceWriteStrategy(
+            () -> probe.call(),
+            apm,
+            compressed -> {
+                StubStrategy webhook = new StubStrategy(Track.WEBHOOK);
+                webhook.compressed = compressed;
+                webhooks.add(webhook);
+                return webhook;
+            },
+            60_000,
+            1_000);
+
+    @Test
+    public void usesApmUntilAgentIsProbed() {
+        assertFalse(strategy.getCapabilities().isKnown());
+        assertEquals(Track.APM, strategy.serialize((BuildData) null, null).getTrack());
+
+        assertFalse(strategy.probe());
+        assertEquals("Agent is not reachable", strategy.getCapabilities().getLastError());
+        assertNull(strategy.getCapabilities().getLastSuccessfulProbe());
+        assertEquals(Track.APM, strategy.serialize((BuildData) null, null).getTrack());
+    }
+
+    @Test
+    public void keepsApmWhenEvpProxyIsNotAdvertised() {
+        probe = () -> APM_ONLY;
+        assertTrue(strategy.probe());
+        assertTrue(strategy.getCapabilities().isKnown());
+        assertEquals(Track.APM, strategy.serialize((BuildData) null, null).getTrack());
+        assertTrue(webhooks.isEmpty());
+    }
+
+    @Test
+    public void switchesToEvpProxyWhenAdvertised() {
+        probe = () -> EVP_PROXY_WITH_COMPRESSION;
+        assertTrue(strategy.probe());
+
+        assertEquals(Track.WEBHOOK, strategy.serialize((BuildData) null, null).getTrack());
+        assertEquals(1, webhooks.size());
+        assertTrue(webhooks.get(0).compressed);
+        assertEquals(EVP_PROXY_WITH_COMPRESSION, strategy.getCapabilities().getEndpoints());
+    }
+
+    @Test
+    public void keepsLastKnownCapabilitiesWhenProbeFails() {
+        probe = () -> EVP_PROXY;
+        assertTrue(strategy.probe());
+        probe = () -> {
+            throw new IllegalStateException("timeout");
+        };
+        assertFalse(strategy.probe());
+
+        assertEquals(Track.WEBHOOK, strategy.serialize((BuildData) null, null).getTrack());
+        assertEquals("timeout", strategy.getCapabilities().getLastError());
+        assertEquals(EVP_PROXY, strategy.getCapabilities().getEndpoints());
+        assertEquals(1, webhooks.size());
+    }
+
+    @Test
+    public void recreatesWebhookStrategyWhenCompressionSupportChanges() {
+        probe = () -> EVP_PROXY;
+        strategy.probe();
+        strategy.probe();
+        assertEquals(1, webhooks.size());
+        assertFalse(webhooks.get(0).compressed);
+
+        probe = () -> EVP_PROXY_WITH_COMPRESSION;
+        strategy.probe();
+        assertEquals(2, webhooks.size());
+        assertTrue(webhooks.get(1).compressed);
+    }
+
+    @Test
+    public void sendsPayloadsWithTheStrategyTheyWereSerializedFor() {
+        Payload apmPayload = strategy.serialize((BuildData) null, null);
+        probe = () -> EVP_PROXY;
+        strategy.probe();
+        Payload webhookPayload = strategy.serialize((BuildData) null, null);
+
+        strategy.send(Arrays.asList(apmPayload, webhookPayload, apmPayload));
+
+        assertEquals(Arrays.asList(apmPayload, apmPayload), apm.sent);
+        assertEquals(Collections.singletonList(webhookPayload), webhooks.get(0).sent);
+    }
+
+    @Test
+    public void keepsTrackOfRunUntilItIsFinished() throws Exception {
+        Run<?, ?> run = run("job#1");
+        assertEquals(Track.APM, strategy.serialize(buildData(true), run).getTrack());
+
+        probe = () -> EVP_PROXY;
+        strategy.probe();
+        assertEquals(Track.APM, strategy.serialize((PipelineStepData) null, run).getTrack());
+        assertEquals(Track.APM, strategy.serialize(buildData(false), run).getTrack());
+        assertEquals(Track.WEBHOOK, strategy.serialize(buildData(true), run("job#2")).getTrack());
+
+        // the track of a finished run is not kept
+        assertEquals(Track.WEBHOOK, strategy.serialize(buildData(false), run).getTrack());
+    }
+
+    @Test
+    public void releasesTrackOfRun() throws Exception {
+        Run<?, ?> run = run("job#1");
+        assertEquals(Track.APM, strategy.serialize(buildData(true), run).getTrack());
+
+        probe = () -> EVP_PROXY;
+        strategy.probe();
+        strategy.release(run);
+        assertEquals(Track.WEBHOOK, strategy.serialize((PipelineStepData) null, run).getTrack());
+    }
+
+    @Test
+    public void takesOverTracksOfRunsInProgress() throws Exception {
+        Run<?, ?> run = run("job#1");
+        assertEquals(Track.APM, strategy.serialize(buildData(true), run).getTrack());
+
+        AgentTraceWriteStrategy successor = new AgentTraceWriteStrategy(() -> EVP_PROXY, apm, compressed -> new StubStrategy(Track.WEBHOOK), 60_000, 1_000);
+        successor.probe();
+        successor.takeOver(strategy);
+
+        assertEquals(Track.APM, successor.serialize((PipelineStepData) null, run).getTrack());
+        assertEquals(Track.WEBHOOK, successor.serialize(buildData(true), run("job#2")).getTrack());
+    }
+
+    @Test
+    public void usesApmForRunOnWebhookTrackUntilSuccessorIsProbed() throws Exception {
+        probe = () -> EVP_PROXY;
+        strategy.probe();
+        Run<?, ?> run = run("job#1");
+        assertEquals(Track.WEBHOOK, strategy.serialize(buildData(true), run).getTrack());
+
+        AgentTraceWriteStrategy successor = new AgentTraceWriteStrategy(() -> EVP_PROXY, apm, compressed -> new StubStrategy(Track.WEBHOOK), 60_000, 1_000);
+        successor.takeOver(strategy);
+        assertEquals(Track.APM, successor.serialize((PipelineStepData) null, run).getTrack());
+
+        successor.probe();
+        assertEquals(Track.WEBHOOK, successor.serialize((PipelineStepData) null, run).getTrack());
+    }
+
+    @Test
+    public void closesReplacedWebhookStrategyOnceItsSendIsOver() {
+        probe = () -> EVP_PROXY;
+        strategy.probe();
+        Payload payload = strategy.serialize((BuildData) null, null);
+
+        StubStrategy replaced = webhooks.get(0);
+        replaced.onSend = () -> {
+            probe = () -> EVP_PROXY_WITH_COMPRESSION;
+            strategy.probe();
+            assertFalse(replaced.closed);
+        };
+        strategy.send(Collections.singletonList(payload));
+
+        assertEquals(Collections.singletonList(payload), replaced.sent);
+        assertTrue(replaced.closed);
+        assertFalse(webhooks.get(1).closed);
+    }
+
+    @Test
+    public void closesAllStrategies() {
+        probe = () -> EVP_PROXY;
+        strategy.probe();
+        probe = () -> EVP_PROXY_WITH_COMPRESSION;
+        strategy.probe();
+        strategy.close();
+
+        assertTrue(apm.closed);
+        assertTrue(webhooks.get(0).closed);
+        assertTrue(webhooks.get(1).closed);
+    }
+
+    private static Run<?, ?> run(String id) {
+        Run<?, ?> run = mock(Run.class);
+        when(run.getExternalizableId()).thenReturn(id);
+        return run;
+    }
+
+    private static BuildData buildData(boolean building) {
+        BuildData buildData = mock(BuildData.class);
+        when(buildData.isBuilding()).thenReturn(building);
+        return buildData;
+    }
+
+    private static final class StubStrategy implements TraceWriteStrategy {
+        private final Track track;
+        private final List<Payload> sent = new ArrayList<>();
+        private boolean compressed;
+        private boolean closed;
+        private Runnable onSend = () -> {};
+
+        private StubStrategy(Track track) {
+            this.track = track;
+        }
+
+        @Override
+        public Payload serialize(BuildData buildData, Run<?, ?> run) {
+            return new Payload(new byte[0], track);
+        }
+
+        @Override
+        public Payload serialize(PipelineStepData stepData, Run<?, ?> run) {
+            return new Payload(new byte[0], track);
+        }
+
+        @Override
+        public void send(Collection<Payload> spans) {
+            onSend.run();
+            sent.addAll(spans);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package org.datadog.jenkins.plugins.datadog.clients;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
@@ -16,6 +20,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.zip.GZIPInputStream;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
@@ -120,6 +125,31 @@ public class BatchSenderTest {
         assertEquals(Arrays.asList(map("cd", "1234567890")), batches.get(1));
     }
 
+    @Test
+    public void testAsyncSendDoesNotWaitForResponses() throws Exception {
+        CompletableFuture<Object> response = new CompletableFuture<>();
+        when(httpClient.postAsync(any(), any(), any(), any(), any())).thenReturn(response);
+
+        CompletableFuture<Void> sent = sender.sendAsync(Arrays.asList(map("a", "b"), map("c", "d"), map("e", "f"), map("g", "h")));
+
+        verify(httpClient, times(2)).postAsync(eq(URL), eq(expectedHeaders), eq("application/json"), any(), any());
+        assertFalse(sent.isDone());
+        response.complete("");
+        assertTrue(sent.isDone());
+        assertFalse(sent.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testAsyncSendFailsIfAnyRequestFails() throws Exception {
+        CompletableFuture<Object> response = new CompletableFuture<>();
+        when(httpClient.postAsync(any(), any(), any(), any(), any())).thenReturn(response);
+
+        CompletableFuture<Void> sent = sender.sendAsync(Arrays.asList(map("a", "b")));
+
+        response.completeExceptionally(new IllegalStateException("Received erroneous response"));
+        assertTrue(sent.isCompletedExceptionally());
+    }
+
     private List<Collection<Map<String, String>>> whenSending(Map<String, String>... payloads) throws Exception {
         sender.send(Arrays.asList(payloads));
 
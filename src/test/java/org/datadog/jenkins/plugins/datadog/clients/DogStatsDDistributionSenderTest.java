@@ -0,0 +1,85 @@
+package org.datadog.jenkins.plugins.datadog.clients;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.datadog.jenkins.plugins.datadog.metrics.DistributionSketch;
+import org.junit.Test;
+
+public class DogStatsDDistributionSenderTest {
+
+    @Test
+    public void testOneDatagramIsSentPerBin() throws Exception {
+        DistributionSketch sketch = new DistributionSketch();
+        for (int i = 0; i < 1_000; i++) {
+            sketch.accept(10);
+        }
+        for (int i = 0; i < 3; i++) {
+            sketch.accept(500);
+        }
+        sketch.accept(0);
+
+        try (DatagramSocket agent = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             DogStatsDDistributionSender sender = new DogStatsDDistributionSender("127.0.0.1", agent.getLocalPort())) {
+            assertEquals(3, sender.send("jenkins.job.duration", sketch, new String[]{"job:my-job", "result:SUCCESS"}));
+
+            List<String> datagrams = receive(agent);
+            assertEquals(3, datagrams.size());
+
+            long totalCount = 0;
+            for (String datagram : datagrams) {
+                assertTrue(datagram, datagram.startsWith("jenkins.job.duration:"));
+                assertTrue(datagram, datagram.endsWith("|#job:my-job,result:SUCCESS"));
+                totalCount += sampleCount(datagram);
+            }
+            assertEquals(sketch.getCount(), totalCount);
+        }
+    }
+
+    @Test
+    public void testSampleRateIsOmittedForSingleValues() {
+        assertEquals("metric:2.5|d", DogStatsDDistributionSender.format("metric", 2.5, 1, ""));
+        assertEquals("metric:2.5|d|#tag", DogStatsDDistributionSender.format("metric", 2.5, 1, "|#tag"));
+    }
+
+    @Test
+    public void testSampleRateIsNotRoundedUp() {
+        for (long count = 2; count < 100_000; count++) {
+            String message = DogStatsDDistributionSender.format("metric", 1, count, "");
+            assertEquals(message, count, sampleCount(message));
+        }
+    }
+
+    /** Mirrors the Agent, that truncates the inverse of the sample rate */
+    private static long sampleCount(String datagram) {
+        int rateStart = datagram.indexOf("|@");
+        if (rateStart < 0) {
+            return 1;
+        }
+        int rateEnd = datagram.indexOf('|', rateStart + 2);
+        String rate = datagram.substring(rateStart + 2, rateEnd < 0 ? datagram.length() : rateEnd);
+        return (long) (1 / Double.parseDouble(rate));
+    }
+
+    private static List<String> receive(DatagramSocket agent) throws Exception {
+        List<String> datagrams = new ArrayList<>();
+        agent.setSoTimeout(500);
+        byte[] buffer = new byte[1024];
+        while (true) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                agent.receive(packet);
+            } catch (SocketTimeoutException e) {
+                return datagrams;
+            }
+            datagrams.add(new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.datadog.jenkins.plugins.datadog.clients;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class GzipCompressorTest {
+
+    @Test
+    public void testCompressedDataCanBeDecompressed() throws Exception {
+        GzipCompressor compressor = new GzipCompressor(Deflater.DEFAULT_COMPRESSION, 1, 1);
+        Random random = new Random(42);
+        for (int size : new int[]{0, 1, 100, 64 * 1024, 1024 * 1024}) {
+            StringBuilder json = new StringBuilder();
+            while (json.length() < size) {
+                json.append("{\"line\":").append(random.nextInt(1000)).append("},");
+            }
+            byte[] data = json.substring(0, size).getBytes(StandardCharsets.UTF_8);
+            assertArrayEquals(data, gunzip(compressor.gzip(data)));
+
+            byte[] randomData = new byte[size];
+            random.nextBytes(randomData);
+            assertArrayEquals(randomData, gunzip(compressor.gzip(randomData)));
+        }
+    }
+
+    @Test
+    public void testCompressionOfArraySlice() throws Exception {
+        GzipCompressor compressor = new GzipCompressor(Deflater.BEST_SPEED, 1, 1);
+        byte[] data = "xxhello worldxx".getBytes(StandardCharsets.UTF_8);
+        assertEquals("hello world", new String(gunzip(compressor.gzip(data, 2, 11)), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testParallelEncodingPreservesOrder() throws Exception {
+        GzipCompressor compressor = new GzipCompressor(Deflater.DEFAULT_COMPRESSION, 2, 4);
+        List<String> inputs = Arrays.asList("a", "bb", "ccc", "dddd", "eeeee");
+        List<byte[]> results = compressor.encodeAll(inputs, s -> compressor.gzip(s.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(inputs.size(), results.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(inputs.get(i), new String(gunzip(results.get(i)), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testLargeReusableBufferIsReleasedOnReset() {
+        GzipCompressor.ReusableByteArrayOutputStream output = new GzipCompressor.ReusableByteArrayOutputStream(1024);
+        byte[] small = new byte[100 * 1024];
+        output.write(small, 0, small.length);
+        output.reset();
+        assertEquals(0, output.size());
+        int retainedLength = output.getBuffer().length;
+        assertTrue(retainedLength >= small.length);
+
+        byte[] large = new byte[16 * 1024 * 1024];
+        output.write(large, 0, large.length);
+        output.reset();
+        assertEquals(1024, output.getBuffer().length);
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws Exception {
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.datadog.jenkins.plugins.datadog.clients;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.codahale.metrics.Gauge;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpClientTest {
+
+    private static final byte[] BODY = "{}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private String url;
+    /** Statuses returned by the server, in order; once they are used up, the server returns the default status */
+    private final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private volatile int defaultStatus = 200;
+    private final List<Long> requestTimesNanos = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            requestTimesNanos.add(System.nanoTime());
+            exchange.getRequestBody().readAllBytes();
+            Integer status = statuses.poll();
+            exchange.sendResponseHeaders(status != null ? status : defaultStatus, -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/intake";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testHttp2IsUsedForTlsDestinationsWhenEnabled() {
+        assertTrue(HttpClient.useHttp2("https://http-intake.logs.datadoghq.com/api/v2/logs", true, false));
+        assertFalse(HttpClient.useHttp2("https://http-intake.logs.datadoghq.com/api/v2/logs", false, true));
+    }
+
+    @Test
+    public void testHttp2IsUsedForCleartextDestinationsOnlyWhenCleartextIsEnabled() {
+        assertFalse(HttpClient.useHttp2("http://localhost:8126/v0.3/traces", true, false));
+        assertTrue(HttpClient.useHttp2("http://localhost:8126/v0.3/traces", false, true));
+    }
+
+    @Test
+    public void testHttp2IsNotUsedForUnsupportedUrls() {
+        assertFalse(HttpClient.useHttp2("file:///tmp/tracer.jar", true, true));
+        assertFalse(HttpClient.useHttp2("not a url", true, true));
+    }
+
+    @Test
+    public void testFailedRequestsAreRetriedWithExponentialBackoff() throws Exception {
+        statuses.add(503);
+        statuses.add(503);
+        HttpClient client = client(5, 100);
+
+        client.postAsync(url, Collections.emptyMap(), "application/json", BODY, Function.identity()).get(10, TimeUnit.SECONDS);
+
+        assertEquals(3, requestTimesNanos.size());
+        long firstDelayMillis = TimeUnit.NANOSECONDS.toMillis(requestTimesNanos.get(1) - requestTimesNanos.get(0));
+        long secondDelayMillis = TimeUnit.NANOSECONDS.toMillis(requestTimesNanos.get(2) - requestTimesNanos.get(1));
+        assertTrue("first retry after " + firstDelayMillis + " ms", firstDelayMillis >= 100);
+        // the delay doubles, with a jitter of 25%
+        assertTrue("second retry after " + secondDelayMillis + " ms", secondDelayMillis >= 150);
+    }
+
+    @Test
+    public void testRequestFailsWhenRetriesAreExhausted() throws Exception {
+        defaultStatus = 503;
+        HttpClient client = client(2, 10);
+
+        try {
+            client.post(url, Collections.emptyMap(), "application/json", BODY, Function.identity());
+            fail("Expected the request to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("503"));
+        }
+        assertEquals(3, requestTimesNanos.size());
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried() throws Exception {
+        statuses.add(400);
+        HttpClient client = client(5, 10);
+
+        CompletableFuture<String> response = client.postAsync(url, Collections.emptyMap(), "application/json", BODY, Function.identity());
+        try {
+            response.get(10, TimeUnit.SECONDS);
+            fail("Expected the request to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("400"));
+        }
+        assertEquals(1, requestTimesNanos.size());
+    }
+
+    @Test
+    public void testPendingRetriesAreReportedWithoutBlockingTheCaller() throws Exception {
+        statuses.add(503);
+        HttpClient client = client(5, 1_000);
+        Gauge<?> pendingRetries = AsyncWriter.METRICS.getGauges().get("http.retries.pending");
+
+        CompletableFuture<String> response = client.postAsync(url, Collections.emptyMap(), "application/json", BODY, Function.identity());
+
+        await(() -> ((Number) pendingRetries.getValue()).intValue() > 0);
+        assertFalse(response.isDone());
+        assertEquals(1, requestTimesNanos.size());
+
+        response.get(10, TimeUnit.SECONDS);
+        assertEquals(2, requestTimesNanos.size());
+        await(() -> ((Number) pendingRetries.getValue()).intValue() == 0);
+    }
+
+    private static HttpClient client(int maxRetries, int initialDelayMillis) {
+        return new HttpClient(HttpStream.METRICS, 10_000, new HttpRetryPolicy.Factory(maxRetries, initialDelayMillis, 2.0));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
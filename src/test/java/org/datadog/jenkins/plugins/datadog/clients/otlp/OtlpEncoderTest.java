@@ -0,0 +1,210 @@
+package org.datadog.jenkins.plugins.datadog.clients.otlp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.sf.json.JSONObject;
+import org.datadog.jenkins.plugins.datadog.traces.message.TraceSpan;
+import org.junit.Test;
+
+public class OtlpEncoderTest {
+
+    @Test
+    public void writesVarintsAndNestedMessagesOfAnyLength() {
+        ProtobufWriter writer = new ProtobufWriter(16);
+        writer.writeInt64(1, 300);
+        int nested = writer.startMessage(2);
+        String longValue = String.join("", Collections.nCopies(200, "x"));
+        writer.writeString(1, longValue);
+        writer.endMessage(nested);
+
+        Map<Integer, List<Object>> fields = decode(writer.toByteArray());
+        assertEquals(300L, fields.get(1).get(0));
+        Map<Integer, List<Object>> nestedFields = decode((byte[]) fields.get(2).get(0));
+        assertEquals(longValue, string(nestedFields, 1));
+    }
+
+    @Test
+    public void writesUtf8LikeTheJdk() {
+        String value = "caf\u00e9 \u20ac \ud83d\ude00 \ud83d";
+        ProtobufWriter writer = new ProtobufWriter(16);
+        writer.writeString(1, value);
+
+        byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, ProtobufWriter.utf8Length(value));
+        assertArrayEquals(expected, (byte[]) decode(writer.toByteArray()).get(1).get(0));
+    }
+
+    @Test
+    public void encodesSpan() {
+        TraceSpan span = createSpan();
+        span.setError(true);
+        span.putMeta("error.message", "boom");
+
+        Map<Integer, List<Object>> fields = decode(OtlpExporter.encodeSpan(span));
+
+        assertArrayEquals(ByteBuffer.allocate(16).putLong(0).putLong(123).array(), bytes(fields, OtlpEncoder.SPAN_TRACE_ID));
+        assertArrayEquals(ByteBuffer.allocate(8).putLong(456).array(), bytes(fields, OtlpEncoder.SPAN_SPAN_ID));
+        assertArrayEquals(ByteBuffer.allocate(8).putLong(789).array(), bytes(fields, OtlpEncoder.SPAN_PARENT_SPAN_ID));
+        assertEquals("jenkins.step", string(fields, OtlpEncoder.SPAN_NAME));
+        assertEquals(1_700_000_000_000_000_000L, fields.get(OtlpEncoder.SPAN_START_TIME).get(0));
+        assertEquals(1_700_000_005_000_000_000L, fields.get(OtlpEncoder.SPAN_END_TIME).get(0));
+
+        Map<String, Object> attributes = attributes(fields.get(OtlpEncoder.SPAN_ATTRIBUTES));
+        assertEquals("Build", attributes.get("resource.name"));
+        assertEquals("ci", attributes.get("span.type"));
+        assertEquals("success", attributes.get("ci.status"));
+        assertEquals(2.5, attributes.get("ci.queue_time"));
+
+        Map<Integer, List<Object>> status = decode(bytes(fields, OtlpEncoder.SPAN_STATUS));
+        assertEquals((long) OtlpEncoder.STATUS_CODE_ERROR, status.get(OtlpEncoder.STATUS_CODE).get(0));
+        assertEquals("boom", string(status, OtlpEncoder.STATUS_MESSAGE));
+    }
+
+    @Test
+    public void encodesTracesRequest() {
+        List<byte[]> spans = Arrays.asList(OtlpExporter.encodeSpan(createSpan()), OtlpExporter.encodeSpan(createSpan()));
+        ProtobufWriter writer = new ProtobufWriter(16);
+        OtlpEncoder.writeTracesRequest(writer, Collections.singletonMap("service.name", "my-jenkins"), "1.0", spans);
+
+        Map<Integer, List<Object>> resourceSpans = decode(bytes(decode(writer.toByteArray()), OtlpEncoder.REQUEST_RESOURCE_SPANS));
+        Map<Integer, List<Object>> resource = decode(bytes(resourceSpans, OtlpEncoder.RESOURCE));
+        assertEquals("my-jenkins", attributes(resource.get(OtlpEncoder.RESOURCE_ATTRIBUTES)).get("service.name"));
+
+        Map<Integer, List<Object>> scopeSpans = decode(bytes(resourceSpans, OtlpEncoder.SCOPE_SPANS));
+        Map<Integer, List<Object>> scope = decode(bytes(scopeSpans, OtlpEncoder.SCOPE));
+        assertEquals(OtlpEncoder.SCOPE_NAME, string(scope, OtlpEncoder.SCOPE_NAME_FIELD));
+        assertEquals(2, scopeSpans.get(OtlpEncoder.SCOPE_SPANS_SPANS).size());
+        assertArrayEquals(spans.get(1), (byte[]) scopeSpans.get(OtlpEncoder.SCOPE_SPANS_SPANS).get(1));
+    }
+
+    @Test
+    public void encodesLogRecord() {
+        JSONObject log = new JSONObject();
+        log.put("message", "Hello\nWorld");
+        log.put("timestamp", 1_700_000_000_123L);
+        log.put("service", "jenkins");
+        log.put("ddtags", "a:b,c:d");
+        log.put("build_number", 42);
+
+        Map<Integer, List<Object>> fields = decode(OtlpExporter.encodeLogRecord(log, 1_700_000_000_456L));
+
+        assertEquals(1_700_000_000_123_000_000L, fields.get(OtlpEncoder.LOG_TIME).get(0));
+        assertEquals(1_700_000_000_456_000_000L, fields.get(OtlpEncoder.LOG_OBSERVED_TIME).get(0));
+        assertEquals("Hello\nWorld", string(decode(bytes(fields, OtlpEncoder.LOG_BODY)), OtlpEncoder.ANY_VALUE_STRING));
+        Map<String, Object> attributes = attributes(fields.get(OtlpEncoder.LOG_ATTRIBUTES));
+        assertEquals("a:b,c:d", attributes.get("ddtags"));
+        assertEquals(42L, attributes.get("build_number"));
+        assertEquals(2, attributes.size()); // message, timestamp and service are not attributes
+    }
+
+    @Test
+    public void splitsRecordsIntoRequestsWithinBatchLimit() {
+        OtlpExporter exporter = new OtlpExporter("http://localhost:4318/", Collections.emptyMap(), false, 4096);
+        assertEquals("http://localhost:4318/v1/traces", exporter.getTracesUrl());
+
+        byte[] record = new byte[1000];
+        List<List<byte[]>> chunks = exporter.split(Arrays.asList(record, record, record, record, new byte[5000], record));
+        assertEquals(2, chunks.size());
+        assertEquals(3, chunks.get(0).size());
+        assertEquals(2, chunks.get(1).size()); // the record that exceeds the limit is dropped
+    }
+
+    @Test
+    public void parsesHeaders() {
+        Map<String, String> headers = OtlpExporter.parseHeaders("dd-api-key=abc, x-custom = 1=2,invalid");
+        assertEquals(2, headers.size());
+        assertEquals("abc", headers.get("dd-api-key"));
+        assertEquals("1=2", headers.get("x-custom"));
+    }
+
+    private static TraceSpan createSpan() {
+        TraceSpan span = new TraceSpan("jenkins.step", 1_700_000_000_000_000_000L, new TraceSpan.TraceSpanContext(123, 789, 456));
+        span.setEndNano(1_700_000_005_000_000_000L);
+        span.setResourceName("Build");
+        span.setServiceName("my-jenkins");
+        span.setType("ci");
+        span.putMeta("ci.status", "success");
+        span.putMeta("ci.pipeline.name", "my-pipeline");
+        span.putMeta("ci.pipeline.url", "https://jenkins.example.com/job/my-pipeline/1/");
+        span.putMeta("git.commit.sha", "0123456789abcdef0123456789abcdef01234567");
+        span.putMetric("ci.queue_time", 2.5);
+        return span;
+    }
+
+    private static Map<String, Object> attributes(List<Object> keyValues) {
+        Map<String, Object> attributes = new HashMap<>();
+        for (Object keyValue : keyValues) {
+            Map<Integer, List<Object>> fields = decode((byte[]) keyValue);
+            Map<Integer, List<Object>> value = decode(bytes(fields, OtlpEncoder.KEY_VALUE_VALUE));
+            Object decoded;
+            if (value.containsKey(OtlpEncoder.ANY_VALUE_STRING)) {
+                decoded = string(value, OtlpEncoder.ANY_VALUE_STRING);
+            } else if (value.containsKey(OtlpEncoder.ANY_VALUE_DOUBLE)) {
+                decoded = Double.longBitsToDouble((Long) value.get(OtlpEncoder.ANY_VALUE_DOUBLE).get(0));
+            } else {
+                decoded = value.values().iterator().next().get(0);
+            }
+            attributes.put(string(fields, OtlpEncoder.KEY_VALUE_KEY), decoded);
+        }
+        return attributes;
+    }
+
+    private static byte[] bytes(Map<Integer, List<Object>> fields, int fieldNumber) {
+        return (byte[]) fields.get(fieldNumber).get(0);
+    }
+
+    private static String string(Map<Integer, List<Object>> fields, int fieldNumber) {
+        return new String(bytes(fields, fieldNumber), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes the fields of a message: varint and fixed64 fields as {@code Long}, length-delimited fields as {@code byte[]}.
+     */
+    private static Map<Integer, List<Object>> decode(byte[] message) {
+        ByteBuffer buffer = ByteBuffer.wrap(message).order(ByteOrder.LITTLE_ENDIAN);
+        Map<Integer, List<Object>> fields = new HashMap<>();
+        while (buffer.hasRemaining()) {
+            long tag = readVarint(buffer);
+            int fieldNumber = (int) (tag >>> 3);
+            Object value;
+            switch ((int) (tag & 7)) {
+                case 0:
+                    value = readVarint(buffer);
+                    break;
+                case 1:
+                    value = buffer.getLong();
+                    break;
+                case 2:
+                    byte[] bytes = new byte[(int) readVarint(buffer)];
+                    buffer.get(bytes);
+                    value = bytes;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected wire type in tag " + tag);
+            }
+            fields.computeIfAbsent(fieldNumber, k -> new ArrayList<>()).add(value);
+        }
+        return fields;
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.datadog.jenkins.plugins.datadog.clients.otlp;
+
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.Run;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import net.sf.json.JSONObject;
+import org.datadog.jenkins.plugins.datadog.DatadogGlobalConfiguration;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.clients.ClientHolder;
+import org.datadog.jenkins.plugins.datadog.clients.DatadogClientStub;
+import org.datadog.jenkins.plugins.datadog.model.BuildData;
+import org.datadog.jenkins.plugins.datadog.model.PipelineStepData;
+import org.datadog.jenkins.plugins.datadog.traces.DatadogTraceBuildLogic;
+import org.datadog.jenkins.plugins.datadog.traces.DatadogTracePipelineLogic;
+import org.datadog.jenkins.plugins.datadog.traces.DatadogWebhookBuildLogic;
+import org.datadog.jenkins.plugins.datadog.traces.DatadogWebhookPipelineLogic;
+import org.datadog.jenkins.plugins.datadog.traces.message.TraceSpan;
+import org.datadog.jenkins.plugins.datadog.traces.write.Payload;
+import org.datadog.jenkins.plugins.datadog.traces.write.TraceWriteStrategy;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+/**
+ * Encodes the spans of a real pipeline run through the webhook JSON path and through the OTLP path,
+ * and reports the encoded bytes and the CPU time per span of both.
+ * <p>
+ * The CPU time is measured on the test thread, over a number of repetitions that can be set with a system property:
+ * <pre>
+ * mvn test -Dtest=OtlpEncodingComparisonIT -Ddd.encoding.iterations=10000
+ * </pre>
+ */
+public class OtlpEncodingComparisonIT {
+
+    private static final Logger logger = Logger.getLogger(OtlpEncodingComparisonIT.class.getName());
+
+    @ClassRule
+    public static final JenkinsRule jenkinsRule = new JenkinsRule();
+
+    private static final int ITERATIONS = Integer.getInteger("dd.encoding.iterations", 200);
+
+    private final List<BuildData> builds = new CopyOnWriteArrayList<>();
+    private final List<PipelineStepData> steps = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void compareWebhookAndOtlpEncoding() throws Exception {
+        DatadogGlobalConfiguration cfg = DatadogUtilities.getDatadogGlobalDescriptor();
+        cfg.setEnableCiVisibility(true);
+        cfg.setCiInstanceName("encoding-comparison");
+        ClientHolder.setClient(new DatadogClientStub() {
+            @Override
+            public TraceWriteStrategy createTraceWriteStrategy() {
+                return new CapturingStrategy();
+            }
+        });
+
+        WorkflowJob job = jenkinsRule.jenkins.createProject(WorkflowJob.class, "encoding-comparison");
+        job.setDefinition(new CpsFlowDefinition(
+                "stage('build') {\n" +
+                "  echo 'compiling'\n" +
+                "  echo 'packaging'\n" +
+                "}\n" +
+                "stage('test') {\n" +
+                "  parallel unit: { echo 'unit tests' }, integration: { echo 'integration tests' }\n" +
+                "}", true));
+        WorkflowRun run = jenkinsRule.buildAndAssertSuccess(job);
+        awaitBuildCaptured();
+
+        Comparison buildComparison = new Comparison();
+        for (BuildData buildData : builds) {
+            buildComparison.measure(
+                    () -> webhookBytes(new DatadogWebhookBuildLogic().toJson(buildData, run)),
+                    () -> otlpBytes(new DatadogTraceBuildLogic().toSpan(buildData, run)));
+        }
+        Comparison stepComparison = new Comparison();
+        for (PipelineStepData stepData : steps) {
+            stepComparison.measure(
+                    () -> webhookBytes(new DatadogWebhookPipelineLogic().toJson(stepData, run)),
+                    () -> otlpBytes(new DatadogTracePipelineLogic().toSpan(stepData, run)));
+        }
+
+        String report = String.format("%nEncoding comparison, %d iterations per span%n", ITERATIONS)
+                + String.format("%-6s %6s %14s %14s %16s %16s%n", "span", "count", "webhook bytes", "otlp bytes", "webhook cpu us", "otlp cpu us")
+                + buildComparison.format("build")
+                + stepComparison.format("step");
+        logger.info(report);
+
+        assertTrue(report, buildComparison.spans > 0 && buildComparison.webhookBytes > 0 && buildComparison.otlpBytes > 0);
+        assertTrue(report, stepComparison.spans > 0 && stepComparison.webhookBytes > 0 && stepComparison.otlpBytes > 0);
+    }
+
+    /**
+     * Waits until the trace writer serialized the finished build, as the pipeline spans are submitted before it.
+     */
+    private void awaitBuildCaptured() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (builds.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+    }
+
+    private static int webhookBytes(JSONObject json) {
+        return json != null ? json.toString().getBytes(StandardCharsets.UTF_8).length : 0;
+    }
+
+    private static int otlpBytes(TraceSpan span) {
+        return span != null ? OtlpExporter.encodeSpan(span).length : 0;
+    }
+
+    private interface Encoding {
+        int encode() throws Exception;
+    }
+
+    private static final class Comparison {
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        private int spans;
+        private long webhookBytes;
+        private long otlpBytes;
+        private long webhookCpuNanos;
+        private long otlpCpuNanos;
+
+        void measure(Encoding webhook, Encoding otlp) throws Exception {
+            // warm up both paths before measuring them
+            for (int i = 0; i < ITERATIONS; i++) {
+                webhook.encode();
+                otlp.encode();
+            }
+            spans++;
+            webhookBytes += webhook.encode();
+            otlpBytes += otlp.encode();
+            webhookCpuNanos += cpuNanos(webhook);
+            otlpCpuNanos += cpuNanos(otlp);
+        }
+
+        private static long cpuNanos(Encoding encoding) throws Exception {
+            long start = THREADS.getCurrentThreadCpuTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                encoding.encode();
+            }
+            return (THREADS.getCurrentThreadCpuTime() - start) / ITERATIONS;
+        }
+
+        String format(String name) {
+            int count = Math.max(spans, 1);
+            return String.format("%-6s %6d %14d %14d %16.1f %16.1f%n", name, spans,
+                    webhookBytes / count, otlpBytes / count, webhookCpuNanos / 1000.0 / count, otlpCpuNanos / 1000.0 / count);
+        }
+    }
+
+    /**
+     * Keeps the records that are submitted to the trace writer, so that they can be encoded once the run is finished.
+     */
+    private final class CapturingStrategy implements TraceWriteStrategy {
+        @Override
+        public Payload serialize(BuildData buildData, Run<?, ?> run) {
+            if (!buildData.isBuilding()) {
+                builds.add(buildData);
+            }
+            return null;
+        }
+
+        @Override
+        public Payload serialize(PipelineStepData stepData, Run<?, ?> run) {
+            steps.add(stepData);
+            return null;
+        }
+
+        @Override
+        public void send(Collection<Payload> spans) {
+            // no op
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.datadog.jenkins.plugins.datadog.configuration;
+
+import static org.junit.Assert.assertEquals;
+
+import com.github.stefanbirkner.systemlambda.SystemLambda;
+import java.util.Collections;
+import org.datadog.jenkins.plugins.datadog.clients.HttpClient;
+import org.datadog.jenkins.plugins.datadog.clients.HttpStream;
+import org.junit.Test;
+
+public class DatadogHttpBulkheadTest {
+
+    @Test
+    public void testUnsetLimitsFallBackToStreamDefaults() {
+        DatadogHttpBulkhead bulkhead = new DatadogHttpBulkhead(HttpStream.LOGS, 2, null, null);
+        HttpClient.Limits limits = bulkhead.toLimits();
+        assertEquals(2, limits.getMaxConnectionsPerDestination());
+        assertEquals(HttpStream.LOGS.getDefaultMaxThreads(), limits.getMaxThreads());
+        assertEquals(HttpStream.LOGS.getDefaultMaxQueuedRequests(), limits.getMaxQueuedRequests());
+    }
+
+    @Test
+    public void testLegacyEnvVarsOverrideStreamDefaults() throws Exception {
+        HttpClient.Limits limits = SystemLambda
+                .withEnvironmentVariable("DD_JENKINS_HTTP_CLIENT_MAX_THREADS", "12")
+                .execute(() -> new DatadogHttpBulkhead(HttpStream.DOWNLOADS, null, null, 10).toLimits());
+        assertEquals(HttpStream.DOWNLOADS.getDefaultMaxConnectionsPerDestination(), limits.getMaxConnectionsPerDestination());
+        assertEquals(12, limits.getMaxThreads());
+        assertEquals(10, limits.getMaxQueuedRequests());
+    }
+
+    @Test
+    public void testBulkheadsArePreservedWhenAgentConfigurationIsResolved() {
+        DatadogAgentConfiguration configuration = new DatadogAgentConfiguration("localhost", 8125, null, 8126);
+        configuration.setHttpBulkheads(Collections.singletonList(new DatadogHttpBulkhead(HttpStream.TRACES, 1, 8, 16)));
+        DatadogAgentConfiguration resolved = (DatadogAgentConfiguration) configuration.readResolve();
+        assertEquals(configuration.getHttpBulkheads(), resolved.getHttpBulkheads());
+    }
+}
@@ -0,0 +1,51 @@
+package org.datadog.jenkins.plugins.datadog.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DatadogSpanRuleTest {
+
+    @Test
+    public void testRuleWithoutConditionsMatchesAnyStep() {
+        DatadogSpanRule rule = new DatadogSpanRule(DatadogSpanRule.Action.DROP, null, "  ", null, null, null);
+        assertTrue(rule.matches("echo", null, 0, 10));
+        assertTrue(rule.matches("sh", "build", 3, 100_000));
+    }
+
+    @Test
+    public void testStepNameIsMatchedAsRegex() {
+        DatadogSpanRule rule = new DatadogSpanRule(DatadogSpanRule.Action.DROP, "echo|sleep", null, null, null, null);
+        assertTrue(rule.matches("echo", null, 0, 10));
+        assertTrue(rule.matches("sleep", null, 0, 10));
+        assertFalse(rule.matches("sh", null, 0, 10));
+        assertFalse(rule.matches("echoes", null, 0, 10));
+        assertFalse(rule.matches(null, null, 0, 10));
+    }
+
+    @Test
+    public void testStageNameRequiresEnclosingStage() {
+        DatadogSpanRule rule = new DatadogSpanRule(DatadogSpanRule.Action.COLLAPSE, null, "shard-.*", null, null, null);
+        assertTrue(rule.matches("sh", "shard-42", 1, 10));
+        assertFalse(rule.matches("sh", "build", 1, 10));
+        assertFalse(rule.matches("sh", null, 0, 10));
+    }
+
+    @Test
+    public void testDepthAndDurationConditions() {
+        DatadogSpanRule rule = new DatadogSpanRule(DatadogSpanRule.Action.SAMPLE, null, null, 2, 1000L, 0.5);
+        assertTrue(rule.matches("sh", "inner", 2, 999));
+        assertFalse(rule.matches("sh", "outer", 1, 999));
+        // slow steps are kept
+        assertFalse(rule.matches("sh", "inner", 2, 1000));
+        assertEquals(0.5, rule.getEffectiveSampleRate(), 0);
+    }
+
+    @Test
+    public void testDefaultSampleRate() {
+        DatadogSpanRule rule = new DatadogSpanRule(DatadogSpanRule.Action.SAMPLE, "echo", null, null, null, null);
+        assertEquals(DatadogSpanRule.DEFAULT_SAMPLE_RATE, rule.getEffectiveSampleRate(), 0);
+    }
+}
@@ -55,7 +55,9 @@ import org.datadog.jenkins.plugins.datadog.DatadogGlobalConfiguration;
 import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
 import org.datadog.jenkins.plugins.datadog.clients.ClientHolder;
 import org.datadog.jenkins.plugins.datadog.clients.DatadogClientStub;
+import org.datadog.jenkins.plugins.datadog.configuration.DatadogSpanRule;
 import org.datadog.jenkins.plugins.datadog.model.PipelineStepData;
+import org.datadog.jenkins.plugins.datadog.model.TraceInfoAction;
 import org.datadog.jenkins.plugins.datadog.publishers.DatadogComputerPublisher;
 import org.datadog.jenkins.plugins.datadog.publishers.DatadogCountersPublisher;
 import org.datadog.jenkins.plugins.datadog.traces.CITags;
@@ -135,6 +137,7 @@ public class DatadogGraphListenerTest extends DatadogTraceAbstractTest {
         cfg.setCiInstanceName(SAMPLE_SERVICE_NAME);
         cfg.setGlobalJobTags(null);
         cfg.setGlobalTags(null);
+        cfg.setSpanRules(null);
         EnvVars.masterEnvVars.remove("ENV_VAR");
 
         listener = new DatadogGraphListener();
@@ -153,7 +156,7 @@ public class DatadogGraphListenerTest extends DatadogTraceAbstractTest {
     }
 
     @Test
-    public void testNewNode() throws IOException {
+    public void testNewNode() throws Exception {
         StepStartNode startNode = makeMonitorableStartNode("low");
         StepEndNode endNode = mock(StepEndNode.class);
         when(endNode.getStartNode()).thenReturn(startNode);
@@ -183,6 +186,7 @@ public class DatadogGraphListenerTest extends DatadogTraceAbstractTest {
         when(endNode.getExecution()).thenReturn(flowExecution);
 
         listener.onNewHead(endNode);
+        DatadogGraphListener.awaitProcessing(run);
 
         DatadogCountersPublisher.publishMetrics(clientStub);
 
@@ -204,6 +208,7 @@ public class DatadogGraphListenerTest extends DatadogTraceAbstractTest {
         String definition = getPipelineDefinition("testPipelineDefinition.txt");
         job.setDefinition(new CpsFlowDefinition(definition, true));
         WorkflowRun run = job.scheduleBuild2(0).get();
+        DatadogGraphListener.awaitProcessing(run);
         BufferedReader br = new BufferedReader(run.getLogReader());
         String s;
         while ((s = br.readLine()) != null) {
@@ -989,6 +994,7 @@ public class DatadogGraphListenerTest extends DatadogTraceAbstractTest {
         String definition = getPipelineDefinition("testPipelineSuccess.txt");
         job.setDefinition(new CpsFlowDefinition(definition, true));
         final WorkflowRun run = job.scheduleBuild2(0).get();
+        DatadogGraphListener.awaitProcessing(run);
         String hostname = DatadogUtilities.getHostname(null);
         String[] tags = new String[]{
                 "jenkins_url:" + DatadogUtilities.getJenkinsUrl(),
@@ -1102,6 +1108,50 @@ public class DatadogGraphListenerTest extends DatadogTraceAbstractTest {
         assertEquals("skipped", stage.getMeta().get(CITags.STATUS));
     }
 
+    @Test
+    public void testIntegrationSpanRules() throws Exception {
+        DatadogUtilities.getDatadogGlobalDescriptor().setSpanRules(Arrays.asList(
+                new DatadogSpanRule(DatadogSpanRule.Action.COLLAPSE, "echo", null, null, null, null),
+                new DatadogSpanRule(DatadogSpanRule.Action.DROP, "sleep", "test", 1, null, null)));
+
+        WorkflowJob job = jenkinsRule.jenkins.createProject(WorkflowJob.class, "pipelineIntegration-SpanRules");
+        String definition = getPipelineDefinition("testPipelineCollapsedSteps.txt");
+        job.setDefinition(new CpsFlowDefinition(definition, true));
+        job.scheduleBuild2(0).get();
+
+        clientStub.waitForTraces(3);
+        final List<TraceSpan> spans = clientStub.getSpans();
+        assertEquals(3, spans.size());
+
+        final TraceSpan stage = searchSpan(spans, "test");
+        final TraceSpan collapsedSteps = searchSpan(spans, "Print Message (10 collapsed steps)");
+        assertEquals(collapsedSteps, searchFirstChild(spans, stage));
+        assertEquals("10", collapsedSteps.getMeta().get("collapsed_steps.count"));
+    }
+
+    @Test
+    public void testIntegrationDeterministicSpanIds() throws Exception {
+        environmentVariables.set("DD_JENKINS_DETERMINISTIC_SPAN_IDS_ENABLED", "true");
+        try {
+            WorkflowJob job = jenkinsRule.jenkins.createProject(WorkflowJob.class, "pipelineIntegration-DeterministicSpanIds");
+            String definition = getPipelineDefinition("testPipelineSuccess.txt");
+            job.setDefinition(new CpsFlowDefinition(definition, true));
+            WorkflowRun run = job.scheduleBuild2(0).get();
+
+            clientStub.waitForTraces(3);
+            final List<TraceSpan> spans = clientStub.getSpans();
+            assertEquals(3, spans.size());
+            assertNull(run.getAction(TraceInfoAction.class));
+
+            final TraceSpan buildSpan = spans.get(0);
+            final TraceSpan stage = searchSpan(spans, "test");
+            assertEquals(stage, searchFirstChild(spans, buildSpan));
+            assertNotNull(searchFirstChild(spans, stage));
+        } finally {
+            environmentVariables.set("DD_JENKINS_DETERMINISTIC_SPAN_IDS_ENABLED", null);
+        }
+    }
+
     @Test
     public void testIntegrationPipelineSkippedLogicWebhook() throws Exception {
         clientStub.configureForWebhooks();
@@ -1130,7 +1180,8 @@ public class DatadogGraphListenerTest extends DatadogTraceAbstractTest {
         WorkflowJob job = jenkinsRule.jenkins.createProject(WorkflowJob.class, "pipelineIntegrationSuccess-notraces");
         String definition = getPipelineDefinition("testPipelineSuccess.txt");
         job.setDefinition(new CpsFlowDefinition(definition, true));
-        job.scheduleBuild2(0).get();
+        WorkflowRun run = job.scheduleBuild2(0).get();
+        DatadogGraphListener.awaitProcessing(run);
         String hostname = DatadogUtilities.getHostname(null);
         String[] tags = new String[]{
                 "jenkins_url:" + DatadogUtilities.getJenkinsUrl(),
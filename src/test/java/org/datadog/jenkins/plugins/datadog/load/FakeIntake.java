@@ -0,0 +1,345 @@
+package org.datadog.jenkins.plugins.datadog.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Local stand-in for the Datadog endpoints the plugin talks to:
+ * <ul>
+ *     <li>API: {@code /api/v1/*} (series, events, validation), {@code /api/v2/logs} and {@code /api/v2/webhook}</li>
+ *     <li>Agent: {@code /info}, {@code /v0.3/traces}, {@code /evp_proxy/*}, DogStatsD over UDP, and logs over TCP</li>
+ * </ul>
+ * HTTP responses can be delayed and failed at random to simulate a slow or flaky backend.
+ * <p>
+ * Received items are counted per channel, and for logs and spans the end-to-end latency
+ * (from the timestamp of the log line or from the end of the span, to the time the item is received) is recorded.
+ */
+public class FakeIntake implements AutoCloseable {
+
+    public enum Channel {
+        LOGS, SPANS, METRICS, EVENTS
+    }
+
+    private final long latencyMillis;
+    private final double errorRate;
+    private final boolean evpProxy;
+
+    private final Map<Channel, AtomicLong> received = new EnumMap<>(Channel.class);
+    private final Map<Channel, List<Long>> latencies = new EnumMap<>(Channel.class);
+    private final Map<Channel, AtomicLong> firstReceivedMillis = new EnumMap<>(Channel.class);
+    private final Map<Channel, AtomicLong> lastReceivedMillis = new EnumMap<>(Channel.class);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    private HttpServer httpServer;
+    private ExecutorService httpExecutor;
+    private DatagramSocket statsdSocket;
+    private ServerSocket logsSocket;
+    private ExecutorService socketExecutor;
+
+    /**
+     * @param latencyMillis delay added to every HTTP response
+     * @param errorRate     fraction of HTTP requests that are answered with an error
+     * @param evpProxy      whether the Agent advertises the EVP proxy, which makes the plugin send webhooks through it instead of APM traces
+     */
+    public FakeIntake(long latencyMillis, double errorRate, boolean evpProxy) {
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.evpProxy = evpProxy;
+        for (Channel channel : Channel.values()) {
+            received.put(channel, new AtomicLong());
+            latencies.put(channel, new ArrayList<>());
+            firstReceivedMillis.put(channel, new AtomicLong());
+            lastReceivedMillis.put(channel, new AtomicLong());
+        }
+    }
+
+    public void start() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        httpServer = HttpServer.create(new InetSocketAddress(loopback, 0), 128);
+        httpServer.createContext("/info", this::info);
+        httpServer.createContext("/api/v2/logs", handler(this::logs));
+        httpServer.createContext("/api/v2/webhook", handler(this::webhookSpans));
+        httpServer.createContext("/evp_proxy/", handler(this::webhookSpans));
+        httpServer.createContext("/v0.3/traces", handler(this::apmSpans));
+        httpServer.createContext("/api/", handler(this::api));
+        httpExecutor = Executors.newFixedThreadPool(16, daemon("fake-intake-http"));
+        httpServer.setExecutor(httpExecutor);
+        httpServer.start();
+
+        statsdSocket = new DatagramSocket(new InetSocketAddress(loopback, 0));
+        logsSocket = new ServerSocket(0, 128, loopback);
+        socketExecutor = Executors.newCachedThreadPool(daemon("fake-intake-socket"));
+        socketExecutor.execute(this::receiveStatsd);
+        socketExecutor.execute(this::acceptLogConnections);
+    }
+
+    public String getUrl() {
+        return "http://" + httpServer.getAddress().getHostString() + ":" + httpServer.getAddress().getPort();
+    }
+
+    public int getHttpPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public int getStatsdPort() {
+        return statsdSocket.getLocalPort();
+    }
+
+    public int getLogsPort() {
+        return logsSocket.getLocalPort();
+    }
+
+    public long getReceived(Channel channel) {
+        return received.get(channel).get();
+    }
+
+    /**
+     * @return the time between the first and the last item received on the channel, in milliseconds
+     */
+    public long getReceivingMillis(Channel channel) {
+        return lastReceivedMillis.get(channel).get() - firstReceivedMillis.get(channel).get();
+    }
+
+    /**
+     * @return the time the last item was received on the channel, in epoch milliseconds, or 0 if nothing was received
+     */
+    public long getLastReceivedMillis(Channel channel) {
+        return lastReceivedMillis.get(channel).get();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * @return end-to-end latencies of the items received so far, in milliseconds, sorted
+     */
+    public long[] getLatencies(Channel channel) {
+        List<Long> values = latencies.get(channel);
+        long[] result;
+        synchronized (values) {
+            result = values.stream().mapToLong(Long::longValue).toArray();
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void info(HttpExchange exchange) throws IOException {
+        JSONArray endpoints = new JSONArray();
+        endpoints.add("/v0.3/traces");
+        if (evpProxy) {
+            endpoints.add("/evp_proxy/v3/");
+            endpoints.add("/evp_proxy/v4/");
+        }
+        JSONObject info = new JSONObject();
+        info.put("endpoints", endpoints);
+        respond(exchange, 200, info.toString());
+    }
+
+    private interface BodyConsumer {
+        void accept(String path, String body);
+    }
+
+    private HttpHandler handler(BodyConsumer consumer) {
+        return exchange -> {
+            requests.incrementAndGet();
+            try {
+                String body = readBody(exchange);
+                if (latencyMillis > 0) {
+                    Thread.sleep(latencyMillis);
+                }
+                if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                    injectedErrors.incrementAndGet();
+                    respond(exchange, 503, "{\"errors\":[\"injected\"]}");
+                    return;
+                }
+                consumer.accept(exchange.getRequestURI().getPath(), body);
+                respond(exchange, 202, "{}");
+            } catch (Exception e) {
+                respond(exchange, 500, "{\"errors\":[\"" + e + "\"]}");
+            }
+        };
+    }
+
+    private void logs(String path, String body) {
+        JSONArray logs = JSONArray.fromObject(body);
+        for (int i = 0; i < logs.size(); i++) {
+            receivedLog(logs.getJSONObject(i));
+        }
+    }
+
+    private void receivedLog(JSONObject log) {
+        record(Channel.LOGS, log.optLong("timestamp", 0));
+    }
+
+    private void webhookSpans(String path, String body) {
+        JSONArray spans = JSONArray.fromObject(body);
+        for (int i = 0; i < spans.size(); i++) {
+            String end = spans.getJSONObject(i).optString("end", "");
+            record(Channel.SPANS, end.isEmpty() ? 0 : OffsetDateTime.parse(end).toInstant().toEpochMilli());
+        }
+    }
+
+    private void apmSpans(String path, String body) {
+        JSONArray traces = JSONArray.fromObject(body);
+        for (int i = 0; i < traces.size(); i++) {
+            JSONArray trace = traces.getJSONArray(i);
+            for (int j = 0; j < trace.size(); j++) {
+                JSONObject span = trace.getJSONObject(j);
+                long endNanos = span.optLong("start", 0) + span.optLong("duration", 0);
+                record(Channel.SPANS, TimeUnit.NANOSECONDS.toMillis(endNanos));
+            }
+        }
+    }
+
+    private void api(String path, String body) {
+        if (path.endsWith("/series")) {
+            received(Channel.METRICS, JSONObject.fromObject(body).optJSONArray("series").size());
+        } else if (path.endsWith("/events")) {
+            received(Channel.EVENTS, 1);
+        }
+    }
+
+    private void record(Channel channel, long timestampMillis) {
+        received(channel, 1);
+        if (timestampMillis > 0) {
+            List<Long> values = latencies.get(channel);
+            synchronized (values) {
+                values.add(System.currentTimeMillis() - timestampMillis);
+            }
+        }
+    }
+
+    private void received(Channel channel, long count) {
+        long now = System.currentTimeMillis();
+        firstReceivedMillis.get(channel).compareAndSet(0, now);
+        lastReceivedMillis.get(channel).accumulateAndGet(now, Math::max);
+        received.get(channel).addAndGet(count);
+    }
+
+    private void receiveStatsd() {
+        byte[] buffer = new byte[65536];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!statsdSocket.isClosed()) {
+            try {
+                statsdSocket.receive(packet);
+            } catch (IOException e) {
+                return;
+            }
+            String datagram = new String(packet.getData(), packet.getOffset(), packet.getLength(), StandardCharsets.UTF_8);
+            for (String line : datagram.split("\n")) {
+                if (line.startsWith("_e{")) {
+                    received(Channel.EVENTS, 1);
+                } else if (!line.isEmpty() && !line.startsWith("_sc|")) { // service checks are not counted
+                    received(Channel.METRICS, 1);
+                }
+            }
+        }
+    }
+
+    private void acceptLogConnections() {
+        while (!logsSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = logsSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            socketExecutor.execute(() -> receiveLogs(socket));
+        }
+    }
+
+    private void receiveLogs(Socket socket) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    receivedLog(JSONObject.fromObject(line));
+                }
+            }
+        } catch (SocketException e) {
+            // connection closed
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        in.transferTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicLong counter = new AtomicLong();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpExecutor.shutdownNow();
+        }
+        if (statsdSocket != null) {
+            statsdSocket.close();
+        }
+        if (logsSocket != null) {
+            logsSocket.close();
+            socketExecutor.shutdownNow();
+        }
+    }
+}
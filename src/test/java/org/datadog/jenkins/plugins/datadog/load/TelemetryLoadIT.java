@@ -0,0 +1,247 @@
+package org.datadog.jenkins.plugins.datadog.load;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.Metric;
+import hudson.ExtensionList;
+import hudson.model.PeriodicWork;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import org.datadog.jenkins.plugins.datadog.DatadogClient;
+import org.datadog.jenkins.plugins.datadog.DatadogGlobalConfiguration;
+import org.datadog.jenkins.plugins.datadog.DatadogUtilities;
+import org.datadog.jenkins.plugins.datadog.clients.ClientHolder;
+import org.datadog.jenkins.plugins.datadog.clients.DatadogAgentClient;
+import org.datadog.jenkins.plugins.datadog.clients.DatadogApiClient;
+import org.datadog.jenkins.plugins.datadog.logs.DatadogWriter;
+import org.datadog.jenkins.plugins.datadog.model.BuildData;
+import org.datadog.jenkins.plugins.datadog.publishers.DatadogComputerPublisher;
+import org.datadog.jenkins.plugins.datadog.publishers.DatadogCountersPublisher;
+import org.datadog.jenkins.plugins.datadog.publishers.DatadogJenkinsPublisher;
+import org.datadog.jenkins.plugins.datadog.publishers.DatadogQueuePublisher;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+import org.junit.runners.model.Statement;
+import org.jvnet.hudson.test.JenkinsRule;
+
+/**
+ * Drives a synthetic workload through the telemetry pipeline of the plugin against a {@link FakeIntake},
+ * and reports the sustained throughput, the drop counters from {@link AsyncWriter#METRICS}
+ * and the end-to-end latency percentiles.
+ * <p>
+ * The load runs are skipped unless {@code dd.load.enabled} is set, so that they do not slow down the regular test runs.
+ * By default a short smoke run is executed. The workload is configured with system properties, for example:
+ * <pre>
+ * mvn test -Dtest=TelemetryLoadIT -Ddd.load.enabled=true -Ddd.load.durationSeconds=120 -Ddd.load.buildsPerSecond=5 \
+ *     -Ddd.load.stepsPerBuild=50 -Ddd.load.linesPerSecond=5000 -Ddd.load.latencyMillis=200 -Ddd.load.errorRate=0.05
+ * </pre>
+ */
+public class TelemetryLoadIT {
+
+    private static final Logger logger = Logger.getLogger(TelemetryLoadIT.class.getName());
+
+    private static final boolean ENABLED = Boolean.getBoolean("dd.load.enabled");
+
+    private static final JenkinsRule jenkinsRule = new JenkinsRule();
+
+    /** Checks that the load runs are enabled before Jenkins is started */
+    @ClassRule
+    public static final TestRule rules = RuleChain
+            .outerRule((base, description) -> new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    assumeTrue("Load runs are enabled with -Ddd.load.enabled=true", ENABLED);
+                    base.evaluate();
+                }
+            })
+            .around(jenkinsRule);
+
+    private static final int DURATION_SECONDS = Integer.getInteger("dd.load.durationSeconds", 5);
+    private static final double BUILDS_PER_SECOND = Double.parseDouble(System.getProperty("dd.load.buildsPerSecond", "1"));
+    private static final int STEPS_PER_BUILD = Integer.getInteger("dd.load.stepsPerBuild", 10);
+    private static final int LINES_PER_SECOND = Integer.getInteger("dd.load.linesPerSecond", 500);
+    private static final int LATENCY_MILLIS = Integer.getInteger("dd.load.latencyMillis", 0);
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("dd.load.errorRate", "0"));
+    private static final int DRAIN_TIMEOUT_SECONDS = Integer.getInteger("dd.load.drainTimeoutSeconds", 60);
+
+    /** Ticks per second of the log lines generator */
+    private static final int TICKS_PER_SECOND = 10;
+
+    @Test
+    public void apiIntake() throws Exception {
+        try (FakeIntake intake = new FakeIntake(LATENCY_MILLIS, ERROR_RATE, false)) {
+            intake.start();
+            String url = intake.getUrl();
+            run("api", intake, new DatadogApiClient(url + "/api/", url + "/api/v2/logs", url + "/api/v2/webhook", Secret.fromString("load-test-api-key")));
+        }
+    }
+
+    @Test
+    public void agent() throws Exception {
+        try (FakeIntake intake = new FakeIntake(LATENCY_MILLIS, ERROR_RATE, false)) {
+            intake.start();
+            run("agent", intake, new DatadogAgentClient("127.0.0.1", intake.getStatsdPort(), intake.getLogsPort(), intake.getHttpPort()));
+        }
+    }
+
+    @Test
+    public void agentEvpProxy() throws Exception {
+        try (FakeIntake intake = new FakeIntake(LATENCY_MILLIS, ERROR_RATE, true)) {
+            intake.start();
+            run("agent-evp-proxy", intake, new DatadogAgentClient("127.0.0.1", intake.getStatsdPort(), intake.getLogsPort(), intake.getHttpPort()));
+        }
+    }
+
+    private void run(String name, FakeIntake intake, DatadogClient client) throws Exception {
+        DatadogGlobalConfiguration cfg = DatadogUtilities.getDatadogGlobalDescriptor();
+        cfg.setEnableCiVisibility(true);
+        cfg.setCollectBuildLogs(true);
+        cfg.setCiInstanceName("load-test");
+        ClientHolder.setClient(client);
+
+        WorkflowJob job = jenkinsRule.jenkins.createProject(WorkflowJob.class, "load-" + name);
+        job.setDefinition(new CpsFlowDefinition(
+                "for (int i = 0; i < " + STEPS_PER_BUILD + "; i++) {\n" +
+                "  echo \"step ${i}\"\n" +
+                "}", true));
+        job.setConcurrentBuild(true);
+        // the log lines generator writes on behalf of this build
+        WorkflowRun seed = jenkinsRule.buildAndAssertSuccess(job);
+        DatadogWriter writer = new DatadogWriter(BuildData.create(seed, TaskListener.NULL));
+
+        Map<String, Long> dropsBefore = dropCounters();
+        AtomicLong scheduledBuilds = new AtomicLong();
+        AtomicLong writtenLines = new AtomicLong();
+        List<PeriodicWork> publishers = Arrays.asList(
+                ExtensionList.lookupSingleton(DatadogQueuePublisher.class),
+                ExtensionList.lookupSingleton(DatadogJenkinsPublisher.class),
+                ExtensionList.lookupSingleton(DatadogComputerPublisher.class),
+                ExtensionList.lookupSingleton(DatadogCountersPublisher.class));
+
+        ScheduledExecutorService workload = Executors.newScheduledThreadPool(3);
+        long startMillis = System.currentTimeMillis();
+        try {
+            if (BUILDS_PER_SECOND > 0) {
+                workload.scheduleAtFixedRate(() -> {
+                    job.scheduleBuild2(0);
+                    scheduledBuilds.incrementAndGet();
+                }, 0, (long) (TimeUnit.SECONDS.toMicros(1) / BUILDS_PER_SECOND), TimeUnit.MICROSECONDS);
+            }
+            workload.scheduleAtFixedRate(() -> {
+                for (int i = 0; i < LINES_PER_SECOND / TICKS_PER_SECOND; i++) {
+                    writer.write("load line " + writtenLines.incrementAndGet());
+                }
+            }, 0, TimeUnit.SECONDS.toMillis(1) / TICKS_PER_SECOND, TimeUnit.MILLISECONDS);
+            workload.scheduleAtFixedRate(() -> publishers.forEach(PeriodicWork::run), 0, 1, TimeUnit.SECONDS);
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(DURATION_SECONDS));
+        } finally {
+            workload.shutdownNow();
+            workload.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        long generationMillis = System.currentTimeMillis() - startMillis;
+
+        jenkinsRule.waitUntilNoActivityUpTo((int) TimeUnit.SECONDS.toMillis(DRAIN_TIMEOUT_SECONDS));
+        waitUntilDrained(intake);
+        // the drain check ends with an idle period, that is not part of the time it took to drain the queues
+        long drainedMillis = startMillis + generationMillis;
+        for (FakeIntake.Channel channel : FakeIntake.Channel.values()) {
+            drainedMillis = Math.max(drainedMillis, intake.getLastReceivedMillis(channel));
+        }
+        long totalMillis = drainedMillis - startMillis;
+
+        String report = report(name, intake, scheduledBuilds.get(), writtenLines.get(), generationMillis, totalMillis, dropsBefore);
+        logger.info(report);
+
+        if (ERROR_RATE < 1) {
+            assertTrue(report, intake.getReceived(FakeIntake.Channel.SPANS) > 0);
+            assertTrue(report, intake.getReceived(FakeIntake.Channel.LOGS) > 0);
+            assertTrue(report, intake.getReceived(FakeIntake.Channel.METRICS) > 0);
+        }
+    }
+
+    /**
+     * Waits until the intake stops receiving items, as the writers flush their queues in the background.
+     */
+    private static void waitUntilDrained(FakeIntake intake) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(DRAIN_TIMEOUT_SECONDS);
+        long previous = -1;
+        while (System.currentTimeMillis() < deadline) {
+            long current = intake.getReceived(FakeIntake.Channel.SPANS) + intake.getReceived(FakeIntake.Channel.LOGS);
+            if (current == previous) {
+                return;
+            }
+            previous = current;
+            // longer than the polling timeouts of the trace and log writers
+            Thread.sleep(TimeUnit.SECONDS.toMillis(6));
+        }
+    }
+
+    /**
+     * @return counters of the dropped, rejected or suppressed items
+     */
+    private static Map<String, Long> dropCounters() {
+        Map<String, Long> counters = new TreeMap<>();
+        for (Map.Entry<String, Metric> e : AsyncWriter.METRICS.getMetrics().entrySet()) {
+            String metricName = e.getKey();
+            if (e.getValue() instanceof Counting
+                    && (metricName.endsWith("dropped") || metricName.endsWith("rejected") || metricName.endsWith("rate.limited"))) {
+                counters.put(metricName, ((Counting) e.getValue()).getCount());
+            }
+        }
+        return counters;
+    }
+
+    private static String report(String name, FakeIntake intake, long builds, long lines, long generationMillis, long totalMillis, Map<String, Long> dropsBefore) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%nLoad test '%s': %d builds (%d steps each) and %d log lines generated in %d ms, drained in %d ms%n",
+                name, builds, STEPS_PER_BUILD, lines, generationMillis, totalMillis));
+        report.append(String.format("Intake: %d requests, %d injected errors, %d ms injected latency%n",
+                intake.getRequests(), intake.getInjectedErrors(), LATENCY_MILLIS));
+        // the rate is measured between the first and the last item received on each channel
+        report.append(String.format("%-8s %10s %12s %12s %10s %10s %10s %10s%n", "channel", "received", "window ms", "per second", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (FakeIntake.Channel channel : FakeIntake.Channel.values()) {
+            long received = intake.getReceived(channel);
+            long[] latencies = intake.getLatencies(channel);
+            long windowMillis = intake.getReceivingMillis(channel);
+            report.append(String.format("%-8s %10d %12d %12s %10s %10s %10s %10s%n",
+                    channel, received, windowMillis, windowMillis > 0 ? String.format("%.1f", received * 1000.0 / windowMillis) : "-",
+                    percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99), percentile(latencies, 1)));
+        }
+        List<String> drops = new ArrayList<>();
+        for (Map.Entry<String, Long> e : dropCounters().entrySet()) {
+            long delta = e.getValue() - dropsBefore.getOrDefault(e.getKey(), 0L);
+            if (delta > 0) {
+                drops.add(e.getKey() + "=" + delta);
+            }
+        }
+        report.append("Drops: ").append(drops.isEmpty() ? "none" : String.join(", ", drops));
+        return report.toString();
+    }
+
+    private static String percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return "-";
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return String.valueOf(sorted[Math.max(index, 0)]);
+    }
+}
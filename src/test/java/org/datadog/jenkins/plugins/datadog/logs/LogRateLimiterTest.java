@@ -0,0 +1,91 @@
+package org.datadog.jenkins.plugins.datadog.logs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class LogRateLimiterTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @Test
+    public void testBurstIsAllowed() {
+        LogRateLimiter limiter = new LogRateLimiter(new LogRateLimiter.Config(10, 5, 0), nanoTime::get);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getAndResetSuppressedCount());
+        assertEquals(0, limiter.getAndResetSuppressedCount());
+    }
+
+    @Test
+    public void testTokensAreRefilledAtSustainedRate() {
+        LogRateLimiter limiter = new LogRateLimiter(new LogRateLimiter.Config(10, 1, 0), nanoTime::get);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(50));
+        assertFalse(limiter.tryAcquire());
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testRefillDoesNotExceedBurst() {
+        LogRateLimiter limiter = new LogRateLimiter(new LogRateLimiter.Config(1000, 3, 0), nanoTime::get);
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        int allowed = 0;
+        while (limiter.tryAcquire()) {
+            allowed++;
+        }
+        assertEquals(3, allowed);
+    }
+
+    @Test
+    public void testSuppressedLinesAreSampledDeterministically() {
+        LogRateLimiter limiter = new LogRateLimiter(new LogRateLimiter.Config(1, 1, 3), nanoTime::get);
+        assertTrue(limiter.tryAcquire());
+
+        assertFalse(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire()); // third suppressed line is sampled
+        assertEquals(2, limiter.getAndResetSuppressedCount());
+
+        assertFalse(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertEquals(2, limiter.getAndResetSuppressedCount());
+    }
+
+    @Test
+    public void testLimiterIsSharedByRun() {
+        LogRateLimiter.Config config = new LogRateLimiter.Config(10, 10, 0);
+        LogRateLimiter limiter = LogRateLimiter.forRun("job#1", config);
+        assertNotNull(limiter);
+        assertSame(limiter, LogRateLimiter.forRun("job#1", config));
+        assertNotSame(limiter, LogRateLimiter.forRun("job#2", config));
+
+        LogRateLimiter.release("job#1");
+        assertNotSame(limiter, LogRateLimiter.forRun("job#1", config));
+    }
+
+    @Test
+    public void testDisabledLimiter() {
+        assertNull(LogRateLimiter.forRun("job#1", new LogRateLimiter.Config(0, 10, 0)));
+        assertNull(LogRateLimiter.forRun(null, new LogRateLimiter.Config(10, 10, 0)));
+        assertNull(LogRateLimiter.forRun("job#1", null));
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.datadog.jenkins.plugins.datadog.logs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Test;
+
+public class MultiLineGrouperTest {
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void testStackTraceIsGroupedIntoSingleEvent() {
+        MultiLineGrouper grouper = grouper(new MultiLineGrouper.Config(Collections.singletonList(MultiLineGrouper.Config.DEFAULT_START_PATTERN), 500, 60_000));
+        grouper.add("Building...\n");
+        grouper.add("java.lang.IllegalStateException: failure\n");
+        grouper.add("\tat com.example.Foo.bar(Foo.java:10)\n");
+        grouper.add("\tat com.example.Foo.main(Foo.java:5)\n");
+        grouper.add("Caused by: java.io.IOException: broken pipe\n");
+        grouper.add("\tat com.example.Io.write(Io.java:42)\n");
+        grouper.add("\t... 2 more\n");
+        grouper.add("Finished: FAILURE\n");
+        grouper.flush();
+
+        assertEquals(Arrays.asList(
+                "Building...",
+                "java.lang.IllegalStateException: failure\n"
+                        + "\tat com.example.Foo.bar(Foo.java:10)\n"
+                        + "\tat com.example.Foo.main(Foo.java:5)\n"
+                        + "Caused by: java.io.IOException: broken pipe\n"
+                        + "\tat com.example.Io.write(Io.java:42)\n"
+                        + "\t... 2 more",
+                "Finished: FAILURE"), events);
+    }
+
+    @Test
+    public void testCustomStartPatterns() {
+        MultiLineGrouper grouper = grouper(new MultiLineGrouper.Config(Arrays.asList("^\\[INFO]", "^\\[ERROR]"), 500, 60_000));
+        grouper.add("[INFO] compiling");
+        grouper.add("[ERROR] Foo.java:[3,5] cannot find symbol");
+        grouper.add("symbol: class Bar");
+        grouper.add("location: class Foo");
+        grouper.add("[INFO] done");
+        grouper.flush();
+
+        assertEquals(Arrays.asList(
+                "[INFO] compiling",
+                "[ERROR] Foo.java:[3,5] cannot find symbol\nsymbol: class Bar\nlocation: class Foo",
+                "[INFO] done"), events);
+    }
+
+    @Test
+    public void testEventIsEmittedWhenMaxLinesIsReached() {
+        MultiLineGrouper grouper = grouper(new MultiLineGrouper.Config(Collections.singletonList(MultiLineGrouper.Config.DEFAULT_START_PATTERN), 3, 60_000));
+        grouper.add("error");
+        grouper.add("  line 1");
+        grouper.add("  line 2");
+        grouper.add("  line 3");
+        grouper.flush();
+
+        assertEquals(Arrays.asList("error\n  line 1\n  line 2", "line 3"), events);
+    }
+
+    @Test
+    public void testBlankLinesEndEventsAndAreSkipped() {
+        MultiLineGrouper grouper = grouper(new MultiLineGrouper.Config(Collections.singletonList(MultiLineGrouper.Config.DEFAULT_START_PATTERN), 500, 60_000));
+        grouper.add("error");
+        grouper.add("  detail");
+        grouper.add("   \n");
+        grouper.add("  indented start");
+        grouper.flush();
+
+        assertEquals(Arrays.asList("error\n  detail", "indented start"), events);
+    }
+
+    @Test
+    public void testEventIsEmittedAfterMaxWait() throws Exception {
+        MultiLineGrouper grouper = grouper(new MultiLineGrouper.Config(Collections.singletonList(MultiLineGrouper.Config.DEFAULT_START_PATTERN), 500, 50));
+        grouper.add("error");
+        grouper.add("  detail");
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (events.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Collections.singletonList("error\n  detail"), events);
+
+        grouper.flush();
+        assertEquals(1, events.size());
+    }
+
+    private MultiLineGrouper grouper(MultiLineGrouper.Config config) {
+        return new MultiLineGrouper(config, events::add);
+    }
+}
@@ -0,0 +1,135 @@
+package org.datadog.jenkins.plugins.datadog.logs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.Test;
+
+public class RemoteLogShipperTest {
+
+    @Test
+    public void testShipsToDatadogAgentLogPort() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            server.setSoTimeout(10_000);
+            RemoteLogShipper shipper = RemoteLogShipper.forTarget(RemoteLogTarget.datadogAgent("localhost", server.getLocalPort(), 100, 10));
+            assertTrue(shipper.offer("{\"message\":\"first\"}"));
+            assertTrue(shipper.offer("{\"message\":\"second\"}"));
+
+            try (Socket socket = server.accept()) {
+                socket.setSoTimeout(10_000);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                assertEquals("{\"message\":\"first\"}", reader.readLine());
+                assertEquals("{\"message\":\"second\"}", reader.readLine());
+            }
+        }
+    }
+
+    @Test
+    public void testEntriesAreDroppedWhenQueueIsFull() {
+        RemoteLogShipper shipper = new RemoteLogShipper(new RecordingTarget(2), runnable -> {}, 60_000);
+        assertTrue(shipper.offer("a"));
+        assertTrue(shipper.offer("b"));
+        assertFalse(shipper.offer("c"));
+        assertEquals(2, shipper.getQueueSize());
+    }
+
+    @Test
+    public void testFailingTargetIsRetriedWithBackoff() {
+        RecordingTarget target = new RecordingTarget(10);
+        RemoteLogShipper shipper = new RemoteLogShipper(target);
+
+        target.failing = true;
+        shipper.sendBatch(Arrays.asList("a"), 0);
+        assertEquals(1, target.calls);
+
+        // the target is not called again until the retry delay passes
+        shipper.sendBatch(Arrays.asList("b"), 500);
+        assertEquals(1, target.calls);
+
+        shipper.sendBatch(Arrays.asList("c"), 1000);
+        assertEquals(2, target.calls);
+
+        // the delay doubles after consecutive failures
+        shipper.sendBatch(Arrays.asList("d"), 2500);
+        assertEquals(2, target.calls);
+
+        target.failing = false;
+        shipper.sendBatch(Arrays.asList("e"), 3000);
+        assertEquals(3, target.calls);
+        assertEquals(Arrays.asList("e"), target.sent);
+
+        shipper.sendBatch(Arrays.asList("f"), 3001);
+        assertEquals(4, target.calls);
+        assertEquals(Arrays.asList("e", "f"), target.sent);
+    }
+
+    @Test
+    public void testThreadStopsWhenIdleAndRestartsOnOffer() throws Exception {
+        RecordingTarget target = new RecordingTarget(10);
+        AtomicInteger threadsStarted = new AtomicInteger();
+        RemoteLogShipper shipper = new RemoteLogShipper(target, runnable -> {
+            threadsStarted.incrementAndGet();
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.start();
+        }, 100);
+
+        assertTrue(shipper.offer("a"));
+        await(() -> target.sent.size() == 1);
+        await(() -> !shipper.isRunning());
+        assertEquals(1, threadsStarted.get());
+        assertTrue(target.closes > 0);
+
+        assertTrue(shipper.offer("b"));
+        await(() -> target.sent.size() == 2);
+        assertEquals(Arrays.asList("a", "b"), target.sent);
+        assertEquals(2, threadsStarted.get());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static final class RecordingTarget extends RemoteLogTarget {
+        private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean failing;
+        private volatile int calls;
+        private volatile int closes;
+
+        private RecordingTarget(int queueCapacity) {
+            super(queueCapacity, 10);
+        }
+
+        @Override
+        void send(List<String> payloads) throws IOException {
+            calls++;
+            if (failing) {
+                throw new IOException("test");
+            }
+            sent.addAll(payloads);
+        }
+
+        @Override
+        void close() {
+            closes++;
+        }
+    }
+}
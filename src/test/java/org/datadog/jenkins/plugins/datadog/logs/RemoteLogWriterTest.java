@@ -0,0 +1,61 @@
+package org.datadog.jenkins.plugins.datadog.logs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+public class RemoteLogWriterTest {
+
+    // the shipper thread is not started, so that queued lines stay in the queue
+    private final RemoteLogShipper shipper = new RemoteLogShipper(RemoteLogTarget.datadogAgent("localhost", 10518, 10, 10), runnable -> {}, 60_000);
+
+    @Test
+    public void testMessageAndTimestampAreAddedToEnvelope() {
+        RemoteLogWriter writer = new RemoteLogWriter(StandardCharsets.UTF_8, "{\"ddsource\":\"jenkins\",\"ddtags\":\"a:b\"}", null, shipper, () -> 1234L);
+        JSONObject payload = JSONObject.fromObject(writer.buildPayload("hello"));
+        assertEquals("jenkins", payload.getString("ddsource"));
+        assertEquals("a:b", payload.getString("ddtags"));
+        assertEquals("hello", payload.getString("message"));
+        assertEquals(1234L, payload.getLong("timestamp"));
+    }
+
+    @Test
+    public void testEmptyEnvelope() {
+        RemoteLogWriter writer = new RemoteLogWriter(StandardCharsets.UTF_8, "{}", null, shipper, () -> 1L);
+        assertEquals("{\"message\":\"hello\",\"timestamp\":1}", writer.buildPayload("hello"));
+    }
+
+    @Test
+    public void testMessageIsEscaped() {
+        RemoteLogWriter writer = new RemoteLogWriter(StandardCharsets.UTF_8, "{}", null, shipper, () -> 1L);
+        String message = "quote \" backslash \\ tab \t newline \n bell \u0007 separator \u2028 unicode \u00e9\u4e2d";
+        JSONObject payload = JSONObject.fromObject(writer.buildPayload(message));
+        assertEquals(message, payload.getString("message"));
+    }
+
+    @Test
+    public void testLinesAreQueued() {
+        RemoteLogWriter writer = new RemoteLogWriter(StandardCharsets.UTF_8, "{}", null, shipper, () -> 1L);
+        writer.write("");
+        writer.write("line");
+        assertEquals(1, shipper.getQueueSize());
+    }
+
+    @Test
+    public void testSuppressedLinesAreReportedOnClose() {
+        LogRateLimiter rateLimiter = new LogRateLimiter(new LogRateLimiter.Config(1, 1, 0), () -> 0L);
+        RemoteLogWriter writer = new RemoteLogWriter(StandardCharsets.UTF_8, "{}", rateLimiter, shipper, () -> 1L);
+        writer.write("first");
+        writer.write("suppressed");
+        writer.write("suppressed");
+        assertEquals(1, shipper.getQueueSize());
+
+        writer.close();
+        assertEquals(2, shipper.getQueueSize());
+        // nothing is left to report
+        writer.close();
+        assertEquals(2, shipper.getQueueSize());
+    }
+}
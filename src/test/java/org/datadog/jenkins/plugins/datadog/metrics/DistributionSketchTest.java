@@ -0,0 +1,90 @@
+package org.datadog.jenkins.plugins.datadog.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class DistributionSketchTest {
+
+    private static final double[] QUANTILES = {0, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 1};
+
+    @Test
+    public void testQuantilesAreWithinRelativeAccuracy() {
+        DistributionSketch sketch = new DistributionSketch();
+        Random random = new Random(42);
+        double[] values = new double[10_000];
+        for (int i = 0; i < values.length; i++) {
+            // build durations spanning several orders of magnitude
+            values[i] = Math.exp(random.nextGaussian() * 3 + 5);
+            sketch.accept(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double quantile : QUANTILES) {
+            assertQuantile(values, sketch, quantile);
+        }
+        assertEquals(values.length, sketch.getCount());
+        assertEquals(values[0], sketch.getMin(), 0);
+        assertEquals(values[values.length - 1], sketch.getMax(), 0);
+    }
+
+    @Test
+    public void testMergedSketchIsAsAccurateAsSingleSketch() {
+        DistributionSketch first = new DistributionSketch();
+        DistributionSketch second = new DistributionSketch();
+        List<Double> allValues = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            first.accept(i);
+            second.accept(i * 1000);
+            allValues.add((double) i);
+            allValues.add((double) i * 1000);
+        }
+        first.merge(second);
+
+        double[] values = allValues.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        for (double quantile : QUANTILES) {
+            assertQuantile(values, first, quantile);
+        }
+        assertEquals(2000, first.getCount());
+        assertEquals(1000, second.getCount());
+    }
+
+    @Test
+    public void testZeroValuesAreCounted() {
+        DistributionSketch sketch = new DistributionSketch();
+        sketch.accept(0);
+        sketch.accept(0);
+        sketch.accept(10);
+
+        assertEquals(0, sketch.getValueAtQuantile(0.5), 0);
+        assertEquals(10, sketch.getValueAtQuantile(1), 10 * sketch.getRelativeAccuracy());
+
+        List<Long> counts = new ArrayList<>();
+        sketch.forEachBin((value, count) -> counts.add(count));
+        assertEquals(Arrays.asList(2L, 1L), counts);
+    }
+
+    @Test
+    public void testEmptySketch() {
+        DistributionSketch sketch = new DistributionSketch();
+        assertTrue(sketch.isEmpty());
+        assertTrue(Double.isNaN(sketch.getValueAtQuantile(0.5)));
+        assertTrue(Double.isNaN(sketch.getAverage()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSketchesWithDifferentAccuracyCannotBeMerged() {
+        new DistributionSketch(0.01).merge(new DistributionSketch(0.02));
+    }
+
+    private static void assertQuantile(double[] sortedValues, DistributionSketch sketch, double quantile) {
+        double expected = sortedValues[(int) (quantile * (sortedValues.length - 1))];
+        double actual = sketch.getValueAtQuantile(quantile);
+        assertEquals("quantile " + quantile, expected, actual, expected * sketch.getRelativeAccuracy());
+    }
+}
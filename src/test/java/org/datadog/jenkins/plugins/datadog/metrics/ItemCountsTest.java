@@ -0,0 +1,59 @@
+package org.datadog.jenkins.plugins.datadog.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import hudson.model.Project;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.junit.Test;
+
+public class ItemCountsTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @Test
+    public void testCountsAreMaintainedIncrementally() {
+        ItemCounts counts = new ItemCounts(TimeUnit.HOURS.toNanos(1), nanoTime::get);
+        FreeStyleProject project = mock(FreeStyleProject.class);
+        WorkflowJob pipeline = mock(WorkflowJob.class);
+
+        counts.onCreated(project);
+        counts.onCreated(project);
+        counts.onCreated(pipeline);
+        assertEquals(2, counts.getCount(Project.class));
+        assertEquals(3, counts.getCount(Item.class));
+
+        counts.onDeleted(project);
+        assertEquals(1, counts.getCount(Project.class));
+        assertEquals(2, counts.getCount(Item.class));
+    }
+
+    @Test
+    public void testReconciliationReplacesCounts() {
+        ItemCounts counts = new ItemCounts(TimeUnit.HOURS.toNanos(1), nanoTime::get);
+        FreeStyleProject project = mock(FreeStyleProject.class);
+        WorkflowJob pipeline = mock(WorkflowJob.class);
+        counts.onCreated(project);
+        counts.onCreated(pipeline);
+
+        Map<Class<?>, Long> scannedCounts = new HashMap<>();
+        scannedCounts.put(project.getClass(), 5L);
+        counts.reset(scannedCounts);
+
+        assertEquals(5, counts.getCount(Project.class));
+        assertEquals(5, counts.getCount(Item.class));
+    }
+
+    @Test
+    public void testCountsAreNeverNegative() {
+        ItemCounts counts = new ItemCounts(TimeUnit.HOURS.toNanos(1), nanoTime::get);
+        counts.onDeleted(mock(FreeStyleProject.class));
+        assertEquals(0, counts.getCount(Project.class));
+    }
+}
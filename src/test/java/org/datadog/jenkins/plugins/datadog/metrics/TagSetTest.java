@@ -0,0 +1,121 @@
+package org.datadog.jenkins.plugins.datadog.metrics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.datadog.jenkins.plugins.datadog.util.TagsUtil;
+import org.junit.Test;
+
+public class TagSetTest {
+
+    @Test
+    public void testTagsAreRenderedLikeTagsUtil() {
+        Map<String, Set<String>> tags = new HashMap<>();
+        TagsUtil.addTagToTags(tags, "job", "my-job");
+        TagsUtil.addTagToTags(tags, "branch", "main");
+        TagsUtil.addTagToTags(tags, "branch", "feature");
+        TagsUtil.addTagToTags(tags, "valueless", "");
+
+        TagSet tagSet = TagSet.of(tags);
+        assertArrayEquals(TagsUtil.convertTagsToArray(tags), tagSet.toArray());
+        assertEquals(Arrays.asList("branch:feature", "branch:main", "job:my-job", "valueless"), tagSet.getRenderedTags());
+    }
+
+    @Test
+    public void testTagSetsAreInterned() {
+        Map<String, Set<String>> tags = new HashMap<>();
+        TagsUtil.addTagToTags(tags, "job", "my-job");
+        TagSet tagSet = TagSet.of(tags);
+
+        Map<String, Set<String>> sameTags = new HashMap<>();
+        TagsUtil.addTagToTags(sameTags, "job", "my-job");
+        assertSame(tagSet, TagSet.of(sameTags));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedTagSetsAreEvicted() {
+        TagSet active = TagSet.of(tags("job", "active-job"));
+        TagSet finished = TagSet.of(tags("job", "finished-job"));
+        for (int i = 0; i < 20_000; i++) {
+            TagSet.of(tags("job", "job-" + i));
+            if (i % 1_000 == 0) {
+                assertSame(active, TagSet.of(tags("job", "active-job")));
+            }
+        }
+        assertSame(active, TagSet.of(tags("job", "active-job")));
+
+        TagSet recreated = TagSet.of(tags("job", "finished-job"));
+        assertNotSame(finished, recreated);
+        assertEquals(finished, recreated);
+    }
+
+    @Test
+    public void testConcurrentCallersGetTheSameTagSet() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<TagSet>> tagSets = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                tagSets.add(executor.submit(() -> TagSet.of(tags("job", "concurrent-job"))));
+            }
+            TagSet tagSet = TagSet.of(tags("job", "concurrent-job"));
+            for (Future<TagSet> future : tagSets) {
+                assertSame(tagSet, future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTagSetIsNotAffectedBySourceMapModifications() {
+        Map<String, Set<String>> tags = new HashMap<>();
+        tags.put("job", new HashSet<>(Arrays.asList("my-job")));
+        TagSet tagSet = TagSet.of(tags);
+
+        tags.get("job").add("other-job");
+        tags.put("branch", new HashSet<>(Arrays.asList("main")));
+
+        assertEquals(Arrays.asList("job:my-job"), tagSet.getRenderedTags());
+        assertNotEquals(tagSet, TagSet.of(tags));
+    }
+
+    @Test
+    public void testEmptyTags() {
+        assertSame(TagSet.EMPTY, TagSet.of(null));
+        assertSame(TagSet.EMPTY, TagSet.of(new HashMap<>()));
+        assertTrue(TagSet.EMPTY.isEmpty());
+        assertEquals(0, TagSet.EMPTY.toArray().length);
+    }
+
+    @Test
+    public void testMetricKeysWithEqualTagsAreEqual() {
+        Map<String, Set<String>> tags = new HashMap<>();
+        TagsUtil.addTagToTags(tags, "job", "my-job");
+        MetricKey key = new MetricKey(tags, "metric", "host");
+        MetricKey sameKey = new MetricKey(TagSet.of(tags), "metric", "host");
+        assertEquals(key, sameKey);
+        assertEquals(key.hashCode(), sameKey.hashCode());
+        assertNotEquals(key, new MetricKey(tags, "metric", "other-host"));
+    }
+
+    private static Map<String, Set<String>> tags(String name, String value) {
+        Map<String, Set<String>> tags = new HashMap<>();
+        TagsUtil.addTagToTags(tags, name, value);
+        return tags;
+    }
+}
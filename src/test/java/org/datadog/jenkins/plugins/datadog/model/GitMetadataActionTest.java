@@ -0,0 +1,62 @@
+package org.datadog.jenkins.plugins.datadog.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.datadog.jenkins.plugins.datadog.model.git.GitCommitMetadata;
+import org.datadog.jenkins.plugins.datadog.model.git.GitMetadata;
+import org.datadog.jenkins.plugins.datadog.model.git.Source;
+import org.junit.Test;
+
+public class GitMetadataActionTest {
+
+    private static final GitMetadata CLIENT_METADATA = new GitMetadata.Builder()
+            .repositoryURL("https://github.com/org/repo.git")
+            .branch("main")
+            .commitMetadata(new GitCommitMetadata.Builder().commit("abc").message("message").build())
+            .build();
+
+    private static final GitMetadata USER_METADATA = new GitMetadata.Builder()
+            .commitMetadata(new GitCommitMetadata.Builder().commit("abc").tag("v1").build())
+            .build();
+
+    @Test
+    public void testMetadataIsMergedAcrossSources() {
+        GitMetadataAction action = new GitMetadataAction();
+        action.addMetadata(Source.GIT_CLIENT, CLIENT_METADATA);
+        action.addMetadata(Source.USER_SUPPLIED_ENV_VARS, USER_METADATA);
+
+        GitMetadata metadata = action.getMetadata();
+        assertEquals("https://github.com/org/repo.git", metadata.getRepositoryURL());
+        assertEquals("main", metadata.getBranch());
+        assertEquals("abc", metadata.getCommitMetadata().getCommit());
+        assertEquals("message", metadata.getCommitMetadata().getMessage());
+        assertEquals("v1", metadata.getCommitMetadata().getTag());
+    }
+
+    @Test
+    public void testMergedMetadataIsCached() {
+        GitMetadataAction action = new GitMetadataAction();
+        action.addMetadata(Source.GIT_CLIENT, CLIENT_METADATA);
+
+        GitMetadata metadata = action.getMetadata();
+        assertSame(metadata, action.getMetadata());
+
+        // adding the same metadata again does not change anything
+        action.addMetadata(Source.GIT_CLIENT, CLIENT_METADATA);
+        assertSame(metadata, action.getMetadata());
+    }
+
+    @Test
+    public void testMergedMetadataIsRecomputedWhenSourceChanges() {
+        GitMetadataAction action = new GitMetadataAction();
+        action.addMetadata(Source.GIT_CLIENT, CLIENT_METADATA);
+        GitMetadata metadata = action.getMetadata();
+
+        action.addMetadata(Source.USER_SUPPLIED_ENV_VARS, USER_METADATA);
+        GitMetadata updated = action.getMetadata();
+        assertNotSame(metadata, updated);
+        assertEquals("v1", updated.getCommitMetadata().getTag());
+    }
+}
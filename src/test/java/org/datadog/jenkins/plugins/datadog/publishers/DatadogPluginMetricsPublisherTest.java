@@ -0,0 +1,46 @@
+package org.datadog.jenkins.plugins.datadog.publishers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.util.concurrent.TimeUnit;
+import org.datadog.jenkins.plugins.datadog.clients.DatadogClientStub;
+import org.datadog.jenkins.plugins.datadog.metrics.MetricsClient;
+import org.datadog.jenkins.plugins.datadog.metrics.TagSet;
+import org.junit.Test;
+
+public class DatadogPluginMetricsPublisherTest {
+
+    private static final String HOSTNAME = "test-host";
+    private static final String[] NO_TAGS = new String[0];
+
+    @Test
+    public void testRegistryMetricsAreExported() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        registry.gauge("DD-Trace-Writer.queue.size", () -> () -> 7);
+        registry.meter("DD-Trace-Writer.submit.dropped").mark(3);
+        registry.histogram("DD-Trace-Writer.batch.size").update(10);
+        Timer timer = registry.timer("http.logs.request.latency");
+        timer.update(5, TimeUnit.MILLISECONDS);
+
+        DatadogClientStub client = new DatadogClientStub();
+        try (MetricsClient metricsClient = client.metrics()) {
+            DatadogPluginMetricsPublisher.export(registry, metricsClient, HOSTNAME, TagSet.EMPTY);
+        }
+
+        client.assertMetric("jenkins.datadog.plugin.dd_trace_writer.queue.size", 7, HOSTNAME, NO_TAGS);
+        client.assertMetric("jenkins.datadog.plugin.dd_trace_writer.submit.dropped.count", 3, HOSTNAME, NO_TAGS);
+        client.assertMetric("jenkins.datadog.plugin.dd_trace_writer.batch.size.count", 1, HOSTNAME, NO_TAGS);
+        client.assertMetric("jenkins.datadog.plugin.dd_trace_writer.batch.size.max", 10, HOSTNAME, NO_TAGS);
+        client.assertMetric("jenkins.datadog.plugin.http.logs.request.latency.count", 1, HOSTNAME, NO_TAGS);
+        assertEquals(5, client.assertMetricGetValue("jenkins.datadog.plugin.http.logs.request.latency.99percentile", HOSTNAME, NO_TAGS), 0.01);
+    }
+
+    @Test
+    public void testMetricNamesAreSanitized() {
+        assertEquals("jenkins.datadog.plugin.dd_log_writer.rate.limited", DatadogPluginMetricsPublisher.metricName("DD-Log-Writer.rate.limited"));
+        assertTrue(DatadogPluginMetricsPublisher.metricName("a b/c").endsWith("a_b_c"));
+    }
+}
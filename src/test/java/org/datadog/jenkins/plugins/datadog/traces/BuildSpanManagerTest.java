@@ -2,12 +2,20 @@ package org.datadog.jenkins.plugins.datadog.traces;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.RandomAccessFile;
 import org.datadog.jenkins.plugins.datadog.traces.message.TraceSpan;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class BuildSpanManagerTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testStorageHasLimitedCapacity() {
         BuildSpanManager manager = new BuildSpanManager(3);
@@ -28,4 +36,82 @@ public class BuildSpanManagerTest {
         assertEquals(new TraceSpan.TraceSpanContext(4, 4, 4), manager.get("tag4"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        BuildSpanManager manager = new BuildSpanManager(2);
+        manager.put("tag1", new TraceSpan.TraceSpanContext(1, 1, 1));
+        manager.put("tag2", new TraceSpan.TraceSpanContext(2, 2, 2));
+
+        // downstream build looks up tag1, so tag2 becomes the least recently used one
+        manager.get("tag1");
+        manager.put("tag3", new TraceSpan.TraceSpanContext(3, 3, 3));
+
+        assertEquals(new TraceSpan.TraceSpanContext(1, 1, 1), manager.get("tag1"));
+        assertNull(manager.get("tag2"));
+        assertEquals(new TraceSpan.TraceSpanContext(3, 3, 3), manager.get("tag3"));
+    }
+
+    @Test
+    public void testStorageIsBoundedByMemory() {
+        long entrySize = BuildSpanManager.ENTRY_OVERHEAD_BYTES + "tag-00".length();
+        BuildSpanManager manager = new BuildSpanManager(Integer.MAX_VALUE, entrySize * 10, null);
+        for (int i = 0; i < 100; i++) {
+            manager.put(String.format("tag-%02d", i), new TraceSpan.TraceSpanContext(i, i, i));
+        }
+        assertEquals(10, manager.size());
+        assertNull(manager.get("tag-89"));
+        assertEquals(new TraceSpan.TraceSpanContext(90, 90, 90), manager.get("tag-90"));
+        assertEquals(new TraceSpan.TraceSpanContext(99, 99, 99), manager.get("tag-99"));
+    }
+
+    @Test
+    public void testContextsSurviveRestart() throws Exception {
+        File file = new File(folder.getRoot(), "datadog/span-contexts.bin");
+        BuildSpanManager manager = new BuildSpanManager(100, Long.MAX_VALUE, file);
+        manager.put("tag1", new TraceSpan.TraceSpanContext(1, 1, 1));
+        manager.put("tag2", new TraceSpan.TraceSpanContext(2, 2, 2));
+        manager.put("tag1", new TraceSpan.TraceSpanContext(3, 3, 3));
+
+        BuildSpanManager restarted = new BuildSpanManager(100, Long.MAX_VALUE, file);
+        assertEquals(2, restarted.size());
+        assertEquals(new TraceSpan.TraceSpanContext(3, 3, 3), restarted.get("tag1"));
+        assertEquals(new TraceSpan.TraceSpanContext(2, 2, 2), restarted.get("tag2"));
+    }
+
+    @Test
+    public void testPartiallyWrittenRecordIsIgnored() throws Exception {
+        File file = new File(folder.getRoot(), "span-contexts.bin");
+        BuildSpanManager manager = new BuildSpanManager(100, Long.MAX_VALUE, file);
+        manager.put("tag1", new TraceSpan.TraceSpanContext(1, 1, 1));
+        manager.put("tag2", new TraceSpan.TraceSpanContext(2, 2, 2));
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        BuildSpanManager restarted = new BuildSpanManager(100, Long.MAX_VALUE, file);
+        assertEquals(new TraceSpan.TraceSpanContext(1, 1, 1), restarted.get("tag1"));
+        assertNull(restarted.get("tag2"));
+
+        restarted.put("tag3", new TraceSpan.TraceSpanContext(3, 3, 3));
+        BuildSpanManager restartedAgain = new BuildSpanManager(100, Long.MAX_VALUE, file);
+        assertEquals(new TraceSpan.TraceSpanContext(1, 1, 1), restartedAgain.get("tag1"));
+        assertEquals(new TraceSpan.TraceSpanContext(3, 3, 3), restartedAgain.get("tag3"));
+    }
+
+    @Test
+    public void testStorageFileIsCompacted() throws Exception {
+        File file = new File(folder.getRoot(), "span-contexts.bin");
+        BuildSpanManager manager = new BuildSpanManager(10, Long.MAX_VALUE, file);
+        for (int i = 0; i < 10_000; i++) {
+            manager.put(String.format("tag-%05d", i), new TraceSpan.TraceSpanContext(i, i, i));
+        }
+        long recordSize = 2 + "tag-00000".length() + 3 * Long.BYTES;
+        assertTrue("file size " + file.length(), file.length() <= 1024 * recordSize);
+
+        BuildSpanManager restarted = new BuildSpanManager(10, Long.MAX_VALUE, file);
+        assertEquals(10, restarted.size());
+        assertEquals(new TraceSpan.TraceSpanContext(9999, 9999, 9999), restarted.get("tag-09999"));
+    }
+
+}
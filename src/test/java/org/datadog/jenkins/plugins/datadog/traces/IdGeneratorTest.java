@@ -0,0 +1,77 @@
+package org.datadog.jenkins.plugins.datadog.traces;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class IdGeneratorTest {
+
+    @Test
+    public void testDerivedIdsAreStable() {
+        assertEquals(IdGenerator.generate(42L, "17"), IdGenerator.generate(42L, "17"));
+        assertNotEquals(IdGenerator.generate(42L, "17"), IdGenerator.generate(43L, "17"));
+        assertNotEquals(IdGenerator.generate(42L, "17"), IdGenerator.generate(42L, "18"));
+    }
+
+    @Test
+    public void testDerivedIdsArePositive() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            long id = IdGenerator.generate(random.nextLong(), String.valueOf(i));
+            assertTrue("Invalid span ID " + id, id > 0);
+        }
+        assertTrue(IdGenerator.generate(0, "") > 0);
+    }
+
+    @Test
+    public void testNoCollisionsInHugePipeline() {
+        // a single trace with millions of flow nodes
+        long traceId = new Random(2).nextLong();
+        long[] ids = new long[3_000_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = IdGenerator.generate(traceId, String.valueOf(i + 1));
+        }
+        assertEquals(0, countCollisions(ids));
+    }
+
+    @Test
+    public void testNoCollisionsAcrossTraces() {
+        Random random = new Random(3);
+        int traces = 2_000;
+        int nodesPerTrace = 1_000;
+        long[] ids = new long[traces * nodesPerTrace];
+        for (int t = 0; t < traces; t++) {
+            long traceId = random.nextLong();
+            for (int n = 0; n < nodesPerTrace; n++) {
+                ids[t * nodesPerTrace + n] = IdGenerator.generate(traceId, String.valueOf(n + 1));
+            }
+        }
+        assertEquals(0, countCollisions(ids));
+    }
+
+    @Test
+    public void testNoCollisionsForNonNumericNodeIds() {
+        long traceId = new Random(4).nextLong();
+        long[] ids = new long[1_000_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = IdGenerator.generate(traceId, "node-" + i);
+        }
+        assertEquals(0, countCollisions(ids));
+    }
+
+    private static int countCollisions(long[] ids) {
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int collisions = 0;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] == sorted[i - 1]) {
+                collisions++;
+            }
+        }
+        return collisions;
+    }
+}
@@ -0,0 +1,302 @@
+package org.datadog.jenkins.plugins.datadog.traces.write;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.model.Run;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.datadog.jenkins.plugins.datadog.model.BuildData;
+import org.datadog.jenkins.plugins.datadog.model.PipelineStepData;
+import org.junit.After;
+import org.junit.Test;
+
+public class TraceWriterTest {
+
+    /** Content of the step payloads, distinct from the build versions */
+    private static final int STEP = 100;
+
+    private final RecordingStrategy strategy = new RecordingStrategy();
+    private final List<TraceWriter> writers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (TraceWriter writer : writers) {
+            writer.stopAsynchronously();
+        }
+    }
+
+    @Test
+    public void testSupersededVersionsAreNotSerialized() throws Exception {
+        TraceWriter writer = writer(10);
+        Run<?, ?> run = run("job#1");
+        writer.submitBuild(buildData(1), run);
+        writer.submitBuild(buildData(3), run);
+        // versions that arrive out of order do not replace newer ones
+        writer.submitBuild(buildData(2), run);
+
+        writer.start();
+        await(() -> strategy.sentVersions().size() == 1);
+        assertEquals(Collections.singletonList(3), strategy.serializedVersions());
+
+        writer.submitBuild(buildData(4), run);
+        await(() -> strategy.sentVersions().size() == 2);
+        assertEquals(Arrays.asList(3, 4), strategy.serializedVersions());
+        assertEquals(Arrays.asList(3, 4), strategy.sentVersions());
+    }
+
+    @Test
+    public void testVersionSubmittedDuringSerializationIsSent() throws Exception {
+        CountDownLatch serializationStarted = new CountDownLatch(1);
+        CountDownLatch serializationReleased = new CountDownLatch(1);
+        strategy.onSerialize = version -> {
+            if (version == 1) {
+                serializationStarted.countDown();
+                serializationReleased.await(5, TimeUnit.SECONDS);
+            }
+        };
+        TraceWriter writer = writer(10);
+        writer.start();
+
+        Run<?, ?> run = run("job#1");
+        writer.submitBuild(buildData(1), run);
+        assertTrue(serializationStarted.await(5, TimeUnit.SECONDS));
+        writer.submitBuild(buildData(2), run);
+        serializationReleased.countDown();
+
+        await(() -> strategy.sentVersions().size() == 2);
+        assertEquals(Arrays.asList(1, 2), strategy.sentVersions());
+    }
+
+    @Test
+    public void testFinalVersionIsSentAfterQueueWasFull() throws Exception {
+        TraceWriter writer = writer(1);
+        writer.submitBuild(buildData(1), run("job#1"));
+        Run<?, ?> run = run("job#2");
+        // the queue is full, this version is dropped
+        writer.submitBuild(buildData(10), run);
+
+        writer.start();
+        await(() -> strategy.sentVersions().size() == 1);
+        writer.submitBuild(buildData(11), run);
+
+        await(() -> strategy.sentVersions().size() == 2);
+        assertEquals(Arrays.asList(1, 11), strategy.sentVersions());
+    }
+
+    @Test
+    public void testFinalVersionIsSentAfterInterruptedSubmit() throws Exception {
+        TraceWriter writer = writer(10);
+        Run<?, ?> run = run("job#1");
+        Thread.currentThread().interrupt();
+        try {
+            writer.submitBuild(buildData(1), run);
+            fail("Expected the submit to be interrupted");
+        } catch (InterruptedException e) {
+            // expected
+        }
+
+        writer.start();
+        writer.submitBuild(buildData(2), run);
+        await(() -> strategy.sentVersions().size() == 1);
+        assertEquals(Collections.singletonList(2), strategy.sentVersions());
+    }
+
+    @Test
+    public void testFinalVersionIsSentAfterHandoverToFullWriter() throws Exception {
+        TraceWriter writer = writer(10);
+        Run<?, ?> run = run("job#1");
+        writer.submitBuild(buildData(1), run);
+
+        TraceWriter successor = writer(1);
+        successor.submitBuild(buildData(10), run("job#2"));
+        // the queue of the successor is full, the migrated version is dropped
+        writer.handOverTo(successor);
+        // the queue of the successor is still full, the forwarded version is dropped
+        writer.submitBuild(buildData(2), run);
+
+        successor.start();
+        await(() -> strategy.sentVersions().size() == 1);
+        successor.submitBuild(buildData(3), run);
+
+        await(() -> strategy.sentVersions().size() == 2);
+        assertEquals(Arrays.asList(10, 3), strategy.sentVersions());
+    }
+
+    @Test
+    public void testFinishedBuildIsSentAfterActionsAreRemoved() throws Exception {
+        TraceWriter writer = writer(10);
+        Run<?, ?> run = run("job#1");
+        writer.submitBuild(buildData(1), run);
+        writer.submitBuild(finishedBuildData(2), run);
+        // the run is finalized, and its trace actions are removed, before the writer drains the queue
+        strategy.actionsRemoved = true;
+
+        writer.start();
+        await(() -> strategy.sentVersions().size() == 1);
+        assertEquals(Collections.singletonList(2), strategy.serializedVersions());
+        assertEquals(Collections.singletonList(2), strategy.sentVersions());
+    }
+
+    @Test
+    public void testFinishedBuildIsSentAfterHandoverOfFinalizedRun() throws Exception {
+        TraceWriter writer = writer(10);
+        Run<?, ?> run = run("job#1");
+        writer.submitBuild(finishedBuildData(1), run);
+        strategy.actionsRemoved = true;
+
+        TraceWriter successor = writer(10);
+        writer.handOverTo(successor);
+
+        successor.start();
+        await(() -> strategy.sentVersions().size() == 1);
+        assertEquals(Collections.singletonList(1), strategy.sentVersions());
+    }
+
+    @Test
+    public void testStepPayloadIsKeptOnHandoverToSameTrack() throws Exception {
+        TraceWriter writer = writer(10);
+        writer.submitPipelineStep(null, run("job#1"));
+
+        RecordingStrategy successorStrategy = new RecordingStrategy();
+        successorStrategy.track = Track.APM;
+        TraceWriter successor = writer(successorStrategy, 10);
+        writer.handOverTo(successor);
+
+        successor.start();
+        await(() -> successorStrategy.sentVersions().size() == 1);
+        assertEquals(Collections.singletonList(STEP), successorStrategy.sentVersions());
+        assertEquals(0, successorStrategy.serializedSteps.get());
+    }
+
+    @Test
+    public void testStepPayloadIsKeptOnHandoverIfItCannotBeSerializedAgain() throws Exception {
+        TraceWriter writer = writer(10);
+        writer.submitPipelineStep(null, run("job#1"));
+
+        RecordingStrategy successorStrategy = new RecordingStrategy();
+        successorStrategy.track = Track.WEBHOOK;
+        successorStrategy.actionsRemoved = true;
+        TraceWriter successor = writer(successorStrategy, 10);
+        writer.handOverTo(successor);
+
+        successor.start();
+        await(() -> successorStrategy.sentVersions().size() == 1);
+        assertEquals(Collections.singletonList(STEP), successorStrategy.sentVersions());
+    }
+
+    private TraceWriter writer(int queueCapacity) {
+        return writer(strategy, queueCapacity);
+    }
+
+    private TraceWriter writer(TraceWriteStrategy strategy, int queueCapacity) {
+        TraceWriter writer = new TraceWriter(strategy, queueCapacity);
+        writers.add(writer);
+        return writer;
+    }
+
+    private static Run<?, ?> run(String id) {
+        Run<?, ?> run = mock(Run.class);
+        when(run.getExternalizableId()).thenReturn(id);
+        return run;
+    }
+
+    private static BuildData buildData(int version) {
+        BuildData buildData = mock(BuildData.class);
+        when(buildData.getVersion()).thenReturn(version);
+        when(buildData.isBuilding()).thenReturn(true);
+        return buildData;
+    }
+
+    private static BuildData finishedBuildData(int version) {
+        BuildData buildData = mock(BuildData.class);
+        when(buildData.getVersion()).thenReturn(version);
+        when(buildData.isBuilding()).thenReturn(false);
+        return buildData;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private interface SerializationHook {
+        void accept(int version) throws InterruptedException;
+    }
+
+    private static final class RecordingStrategy implements TraceWriteStrategy {
+        private final List<Integer> serialized = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> sent = Collections.synchronizedList(new ArrayList<>());
+        private volatile SerializationHook onSerialize = version -> {};
+        private final AtomicInteger serializedSteps = new AtomicInteger();
+        /** Whether the build span and node info actions were removed from the runs, which prevents serializing them */
+        private volatile boolean actionsRemoved;
+        /** Track reported to the writer, {@code null} if it is not known in advance */
+        private volatile Track track;
+
+        @Override
+        public Payload serialize(BuildData buildData, Run<?, ?> run) {
+            if (actionsRemoved) {
+                return null;
+            }
+            int version = buildData.getVersion();
+            try {
+                onSerialize.accept(version);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            serialized.add(version);
+            return new Payload(new byte[]{(byte) version}, Track.APM);
+        }
+
+        @Override
+        public Payload serialize(PipelineStepData stepData, Run<?, ?> run) {
+            if (actionsRemoved) {
+                return null;
+            }
+            serializedSteps.incrementAndGet();
+            return new Payload(new byte[]{(byte) STEP}, Track.APM);
+        }
+
+        @Override
+        public Track getTrack(Run<?, ?> run) {
+            return track;
+        }
+
+        @Override
+        public void send(Collection<Payload> spans) {
+            for (Payload span : spans) {
+                sent.add((int) span.getBytes()[0]);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private List<Integer> serializedVersions() {
+            synchronized (serialized) {
+                return new ArrayList<>(serialized);
+            }
+        }
+
+        private List<Integer> sentVersions() {
+            synchronized (sent) {
+                return new ArrayList<>(sent);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.datadog.jenkins.plugins.datadog.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import org.junit.Test;
+
+public class AsyncWriterTest {
+
+    private static final ThrowingFunction<String, String> AS_IS = s -> s;
+
+    @Test
+    public void testQueuedElementsAreMigrated() throws Exception {
+        AsyncWriter<String> old = writer("test-migrate-queued", 10, e -> {}, () -> {});
+        old.submit("a");
+        old.submit("b");
+
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        AsyncWriter<String> successor = writer("test-migrate-queued", 10, received::addAll, () -> {});
+        old.handOverTo(successor, s -> s.toUpperCase());
+        successor.start();
+        try {
+            await(() -> received.size() == 2);
+            assertEquals(Arrays.asList("A", "B"), received);
+            assertEquals(2, AsyncWriter.METRICS.meter("test-migrate-queued.handover.migrated").getCount());
+            assertEquals(0, AsyncWriter.METRICS.meter("test-migrate-queued.handover.dropped").getCount());
+        } finally {
+            successor.stopSynchronously();
+        }
+    }
+
+    @Test
+    public void testElementsSubmittedAfterHandoverAreForwarded() throws Exception {
+        AsyncWriter<String> old = writer("test-forward", 10, e -> {}, () -> {});
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        AsyncWriter<String> successor = writer("test-forward", 10, received::addAll, () -> {});
+        old.handOverTo(successor, AS_IS);
+        successor.start();
+        try {
+            assertTrue(old.submit("late"));
+            await(() -> received.size() == 1);
+            assertEquals(Collections.singletonList("late"), received);
+        } finally {
+            successor.stopSynchronously();
+        }
+    }
+
+    @Test
+    public void testElementsThatCannotBeMigratedAreReported() throws Exception {
+        AsyncWriter<String> old = writer("test-drops", 10, e -> {}, () -> {});
+        for (String element : Arrays.asList("fits", "skipped", "fails", "overflows")) {
+            old.submit(element);
+        }
+        AsyncWriter<String> successor = writer("test-drops", 1, e -> {}, () -> {});
+        old.handOverTo(successor, s -> {
+            if (s.equals("fails")) {
+                throw new IllegalStateException("cannot migrate");
+            }
+            return s.equals("skipped") ? null : s;
+        });
+
+        // "fits" is migrated, "skipped" has nothing to submit, "fails" and "overflows" are dropped
+        assertEquals(1, AsyncWriter.METRICS.meter("test-drops.handover.migrated").getCount());
+        assertEquals(1, AsyncWriter.METRICS.meter("test-drops.handover.skipped").getCount());
+        assertEquals(2, AsyncWriter.METRICS.meter("test-drops.handover.dropped").getCount());
+        assertEquals(1, AsyncWriter.METRICS.getGauges().get("test-drops.queue.size").getValue());
+    }
+
+    @Test
+    public void testElementsRejectedBySuccessorAreReported() throws Exception {
+        AsyncWriter<String> old = writer("test-rejected", 10, e -> {}, () -> {});
+        old.submit("queued");
+        AsyncWriter<String> successor = writer("test-rejected", 1, e -> {}, () -> {});
+        successor.submit("full");
+
+        List<String> rejected = new ArrayList<>();
+        old.handOverTo(successor, AS_IS, rejected::add);
+        assertFalse(old.submit("forwarded"));
+
+        assertEquals(Arrays.asList("queued", "forwarded"), rejected);
+    }
+
+    @Test
+    public void testOldWriterStopsAfterHandover() throws Exception {
+        CountDownLatch stopped = new CountDownLatch(1);
+        AsyncWriter<String> old = writer("test-stop", 10, e -> {}, stopped::countDown);
+        old.start();
+        AsyncWriter<String> successor = writer("test-stop", 10, e -> {}, () -> {});
+        old.handOverTo(successor, AS_IS);
+
+        // the poller notices the handover when its poll times out
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSubmitDropsWhenQueueIsFull() throws Exception {
+        AsyncWriter<String> writer = writer("test-submit-full", 1, e -> {}, () -> {});
+        assertTrue(writer.submit("a"));
+        assertFalse(writer.submit("b"));
+        assertTrue(writer.submit(null));
+        assertEquals(1, AsyncWriter.METRICS.meter("test-submit-full.submit.dropped").getCount());
+    }
+
+    private static AsyncWriter<String> writer(String name, int capacity, Consumer<List<String>> consumer, Runnable onStop) {
+        return new AsyncWriter<>(name, consumer, onStop, capacity, 0, 1, 1, 100);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
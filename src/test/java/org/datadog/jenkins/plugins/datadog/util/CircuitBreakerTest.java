@@ -0,0 +1,201 @@
+package org.datadog.jenkins.plugins.datadog.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private final List<Integer> sent = new ArrayList<>();
+    private final List<Integer> fallback = new ArrayList<>();
+
+    private CircuitBreaker<Integer> circuitBreaker(int halfOpenProbes) {
+        return circuitBreaker(this::send, halfOpenProbes);
+    }
+
+    private CircuitBreaker<Integer> circuitBreaker(ThrowingConsumer<Integer> action, int halfOpenProbes) {
+        return new CircuitBreaker<>("test", action, this::fallback, e -> {}, 1000, 8000, 2.0, 10, 4, 0.5, halfOpenProbes, time::get);
+    }
+
+    private CircuitBreaker<Integer> asyncCircuitBreaker(CircuitBreaker.AsyncAction<Integer> action) {
+        return new CircuitBreaker<>("test", action, this::fallback, e -> {}, 1000, 8000, 2.0, 10, 4, 0.5, 1, time::get);
+    }
+
+    private synchronized void send(Integer value) {
+        if (failing.get()) {
+            throw new RuntimeException("failure");
+        }
+        sent.add(value);
+    }
+
+    private synchronized void fallback(Integer value) {
+        fallback.add(value);
+    }
+
+    @Test
+    public void testSingleFailureDoesNotOpenBreaker() {
+        CircuitBreaker<Integer> breaker = circuitBreaker(1);
+        breaker.accept(1);
+        failing.set(true);
+        breaker.accept(2);
+        failing.set(false);
+        breaker.accept(3);
+        breaker.accept(4);
+
+        assertEquals(CircuitBreaker.Status.CLOSED, breaker.getStatus());
+        assertEquals(List.of(1, 3, 4), sent);
+        assertEquals(List.of(2), fallback);
+    }
+
+    @Test
+    public void testBreakerOpensWhenFailureRateIsExceeded() {
+        CircuitBreaker<Integer> breaker = circuitBreaker(1);
+        breaker.accept(1);
+        breaker.accept(2);
+        failing.set(true);
+        breaker.accept(3);
+        assertEquals(CircuitBreaker.Status.CLOSED, breaker.getStatus());
+        breaker.accept(4);
+        assertEquals(CircuitBreaker.Status.OPEN, breaker.getStatus());
+
+        failing.set(false);
+        breaker.accept(5);
+        assertEquals(List.of(1, 2), sent);
+        assertEquals(List.of(3, 4, 5), fallback);
+    }
+
+    @Test
+    public void testBreakerClosesAfterSuccessfulProbe() {
+        CircuitBreaker<Integer> breaker = circuitBreaker(1);
+        openBreaker(breaker);
+
+        failing.set(false);
+        time.addAndGet(999);
+        breaker.accept(99);
+        assertEquals(CircuitBreaker.Status.OPEN, breaker.getStatus());
+
+        time.addAndGet(1);
+        breaker.accept(100);
+        assertEquals(CircuitBreaker.Status.CLOSED, breaker.getStatus());
+        assertEquals(List.of(100), sent);
+    }
+
+    @Test
+    public void testFailedProbeReopensBreakerWithLongerDelay() {
+        CircuitBreaker<Integer> breaker = circuitBreaker(1);
+        openBreaker(breaker);
+
+        time.addAndGet(1000);
+        breaker.accept(100);
+        assertEquals(CircuitBreaker.Status.OPEN, breaker.getStatus());
+
+        failing.set(false);
+        time.addAndGet(1000);
+        breaker.accept(101);
+        assertEquals(CircuitBreaker.Status.OPEN, breaker.getStatus());
+
+        time.addAndGet(1000);
+        breaker.accept(102);
+        assertEquals(CircuitBreaker.Status.CLOSED, breaker.getStatus());
+        assertEquals(List.of(102), sent);
+    }
+
+    @Test
+    public void testConcurrentProbesAreLimited() throws Exception {
+        CountDownLatch probeStarted = new CountDownLatch(1);
+        CountDownLatch probeCanFinish = new CountDownLatch(1);
+        AtomicBoolean blocking = new AtomicBoolean();
+        CircuitBreaker<Integer> breaker = circuitBreaker(value -> {
+            if (blocking.get()) {
+                probeStarted.countDown();
+                probeCanFinish.await();
+            }
+            send(value);
+        }, 1);
+        openBreaker(breaker);
+
+        failing.set(false);
+        blocking.set(true);
+        time.addAndGet(1000);
+        Thread probe = new Thread(() -> breaker.accept(100));
+        probe.start();
+        assertTrue(probeStarted.await(10, TimeUnit.SECONDS));
+
+        // the only probe permit is taken, and the caller does not wait for the probe to finish
+        breaker.accept(101);
+        assertEquals(CircuitBreaker.Status.HALF_OPEN, breaker.getStatus());
+        assertTrue(fallback.contains(101));
+
+        probeCanFinish.countDown();
+        probe.join(TimeUnit.SECONDS.toMillis(10));
+        assertEquals(CircuitBreaker.Status.CLOSED, breaker.getStatus());
+        assertEquals(List.of(100), sent);
+    }
+
+    @Test
+    public void testOutcomeOfAsynchronousCallIsRecordedWhenItCompletes() {
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        CircuitBreaker<Integer> breaker = asyncCircuitBreaker(value -> {
+            CompletableFuture<Void> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        });
+
+        for (int i = 0; i < 4; i++) {
+            breaker.accept(i);
+        }
+        // the caller does not wait for the calls to complete
+        assertEquals(4, calls.size());
+        assertEquals(CircuitBreaker.Status.CLOSED, breaker.getStatus());
+        assertTrue(fallback.isEmpty());
+
+        calls.forEach(call -> call.completeExceptionally(new RuntimeException("failure")));
+        assertEquals(CircuitBreaker.Status.OPEN, breaker.getStatus());
+        assertEquals(List.of(0, 1, 2, 3), fallback);
+    }
+
+    @Test
+    public void testAsynchronousProbeClosesBreakerWhenItCompletes() {
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        CircuitBreaker<Integer> breaker = asyncCircuitBreaker(value -> {
+            if (failing.get()) {
+                throw new RuntimeException("failure");
+            }
+            CompletableFuture<Void> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        });
+        openBreaker(breaker);
+
+        failing.set(false);
+        time.addAndGet(1000);
+        breaker.accept(100);
+        assertEquals(CircuitBreaker.Status.HALF_OPEN, breaker.getStatus());
+
+        // the probe permit is held until the call completes
+        breaker.accept(101);
+        assertEquals(1, calls.size());
+        assertTrue(fallback.contains(101));
+
+        calls.get(0).complete(null);
+        assertEquals(CircuitBreaker.Status.CLOSED, breaker.getStatus());
+    }
+
+    private void openBreaker(CircuitBreaker<Integer> breaker) {
+        failing.set(true);
+        for (int i = 0; i < 4; i++) {
+            breaker.accept(i);
+        }
+        assertEquals(CircuitBreaker.Status.OPEN, breaker.getStatus());
+    }
+}
@@ -0,0 +1,43 @@
+package org.datadog.jenkins.plugins.datadog.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Comparator;
+import org.junit.Test;
+
+public class KeyedCoalescerTest {
+
+    @Test
+    public void testOnlyFirstOfferSchedulesProcessing() {
+        KeyedCoalescer<String, Integer> coalescer = new KeyedCoalescer<>("test-first-offer", Comparator.<Integer>naturalOrder());
+        assertTrue(coalescer.offer("run#1", 0));
+        assertFalse(coalescer.offer("run#1", 1));
+        assertTrue(coalescer.offer("run#2", 0));
+        assertEquals(2, coalescer.size());
+    }
+
+    @Test
+    public void testLatestVersionIsKept() {
+        KeyedCoalescer<String, Integer> coalescer = new KeyedCoalescer<>("test-latest-version", Comparator.<Integer>naturalOrder());
+        coalescer.offer("run#1", 0);
+        coalescer.offer("run#1", 2);
+        // submitted late, but older than the pending one
+        coalescer.offer("run#1", 1);
+
+        assertEquals(Integer.valueOf(2), coalescer.take("run#1"));
+        assertNull(coalescer.take("run#1"));
+        assertEquals(2, AsyncWriter.METRICS.meter("test-latest-version.coalesced").getCount());
+    }
+
+    @Test
+    public void testOfferAfterTakeSchedulesProcessingAgain() {
+        KeyedCoalescer<String, Integer> coalescer = new KeyedCoalescer<>("test-offer-after-take", Comparator.<Integer>naturalOrder());
+        assertTrue(coalescer.offer("run#1", 0));
+        assertEquals(Integer.valueOf(0), coalescer.take("run#1"));
+        assertTrue(coalescer.offer("run#1", 1));
+        assertEquals(0, AsyncWriter.METRICS.meter("test-offer-after-take.coalesced").getCount());
+    }
+}
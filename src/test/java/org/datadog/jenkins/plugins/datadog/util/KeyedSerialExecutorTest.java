@@ -0,0 +1,164 @@
+package org.datadog.jenkins.plugins.datadog.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.codahale.metrics.Meter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class KeyedSerialExecutorTest {
+
+    @Test
+    public void testTasksWithSameKeyAreExecutedInOrder() throws Exception {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor("test-order", 4, 10_000, 10, 10);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 1000; i++) {
+            int task = i;
+            assertTrue(executor.execute("run", () -> executed.add(task)));
+        }
+        assertTrue(executor.awaitQuiescence("run", 10, TimeUnit.SECONDS));
+
+        assertEquals(1000, executed.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), executed.get(i));
+        }
+        assertEquals(0, executor.getQueueSize());
+    }
+
+    @Test
+    public void testTasksWithDifferentKeysAreExecutedConcurrently() throws Exception {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor("test-concurrent", 2, 100, 10, 10);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch otherExecuted = new CountDownLatch(1);
+
+        executor.execute("run-1", () -> {
+            try {
+                blocked.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute("run-2", otherExecuted::countDown);
+
+        assertTrue(otherExecuted.await(10, TimeUnit.SECONDS));
+        assertFalse(executor.awaitQuiescence("run-1", 100, TimeUnit.MILLISECONDS));
+
+        blocked.countDown();
+        assertTrue(executor.awaitQuiescence("run-1", 10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTasksAreExecutedByCallerWhenFull() throws Exception {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor("test-full", 1, 2, 0, 10);
+        CountDownLatch blocked = new CountDownLatch(1);
+
+        assertTrue(executor.execute("run", () -> {
+            try {
+                blocked.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(executor.execute("run", () -> {}));
+        assertEquals(2, executor.getQueueSize());
+
+        Thread caller = Thread.currentThread();
+        List<Thread> executedBy = new ArrayList<>();
+        assertFalse(executor.execute("other-run", () -> executedBy.add(Thread.currentThread())));
+        assertEquals(Collections.singletonList(caller), executedBy);
+
+        blocked.countDown();
+        assertTrue(executor.awaitQuiescence("run", 10, TimeUnit.SECONDS));
+        assertEquals(0, executor.getQueueSize());
+    }
+
+    @Test
+    public void testTaskExecutedByCallerRunsAfterQueuedTasksWithSameKey() throws Exception {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor("test-full-order", 1, 2, 0, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+
+        assertTrue(executor.execute("run", () -> {
+            started.countDown();
+            try {
+                blocked.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executed.add(1);
+        }));
+        assertTrue(executor.execute("run", () -> executed.add(2)));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        Thread unblocker = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            blocked.countDown();
+        });
+        unblocker.start();
+        assertFalse(executor.execute("run", () -> executed.add(3)));
+        assertEquals(Arrays.asList(1, 2, 3), executed);
+    }
+
+    @Test
+    public void testTaskExecutedByCallerRunsOutOfOrderAfterAwaitTimeout() throws Exception {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor("test-full-timeout", 1, 1, 0, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+
+        assertTrue(executor.execute("run", () -> {
+            started.countDown();
+            try {
+                blocked.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executed.add(1);
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        Meter outOfOrder = AsyncWriter.METRICS.meter("test-full-timeout.submit.out_of_order");
+        long outOfOrderBefore = outOfOrder.getCount();
+        assertFalse(executor.execute("run", () -> executed.add(2)));
+        assertEquals(Collections.singletonList(2), executed);
+        assertEquals(outOfOrderBefore + 1, outOfOrder.getCount());
+
+        blocked.countDown();
+        assertTrue(executor.awaitQuiescence("run", 10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(2, 1), executed);
+    }
+
+    @Test
+    public void testTasksAreExecutedByCallerAfterShutdown() throws Exception {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor("test-shutdown", 1, 10, 10, 10);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        assertTrue(executor.execute("run", () -> executed.add(1)));
+        assertTrue(executor.shutdown(10, TimeUnit.SECONDS));
+
+        assertFalse(executor.execute("run", () -> executed.add(2)));
+        assertEquals(Arrays.asList(1, 2), executed);
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopExecution() throws Exception {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor("test-failing", 1, 10, 10, 10);
+        CountDownLatch executed = new CountDownLatch(1);
+        executor.execute("run", () -> {
+            throw new RuntimeException("test");
+        });
+        executor.execute("run", executed::countDown);
+        assertTrue(executed.await(10, TimeUnit.SECONDS));
+    }
+}
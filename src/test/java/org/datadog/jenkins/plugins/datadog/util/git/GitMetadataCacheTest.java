@@ -0,0 +1,103 @@
+package org.datadog.jenkins.plugins.datadog.util.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.codahale.metrics.Meter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.datadog.jenkins.plugins.datadog.model.git.GitCommitMetadata;
+import org.datadog.jenkins.plugins.datadog.model.git.GitMetadata;
+import org.datadog.jenkins.plugins.datadog.util.AsyncWriter;
+import org.junit.Test;
+
+public class GitMetadataCacheTest {
+
+    private static final String REPO_URL = "https://github.com/DataDog/datadog-plugin.git";
+    private static final String SHA = "5e784c5a9b2c1f8ce0bdf4a3c1cfb07ac7f5b4d2";
+    private static final String OTHER_SHA = "0123456789abcdef0123456789abcdef01234567";
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @Test
+    public void testCachedMetadataIsReturned() throws Exception {
+        GitMetadataCache cache = new GitMetadataCache(10, TimeUnit.MINUTES.toNanos(1), nanoTime::get);
+        GitMetadata metadata = metadata(SHA);
+        cache.put(REPO_URL, SHA, "master", metadata);
+
+        assertSame(metadata, get(cache, REPO_URL, SHA, "master"));
+        assertSame(metadata, get(cache, REPO_URL, SHA.toUpperCase(), "master"));
+        assertNull(get(cache, REPO_URL, OTHER_SHA, "master"));
+        assertNull(get(cache, "https://github.com/DataDog/other.git", SHA, "master"));
+        assertNull(get(cache, REPO_URL, SHA, "feature"));
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception {
+        GitMetadataCache cache = new GitMetadataCache(10, TimeUnit.MINUTES.toNanos(1), nanoTime::get);
+        cache.put(REPO_URL, SHA, null, metadata(SHA));
+
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        assertEquals(SHA, get(cache, REPO_URL, SHA, null).getCommitMetadata().getCommit());
+
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertNull(get(cache, REPO_URL, SHA, null));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        GitMetadataCache cache = new GitMetadataCache(2, TimeUnit.MINUTES.toNanos(1), nanoTime::get);
+        cache.put(REPO_URL, SHA, "a", metadata(SHA));
+        cache.put(REPO_URL, SHA, "b", metadata(SHA));
+        get(cache, REPO_URL, SHA, "a");
+        cache.put(REPO_URL, SHA, "c", metadata(SHA));
+
+        assertEquals(2, cache.size());
+        assertNull(get(cache, REPO_URL, SHA, "b"));
+        assertEquals(SHA, get(cache, REPO_URL, SHA, "a").getCommitMetadata().getCommit());
+    }
+
+    @Test
+    public void testInvalidCoordinatesAreNotCached() throws Exception {
+        GitMetadataCache cache = new GitMetadataCache(10, TimeUnit.MINUTES.toNanos(1), nanoTime::get);
+        cache.put(null, SHA, null, metadata(SHA));
+        cache.put(REPO_URL, null, null, metadata(SHA));
+        cache.put(REPO_URL, "5e784c", null, metadata(SHA));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testDisabledCache() throws Exception {
+        GitMetadataCache cache = new GitMetadataCache(0, TimeUnit.MINUTES.toNanos(1), nanoTime::get);
+        cache.put(REPO_URL, SHA, null, metadata(SHA));
+        assertNull(get(cache, REPO_URL, SHA, null));
+    }
+
+    @Test
+    public void testEntryThatFailsVerificationIsCountedAsMiss() throws Exception {
+        GitMetadataCache cache = new GitMetadataCache(10, TimeUnit.MINUTES.toNanos(1), nanoTime::get);
+        cache.put(REPO_URL, SHA, null, metadata(SHA));
+        Meter hits = AsyncWriter.METRICS.meter("git.metadata.cache.hit");
+        Meter misses = AsyncWriter.METRICS.meter("git.metadata.cache.miss");
+        long hitsBefore = hits.getCount();
+        long missesBefore = misses.getCount();
+
+        assertNull(cache.get(REPO_URL, SHA, null, metadata -> false));
+        assertEquals(hitsBefore, hits.getCount());
+        assertEquals(missesBefore + 1, misses.getCount());
+
+        assertEquals(SHA, get(cache, REPO_URL, SHA, null).getCommitMetadata().getCommit());
+        assertEquals(hitsBefore + 1, hits.getCount());
+    }
+
+    private static GitMetadata get(GitMetadataCache cache, String repositoryUrl, String commitSha, String branchHint) throws InterruptedException {
+        return cache.get(repositoryUrl, commitSha, branchHint, metadata -> true);
+    }
+
+    private static GitMetadata metadata(String sha) {
+        GitCommitMetadata commitMetadata = new GitCommitMetadata.Builder().commit(sha).build();
+        return new GitMetadata.Builder().repositoryURL(REPO_URL).commitMetadata(commitMetadata).build();
+    }
+}